@@ -0,0 +1,112 @@
+#!/bin/bash
+
+# Smart API - generate-one load test
+#
+# Fires concurrent POST /api/docs/generate-one requests, each for a path of its own so every
+# one misses the cache and waits on the LLM, while probing GET /health to see whether
+# requests that never touch the LLM still get a thread.
+#
+# Compare platform and virtual threads against the built-in stub LLM, which answers after
+# STUB_DELAY_MS, so the numbers measure the server rather than the API:
+#
+#   ./load-test-generate.sh --stub                        # terminal 1, leave running
+#   ANTHROPIC_BASE_URL=http://127.0.0.1:8089 ANTHROPIC_RATE_LIMIT_ENABLED=false \
+#     TOMCAT_MAX_THREADS=50 VIRTUAL_THREADS_ENABLED=false ./mvnw spring-boot:run  # terminal 2
+#   ./load-test-generate.sh                               # terminal 3
+#   # restart the app with VIRTUAL_THREADS_ENABLED=true and run it again
+#
+# Every request stores a document under /loadtest/<run>/<n>.
+
+BASE_URL="${BASE_URL:-http://localhost:8080}"
+REQUESTS="${REQUESTS:-400}"
+CONCURRENCY="${CONCURRENCY:-200}"
+STUB_PORT="${STUB_PORT:-8089}"
+STUB_DELAY_MS="${STUB_DELAY_MS:-2000}"
+
+if [ "$1" == "--stub" ]; then
+    echo "🤖 Stub LLM on http://127.0.0.1:$STUB_PORT, answering after ${STUB_DELAY_MS} ms"
+    exec python3 - "$STUB_PORT" "$STUB_DELAY_MS" <<'PY'
+import json, sys, time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+port, delay = int(sys.argv[1]), int(sys.argv[2]) / 1000
+text = json.dumps({"description": "Load test endpoint", "parameters": {},
+                   "examples": {"curl": "curl http://localhost:8080/loadtest"}})
+body = json.dumps({"id": "msg_stub", "type": "message", "role": "assistant", "model": "stub",
+                   "content": [{"type": "text", "text": text}], "stop_reason": "end_turn",
+                   "stop_sequence": None, "usage": {"input_tokens": 20, "output_tokens": 30}}).encode()
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+
+    def do_POST(self):
+        self.rfile.read(int(self.headers.get("Content-Length", 0)))
+        time.sleep(delay)
+        self.send_response(200)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def log_message(self, *args):
+        pass
+
+ThreadingHTTPServer.daemon_threads = True
+ThreadingHTTPServer.request_queue_size = 1024
+ThreadingHTTPServer(("127.0.0.1", port), Handler).serve_forever()
+PY
+fi
+
+RUN="$(date +%s)"
+WORK="$(mktemp -d)"
+trap 'rm -rf "$WORK"' EXIT
+
+echo "🚀 Smart API - generate-one Load Test"
+echo "====================================="
+echo "   $REQUESTS requests, $CONCURRENCY at a time, against $BASE_URL"
+echo ""
+
+if ! curl -s -o /dev/null "$BASE_URL/health"; then
+    echo "❌ $BASE_URL is not answering"
+    exit 1
+fi
+
+# Probe the health endpoint every 100 ms for as long as the load runs
+(
+    while [ ! -f "$WORK/done" ]; do
+        curl -s -o /dev/null -m 30 -w '%{time_total}\n' "$BASE_URL/health" >> "$WORK/health"
+        sleep 0.1
+    done
+) &
+PROBE=$!
+
+START="$(date +%s.%N)"
+seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} curl -s -o /dev/null -m 300 \
+    -w '%{http_code} %{time_total}\n' \
+    -X POST "$BASE_URL/api/docs/generate-one" \
+    -H "Content-Type: application/json" \
+    -d "{\"path\": \"/loadtest/$RUN/{}\", \"method\": \"GET\"}" >> "$WORK/generate"
+END="$(date +%s.%N)"
+touch "$WORK/done"
+wait "$PROBE"
+
+python3 - "$WORK/generate" "$WORK/health" "$START" "$END" <<'PY'
+import sys
+from collections import Counter
+
+def percentile(values, p):
+    return values[min(len(values) - 1, int(len(values) * p))] if values else 0.0
+
+generate = [line.split() for line in open(sys.argv[1]) if line.strip()]
+health = sorted(float(line) for line in open(sys.argv[2]) if line.strip())
+elapsed = float(sys.argv[4]) - float(sys.argv[3])
+latencies = sorted(float(t) for _, t in generate)
+statuses = Counter(code for code, _ in generate)
+
+print(f"📊 generate-one: {len(generate)} requests in {elapsed:.1f} s = {len(generate) / elapsed:.1f} req/s")
+print(f"   latency p50 {percentile(latencies, 0.5):.2f} s, p95 {percentile(latencies, 0.95):.2f} s, "
+      f"max {latencies[-1] if latencies else 0:.2f} s")
+print(f"   status codes {dict(sorted(statuses.items()))}")
+print(f"💚 /health under load: {len(health)} probes, p50 {percentile(health, 0.5) * 1000:.0f} ms, "
+      f"p95 {percentile(health, 0.95) * 1000:.0f} ms, max {(health[-1] if health else 0) * 1000:.0f} ms")
+PY
@@ -1,15 +1,22 @@
 package com.jasonmaggard.smart_api.api.docs.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
 import com.jasonmaggard.smart_api.api.docs.entity.Doc;
 import com.jasonmaggard.smart_api.api.docs.service.DocService;
 import com.jasonmaggard.smart_api.api.docs.service.ReflectionService;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.DocBatchDto;
 import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
 import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
+import com.jasonmaggard.smart_api.api.llm.service.DocumentationFanOut;
+import com.jasonmaggard.smart_api.api.llm.service.LLMBatchService;
 import com.jasonmaggard.smart_api.api.llm.service.LLMCacheService;
 import com.jasonmaggard.smart_api.api.llm.service.LLMService;
+import com.jasonmaggard.smart_api.api.llm.service.StreamingDocParser;
 import com.jasonmaggard.smart_api.api.jobs.service.DocumentationJobService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -21,10 +28,17 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jobrunr.jobs.JobId;
 import org.jobrunr.scheduling.JobScheduler;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -40,8 +54,12 @@ public class DocsController {
     private final ReflectionService reflectionService;
     private final LLMService llmService;
     private final LLMCacheService cacheService;
+    private final LLMBatchService batchService;
     private final JobScheduler jobScheduler;
+    private final AdaptiveRateLimiter rateLimiter;
     private final DocumentationJobService jobService;
+    private final DocumentationFanOut fanOut;
+    private final LLMConfig llmConfig;
     private final ObjectMapper objectMapper;
     
     private static long lastGenerateAt = 0;
@@ -50,7 +68,7 @@ public class DocsController {
     
     @PostMapping("/generate")
     @Operation(summary = "Trigger background documentation generation for all endpoints")
-    @ApiResponse(responseCode = "200", description = "Documentation generation jobs enqueued")
+    @ApiResponse(responseCode = "200", description = "Documentation generation jobs enqueued, or with mode sync, generated")
     public ResponseEntity<Map<String, Object>> generateDocs(
             @RequestBody(required = false) GenerateDocsRequest request) {
         
@@ -94,6 +112,14 @@ public class DocsController {
             return ResponseEntity.badRequest().body(response);
         }
         
+        if (request != null && "batch".equalsIgnoreCase(request.getMode())) {
+            return submitBatch(toEnqueue.stream().limit(limit).toList());
+        }
+        
+        if (request != null && "sync".equalsIgnoreCase(request.getMode())) {
+            return generateNow(toEnqueue.stream().limit(limit).toList(), request);
+        }
+        
         // Enqueue jobs using JobRunr
         List<String> jobIds = new ArrayList<>();
         int enqueued = 0;
@@ -131,6 +157,136 @@ public class DocsController {
         return ResponseEntity.ok(response);
     }
     
+    private ResponseEntity<Map<String, Object>> submitBatch(List<EndpointMetadata> endpoints) {
+        try {
+            String batchId = batchService.submit(endpoints);
+            lastGenerateAt = System.currentTimeMillis();
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Submitted batch of " + endpoints.size() + " documentation requests");
+            response.put("submitted", endpoints.size());
+            response.put("batchId", batchId);
+            return ResponseEntity.accepted().body(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (LLMException e) {
+            log.error("Failed to submit documentation batch: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("error", "LLM_ERROR");
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(errorResponse);
+        }
+    }
+    
+    /**
+     * Generate the endpoints within this request, several at once, and save every result
+     * that came back in one write. Endpoints that fail or time out are reported alongside
+     * the rest rather than failing the request.
+     */
+    private ResponseEntity<Map<String, Object>> generateNow(List<EndpointMetadata> endpoints, GenerateDocsRequest request) {
+        LLMConfig.SyncGeneration settings = llmConfig.getSyncGeneration();
+        // A request can ask for less than the configured concurrency and timeout, not more
+        int concurrency = Math.max(1, request.getConcurrency() != null
+            ? Math.min(request.getConcurrency(), settings.getMaxConcurrency()) : settings.getMaxConcurrency());
+        long timeoutMs = Math.max(1, request.getTimeoutMs() != null
+            ? Math.min(request.getTimeoutMs(), settings.getEndpointTimeoutMs()) : settings.getEndpointTimeoutMs());
+        
+        long start = System.currentTimeMillis();
+        lastGenerateAt = start;
+        log.info("Generating documentation for {} endpoints, {} at a time", endpoints.size(), concurrency);
+        
+        try {
+            List<DocumentationFanOut.Outcome> outcomes = fanOut.generateEach(endpoints, concurrency, Duration.ofMillis(timeoutMs));
+            
+            List<DocService.Generated> generated = outcomes.stream()
+                .filter(outcome -> outcome.status() == DocumentationFanOut.Status.GENERATED)
+                .map(outcome -> new DocService.Generated(outcome.endpoint().getFullPath(),
+                    outcome.endpoint().getMethod(), outcome.documentation()))
+                .toList();
+            Map<String, Doc> saved = new HashMap<>();
+            for (Doc doc : docService.saveAllGenerated(generated)) {
+                saved.put(doc.getHttpMethod() + " " + doc.getEndpointPath(), doc);
+            }
+            
+            List<Map<String, Object>> results = new ArrayList<>(outcomes.size());
+            int failed = 0;
+            int rateLimited = 0;
+            int timedOut = 0;
+            Duration retryAfter = Duration.ZERO;
+            for (DocumentationFanOut.Outcome outcome : outcomes) {
+                EndpointMetadata endpoint = outcome.endpoint();
+                Map<String, Object> result = new HashMap<>();
+                result.put("path", endpoint.getFullPath());
+                result.put("method", endpoint.getMethod());
+                result.put("status", outcome.status());
+                result.put("elapsedMs", outcome.elapsedMs());
+                switch (outcome.status()) {
+                    case GENERATED -> result.put("doc", saved.get(endpoint.getMethod().toUpperCase() + " " + endpoint.getFullPath()));
+                    case FAILED -> failed++;
+                    case RATE_LIMITED -> {
+                        rateLimited++;
+                        if (outcome.retryAfter().compareTo(retryAfter) > 0) {
+                            retryAfter = outcome.retryAfter();
+                        }
+                    }
+                    case TIMED_OUT -> timedOut++;
+                }
+                if (outcome.error() != null) {
+                    result.put("error", outcome.error());
+                }
+                results.add(result);
+            }
+            
+            log.info("Generated documentation for {} of {} endpoints ({} failed, {} rate limited, {} timed out)",
+                generated.size(), endpoints.size(), failed, rateLimited, timedOut);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Generated documentation for " + generated.size() + " of " + endpoints.size() + " endpoints");
+            response.put("requested", endpoints.size());
+            response.put("generated", generated.size());
+            response.put("failed", failed);
+            response.put("rateLimited", rateLimited);
+            response.put("timedOut", timedOut);
+            response.put("elapsedMs", System.currentTimeMillis() - start);
+            response.put("results", results);
+            // Nothing generated but nothing failed for good either: asking again once the
+            // limit allows is expected to work
+            if (generated.isEmpty() && rateLimited > 0 && failed == 0) {
+                response.put("error", "RATE_LIMITED");
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(retryAfter))
+                    .body(response);
+            }
+            if (generated.isEmpty()) {
+                response.put("error", "LLM_ERROR");
+                return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(response);
+            }
+            return ResponseEntity.ok(response);
+        } catch (LLMException e) {
+            log.error("LLM error generating documentation: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Failed to generate documentation: " + e.getMessage());
+            errorResponse.put("error", "LLM_ERROR");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        } catch (Exception e) {
+            log.error("Unexpected error generating documentation", e);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Unexpected error: " + e.getMessage());
+            errorResponse.put("error", "INTERNAL_ERROR");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
+    @GetMapping("/batches/{batchId}")
+    @Operation(summary = "Get the status of a documentation generation batch")
+    public ResponseEntity<DocBatchDto> getBatch(@PathVariable String batchId) {
+        DocBatchDto batch = batchService.getBatch(batchId);
+        if (batch == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(batch);
+    }
+    
     @PostMapping("/generate-one")
     @Operation(summary = "Generate documentation for a single endpoint")
     public ResponseEntity<Map<String, Object>> generateOne(@RequestBody GenerateOneRequest request) {
@@ -142,53 +298,28 @@ public class DocsController {
         String method = request.getMethod() != null ? request.getMethod().toUpperCase() : "GET";
         
         try {
-            // Find endpoint metadata
-            EndpointMetadata metadata = reflectionService.extractEndpointMetadata().stream()
-                .filter(e -> e.getPath().equals(path) && e.getMethod().equals(method))
-                .findFirst()
-                .orElse(null);
-            
-            if (metadata == null) {
-                // Create minimal metadata if endpoint not found
-                metadata = new EndpointMetadata();
-                metadata.setPath(path);
-                metadata.setFullPath(path);
-                metadata.setMethod(method);
-            }
+            EndpointMetadata metadata = resolveMetadata(path, method);
             
             // Call LLM service to generate documentation
             log.info("Generating documentation for {} {}", method, path);
             GeneratedDocumentation result = llmService.generateDocumentation(metadata);
             
-            // Map result to Doc entity payload using JsonNode
-            ObjectNode payload = objectMapper.createObjectNode();
-            payload.put("endpoint_path", metadata.getFullPath());
-            payload.put("http_method", method);
-            payload.put("description", result.getDescription());
-            payload.set("parameters", objectMapper.valueToTree(result.getParameters()));
-            payload.putNull("response_schema");
-            payload.set("code_examples", objectMapper.valueToTree(result.getExamples()));
-            payload.put("llm_model", result.getModel());
-            payload.put("token_count", result.getTokenCount());
-            
             // Save or update documentation
-            Doc existing = docService.findByEndpoint(metadata.getFullPath(), method);
-            
-            Doc doc;
-            String message;
-            if (existing != null) {
-                doc = docService.update(existing.getId(), payload);
-                message = "Updated documentation";
-            } else {
-                doc = docService.create(payload);
-                message = "Created documentation";
-            }
+            Doc doc = docService.saveGenerated(metadata.getFullPath(), method, result);
             
             Map<String, Object> response = new HashMap<>();
-            response.put("message", message);
+            response.put("message", DocService.isNew(doc) ? "Created documentation" : "Updated documentation");
             response.put("doc", doc);
             return ResponseEntity.ok(response);
             
+        } catch (LLMRateLimitException e) {
+            log.warn("Rate limited generating documentation: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Failed to generate documentation: " + e.getMessage());
+            errorResponse.put("error", "RATE_LIMITED");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(e.getRetryAfter()))
+                .body(errorResponse);
         } catch (LLMException e) {
             log.error("LLM error generating documentation: {}", e.getMessage());
             Map<String, Object> errorResponse = new HashMap<>();
@@ -204,6 +335,107 @@ public class DocsController {
         }
     }
     
+    @PostMapping(value = "/generate-one/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+        summary = "Generate documentation for a single endpoint, streaming parts as they are written",
+        description = "Server-sent events: description, then one parameter or example event per entry as soon as " +
+            "the model has finished it, then complete (with the saved doc) or error"
+    )
+    public ResponseEntity<StreamingResponseBody> generateOneStream(@RequestBody GenerateOneRequest request) {
+        if (request.getPath() == null || request.getPath().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        String path = request.getPath();
+        String method = request.getMethod() != null ? request.getMethod().toUpperCase() : "GET";
+        EndpointMetadata metadata = resolveMetadata(path, method);
+        
+        StreamingResponseBody body = out -> {
+            SseWriter events = new SseWriter(out);
+            try {
+                GeneratedDocumentation result = llmService.streamDocumentation(metadata, new StreamingDocParser.Listener() {
+                    @Override
+                    public void onDescription(String description) {
+                        events.send("description", Map.of("description", description));
+                    }
+                    
+                    @Override
+                    public void onEntry(String section, String name, JsonNode value) {
+                        String event = "parameters".equals(section) ? "parameter" : "example";
+                        events.send(event, Map.of("name", name, "value", value));
+                    }
+                });
+                
+                // Persist even if the client has gone, the tokens are already paid for
+                Doc doc = docService.saveGenerated(metadata.getFullPath(), method, result);
+                events.send("complete", Map.of("doc", doc));
+            } catch (LLMException e) {
+                log.error("LLM error streaming documentation: {}", e.getMessage());
+                events.send("error", Map.of("message", "Failed to generate documentation: " + e.getMessage(), "error", "LLM_ERROR"));
+            } catch (Exception e) {
+                log.error("Unexpected error streaming documentation", e);
+                events.send("error", Map.of("message", "Unexpected error: " + e.getMessage(), "error", "INTERNAL_ERROR"));
+            }
+        };
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.TEXT_EVENT_STREAM)
+            .header("Cache-Control", "no-cache")
+            // Stops reverse proxies from buffering the stream
+            .header("X-Accel-Buffering", "no")
+            .body(body);
+    }
+    
+    private EndpointMetadata resolveMetadata(String path, String method) {
+        EndpointMetadata metadata = reflectionService.extractEndpointMetadata().stream()
+            .filter(e -> e.getPath().equals(path) && e.getMethod().equals(method))
+            .findFirst()
+            .orElse(null);
+        
+        if (metadata == null) {
+            // Create minimal metadata if endpoint not found
+            metadata = new EndpointMetadata();
+            metadata.setPath(path);
+            metadata.setFullPath(path);
+            metadata.setMethod(method);
+        }
+        return metadata;
+    }
+
+    /**
+     * Whole seconds, rounded up and at least one, as the Retry-After header takes them
+     */
+    private static String retryAfterSeconds(Duration retryAfter) {
+        return String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+    }
+
+    /**
+     * Writes server-sent events and flushes each one. Once a write fails the client is
+     * treated as gone and later events are dropped, so generation can still finish and save.
+     */
+    private class SseWriter {
+        private final OutputStream out;
+        private boolean disconnected;
+        
+        private SseWriter(OutputStream out) {
+            this.out = out;
+        }
+        
+        private void send(String event, Object data) {
+            if (disconnected) {
+                return;
+            }
+            try {
+                String frame = "event: " + event + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n";
+                out.write(frame.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                disconnected = true;
+                log.debug("Client went away during documentation stream: {}", e.getMessage());
+            }
+        }
+    }
+    
     @GetMapping("/all")
     @Operation(summary = "Get all generated documentation")
     @ApiResponse(responseCode = "200", description = "List of all documentation")
@@ -247,6 +479,46 @@ public class DocsController {
         response.put("redisAvailable", stats.redisAvailable);
         response.put("redisCacheSize", stats.redisCacheSize);
         response.put("memoryCacheSize", stats.memoryCacheSize);
+        response.put("memoryWeightBytes", stats.memory.weight());
+        response.put("memoryMaxWeightBytes", stats.memory.maxWeight());
+        response.put("memoryHits", stats.memory.hits());
+        response.put("memoryMisses", stats.memory.misses());
+        response.put("memoryHitRate", stats.memory.hitRate());
+        response.put("memoryEvictions", stats.memory.evictions());
+        response.put("memoryEvictedBytes", stats.memory.evictedWeight());
+        response.put("memoryExpirations", stats.memory.expirations());
+        response.put("memoryRejections", stats.memory.rejections());
+        response.put("redisLoads", stats.memory.loads());
+        response.put("averageRedisLoadTimeMs", stats.memory.averageLoadTimeMs());
+        response.put("invalidationsPublished", stats.invalidationsPublished);
+        response.put("invalidationsReceived", stats.invalidationsReceived);
+        response.put("redisCircuitState", stats.redisCircuit.state());
+        response.put("redisCircuitOpened", stats.redisCircuit.opened());
+        response.put("redisCircuitProbes", stats.redisCircuit.probes());
+        response.put("redisCircuitClosed", stats.redisCircuit.closed());
+        response.put("redisShortCircuited", stats.redisCircuit.shortCircuited());
+        response.put("redisDegradedMs", stats.redisCircuit.degradedMs());
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/rate-limit/stats")
+    @Operation(summary = "Get LLM rate limiter statistics")
+    public ResponseEntity<Map<String, Object>> getRateLimitStats() {
+        AdaptiveRateLimiter.Stats stats = rateLimiter.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("enabled", stats.enabled());
+        response.put("concurrencyLimit", stats.limit());
+        response.put("inFlight", stats.inFlight());
+        response.put("waiting", stats.waiting());
+        response.put("pausedForMs", stats.pausedForMs());
+        response.put("budgetLow", stats.budgetLow());
+        response.put("requestsAvailable", stats.requestsAvailable());
+        response.put("admitted", stats.admitted());
+        response.put("rateLimited", stats.rateLimited());
+        response.put("overloaded", stats.overloaded());
+        response.put("decreases", stats.decreases());
+        response.put("timedOut", stats.timedOut());
+        response.put("averageWaitMs", stats.averageWaitMs());
         return ResponseEntity.ok(response);
     }
     
@@ -264,7 +536,8 @@ public class DocsController {
     public ResponseEntity<Map<String, Object>> invalidateCache(
             @RequestParam String path,
             @RequestParam String method) {
-        cacheService.invalidate(method.toUpperCase(), path);
+        // The key of the endpoint as it is now; keys of older signatures are never read again
+        cacheService.invalidate(cacheService.generateCacheKey(resolveMetadata(path, method.toUpperCase())));
         Map<String, Object> response = new HashMap<>();
         response.put("message", "Cache invalidated for " + method + " " + path);
         return ResponseEntity.ok(response);
@@ -277,6 +550,15 @@ public class DocsController {
         private Integer limit;
         private Boolean confirm;
         private List<String> paths;
+        /**
+         * "jobs" (default) for one background job per endpoint, "batch" for one Message Batch,
+         * "sync" to generate within the request and return the results
+         */
+        private String mode;
+        /** "sync" only: endpoints generated at once, at most anthropic.sync-generation.max-concurrency */
+        private Integer concurrency;
+        /** "sync" only: longest one endpoint is waited on, at most anthropic.sync-generation.endpoint-timeout-ms */
+        private Long timeoutMs;
     }
     
     @Data
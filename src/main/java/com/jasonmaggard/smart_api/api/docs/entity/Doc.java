@@ -59,6 +59,15 @@ public class Doc {
     @Column(name = "token_count")
     private Integer tokenCount;
     
+    @Column(name = "input_tokens")
+    private Integer inputTokens;
+    
+    @Column(name = "cache_creation_input_tokens")
+    private Integer cacheCreationInputTokens;
+    
+    @Column(name = "cache_read_input_tokens")
+    private Integer cacheReadInputTokens;
+    
     @Column(name = "generated_at", nullable = false, updatable = false)
     @Temporal(TemporalType.TIMESTAMP)
     private Date generatedAt;
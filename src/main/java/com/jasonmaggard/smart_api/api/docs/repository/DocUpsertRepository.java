@@ -0,0 +1,158 @@
+package com.jasonmaggard.smart_api.api.docs.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.docs.entity.Doc;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Creates or replaces documentation rows with INSERT ... ON CONFLICT on
+ * uq_documentation_endpoint_method, so saving a generation result is one statement that
+ * cannot race another writer of the same endpoint into a constraint violation.
+ *
+ * A row keeps its id and generated_at when replaced; every other column is taken from the
+ * new values and updated_at is set to now.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DocUpsertRepository {
+
+    private static final String COLUMNS =
+        "endpoint_path, http_method, description, parameters, response_schema, code_examples, " +
+        "llm_model, token_count, input_tokens, cache_creation_input_tokens, cache_read_input_tokens";
+
+    private static final String ROW_VALUES =
+        "(?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), CAST(? AS jsonb), ?, ?, ?, ?, ?)";
+
+    private static final String ON_CONFLICT =
+        " ON CONFLICT (endpoint_path, http_method) DO UPDATE SET " +
+        "  description = EXCLUDED.description, " +
+        "  parameters = EXCLUDED.parameters, " +
+        "  response_schema = EXCLUDED.response_schema, " +
+        "  code_examples = EXCLUDED.code_examples, " +
+        "  llm_model = EXCLUDED.llm_model, " +
+        "  token_count = EXCLUDED.token_count, " +
+        "  input_tokens = EXCLUDED.input_tokens, " +
+        "  cache_creation_input_tokens = EXCLUDED.cache_creation_input_tokens, " +
+        "  cache_read_input_tokens = EXCLUDED.cache_read_input_tokens, " +
+        "  updated_at = CURRENT_TIMESTAMP " +
+        "RETURNING id, generated_at, updated_at, " + COLUMNS;
+
+    /**
+     * Rows per statement; 11 parameters each keeps a statement well under the 65535
+     * parameters the wire protocol allows
+     */
+    static final int ROWS_PER_STATEMENT = 500;
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() { };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Create or replace the documentation for one endpoint
+     *
+     * @return the row as stored
+     */
+    public Doc upsert(Doc doc) {
+        return upsertAll(List.of(doc)).get(0);
+    }
+
+    /**
+     * Create or replace the documentation for several endpoints, one statement per
+     * ROWS_PER_STATEMENT rows. An endpoint must not be given twice: one statement cannot
+     * update the same row twice.
+     *
+     * @return the rows as stored, in no particular order
+     */
+    public List<Doc> upsertAll(List<Doc> docs) {
+        if (docs.isEmpty()) {
+            return List.of();
+        }
+
+        RowMapper<Doc> mapper = this::mapRow;
+        List<Doc> stored = new ArrayList<>(docs.size());
+        for (int from = 0; from < docs.size(); from += ROWS_PER_STATEMENT) {
+            List<Doc> chunk = docs.subList(from, Math.min(docs.size(), from + ROWS_PER_STATEMENT));
+            stored.addAll(jdbcTemplate.query(upsertSql(chunk.size()), mapper, args(chunk)));
+        }
+        return stored;
+    }
+
+    static String upsertSql(int rows) {
+        return "INSERT INTO documentation (" + COLUMNS + ") VALUES " +
+            String.join(", ", Collections.nCopies(rows, ROW_VALUES)) +
+            ON_CONFLICT;
+    }
+
+    private Object[] args(List<Doc> docs) {
+        List<Object> args = new ArrayList<>(docs.size() * 11);
+        for (Doc doc : docs) {
+            args.add(doc.getEndpointPath());
+            args.add(doc.getHttpMethod());
+            args.add(doc.getDescription());
+            args.add(toJson(doc.getParameters()));
+            args.add(toJson(doc.getResponseSchema()));
+            args.add(toJson(doc.getCodeExamples()));
+            args.add(doc.getLlmModel());
+            args.add(doc.getTokenCount());
+            args.add(doc.getInputTokens());
+            args.add(doc.getCacheCreationInputTokens());
+            args.add(doc.getCacheReadInputTokens());
+        }
+        return args.toArray();
+    }
+
+    private Doc mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Doc doc = new Doc();
+        doc.setId(rs.getObject("id", UUID.class));
+        doc.setEndpointPath(rs.getString("endpoint_path"));
+        doc.setHttpMethod(rs.getString("http_method"));
+        doc.setDescription(rs.getString("description"));
+        doc.setParameters(fromJson(rs.getString("parameters")));
+        doc.setResponseSchema(fromJson(rs.getString("response_schema")));
+        doc.setCodeExamples(fromJson(rs.getString("code_examples")));
+        doc.setLlmModel(rs.getString("llm_model"));
+        doc.setTokenCount(rs.getObject("token_count", Integer.class));
+        doc.setInputTokens(rs.getObject("input_tokens", Integer.class));
+        doc.setCacheCreationInputTokens(rs.getObject("cache_creation_input_tokens", Integer.class));
+        doc.setCacheReadInputTokens(rs.getObject("cache_read_input_tokens", Integer.class));
+        doc.setGeneratedAt(rs.getTimestamp("generated_at"));
+        doc.setUpdatedAt(rs.getTimestamp("updated_at"));
+        return doc;
+    }
+
+    private String toJson(Map<String, Object> value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Documentation is not serializable to JSON", e);
+        }
+    }
+
+    private Map<String, Object> fromJson(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, JSON_OBJECT);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored documentation is not a JSON object", e);
+        }
+    }
+}
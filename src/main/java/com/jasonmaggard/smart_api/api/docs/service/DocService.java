@@ -2,13 +2,18 @@ package com.jasonmaggard.smart_api.api.docs.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.jasonmaggard.smart_api.api.docs.entity.Doc;
 import com.jasonmaggard.smart_api.api.docs.repository.DocRepository;
+import com.jasonmaggard.smart_api.api.docs.repository.DocUpsertRepository;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -19,6 +24,7 @@ import java.util.UUID;
 public class DocService {
     
     private final DocRepository docRepository;
+    private final DocUpsertRepository docUpsertRepository;
     private final ObjectMapper objectMapper;
     
     @Transactional
@@ -51,6 +57,81 @@ public class DocService {
         return Objects.requireNonNull(savedDoc, "Failed to save documentation");
     }
     
+    /**
+     * Create or replace the documentation for an endpoint from a generation result, in one
+     * statement
+     */
+    @Transactional
+    public Doc saveGenerated(String path, String method, GeneratedDocumentation result) {
+        return docUpsertRepository.upsert(toDoc(path, method, result));
+    }
+    
+    /**
+     * Create or replace the documentation for several endpoints with multi-row upserts in
+     * one transaction. An endpoint given twice keeps its last result.
+     *
+     * @return the saved documentation, in the order the endpoints were first given
+     */
+    @Transactional
+    public List<Doc> saveAllGenerated(List<Generated> generated) {
+        if (generated.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Doc> byEndpoint = new LinkedHashMap<>();
+        for (Generated entry : generated) {
+            byEndpoint.put(endpointKey(entry.path(), entry.method()), toDoc(entry.path(), entry.method(), entry.result()));
+        }
+
+        for (Doc doc : docUpsertRepository.upsertAll(new ArrayList<>(byEndpoint.values()))) {
+            byEndpoint.put(endpointKey(doc.getEndpointPath(), doc.getHttpMethod()), doc);
+        }
+        return new ArrayList<>(byEndpoint.values());
+    }
+    
+    /**
+     * Whether saveGenerated created the documentation rather than replacing it: a replaced
+     * row keeps the time it was first generated
+     */
+    public static boolean isNew(Doc saved) {
+        return saved.getGeneratedAt().equals(saved.getUpdatedAt());
+    }
+    
+    private Doc toDoc(String path, String method, GeneratedDocumentation result) {
+        Doc doc = new Doc();
+        updateDocFromPayload(doc, toPayload(path, method, result));
+        return doc;
+    }
+
+    private static String endpointKey(String path, String method) {
+        return method.toUpperCase() + " " + path;
+    }
+
+    /**
+     * A generation result for one endpoint, to be saved with others
+     */
+    public record Generated(String path, String method, GeneratedDocumentation result) {
+    }
+
+    /**
+     * Payload for create or update holding a generation result
+     */
+    public ObjectNode toPayload(String path, String method, GeneratedDocumentation result) {
+        ObjectNode payload = objectMapper.createObjectNode();
+        payload.put("endpoint_path", path);
+        payload.put("http_method", method);
+        payload.put("description", result.getDescription());
+        payload.set("parameters", objectMapper.valueToTree(result.getParameters()));
+        payload.putNull("response_schema");
+        payload.set("code_examples", objectMapper.valueToTree(result.getExamples()));
+        payload.put("llm_model", result.getModel());
+        payload.put("token_count", result.getTokenCount());
+        payload.put("input_tokens", result.getInputTokens());
+        payload.put("cache_creation_input_tokens", result.getCacheCreationInputTokens());
+        payload.put("cache_read_input_tokens", result.getCacheReadInputTokens());
+        return payload;
+    }
+    
     private void updateDocFromPayload(Doc doc, JsonNode payload) {
         if (payload.has("endpoint_path") && payload.get("endpoint_path").isTextual()) {
             doc.setEndpointPath(payload.get("endpoint_path").asText());
@@ -92,6 +173,18 @@ public class DocService {
         if (payload.has("token_count") && payload.get("token_count").isNumber()) {
             doc.setTokenCount(payload.get("token_count").asInt());
         }
+        
+        if (payload.has("input_tokens") && payload.get("input_tokens").isNumber()) {
+            doc.setInputTokens(payload.get("input_tokens").asInt());
+        }
+        
+        if (payload.has("cache_creation_input_tokens") && payload.get("cache_creation_input_tokens").isNumber()) {
+            doc.setCacheCreationInputTokens(payload.get("cache_creation_input_tokens").asInt());
+        }
+        
+        if (payload.has("cache_read_input_tokens") && payload.get("cache_read_input_tokens").isNumber()) {
+            doc.setCacheReadInputTokens(payload.get("cache_read_input_tokens").asInt());
+        }
     }
     
     private Map<String, Object> jsonNodeToMap(JsonNode node) {
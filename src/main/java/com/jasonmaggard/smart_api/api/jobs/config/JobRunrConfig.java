@@ -2,31 +2,50 @@ package com.jasonmaggard.smart_api.api.jobs.config;
 
 import org.jobrunr.configuration.JobRunr;
 import org.jobrunr.jobs.mappers.JobMapper;
+import org.jobrunr.server.configuration.BackgroundJobServerThreadType;
+import org.jobrunr.server.configuration.DefaultBackgroundJobServerWorkerPolicy;
 import org.jobrunr.storage.StorageProvider;
 import org.jobrunr.storage.sql.common.SqlStorageProviderFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.sql.DataSource;
 
+import static org.jobrunr.server.BackgroundJobServerConfiguration.usingStandardBackgroundJobServerConfiguration;
+
 @Configuration
 public class JobRunrConfig {
     
     @Bean
-    public StorageProvider storageProvider(DataSource dataSource) {
-        return SqlStorageProviderFactory.using(dataSource);
+    public StorageProvider storageProvider(DataSource dataSource, JobMapper jobMapper) {
+        StorageProvider storageProvider = SqlStorageProviderFactory.using(dataSource);
+        // Services register their recurring jobs from @PostConstruct, which can run before
+        // initJobRunr hands the provider its mapper
+        storageProvider.setJobMapper(jobMapper);
+        return storageProvider;
     }
     
     @Bean
     public org.jobrunr.configuration.JobRunrConfiguration.JobRunrConfigurationResult initJobRunr(
             StorageProvider storageProvider, 
             ApplicationContext applicationContext,
-            JobMapper jobMapper) {
+            JobMapper jobMapper,
+            @Value("${org.jobrunr.background-job-server.worker-count:8}") int workerCount,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        // Workers spend nearly all their time blocked on the LLM and the database, which
+        // parks a virtual thread instead of holding a platform one
+        BackgroundJobServerThreadType threadType = virtualThreads
+                ? BackgroundJobServerThreadType.VirtualThreads
+                : BackgroundJobServerThreadType.PlatformThreads;
         return JobRunr.configure()
                 .useStorageProvider(storageProvider)
                 .useJobActivator(applicationContext::getBean)
-                .useBackgroundJobServer(2) // Limit to 2 concurrent workers to avoid API rate limits
+                // API calls are paced by the LLM rate limiter, so workers only bound how many
+                // jobs are under way at once
+                .useBackgroundJobServer(usingStandardBackgroundJobServerConfiguration()
+                        .andBackgroundJobServerWorkerPolicy(new DefaultBackgroundJobServerWorkerPolicy(workerCount, threadType)))
                 .initialize();
     }
 }
@@ -0,0 +1,38 @@
+package com.jasonmaggard.smart_api.api.jobs.service;
+
+import com.jasonmaggard.smart_api.api.docs.service.DocService;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.service.LLMBatchService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jobrunr.jobs.annotations.Job;
+import org.jobrunr.scheduling.JobScheduler;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentationBatchJobService {
+    
+    private static final String RECURRING_JOB_ID = "documentation-batch-poll";
+    
+    private final LLMBatchService batchService;
+    private final DocService docService;
+    private final LLMConfig llmConfig;
+    private final JobScheduler jobScheduler;
+    
+    @PostConstruct
+    public void schedulePolling() {
+        String cron = llmConfig.getBatch().getPollCron();
+        jobScheduler.<DocumentationBatchJobService>scheduleRecurrently(
+            RECURRING_JOB_ID, cron, job -> job.pollBatches());
+        log.info("Scheduled documentation batch polling job ({})", cron);
+    }
+    
+    @Job(name = "Poll documentation batches", retries = 0)
+    public void pollBatches() {
+        batchService.completeEndedBatches((request, result) ->
+            docService.saveGenerated(request.endpointPath(), request.httpMethod(), result));
+    }
+}
@@ -1,19 +1,22 @@
 package com.jasonmaggard.smart_api.api.jobs.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
 import com.jasonmaggard.smart_api.api.docs.entity.Doc;
 import com.jasonmaggard.smart_api.api.docs.service.DocService;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
 import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
 import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
 import com.jasonmaggard.smart_api.api.llm.service.LLMService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jobrunr.jobs.annotations.Job;
 import org.jobrunr.jobs.context.JobContext;
+import org.jobrunr.scheduling.JobScheduler;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -21,41 +24,53 @@ public class DocumentationJobService {
     
     private final LLMService llmService;
     private final DocService docService;
-    private final ObjectMapper objectMapper;
+    private final JobScheduler jobScheduler;
+    private final LLMConfig llmConfig;
     
     @Job(name = "Generate Documentation: %0 %1", retries = 3)
     public void generateDocumentation(String method, String path, EndpointMetadata metadata, JobContext jobContext) {
+        generateDocumentation(method, path, metadata, 0, jobContext);
+    }
+    
+    /**
+     * @param reschedules times this endpoint's generation has already been put off for a rate limit
+     */
+    @Job(name = "Generate Documentation: %0 %1", retries = 3)
+    public void generateDocumentation(String method, String path, EndpointMetadata metadata, int reschedules,
+                                      JobContext jobContext) {
         try {
             jobContext.logger().info(String.format("Starting documentation generation for %s %s", method, path));
             
             // Generate documentation using LLM
             GeneratedDocumentation result = llmService.generateDocumentation(metadata);
             
-            // Map result to Doc entity payload using JsonNode
-            ObjectNode payload = objectMapper.createObjectNode();
-            payload.put("endpoint_path", metadata.getFullPath());
-            payload.put("http_method", method);
-            payload.put("description", result.getDescription());
-            payload.set("parameters", objectMapper.valueToTree(result.getParameters()));
-            payload.putNull("response_schema");
-            payload.set("code_examples", objectMapper.valueToTree(result.getExamples()));
-            payload.put("llm_model", result.getModel());
-            payload.put("token_count", result.getTokenCount());
-            
             // Save or update documentation
-            Doc existing = docService.findByEndpoint(metadata.getFullPath(), method);
-            
-            if (existing != null) {
-                docService.update(existing.getId(), payload);
-                jobContext.logger().info(String.format("Updated documentation for %s %s", method, path));
-            } else {
-                docService.create(payload);
-                jobContext.logger().info(String.format("Created documentation for %s %s", method, path));
-            }
+            Doc doc = docService.saveGenerated(metadata.getFullPath(), method, result);
+            jobContext.logger().info(String.format("%s documentation for %s %s",
+                DocService.isNew(doc) ? "Created" : "Updated", method, path));
             
             jobContext.saveMetadata("status", "completed");
             jobContext.saveMetadata("endpoint", method + " " + path);
             
+        } catch (LLMRateLimitException e) {
+            // Interrupted while waiting for the limiter, or out of reschedules: fail like any
+            // other LLM error rather than putting the job off again
+            if (Thread.currentThread().isInterrupted() || e.getCause() instanceof InterruptedException
+                || reschedules >= llmConfig.getRateLimit().getMaxJobReschedules()) {
+                jobContext.logger().error(String.format("Rate limited, giving up after %d reschedules: %s",
+                    reschedules, e.getMessage()));
+                jobContext.saveMetadata("error", "RATE_LIMITED: " + e.getMessage());
+                throw e;
+            }
+            // Not a failure of this job: run it again once the limit allows instead of
+            // spending a retry that JobRunr would schedule without regard to retry-after
+            Instant retryAt = Instant.now().plus(e.getRetryAfter());
+            int attempt = reschedules + 1;
+            jobScheduler.<DocumentationJobService>schedule(retryAt,
+                job -> job.generateDocumentation(method, path, metadata, attempt, null));
+            jobContext.logger().warn(String.format("Rate limited, rescheduled for %s (%d of %d): %s",
+                retryAt, attempt, llmConfig.getRateLimit().getMaxJobReschedules(), e.getMessage()));
+            jobContext.saveMetadata("status", "rescheduled");
         } catch (LLMException e) {
             jobContext.logger().error(String.format("LLM error generating documentation: %s", e.getMessage()));
             jobContext.saveMetadata("error", "LLM_ERROR: " + e.getMessage());
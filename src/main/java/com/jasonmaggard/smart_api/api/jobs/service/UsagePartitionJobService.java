@@ -0,0 +1,34 @@
+package com.jasonmaggard.smart_api.api.jobs.service;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsagePartitionConfig;
+import com.jasonmaggard.smart_api.api.usage.service.UsagePartitionService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jobrunr.jobs.annotations.Job;
+import org.jobrunr.scheduling.JobScheduler;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UsagePartitionJobService {
+    
+    private static final String RECURRING_JOB_ID = "usage-partition-rotation";
+    
+    private final UsagePartitionService partitionService;
+    private final UsagePartitionConfig partitionConfig;
+    private final JobScheduler jobScheduler;
+    
+    @PostConstruct
+    public void schedulePartitionRotation() {
+        jobScheduler.<UsagePartitionJobService>scheduleRecurrently(
+            RECURRING_JOB_ID, partitionConfig.getCron(), job -> job.rotatePartitions());
+        log.info("Scheduled usage log partition rotation job ({})", partitionConfig.getCron());
+    }
+    
+    @Job(name = "Rotate API usage log partitions", retries = 2)
+    public void rotatePartitions() {
+        partitionService.rotate();
+    }
+}
@@ -0,0 +1,34 @@
+package com.jasonmaggard.smart_api.api.jobs.service;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageRollupConfig;
+import com.jasonmaggard.smart_api.api.usage.service.UsageRollupService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jobrunr.jobs.annotations.Job;
+import org.jobrunr.scheduling.JobScheduler;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UsageRollupJobService {
+    
+    private static final String RECURRING_JOB_ID = "usage-rollup";
+    
+    private final UsageRollupService rollupService;
+    private final UsageRollupConfig rollupConfig;
+    private final JobScheduler jobScheduler;
+    
+    @PostConstruct
+    public void scheduleRollup() {
+        jobScheduler.<UsageRollupJobService>scheduleRecurrently(
+            RECURRING_JOB_ID, rollupConfig.getCron(), job -> job.rollUpUsage());
+        log.info("Scheduled usage rollup job ({})", rollupConfig.getCron());
+    }
+    
+    @Job(name = "Roll up API usage logs", retries = 0)
+    public void rollUpUsage() {
+        rollupService.rollUp();
+    }
+}
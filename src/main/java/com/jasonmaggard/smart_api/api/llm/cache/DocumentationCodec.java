@@ -0,0 +1,181 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Redis value serializer that stores GeneratedDocumentation compactly: JSON bound to the
+ * class, so no type metadata is written for it or its nested maps, null fields left out,
+ * and deflated once it passes a size threshold.
+ *
+ * Compact values start with a header:
+ * <pre>
+ * magic (1) | header version (1) | format (1) | compression (1) | [original length (4)] | body
+ * </pre>
+ * The original length is only present when compressed. Anything without the magic byte,
+ * which no JSON document starts with, is read with the previous serializer, as is
+ * everything other than documentation (pub/sub messages, lock tokens). Nodes can therefore
+ * be upgraded with compact writes switched off and have them switched on once every node
+ * reads them.
+ */
+public class DocumentationCodec implements RedisSerializer<Object> {
+
+    static final byte MAGIC = (byte) 0xD7;
+    static final byte HEADER_VERSION = 1;
+    static final byte FORMAT_JSON = 1;
+    static final byte COMPRESSION_NONE = 0;
+    static final byte COMPRESSION_DEFLATE = 1;
+
+    private static final int HEADER_BYTES = 4;
+    private static final int LENGTH_BYTES = 4;
+    // Refuse to inflate anything claiming to be larger than this
+    private static final int MAX_DOCUMENT_BYTES = 16 * 1024 * 1024;
+
+    private final RedisSerializer<Object> fallback = new GenericJackson2JsonRedisSerializer();
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final boolean compactWrites;
+    private final int compressionThreshold;
+    private final int compressionLevel;
+
+    public DocumentationCodec(DocCacheConfig.Codec settings) {
+        ObjectMapper mapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.writer = mapper.writerFor(GeneratedDocumentation.class);
+        this.reader = mapper.readerFor(GeneratedDocumentation.class);
+        this.compactWrites = settings.getCompactWrites();
+        this.compressionThreshold = settings.getCompressionThresholdBytes();
+        this.compressionLevel = settings.getCompressionLevel();
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (!compactWrites || !(value instanceof GeneratedDocumentation documentation)) {
+            return fallback.serialize(value);
+        }
+
+        byte[] json;
+        try {
+            json = writer.writeValueAsBytes(documentation);
+        } catch (IOException e) {
+            throw new SerializationException("Could not encode documentation", e);
+        }
+
+        if (json.length >= compressionThreshold) {
+            byte[] deflated = deflate(json);
+            // Not worth it for bodies that barely shrink
+            if (deflated.length + LENGTH_BYTES < json.length) {
+                return ByteBuffer.allocate(HEADER_BYTES + LENGTH_BYTES + deflated.length)
+                    .put(MAGIC).put(HEADER_VERSION).put(FORMAT_JSON).put(COMPRESSION_DEFLATE)
+                    .putInt(json.length)
+                    .put(deflated)
+                    .array();
+            }
+        }
+        return ByteBuffer.allocate(HEADER_BYTES + json.length)
+            .put(MAGIC).put(HEADER_VERSION).put(FORMAT_JSON).put(COMPRESSION_NONE)
+            .put(json)
+            .array();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return fallback.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_BYTES) {
+            throw new SerializationException("Truncated documentation header");
+        }
+        if (bytes[1] != HEADER_VERSION) {
+            throw new SerializationException("Unsupported documentation header version " + bytes[1]);
+        }
+        if (bytes[2] != FORMAT_JSON) {
+            throw new SerializationException("Unsupported documentation format " + bytes[2]);
+        }
+
+        try {
+            return switch (bytes[3]) {
+                case COMPRESSION_NONE -> reader.readValue(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+                case COMPRESSION_DEFLATE -> {
+                    byte[] json = inflate(bytes);
+                    yield reader.readValue(json);
+                }
+                default -> throw new SerializationException("Unsupported documentation compression " + bytes[3]);
+            };
+        } catch (IOException e) {
+            throw new SerializationException("Could not decode documentation", e);
+        }
+    }
+
+    private byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            // Deflate's worst case is a few bytes per 16KB block over the input size
+            byte[] output = new byte[input.length + input.length / 1000 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+            return Arrays.copyOf(output, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        if (bytes.length < HEADER_BYTES + LENGTH_BYTES) {
+            throw new SerializationException("Truncated compressed documentation");
+        }
+        int length = ByteBuffer.wrap(bytes, HEADER_BYTES, LENGTH_BYTES).getInt();
+        if (length < 0 || length > MAX_DOCUMENT_BYTES) {
+            throw new SerializationException("Compressed documentation claims " + length + " bytes");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            int offset = HEADER_BYTES + LENGTH_BYTES;
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] output = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = inflater.inflate(output, read, length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length || !inflater.finished()) {
+                throw new SerializationException("Compressed documentation is corrupt");
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new SerializationException("Compressed documentation is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Approximate access counts for cache admission (the TinyLFU sketch).
+ *
+ * A count-min sketch of four rows of small saturating counters, eight counters per row
+ * for every entry the cache holds so that the one-off keys streaming through do not fill
+ * them up. Estimates can only be too high, never too low, and cost a few array reads.
+ * Once the number of increments reaches ten times the entry count every counter is
+ * halved, so the counts describe recent popularity rather than all-time totals.
+ * Not thread-safe; callers hold the cache lock.
+ */
+class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+        0x97cb3127L, 0xc2b2ae3dL, 0x85ebca6bL, 0x27d4eb2fL
+    };
+
+    private static final int COUNTERS_PER_ENTRY = 8;
+    private static final int MAX_ENTRIES = 1 << 18;
+
+    private byte[][] table;
+    private int capacity;
+    private int mask;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch() {
+        resize(16);
+    }
+
+    /**
+     * Size the sketch for at least the given number of entries (rounded up to a power of
+     * two, at most 2^18). The cache holds a varying number of entries under its byte
+     * limit, so it grows the sketch to match as entries arrive. The estimates of the
+     * resident keys are carried over; everything else starts again from zero.
+     */
+    void ensureCapacity(int entries, Collection<?> residentKeys) {
+        if (entries <= capacity || capacity >= MAX_ENTRIES) {
+            return;
+        }
+        Map<Object, Integer> carried = new HashMap<>(residentKeys.size() * 2);
+        for (Object key : residentKeys) {
+            carried.put(key, frequency(key));
+        }
+        resize(entries);
+        carried.forEach((key, frequency) -> {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < ROWS; row++) {
+                int index = indexOf(hash, row);
+                table[row][index] = (byte) Math.max(table[row][index], frequency);
+            }
+        });
+    }
+
+    private void resize(int entries) {
+        capacity = Integer.highestOneBit((Math.min(Math.max(16, entries), MAX_ENTRIES) - 1) << 1);
+        int width = capacity * COUNTERS_PER_ENTRY;
+        table = new byte[ROWS][width];
+        mask = width - 1;
+        sampleSize = 10 * capacity;
+        additions = 0;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = indexOf(hash, row);
+            if (table[row][index] < MAX_COUNT) {
+                table[row][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,331 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded in-process cache tier, weighed in bytes, with W-TinyLFU eviction.
+ *
+ * New entries go into a small LRU admission window. When the window overflows, its oldest
+ * entry is a candidate for the main LRU space and is only admitted if the frequency sketch
+ * says it is used more often than the entries it would push out. One-off lookups (a bulk
+ * run, a crawler) therefore cycle through the window without flushing the popular
+ * documentation from the main space.
+ *
+ * Reads are a lock-free map lookup. Recording the access for the eviction policy takes a
+ * tryLock and is skipped under contention; writes and removals take the lock. Expired
+ * entries read as misses and are removed by {@link #expire()}, which the owner runs on a
+ * schedule.
+ */
+public class NearCache<V> {
+
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long expireAfterWriteNanos;
+    private final ToIntFunction<V> weigher;
+    private final LongSupplier ticker;
+
+    private final Map<String, Node<V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Node<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long windowWeight;
+    private long mainWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedWeight = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+
+    /**
+     * @param maxWeight   total serialized bytes held
+     * @param windowRatio share of maxWeight given to the admission window
+     * @param weigher     size of a value in bytes
+     */
+    public NearCache(long maxWeight, double windowRatio, Duration expireAfterWrite, ToIntFunction<V> weigher) {
+        this(maxWeight, windowRatio, expireAfterWrite, weigher, System::nanoTime);
+    }
+
+    NearCache(long maxWeight, double windowRatio, Duration expireAfterWrite, ToIntFunction<V> weigher,
+              LongSupplier ticker) {
+        if (maxWeight <= 0 || windowRatio < 0 || windowRatio >= 1) {
+            throw new IllegalArgumentException("maxWeight must be positive and windowRatio in [0, 1)");
+        }
+        this.maxWeight = maxWeight;
+        this.windowMaxWeight = (long) (maxWeight * windowRatio);
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+        this.weigher = weigher;
+        this.ticker = ticker;
+    }
+
+    public V get(String key) {
+        Node<V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            recordAccess(key, null);
+            return null;
+        }
+        if (isExpired(node, ticker.getAsLong())) {
+            misses.increment();
+            lock.lock();
+            try {
+                if (data.get(key) == node) {
+                    unlink(node);
+                    expirations.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+        hits.increment();
+        recordAccess(key, node);
+        return node.value;
+    }
+
+    public void put(String key, V value) {
+        int weight = weigher.applyAsInt(value);
+        Node<V> node = new Node<>(key, value, weight, ticker.getAsLong());
+
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Node<V> existing = data.get(key);
+            if (weight > maxWeight - windowMaxWeight) {
+                // Could never be admitted to the main space; drop any older copy as well
+                if (existing != null) {
+                    unlink(existing);
+                }
+                rejections.increment();
+                return;
+            }
+
+            data.put(key, node);
+            sketch.ensureCapacity(data.size(), data.keySet());
+            if (existing != null && !existing.inWindow) {
+                main.put(key, node);
+                mainWeight += weight - existing.weight;
+            } else {
+                if (existing != null) {
+                    windowWeight -= existing.weight;
+                }
+                node.inWindow = true;
+                window.put(key, node);
+                windowWeight += weight;
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        lock.lock();
+        try {
+            Node<V> node = data.get(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            data.clear();
+            window.clear();
+            main.clear();
+            windowWeight = 0;
+            mainWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove every expired entry and return how many there were
+     */
+    public int expire() {
+        long now = ticker.getAsLong();
+        lock.lock();
+        try {
+            List<Node<V>> expired = new ArrayList<>();
+            for (Node<V> node : window.values()) {
+                if (isExpired(node, now)) {
+                    expired.add(node);
+                }
+            }
+            for (Node<V> node : main.values()) {
+                if (isExpired(node, now)) {
+                    expired.add(node);
+                }
+            }
+            expired.forEach(this::unlink);
+            expirations.add(expired.size());
+            return expired.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the time spent fetching a value from the tier behind this one
+     */
+    public void recordLoad(long nanos) {
+        loads.increment();
+        loadTimeNanos.add(nanos);
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public Stats stats() {
+        long weight;
+        lock.lock();
+        try {
+            weight = windowWeight + mainWeight;
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), evictedWeight.sum(), expirations.sum(),
+            rejections.sum(), loads.sum(), loadTimeNanos.sum(), data.size(), weight, maxWeight);
+    }
+
+    private void recordAccess(String key, Node<V> node) {
+        // The policy is a hint; losing an update under contention only costs accuracy
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(key);
+            if (node != null && data.get(key) == node) {
+                (node.inWindow ? window : main).get(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evict() {
+        long mainMaxWeight = maxWeight - windowMaxWeight;
+        while (windowWeight > windowMaxWeight) {
+            Node<V> candidate = window.values().iterator().next();
+            window.remove(candidate.key);
+            windowWeight -= candidate.weight;
+            admit(candidate, mainMaxWeight);
+        }
+        // A replaced entry may have grown past the space left in main
+        while (mainWeight > mainMaxWeight) {
+            Node<V> victim = main.values().iterator().next();
+            main.remove(victim.key);
+            mainWeight -= victim.weight;
+            evicted(victim);
+        }
+    }
+
+    /**
+     * Move a window candidate into main if it is used more often than every entry that
+     * would have to leave to make room, otherwise evict the candidate.
+     */
+    private void admit(Node<V> candidate, long mainMaxWeight) {
+        int candidateFrequency = sketch.frequency(candidate.key);
+        List<Node<V>> victims = new ArrayList<>();
+        long freed = 0;
+        var coldest = main.values().iterator();
+        while (mainWeight - freed + candidate.weight > mainMaxWeight) {
+            Node<V> victim = coldest.next();
+            if (sketch.frequency(victim.key) >= candidateFrequency) {
+                evicted(candidate);
+                return;
+            }
+            victims.add(victim);
+            freed += victim.weight;
+        }
+
+        for (Node<V> victim : victims) {
+            main.remove(victim.key);
+            mainWeight -= victim.weight;
+            evicted(victim);
+        }
+        candidate.inWindow = false;
+        main.put(candidate.key, candidate);
+        mainWeight += candidate.weight;
+    }
+
+    private void evicted(Node<V> node) {
+        data.remove(node.key, node);
+        evictions.increment();
+        evictedWeight.add(node.weight);
+    }
+
+    private void unlink(Node<V> node) {
+        if (node.inWindow) {
+            window.remove(node.key);
+            windowWeight -= node.weight;
+        } else {
+            main.remove(node.key);
+            mainWeight -= node.weight;
+        }
+        data.remove(node.key, node);
+    }
+
+    private boolean isExpired(Node<V> node, long now) {
+        return now - node.writeTime > expireAfterWriteNanos;
+    }
+
+    private static final class Node<V> {
+        final String key;
+        final V value;
+        final int weight;
+        final long writeTime;
+        // Guarded by the cache lock
+        boolean inWindow;
+
+        Node(String key, V value, int weight, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = writeTime;
+        }
+    }
+
+    public record Stats(
+        long hits,
+        long misses,
+        long evictions,
+        long evictedWeight,
+        long expirations,
+        long rejections,
+        long loads,
+        long loadTimeNanos,
+        long size,
+        long weight,
+        long maxWeight
+    ) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests;
+        }
+
+        public double averageLoadTimeMs() {
+            return loads == 0 ? 0.0 : loadTimeNanos / 1_000_000.0 / loads;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Decides whether the cache should try Redis at all.
+ *
+ * CLOSED lets every call through and counts consecutive connection failures; reaching the
+ * threshold opens the circuit. OPEN skips Redis until the backoff has passed, then lets a
+ * single probe through (HALF_OPEN). A successful probe closes the circuit; a failed one
+ * opens it again with the backoff multiplied, up to the maximum. If a probe never reports
+ * back, another is allowed once its deadline passes.
+ *
+ * All state lives in one immutable snapshot swapped with compare-and-set, so callers on
+ * any thread see a consistent state and exactly one of them wins each transition.
+ */
+@Slf4j
+public class RedisCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * @param deadline   OPEN: when a probe may be sent; HALF_OPEN: when a silent probe is given up on
+     * @param degradedAt when the circuit last left CLOSED
+     */
+    private record Snapshot(State state, int failures, long deadline, long backoffMs, long degradedAt) {
+    }
+
+    private static final Snapshot CLOSED = new Snapshot(State.CLOSED, 0, 0, 0, 0);
+
+    // How Lettuce words commands it rejects or fails because the connection is down
+    private static final String[] CONNECTION_LOST_MESSAGES = {
+        "Currently not connected", "Connection closed", "Connection is closed", "Connection disconnected"
+    };
+
+    private final DocCacheConfig.CircuitBreaker settings;
+    private final LongSupplier clock;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(CLOSED);
+
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder degradedMs = new LongAdder();
+
+    public RedisCircuitBreaker(DocCacheConfig.CircuitBreaker settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    RedisCircuitBreaker(DocCacheConfig.CircuitBreaker settings, LongSupplier clock) {
+        this.settings = settings;
+        this.clock = clock;
+    }
+
+    /**
+     * Run a Redis call unless the circuit is open, and record how it went. Returns the
+     * fallback when skipped or when the call fails; only connection failures and timeouts
+     * count against the circuit, other errors still show that Redis answered.
+     *
+     * @param action what the call was doing, for the log
+     */
+    public <T> T call(String action, Supplier<T> call, T fallback) {
+        if (!allowRequest()) {
+            return fallback;
+        }
+        try {
+            T result = call.get();
+            onSuccess();
+            return result;
+        } catch (Exception e) {
+            if (isConnectionFailure(e)) {
+                onFailure();
+                log.warn("Redis unavailable while {}: {}", action, e.getMessage());
+            } else {
+                onSuccess();
+                log.error("Redis error while {}: {}", action, e.getMessage());
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * Lost or refused connections and timeouts, including commands Lettuce rejects while
+     * reconnecting. Errors Redis replied with, such as WRONGTYPE or a failing script, arrive
+     * as RedisSystemException too but say nothing about reachability and don't count.
+     */
+    public static boolean isConnectionFailure(Throwable e) {
+        if (e instanceof DataAccessResourceFailureException || e instanceof QueryTimeoutException) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException
+                || cause instanceof RedisConnectionException) {
+                return true;
+            }
+            if (cause instanceof RedisException && cause.getMessage() != null) {
+                for (String message : CONNECTION_LOST_MESSAGES) {
+                    if (cause.getMessage().startsWith(message)) {
+                        return true;
+                    }
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether to call Redis now. A true return must be followed by onSuccess or onFailure.
+     */
+    public boolean allowRequest() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.state() == State.CLOSED) {
+                return true;
+            }
+            long now = clock.getAsLong();
+            if (now < current.deadline()) {
+                shortCircuited.increment();
+                return false;
+            }
+            // Backoff over (OPEN) or the last probe went silent (HALF_OPEN): send a probe
+            Snapshot probing = new Snapshot(State.HALF_OPEN, current.failures(),
+                now + current.backoffMs(), current.backoffMs(), current.degradedAt());
+            if (snapshot.compareAndSet(current, probing)) {
+                probes.increment();
+                log.info("Probing Redis after {} ms", current.backoffMs());
+                return true;
+            }
+        }
+    }
+
+    public void onSuccess() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current == CLOSED || current.state() == State.OPEN) {
+                // Nothing to reset, or a call from before the circuit opened
+                return;
+            }
+            if (snapshot.compareAndSet(current, CLOSED)) {
+                if (current.state() == State.HALF_OPEN) {
+                    long degraded = clock.getAsLong() - current.degradedAt();
+                    degradedMs.add(degraded);
+                    closed.increment();
+                    log.info("Redis reachable again, circuit closed after {} ms on memory only", degraded);
+                }
+                return;
+            }
+        }
+    }
+
+    public void onFailure() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            long now = clock.getAsLong();
+            Snapshot next;
+            switch (current.state()) {
+                case CLOSED -> {
+                    int failures = current.failures() + 1;
+                    next = failures < settings.getFailureThreshold()
+                        ? new Snapshot(State.CLOSED, failures, 0, 0, 0)
+                        : new Snapshot(State.OPEN, failures, now + settings.getOpenMs(), settings.getOpenMs(), now);
+                }
+                case HALF_OPEN -> {
+                    long backoff = Math.min(settings.getMaxOpenMs(),
+                        (long) (current.backoffMs() * settings.getBackoffMultiplier()));
+                    next = new Snapshot(State.OPEN, current.failures() + 1, now + backoff, backoff, current.degradedAt());
+                }
+                default -> {
+                    // Already open; a call that started before the circuit opened
+                    return;
+                }
+            }
+            if (snapshot.compareAndSet(current, next)) {
+                if (next.state() == State.OPEN) {
+                    opened.increment();
+                    log.warn("Redis circuit opened after {} consecutive failures, retrying in {} ms",
+                        next.failures(), next.backoffMs());
+                }
+                return;
+            }
+        }
+    }
+
+    public State state() {
+        return snapshot.get().state();
+    }
+
+    public Stats stats() {
+        Snapshot current = snapshot.get();
+        long degraded = degradedMs.sum();
+        if (current.state() != State.CLOSED) {
+            degraded += clock.getAsLong() - current.degradedAt();
+        }
+        return new Stats(current.state(), current.failures(), current.backoffMs(),
+            opened.sum(), probes.sum(), closed.sum(), shortCircuited.sum(), degraded);
+    }
+
+    /**
+     * @param opened         transitions into OPEN, including failed probes
+     * @param probes         transitions into HALF_OPEN
+     * @param closed         recoveries back to CLOSED
+     * @param shortCircuited calls that skipped Redis because the circuit was open
+     * @param degradedMs     total time spent outside CLOSED, including the current spell
+     */
+    public record Stats(
+        State state,
+        int consecutiveFailures,
+        long backoffMs,
+        long opened,
+        long probes,
+        long closed,
+        long shortCircuited,
+        long degradedMs
+    ) {
+    }
+}
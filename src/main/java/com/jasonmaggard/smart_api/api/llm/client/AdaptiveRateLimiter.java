@@ -0,0 +1,365 @@
+package com.jasonmaggard.smart_api.api.llm.client;
+
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Admits Messages API calls within the budget the API reports back, so the number of
+ * callers (job workers, web requests) can grow without each one finding the limit by
+ * hitting it.
+ *
+ * Three things gate a call:
+ * <ul>
+ *   <li>a concurrency limit that grows by roughly one for every limit's worth of successful
+ *   calls and is cut by a factor when the API answers 429 or 529 (AIMD). A signal only cuts
+ *   it once: calls sent before the last cut do not cut it again;</li>
+ *   <li>a request bucket sized from the anthropic-ratelimit-requests-* headers, refilled at
+ *   the per-minute limit and reset to the remaining count each response reports;</li>
+ *   <li>a pause until retry-after on a 429, or until the reset time of a token budget the
+ *   headers report as spent.</li>
+ * </ul>
+ * While any reported budget is nearly spent the limit stops growing. Callers that cannot
+ * be admitted wait, up to a timeout.
+ */
+@Slf4j
+public class AdaptiveRateLimiter {
+
+    static final String RETRY_AFTER = "retry-after";
+    static final String RETRY_AFTER_MS = "retry-after-ms";
+    private static final String HEADER_PREFIX = "anthropic-ratelimit-";
+    // Token budgets that pause every call once spent; requests have the bucket
+    private static final String[] TOKEN_BUDGETS = {"tokens", "input-tokens", "output-tokens"};
+    private static final double MINUTE_MS = 60_000.0;
+
+    private final boolean enabled;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double additiveIncrease;
+    private final double decreaseFactor;
+    private final double reserveFraction;
+    private final long defaultRetryAfterMs;
+    private final long acquireTimeoutMs;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Guarded by lock
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long pausedUntil;
+    private long lastDecreaseAt = Long.MIN_VALUE;
+    private boolean budgetLow;
+    // Request bucket; unknown until a response reports the requests budget
+    private double bucketCapacity = -1;
+    private double bucketTokens;
+    private long bucketUpdatedAt;
+    private long admitted;
+    private long rateLimited;
+    private long overloaded;
+    private long decreases;
+    private long timedOut;
+    private long waitedMs;
+
+    public AdaptiveRateLimiter(LLMConfig.RateLimit settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    AdaptiveRateLimiter(LLMConfig.RateLimit settings, LongSupplier clock) {
+        this.enabled = settings.getEnabled();
+        this.minLimit = settings.getMinConcurrency();
+        this.maxLimit = settings.getMaxConcurrency();
+        this.additiveIncrease = settings.getAdditiveIncrease();
+        this.decreaseFactor = settings.getDecreaseFactor();
+        this.reserveFraction = settings.getReserveFraction();
+        this.defaultRetryAfterMs = settings.getDefaultRetryAfterMs();
+        this.acquireTimeoutMs = settings.getAcquireTimeoutMs();
+        this.clock = clock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, settings.getInitialConcurrency()));
+    }
+
+    /**
+     * A slot for one call; closing it frees the slot
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Wait until a call may go to the API. The returned permit must be closed once the
+     * call, including reading a streamed response, is over.
+     *
+     * @throws LLMRateLimitException if no slot frees up within the acquire timeout
+     */
+    public Permit acquire() {
+        if (!enabled) {
+            return () -> { };
+        }
+        long start = clock.getAsLong();
+        long deadline = start + acquireTimeoutMs;
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                while (true) {
+                    long now = clock.getAsLong();
+                    long waitMs = admit(now);
+                    if (waitMs == 0) {
+                        waitedMs += now - start;
+                        return newPermit();
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        timedOut++;
+                        throw new LLMRateLimitException("Timed out after " + acquireTimeoutMs
+                            + " ms waiting for the API rate limit", Duration.ofMillis(retryAfterMs(now)));
+                    }
+                    changed.await(Math.min(waitMs, remaining), TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                waiting--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LLMRateLimitException("Interrupted waiting for the API rate limit", Duration.ZERO, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a slot if one is free right now; null otherwise
+     */
+    Permit tryAcquire() {
+        lock.lock();
+        try {
+            return admit(clock.getAsLong()) == 0 ? newPermit() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admit the caller and return 0, or return how long to wait before trying again
+     */
+    private long admit(long now) {
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        if (inFlight >= (int) limit) {
+            // Until a call finishes; the wait is a backstop against a lost signal
+            return 1_000;
+        }
+        if (bucketCapacity > 0) {
+            refill(now);
+            if (bucketTokens < 1) {
+                return Math.max(1, (long) Math.ceil((1 - bucketTokens) * MINUTE_MS / bucketCapacity));
+            }
+            bucketTokens--;
+        }
+        inFlight++;
+        admitted++;
+        return 0;
+    }
+
+    private Permit newPermit() {
+        AtomicBoolean open = new AtomicBoolean(true);
+        return () -> {
+            if (open.compareAndSet(true, false)) {
+                release();
+            }
+        };
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - bucketUpdatedAt;
+        if (elapsed > 0) {
+            bucketTokens = Math.min(bucketCapacity, bucketTokens + elapsed * bucketCapacity / MINUTE_MS);
+            bucketUpdatedAt = now;
+        }
+    }
+
+    /**
+     * Adjust to one Messages API response
+     *
+     * @param sentAt when the request was sent, by this limiter's clock
+     * @param status HTTP status of the response
+     * @param headers response header lookup, null when absent
+     */
+    public void onResponse(long sentAt, int status, Function<String, String> headers) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            readBudgets(now, headers);
+
+            if (status == 429 || status == 529) {
+                if (status == 429) {
+                    rateLimited++;
+                    long retryAfter = parseRetryAfter(headers, now);
+                    pausedUntil = Math.max(pausedUntil, now + (retryAfter >= 0 ? retryAfter : defaultRetryAfterMs));
+                } else {
+                    overloaded++;
+                }
+                if (sentAt >= lastDecreaseAt) {
+                    limit = Math.max(minLimit, limit * decreaseFactor);
+                    lastDecreaseAt = now;
+                    decreases++;
+                    log.warn("API answered {}; concurrency limit cut to {}", status, (int) limit);
+                }
+            } else if (status >= 200 && status < 300 && !budgetLow && inFlight >= (int) limit) {
+                // Only grow a limit that is actually holding calls back
+                limit = Math.min(maxLimit, limit + additiveIncrease / limit);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void readBudgets(long now, Function<String, String> headers) {
+        budgetLow = false;
+
+        long requestsLimit = parseLong(headers.apply(HEADER_PREFIX + "requests-limit"));
+        long requestsRemaining = parseLong(headers.apply(HEADER_PREFIX + "requests-remaining"));
+        if (requestsLimit > 0 && requestsRemaining >= 0) {
+            bucketCapacity = requestsLimit;
+            bucketTokens = requestsRemaining;
+            bucketUpdatedAt = now;
+            budgetLow = requestsRemaining < requestsLimit * reserveFraction;
+        }
+
+        for (String budget : TOKEN_BUDGETS) {
+            long budgetLimit = parseLong(headers.apply(HEADER_PREFIX + budget + "-limit"));
+            long remaining = parseLong(headers.apply(HEADER_PREFIX + budget + "-remaining"));
+            if (budgetLimit <= 0 || remaining < 0) {
+                continue;
+            }
+            budgetLow |= remaining < budgetLimit * reserveFraction;
+            if (remaining == 0) {
+                long reset = parseInstant(headers.apply(HEADER_PREFIX + budget + "-reset"));
+                pausedUntil = Math.max(pausedUntil, reset > now ? reset : now + defaultRetryAfterMs);
+            }
+        }
+    }
+
+    /**
+     * Milliseconds the response asks callers to wait, or -1 when it does not say
+     */
+    static long parseRetryAfter(Function<String, String> headers, long now) {
+        long millis = parseLong(headers.apply(RETRY_AFTER_MS));
+        if (millis >= 0) {
+            return millis;
+        }
+        String value = headers.apply(RETRY_AFTER);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.round(Double.parseDouble(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                long at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Math.max(0, at - now);
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseInstant(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Instant.parse(value.trim()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * How long until calls are admitted again. Never zero: when neither a pause nor the
+     * request bucket holds calls back (every slot is taken, or the limiter is off) there is
+     * nothing better to go by than the default retry-after.
+     */
+    public Duration retryAfter() {
+        lock.lock();
+        try {
+            return Duration.ofMillis(retryAfterMs(clock.getAsLong()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long retryAfterMs(long now) {
+        long wait = Math.max(0, pausedUntil - now);
+        if (bucketCapacity > 0) {
+            refill(now);
+            if (bucketTokens < 1) {
+                wait = Math.max(wait, (long) Math.ceil((1 - bucketTokens) * MINUTE_MS / bucketCapacity));
+            }
+        }
+        return wait > 0 ? wait : defaultRetryAfterMs;
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            return new Stats(enabled, limit, inFlight, waiting, Math.max(0, pausedUntil - now), budgetLow,
+                bucketCapacity > 0 ? (long) bucketTokens : -1,
+                admitted, rateLimited, overloaded, decreases, timedOut,
+                admitted == 0 ? 0 : (double) waitedMs / admitted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param requestsAvailable calls the request bucket would admit now; -1 until the API
+     *                          has reported its request budget
+     */
+    public record Stats(boolean enabled, double limit, int inFlight, int waiting, long pausedForMs,
+                        boolean budgetLow, long requestsAvailable, long admitted, long rateLimited,
+                        long overloaded, long decreases, long timedOut, double averageWaitMs) {
+    }
+}
@@ -0,0 +1,219 @@
+package com.jasonmaggard.smart_api.api.llm.client;
+
+import com.anthropic.backends.Backend;
+import com.anthropic.core.RequestOptions;
+import com.anthropic.core.Timeout;
+import com.anthropic.core.http.Headers;
+import com.anthropic.core.http.HttpClient;
+import com.anthropic.core.http.HttpMethod;
+import com.anthropic.core.http.HttpRequest;
+import com.anthropic.core.http.HttpRequestBody;
+import com.anthropic.core.http.HttpResponse;
+import com.anthropic.errors.AnthropicIoException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Anthropic SDK transport over an OkHttpClient we build ourselves.
+ *
+ * The SDK's own OkHttp transport creates a private connection pool and dispatcher per
+ * client and offers no way to size them. This adapter does the same request/response
+ * mapping (backend preparation, auth, per-call timeouts) on top of a caller-supplied
+ * client, so the pool and dispatcher are shared and tunable. Per-call timeouts derive a
+ * client with newBuilder(), which keeps the same pool and dispatcher.
+ */
+public class PooledOkHttpClient implements HttpClient {
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final OkHttpClient okHttpClient;
+    private final Backend backend;
+
+    public PooledOkHttpClient(OkHttpClient okHttpClient, Backend backend) {
+        this.okHttpClient = okHttpClient;
+        this.backend = backend;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request, RequestOptions requestOptions) {
+        HttpRequest prepared = prepare(request);
+        try {
+            return backend.prepareResponse(toResponse(newCall(prepared, requestOptions).execute()));
+        } catch (IOException e) {
+            throw new AnthropicIoException("Request failed", e);
+        } finally {
+            closeBody(prepared);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest request, RequestOptions requestOptions) {
+        HttpRequest prepared = prepare(request);
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        future.whenComplete((response, error) -> closeBody(prepared));
+
+        newCall(prepared, requestOptions).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    future.complete(backend.prepareResponse(toResponse(response)));
+                } catch (RuntimeException e) {
+                    response.close();
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(new AnthropicIoException("Request failed", e));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Stop the dispatcher's threads and close pooled connections
+     */
+    @Override
+    public void close() {
+        backend.close();
+        okHttpClient.dispatcher().executorService().shutdown();
+        okHttpClient.connectionPool().evictAll();
+    }
+
+    private HttpRequest prepare(HttpRequest request) {
+        HttpRequest prepared = backend.prepareRequest(request);
+        prepared = prepared.toBuilder().baseUrl(toUrl(prepared)).build();
+        return backend.authorizeRequest(prepared);
+    }
+
+    private Call newCall(HttpRequest request, RequestOptions requestOptions) {
+        OkHttpClient client = okHttpClient;
+        Timeout timeout = requestOptions.getTimeout();
+        if (timeout != null) {
+            client = okHttpClient.newBuilder()
+                .connectTimeout(timeout.connect())
+                .readTimeout(timeout.read())
+                .writeTimeout(timeout.write())
+                .callTimeout(timeout.request())
+                .build();
+        }
+        return client.newCall(toRequest(request, client));
+    }
+
+    private Request toRequest(HttpRequest request, OkHttpClient client) {
+        RequestBody body = request.body() != null ? toRequestBody(request.body()) : null;
+        if (body == null && requiresBody(request.method())) {
+            body = RequestBody.create(EMPTY_BODY);
+        }
+
+        Request.Builder builder = new Request.Builder()
+            .url(request.baseUrl())
+            .method(request.method().name(), body);
+        Headers headers = request.headers();
+        for (String name : headers.names()) {
+            for (String value : headers.values(name)) {
+                builder.addHeader(name, value);
+            }
+        }
+        // The SDK reports its timeouts to the API, as its own transport does
+        if (!headers.names().contains("X-Stainless-Read-Timeout") && client.readTimeoutMillis() != 0) {
+            builder.addHeader("X-Stainless-Read-Timeout", String.valueOf(client.readTimeoutMillis() / 1000));
+        }
+        if (!headers.names().contains("X-Stainless-Timeout") && client.callTimeoutMillis() != 0) {
+            builder.addHeader("X-Stainless-Timeout", String.valueOf(client.callTimeoutMillis() / 1000));
+        }
+        return builder.build();
+    }
+
+    private static boolean requiresBody(HttpMethod method) {
+        return method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH;
+    }
+
+    private String toUrl(HttpRequest request) {
+        String baseUrl = request.baseUrl() != null ? request.baseUrl() : backend.baseUrl();
+        HttpUrl.Builder url = HttpUrl.get(baseUrl).newBuilder();
+        for (String segment : request.pathSegments()) {
+            url.addPathSegment(segment);
+        }
+        for (String key : request.queryParams().keys()) {
+            for (String value : request.queryParams().values(key)) {
+                url.addQueryParameter(key, value);
+            }
+        }
+        return url.toString();
+    }
+
+    private static RequestBody toRequestBody(HttpRequestBody body) {
+        MediaType mediaType = body.contentType() != null ? MediaType.get(body.contentType()) : null;
+        long length = body.contentLength();
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public boolean isOneShot() {
+                return !body.repeatable();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) {
+                body.writeTo(sink.outputStream());
+            }
+        };
+    }
+
+    private static HttpResponse toResponse(Response response) {
+        Headers.Builder headers = Headers.builder();
+        for (int i = 0; i < response.headers().size(); i++) {
+            headers.put(response.headers().name(i), response.headers().value(i));
+        }
+        Headers converted = headers.build();
+
+        return new HttpResponse() {
+            @Override
+            public int statusCode() {
+                return response.code();
+            }
+
+            @Override
+            public Headers headers() {
+                return converted;
+            }
+
+            @Override
+            public InputStream body() {
+                return response.body().byteStream();
+            }
+
+            @Override
+            public void close() {
+                response.body().close();
+            }
+        };
+    }
+
+    private static void closeBody(HttpRequest request) {
+        if (request.body() != null) {
+            request.body().close();
+        }
+    }
+}
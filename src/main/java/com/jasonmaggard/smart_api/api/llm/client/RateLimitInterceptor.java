@@ -0,0 +1,48 @@
+package com.jasonmaggard.smart_api.api.llm.client;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Reports every Messages API response, retries made by the SDK included, to the rate
+ * limiter. Batch and other endpoints have budgets of their own and are left out.
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private final AdaptiveRateLimiter limiter;
+    private final LongSupplier clock;
+
+    public RateLimitInterceptor(AdaptiveRateLimiter limiter) {
+        this(limiter, System::currentTimeMillis);
+    }
+
+    RateLimitInterceptor(AdaptiveRateLimiter limiter, LongSupplier clock) {
+        this.limiter = limiter;
+        this.clock = clock;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!isMessagesCall(request)) {
+            return chain.proceed(request);
+        }
+        long sentAt = clock.getAsLong();
+        Response response = chain.proceed(request);
+        limiter.onResponse(sentAt, response.code(), response::header);
+        return response;
+    }
+
+    static boolean isMessagesCall(Request request) {
+        List<String> segments = request.url().pathSegments();
+        return "POST".equals(request.method())
+            && segments.size() >= 2
+            && "v1".equals(segments.get(segments.size() - 2))
+            && "messages".equals(segments.get(segments.size() - 1));
+    }
+}
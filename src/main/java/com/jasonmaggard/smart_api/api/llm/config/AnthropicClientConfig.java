@@ -0,0 +1,82 @@
+package com.jasonmaggard.smart_api.api.llm.config;
+
+import com.anthropic.backends.AnthropicBackend;
+import com.anthropic.client.AnthropicClient;
+import com.anthropic.client.AnthropicClientImpl;
+import com.anthropic.core.ClientOptions;
+import com.anthropic.core.Timeout;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
+import com.jasonmaggard.smart_api.api.llm.client.PooledOkHttpClient;
+import com.jasonmaggard.smart_api.api.llm.client.RateLimitInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@Slf4j
+public class AnthropicClientConfig {
+
+    /**
+     * Paces Messages API calls; LLMService takes a permit per call and the client reports
+     * every response back to it
+     */
+    @Bean
+    public AdaptiveRateLimiter llmRateLimiter(LLMConfig llmConfig) {
+        return new AdaptiveRateLimiter(llmConfig.getRateLimit());
+    }
+
+    /**
+     * The one Anthropic client the application uses. Its connection pool and dispatcher
+     * live as long as the context, so calls reuse warm (HTTP/2 over TLS) connections
+     * instead of paying a new handshake and thread pool each time.
+     */
+    @Bean(destroyMethod = "close")
+    public AnthropicClient anthropicClient(LLMConfig llmConfig, AdaptiveRateLimiter rateLimiter) {
+        LLMConfig.Http http = llmConfig.getHttp();
+        Timeout timeout = Timeout.builder()
+            .connect(Duration.ofMillis(http.getConnectTimeoutMs()))
+            .read(Duration.ofMillis(http.getReadTimeoutMs()))
+            .write(Duration.ofMillis(http.getWriteTimeoutMs()))
+            .request(Duration.ofMillis(http.getRequestTimeoutMs()))
+            .build();
+
+        AnthropicBackend.Builder backend = AnthropicBackend.builder().apiKey(llmConfig.getApiKey());
+        if (llmConfig.getBaseUrl() != null && !llmConfig.getBaseUrl().isBlank()) {
+            backend.baseUrl(llmConfig.getBaseUrl());
+        }
+
+        ClientOptions options = ClientOptions.builder()
+            .httpClient(new PooledOkHttpClient(okHttpClient(http, timeout, rateLimiter), backend.build()))
+            .timeout(timeout)
+            .maxRetries(llmConfig.getMaxRetries())
+            .build();
+
+        log.info("Anthropic client: pool {} idle / {} ms keep-alive, dispatcher {} requests ({} per host)",
+            http.getMaxIdleConnections(), http.getKeepAliveMs(), http.getMaxRequests(), http.getMaxRequestsPerHost());
+        return new AnthropicClientImpl(options);
+    }
+
+    static OkHttpClient okHttpClient(LLMConfig.Http http, Timeout timeout, AdaptiveRateLimiter rateLimiter) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(http.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(http.getMaxRequestsPerHost());
+
+        return new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(http.getMaxIdleConnections(), http.getKeepAliveMs(), TimeUnit.MILLISECONDS))
+            .dispatcher(dispatcher)
+            .addInterceptor(new RateLimitInterceptor(rateLimiter))
+            .connectTimeout(timeout.connect())
+            .readTimeout(timeout.read())
+            .writeTimeout(timeout.write())
+            .callTimeout(timeout.request())
+            // Keeps idle HTTP/2 connections alive through NATs and load balancers
+            .pingInterval(Duration.ofMinutes(1))
+            .build();
+    }
+}
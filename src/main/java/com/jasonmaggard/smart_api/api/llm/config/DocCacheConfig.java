@@ -0,0 +1,101 @@
+package com.jasonmaggard.smart_api.api.llm.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "docs.cache")
+@Data
+public class DocCacheConfig {
+
+    private Memory memory = new Memory();
+
+    /**
+     * Redis pub/sub channel on which nodes tell each other to drop in-memory entries
+     */
+    private String invalidationChannel = "docs-cache-invalidation";
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private Codec codec = new Codec();
+
+    /**
+     * How documentation is encoded in Redis
+     */
+    @Data
+    public static class Codec {
+
+        /**
+         * Write the compact encoding; when off, values are written as before. Either way both
+         * encodings are read, so turn this on once every node runs a version that reads it.
+         * Off by default so a rolling upgrade never writes entries older nodes can't read.
+         */
+        private Boolean compactWrites = false;
+
+        /**
+         * Encoded size from which documentation is deflated
+         */
+        private Integer compressionThresholdBytes = 1024;
+
+        /**
+         * Deflate level, 1 (fastest) to 9 (smallest)
+         */
+        private Integer compressionLevel = 1;
+    }
+
+    /**
+     * When to stop calling Redis after connection failures and how often to probe it again
+     */
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * Consecutive connection failures before Redis is skipped
+         */
+        private Integer failureThreshold = 3;
+
+        /**
+         * How long Redis is skipped before the first probe
+         */
+        private Long openMs = 1_000L;
+
+        /**
+         * Longest wait between probes while Redis stays down
+         */
+        private Long maxOpenMs = 60_000L;
+
+        /**
+         * Factor the wait grows by after each failed probe
+         */
+        private Double backoffMultiplier = 2.0;
+    }
+
+    /**
+     * Settings for the in-process tier in front of Redis
+     */
+    @Data
+    public static class Memory {
+
+        /**
+         * Most bytes of serialized documentation held in memory
+         */
+        private Long maxWeightBytes = 64L * 1024 * 1024;
+
+        /**
+         * Share of the memory given to the admission window for newly cached entries;
+         * the rest only admits entries used more often than the ones they replace
+         */
+        private Double windowRatio = 0.01;
+
+        /**
+         * How long an entry lives after it is written
+         */
+        private Long expireAfterWriteMs = 24L * 60 * 60 * 1000;
+
+        /**
+         * How often expired entries are swept out
+         */
+        private Long expiryIntervalMs = 60_000L;
+    }
+}
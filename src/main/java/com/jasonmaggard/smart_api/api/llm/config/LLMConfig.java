@@ -8,9 +8,187 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "anthropic")
 @Data
 public class LLMConfig {
-    
+
     private String apiKey;
     private String model = "claude-3-5-sonnet-20241022";
     private Integer maxTokens = 4096;
     private Double temperature = 0.7;
+
+    /**
+     * API base URL; leave unset for the public Anthropic API
+     */
+    private String baseUrl;
+
+    /**
+     * Retries the SDK makes on connection errors, 408/409/429 and 5xx responses
+     */
+    private Integer maxRetries = 2;
+
+    private Http http = new Http();
+
+    private Batch batch = new Batch();
+
+    private Coalescing coalescing = new Coalescing();
+
+    private RateLimit rateLimit = new RateLimit();
+
+    private SyncGeneration syncGeneration = new SyncGeneration();
+
+    /**
+     * Settings for the single HTTP client shared by every LLM call
+     */
+    @Data
+    public static class Http {
+
+        /**
+         * Idle connections kept open for reuse. Over TLS the client negotiates HTTP/2,
+         * so one connection per host already carries every concurrent call.
+         */
+        private Integer maxIdleConnections = 5;
+
+        /**
+         * How long an idle connection stays in the pool before it is closed
+         */
+        private Long keepAliveMs = 300_000L;
+
+        /**
+         * Calls in flight at once across all hosts
+         */
+        private Integer maxRequests = 64;
+
+        /**
+         * Calls in flight at once to the API host
+         */
+        private Integer maxRequestsPerHost = 16;
+
+        private Long connectTimeoutMs = 10_000L;
+
+        /**
+         * Longest gap between bytes of a response; generation can pause a while before
+         * the first byte arrives
+         */
+        private Long readTimeoutMs = 120_000L;
+
+        private Long writeTimeoutMs = 30_000L;
+
+        /**
+         * Upper bound on a whole call, including reading the body
+         */
+        private Long requestTimeoutMs = 300_000L;
+    }
+
+    /**
+     * Settings for bulk generation through the Message Batches API
+     */
+    @Data
+    public static class Batch {
+
+        /**
+         * Cron expression for the recurring job that checks submitted batches and writes
+         * finished results to documentation
+         */
+        private String pollCron = "*/5 * * * *";
+
+        /**
+         * Most requests put in one batch; larger submissions are rejected
+         */
+        private Integer maxRequests = 10_000;
+    }
+
+    /**
+     * Settings for sharing one generation between concurrent cache misses on the same endpoint
+     */
+    @Data
+    public static class Coalescing {
+
+        /**
+         * How long the Redis lease on a key lasts; should cover a slow generation so a
+         * second node does not start while the first is still working
+         */
+        private Long leaseMs = 120_000L;
+
+        /**
+         * Longest a node waits for another node's result before generating itself
+         */
+        private Long waitTimeoutMs = 150_000L;
+
+        /**
+         * How often a waiting node checks the cache for the other node's result
+         */
+        private Long pollIntervalMs = 250L;
+    }
+
+    /**
+     * Settings for pacing Messages API calls to the rate limits the API reports
+     */
+    @Data
+    public static class RateLimit {
+
+        /**
+         * When off, calls go out as soon as they are made
+         */
+        private Boolean enabled = true;
+
+        /**
+         * Calls allowed in flight before any response has been seen
+         */
+        private Integer initialConcurrency = 4;
+
+        private Integer minConcurrency = 1;
+
+        /**
+         * Ceiling the limit grows to while responses succeed; no use above http.max-requests-per-host
+         */
+        private Integer maxConcurrency = 16;
+
+        /**
+         * How much the limit grows for each limit's worth of successful calls
+         */
+        private Double additiveIncrease = 1.0;
+
+        /**
+         * Factor the limit is cut by when the API answers 429 or 529
+         */
+        private Double decreaseFactor = 0.5;
+
+        /**
+         * Share of a reported budget under which the limit stops growing
+         */
+        private Double reserveFraction = 0.1;
+
+        /**
+         * Pause after a 429 that carries no retry-after header, and the retry-after reported
+         * when no pause applies, e.g. after waiting out the acquire timeout on a full limiter
+         */
+        private Long defaultRetryAfterMs = 5_000L;
+
+        /**
+         * Longest a caller waits to be admitted before failing with a rate limit error
+         */
+        private Long acquireTimeoutMs = 120_000L;
+
+        /**
+         * Times a documentation job is put off for a rate limit before it fails instead
+         */
+        private Integer maxJobReschedules = 10;
+    }
+
+    /**
+     * Settings for generating several endpoints' documentation within one request
+     */
+    @Data
+    public static class SyncGeneration {
+
+        /**
+         * Endpoints generated at once when the request does not ask for fewer; the rate
+         * limiter still decides how many calls actually go out
+         */
+        private Integer maxConcurrency = 8;
+
+        /**
+         * Longest one endpoint is waited on, from when its generation starts, before it is
+         * reported as timed out
+         */
+        private Long endpointTimeoutMs = 180_000L;
+    }
 }
@@ -1,16 +1,28 @@
 package com.jasonmaggard.smart_api.api.llm.config;
 
+import com.jasonmaggard.smart_api.api.llm.cache.DocumentationCodec;
+import com.jasonmaggard.smart_api.api.llm.service.LLMCacheService;
+import io.lettuce.core.ClientOptions;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @EnableCaching
 public class RedisConfig {
@@ -24,6 +36,9 @@ public class RedisConfig {
     @Value("${REDIS_PASSWORD:}")
     private String redisPassword;
     
+    @Value("${REDIS_TIMEOUT_MS:2000}")
+    private long redisTimeoutMs;
+    
     @Bean
     public RedisConnectionFactory redisConnectionFactory() {
         RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
@@ -36,11 +51,22 @@ public class RedisConfig {
             config.setPassword(redisPassword);
         }
         
-        return new LettuceConnectionFactory(config);
+        // Lettuce reconnects in the background; reject commands meanwhile instead of
+        // queueing them, so callers fail fast and the cache's circuit breaker can open
+        LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
+            .commandTimeout(Duration.ofMillis(redisTimeoutMs))
+            .clientOptions(ClientOptions.builder()
+                .autoReconnect(true)
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .build())
+            .build();
+        
+        return new LettuceConnectionFactory(config, clientConfig);
     }
     
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory,
+                                                       DocCacheConfig cacheConfig) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
         
@@ -48,12 +74,67 @@ public class RedisConfig {
         template.setKeySerializer(new StringRedisSerializer());
         template.setHashKeySerializer(new StringRedisSerializer());
         
-        // Use JSON serializer for values
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
-        template.setValueSerializer(serializer);
-        template.setHashValueSerializer(serializer);
+        // Documentation is stored compactly; other values, and entries written before the
+        // compact encoding, use the JSON serializer
+        template.setValueSerializer(new DocumentationCodec(cacheConfig.getCodec()));
+        template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
         
         template.afterPropertiesSet();
         return template;
     }
+    
+    /**
+     * Delivers cache invalidations published by other nodes. The container resubscribes
+     * on its own after Redis comes back, and keeps trying if Redis is down at startup.
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       LLMCacheService cacheService,
+                                                                       DocCacheConfig cacheConfig) {
+        RedisMessageListenerContainer container = new SubscribeWhenAvailableContainer(cacheConfig.getCircuitBreaker());
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheService, new ChannelTopic(cacheConfig.getInvalidationChannel()));
+        return container;
+    }
+    
+    /**
+     * A listener container whose first subscription may fail without failing startup, so
+     * the application comes up serving the cache from memory while Redis is down. The
+     * start is retried in the background with the circuit breaker's backoff.
+     */
+    @Slf4j
+    static class SubscribeWhenAvailableContainer extends RedisMessageListenerContainer {
+        
+        private final DocCacheConfig.CircuitBreaker backoff;
+        private volatile boolean destroyed;
+        private long retryMs;
+        
+        SubscribeWhenAvailableContainer(DocCacheConfig.CircuitBreaker backoff) {
+            this.backoff = backoff;
+            this.retryMs = backoff.getOpenMs();
+        }
+        
+        @Override
+        public void start() {
+            try {
+                super.start();
+                retryMs = backoff.getOpenMs();
+            } catch (DataAccessException | IllegalStateException e) {
+                super.stop();
+                log.warn("Could not subscribe to cache invalidations, retrying in {} ms: {}", retryMs, e.getMessage());
+                CompletableFuture.delayedExecutor(retryMs, TimeUnit.MILLISECONDS).execute(() -> {
+                    if (!destroyed) {
+                        start();
+                    }
+                });
+                retryMs = Math.min(backoff.getMaxOpenMs(), (long) (retryMs * backoff.getBackoffMultiplier()));
+            }
+        }
+        
+        @Override
+        public void destroy() throws Exception {
+            destroyed = true;
+            super.destroy();
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package com.jasonmaggard.smart_api.api.llm.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocBatchDto {
+    private String id;
+    private String status;
+    private Integer requestCount;
+    private Integer succeededCount;
+    private Integer failedCount;
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+}
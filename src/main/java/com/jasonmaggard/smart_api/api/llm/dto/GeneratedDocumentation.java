@@ -18,5 +18,10 @@ public class GeneratedDocumentation implements Serializable {
     private Map<String, Object> parameters;
     private Map<String, Object> examples;
     private String model;
+    /** Output tokens */
     private Integer tokenCount;
+    /** Input tokens processed normally, excluding those written to or read from the prompt cache */
+    private Integer inputTokens;
+    private Integer cacheCreationInputTokens;
+    private Integer cacheReadInputTokens;
 }
@@ -0,0 +1,26 @@
+package com.jasonmaggard.smart_api.api.llm.exception;
+
+import java.time.Duration;
+
+/**
+ * The API's rate limit kept a call from being made or from succeeding. Unlike other
+ * failures, trying again is expected to work once the retry-after delay has passed.
+ */
+public class LLMRateLimitException extends LLMException {
+    
+    private final Duration retryAfter;
+    
+    public LLMRateLimitException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+    
+    public LLMRateLimitException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,88 @@
+package com.jasonmaggard.smart_api.api.llm.repository;
+
+import com.jasonmaggard.smart_api.api.llm.dto.DocBatchDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Tracks submitted documentation Message Batches and which endpoint each request in
+ * them documents
+ */
+@Repository
+@RequiredArgsConstructor
+public class DocBatchRepository {
+
+    public static final String SUBMITTED = "SUBMITTED";
+    public static final String COMPLETED = "COMPLETED";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** One request of a batch, the endpoint it documents and the cache key of its result */
+    public record BatchRequest(String customId, String endpointPath, String httpMethod, String cacheKey) {
+    }
+
+    @Transactional
+    public void insert(String batchId, List<BatchRequest> requests) {
+        jdbcTemplate.update(
+            "INSERT INTO documentation_batches (id, status, request_count) VALUES (?, ?, ?)",
+            batchId, SUBMITTED, requests.size());
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO documentation_batch_requests (batch_id, custom_id, endpoint_path, http_method, cache_key) " +
+            "VALUES (?, ?, ?, ?, ?)",
+            requests, 1000, (ps, request) -> {
+                ps.setString(1, batchId);
+                ps.setString(2, request.customId());
+                ps.setString(3, request.endpointPath());
+                ps.setString(4, request.httpMethod());
+                ps.setString(5, request.cacheKey());
+            });
+    }
+
+    /**
+     * Batches whose results have not been written yet, oldest first
+     */
+    public List<String> findSubmittedIds() {
+        return jdbcTemplate.queryForList(
+            "SELECT id FROM documentation_batches WHERE status = ? ORDER BY submitted_at", String.class, SUBMITTED);
+    }
+
+    public List<BatchRequest> findRequests(String batchId) {
+        return jdbcTemplate.query(
+            "SELECT custom_id, endpoint_path, http_method, cache_key FROM documentation_batch_requests WHERE batch_id = ?",
+            (rs, rowNum) -> new BatchRequest(
+                rs.getString("custom_id"), rs.getString("endpoint_path"), rs.getString("http_method"),
+                rs.getString("cache_key")),
+            batchId);
+    }
+
+    public DocBatchDto findById(String batchId) {
+        List<DocBatchDto> batches = jdbcTemplate.query(
+            "SELECT id, status, request_count, succeeded_count, failed_count, submitted_at, completed_at " +
+            "FROM documentation_batches WHERE id = ?",
+            (rs, rowNum) -> {
+                Timestamp completedAt = rs.getTimestamp("completed_at");
+                return new DocBatchDto(
+                    rs.getString("id"),
+                    rs.getString("status"),
+                    rs.getInt("request_count"),
+                    (Integer) rs.getObject("succeeded_count"),
+                    (Integer) rs.getObject("failed_count"),
+                    rs.getTimestamp("submitted_at").toLocalDateTime(),
+                    completedAt != null ? completedAt.toLocalDateTime() : null);
+            },
+            batchId);
+        return batches.isEmpty() ? null : batches.get(0);
+    }
+
+    public void markCompleted(String batchId, int succeeded, int failed) {
+        jdbcTemplate.update(
+            "UPDATE documentation_batches SET status = ?, succeeded_count = ?, failed_count = ?, " +
+            "completed_at = CURRENT_TIMESTAMP WHERE id = ?",
+            COMPLETED, succeeded, failed, batchId);
+    }
+}
@@ -0,0 +1,127 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Generates documentation for several endpoints at once, one thread per endpoint, and
+ * reports each endpoint's outcome, bounding how many are generated at once and how long
+ * each is waited on. With virtual threads on (spring.threads.virtual.enabled) each
+ * endpoint costs a virtual thread that is parked while it waits on the rate limiter or
+ * the API.
+ */
+@Service
+@Slf4j
+public class DocumentationFanOut {
+
+    private final LLMService llmService;
+    private final ThreadFactory threadFactory;
+
+    public DocumentationFanOut(LLMService llmService,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.llmService = llmService;
+        this.threadFactory = virtualThreads
+            ? Thread.ofVirtual().name("docs-fan-out-", 0).factory()
+            : Thread.ofPlatform().name("docs-fan-out-", 0).daemon(true).factory();
+    }
+
+    /**
+     * Documentation for every endpoint it could be generated for, in the order given, with
+     * at most maxConcurrency generations running at once. An endpoint's failure, rate limit
+     * or timeout is reported in its outcome and does not affect the others.
+     *
+     * An endpoint that times out is not interrupted: its generation finishes in the
+     * background and lands in the cache, so asking again later is cheap.
+     */
+    public List<Outcome> generateEach(List<EndpointMetadata> endpoints, int maxConcurrency, Duration timeout) {
+        if (endpoints.isEmpty()) {
+            return List.of();
+        }
+
+        Semaphore slots = new Semaphore(maxConcurrency);
+        ExecutorService scope = Executors.newThreadPerTaskExecutor(threadFactory);
+        try {
+            List<Future<Outcome>> forks = new ArrayList<>(endpoints.size());
+            for (EndpointMetadata endpoint : endpoints) {
+                forks.add(scope.submit(() -> generateWithin(scope, slots, endpoint, timeout)));
+            }
+
+            List<Outcome> outcomes = new ArrayList<>(forks.size());
+            for (Future<Outcome> fork : forks) {
+                outcomes.add(fork.get());
+            }
+            return outcomes;
+        } catch (ExecutionException e) {
+            throw new LLMException("Failed to generate documentation: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            scope.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new LLMException("Interrupted generating documentation", e);
+        } finally {
+            // Leaves generations that timed out running to completion
+            scope.shutdown();
+        }
+    }
+
+    private Outcome generateWithin(ExecutorService scope, Semaphore slots, EndpointMetadata endpoint,
+                                   Duration timeout) throws InterruptedException {
+        slots.acquire();
+        long start = System.nanoTime();
+        CompletableFuture<GeneratedDocumentation> call;
+        try {
+            call = CompletableFuture.supplyAsync(() -> llmService.generateDocumentation(endpoint), scope);
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        // The slot is held until the generation ends, not just until we stop waiting on it,
+        // so generations that timed out still count against maxConcurrency
+        call.whenComplete((documentation, failure) -> slots.release());
+        try {
+            GeneratedDocumentation documentation = call.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return new Outcome(endpoint, Status.GENERATED, documentation, null, null, elapsedMs(start));
+        } catch (TimeoutException e) {
+            log.warn("Documentation for {} {} not ready after {} ms", endpoint.getMethod(), endpoint.getFullPath(), timeout.toMillis());
+            return new Outcome(endpoint, Status.TIMED_OUT, null,
+                "Not generated within " + timeout.toMillis() + " ms", null, elapsedMs(start));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LLMRateLimitException rateLimited) {
+                return new Outcome(endpoint, Status.RATE_LIMITED, null, rateLimited.getMessage(),
+                    rateLimited.getRetryAfter(), elapsedMs(start));
+            }
+            return new Outcome(endpoint, Status.FAILED, null, e.getCause().getMessage(), null, elapsedMs(start));
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public enum Status { GENERATED, FAILED, RATE_LIMITED, TIMED_OUT }
+
+    /**
+     * What happened to one endpoint; documentation is only set when it was generated, error
+     * only when it was not, and retryAfter only when it was rate limited
+     */
+    public record Outcome(EndpointMetadata endpoint, Status status, GeneratedDocumentation documentation,
+                          String error, Duration retryAfter, long elapsedMs) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.anthropic.client.AnthropicClient;
+import com.anthropic.core.http.StreamResponse;
+import com.anthropic.models.messages.Message;
+import com.anthropic.models.messages.batches.BatchCreateParams;
+import com.anthropic.models.messages.batches.MessageBatch;
+import com.anthropic.models.messages.batches.MessageBatchIndividualResponse;
+import com.anthropic.models.messages.batches.MessageBatchResult;
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.DocBatchDto;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import com.jasonmaggard.smart_api.api.llm.repository.DocBatchRepository;
+import com.jasonmaggard.smart_api.api.llm.repository.DocBatchRepository.BatchRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk documentation generation through the Message Batches API.
+ *
+ * All prompts go out as one batch, billed at the batch discount and processed by the API
+ * in the background instead of one synchronous call per endpoint on our job workers.
+ * Submitted batches are recorded in documentation_batches; the recurring poll job calls
+ * completeEndedBatches, which streams results of finished batches back to the caller.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LLMBatchService {
+
+    private final LLMConfig llmConfig;
+    private final LLMService llmService;
+    private final LLMCacheService cacheService;
+    private final AnthropicClient anthropicClient;
+    private final DocBatchRepository batchRepository;
+
+    /**
+     * Submit one batch generating documentation for every given endpoint and return its id
+     */
+    public String submit(List<EndpointMetadata> endpoints) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No endpoints to submit");
+        }
+        if (endpoints.size() > llmConfig.getBatch().getMaxRequests()) {
+            throw new IllegalArgumentException(
+                "Batch of " + endpoints.size() + " exceeds the limit of " + llmConfig.getBatch().getMaxRequests());
+        }
+
+        BatchCreateParams.Builder params = BatchCreateParams.builder();
+        List<BatchRequest> requests = new ArrayList<>(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            EndpointMetadata endpoint = endpoints.get(i);
+            // custom_id is limited to 64 characters, so endpoints are mapped back through the table
+            String customId = "doc-" + i;
+            params.addRequest(BatchCreateParams.Request.builder()
+                .customId(customId)
+                .params(BatchCreateParams.Request.Params.builder()
+                    .model(llmConfig.getModel())
+                    .maxTokens((long) llmConfig.getMaxTokens())
+                    .temperature(llmConfig.getTemperature())
+                    .systemOfTextBlockParams(LLMService.SYSTEM_BLOCKS)
+                    .addUserMessage(llmService.buildPrompt(endpoint))
+                    .build())
+                .build());
+            requests.add(new BatchRequest(customId, endpoint.getFullPath(), endpoint.getMethod().toUpperCase(),
+                cacheService.generateCacheKey(endpoint)));
+        }
+
+        MessageBatch batch;
+        try {
+            batch = anthropicClient.messages().batches().create(params.build());
+        } catch (Exception e) {
+            throw new LLMException("Failed to submit documentation batch: " + e.getMessage(), e);
+        }
+        batchRepository.insert(batch.id(), requests);
+
+        log.info("Submitted documentation batch {} with {} requests", batch.id(), requests.size());
+        return batch.id();
+    }
+
+    public DocBatchDto getBatch(String batchId) {
+        return batchRepository.findById(batchId);
+    }
+
+    /**
+     * Check every submitted batch. For each one that has ended, stream its results, hand
+     * each successful one to onResult and mark the batch completed. Batches still
+     * processing are left for the next poll. Returns the number of batches completed.
+     */
+    public int completeEndedBatches(BiConsumer<BatchRequest, GeneratedDocumentation> onResult) {
+        int completed = 0;
+        for (String batchId : batchRepository.findSubmittedIds()) {
+            try {
+                MessageBatch batch = anthropicClient.messages().batches().retrieve(batchId);
+                if (!MessageBatch.ProcessingStatus.ENDED.equals(batch.processingStatus())) {
+                    log.debug("Documentation batch {} still processing ({} left)",
+                        batchId, batch.requestCounts().processing());
+                    continue;
+                }
+                completeBatch(batchId, onResult);
+                completed++;
+            } catch (Exception e) {
+                // One bad batch must not hold up the others; it is retried on the next poll
+                log.error("Failed to complete documentation batch {}: {}", batchId, e.getMessage(), e);
+            }
+        }
+        return completed;
+    }
+
+    private void completeBatch(String batchId, BiConsumer<BatchRequest, GeneratedDocumentation> onResult) {
+        Map<String, BatchRequest> requests = batchRepository.findRequests(batchId).stream()
+            .collect(Collectors.toMap(BatchRequest::customId, Function.identity()));
+
+        int succeeded = 0;
+        int failed = 0;
+        try (StreamResponse<MessageBatchIndividualResponse> results =
+                 anthropicClient.messages().batches().resultsStreaming(batchId)) {
+            Iterator<MessageBatchIndividualResponse> responses = results.stream().iterator();
+            while (responses.hasNext()) {
+                MessageBatchIndividualResponse response = responses.next();
+                BatchRequest request = requests.get(response.customId());
+                if (request == null) {
+                    log.warn("Documentation batch {} returned unknown custom_id {}", batchId, response.customId());
+                    continue;
+                }
+                GeneratedDocumentation result = toDocumentation(batchId, request, response.result());
+                if (result == null) {
+                    failed++;
+                    continue;
+                }
+                // Submitted before cache keys were recorded; stored below but not cached
+                if (request.cacheKey() != null) {
+                    cacheService.put(request.cacheKey(), result);
+                }
+                onResult.accept(request, result);
+                succeeded++;
+            }
+        }
+
+        batchRepository.markCompleted(batchId, succeeded, failed);
+        log.info("Completed documentation batch {}: {} succeeded, {} failed", batchId, succeeded, failed);
+    }
+
+    private GeneratedDocumentation toDocumentation(String batchId, BatchRequest request, MessageBatchResult result) {
+        if (!result.isSucceeded()) {
+            String reason = result.errored()
+                .map(errored -> errored.error().toString())
+                .orElse(result.isExpired() ? "expired" : "canceled");
+            log.warn("Batch {} request for {} {} did not succeed: {}",
+                batchId, request.httpMethod(), request.endpointPath(), reason);
+            return null;
+        }
+
+        Message message = result.asSucceeded().message();
+        try {
+            GeneratedDocumentation documentation = llmService.parseResponse(llmService.extractTextContent(message));
+            documentation.setModel(llmConfig.getModel());
+            LLMService.recordUsage(documentation, message.usage());
+            return documentation;
+        } catch (LLMException e) {
+            log.warn("Batch {} returned unparseable documentation for {} {}: {}",
+                batchId, request.httpMethod(), request.endpointPath(), e.getMessage());
+            return null;
+        }
+    }
+}
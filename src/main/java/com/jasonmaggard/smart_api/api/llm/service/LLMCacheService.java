@@ -1,140 +1,223 @@
 package com.jasonmaggard.smart_api.api.llm.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.cache.NearCache;
+import com.jasonmaggard.smart_api.api.llm.cache.RedisCircuitBreaker;
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
 import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
+/**
+ * Two-tier documentation cache: a bounded in-memory tier (L1) in front of Redis (L2).
+ *
+ * Reads try memory first and only go to Redis on a miss, copying what they find back into
+ * memory. Every write, invalidation and clear is published on a Redis channel so the other
+ * nodes drop their in-memory copies and re-read from Redis. Messages missed while the
+ * subscription was down cannot be replayed, so memory is cleared whenever it is
+ * re-established. While Redis is unavailable each node serves from its own memory; a
+ * circuit breaker stops calls to Redis after repeated connection failures and probes it
+ * with growing backoff until it answers again.
+ */
 @Service
 @Slf4j
-public class LLMCacheService {
+public class LLMCacheService implements MessageListener, SubscriptionListener {
     
     private final RedisTemplate<String, Object> redisTemplate;
+    private final DocCacheConfig cacheConfig;
+    private final LLMConfig llmConfig;
+    private final ObjectMapper objectMapper = new ObjectMapper();
     
-    // In-memory fallback cache
-    private final Map<String, CachedDocument> memoryCache = new ConcurrentHashMap<>();
+    // Bounded in-memory tier, also the fallback while Redis is down
+    private final NearCache<GeneratedDocumentation> memoryCache;
+    private ScheduledExecutorService expiryExecutor;
+    
+    // Identifies this node's messages on the invalidation channel
+    private final String nodeId = UUID.randomUUID().toString();
+    // Bumped by every invalidation, so a read racing one does not put back the old value
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LongAdder invalidationsPublished = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
     
     // Cache TTL: 24 hours
     @SuppressWarnings("null") // Duration.ofHours is guaranteed non-null
     @NonNull
     private static final Duration CACHE_TTL = Duration.ofHours(24);
     private static final String CACHE_KEY_PREFIX = "docs:";
+    // Part of every fingerprint; bump to abandon every cached entry at once
     private static final String CACHE_VERSION = "v1";
+    // Hex digits of the SHA-256 kept in keys; method and path are in the key as well
+    private static final int FINGERPRINT_LENGTH = 16;
+    private static final String CLEAR_ALL = "*";
+    
+    // Sorted set of cached keys scored by expiry time, so counting live entries is one
+    // ZCOUNT. Kept outside the docs: prefix so it is never mistaken for an entry.
+    private static final String INDEX_KEY = "docs-index:" + CACHE_VERSION;
+    // Keys asked for per SCAN call, and per UNLINK
+    private static final int SCAN_COUNT = 1000;
+    // UNLINK commands sent per pipelined round trip while clearing
+    private static final int UNLINKS_PER_PIPELINE = 10;
     
-    private boolean redisAvailable = true;
+    private final RedisCircuitBreaker circuitBreaker;
     
-    public LLMCacheService(RedisTemplate<String, Object> redisTemplate) {
+    public LLMCacheService(RedisTemplate<String, Object> redisTemplate, DocCacheConfig cacheConfig, LLMConfig llmConfig) {
         this.redisTemplate = redisTemplate;
+        this.cacheConfig = cacheConfig;
+        this.llmConfig = llmConfig;
+        this.circuitBreaker = new RedisCircuitBreaker(cacheConfig.getCircuitBreaker());
+        DocCacheConfig.Memory memory = cacheConfig.getMemory();
+        this.memoryCache = new NearCache<>(memory.getMaxWeightBytes(), memory.getWindowRatio(),
+            Duration.ofMillis(memory.getExpireAfterWriteMs()), this::weigh);
         testRedisConnection();
     }
     
+    @PostConstruct
+    public void startExpiry() {
+        long interval = cacheConfig.getMemory().getExpiryIntervalMs();
+        expiryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "doc-cache-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiryExecutor.scheduleWithFixedDelay(this::expireEntries, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stopExpiry() {
+        if (expiryExecutor != null) {
+            expiryExecutor.shutdownNow();
+        }
+    }
+    
     /**
-     * Generate cache key for endpoint documentation
-     * Format: docs:{METHOD}:{PATH}:v1
+     * Generate cache key for the documentation of an endpoint as it is now
+     * Format: docs:{METHOD}:{PATH}:{fingerprint}
+     *
+     * The fingerprint hashes everything the documentation is generated from: the endpoint's
+     * parameters, body schema and return type, the prompt version and the model. Changing
+     * any of them gives the endpoint a new key, so only endpoints that changed are generated
+     * again after a deploy. Entries under old keys are no longer read and expire with their TTL.
      */
-    public String generateCacheKey(String method, String path) {
-        return CACHE_KEY_PREFIX + method + ":" + path + ":" + CACHE_VERSION;
+    public String generateCacheKey(EndpointMetadata endpoint) {
+        String method = endpoint.getMethod().toUpperCase();
+        Map<String, Object> signature = new LinkedHashMap<>();
+        signature.put("cacheVersion", CACHE_VERSION);
+        signature.put("promptVersion", LLMService.PROMPT_VERSION);
+        signature.put("model", llmConfig.getModel());
+        signature.put("method", method);
+        signature.put("path", endpoint.getFullPath());
+        signature.put("paramTypes", endpoint.getParamTypes());
+        signature.put("parameters", endpoint.getParameters());
+        signature.put("bodySchema", endpoint.getBodySchema());
+        signature.put("returnType", endpoint.getReturnType());
+        return CACHE_KEY_PREFIX + method + ":" + endpoint.getFullPath() + ":" + fingerprint(signature);
     }
     
     /**
-     * Get cached documentation for an endpoint
+     * Get cached documentation by cache key
      */
-    public GeneratedDocumentation get(String method, String path) {
-        String cacheKey = generateCacheKey(method, path);
-        if (cacheKey == null) {
-            return null;
+    public GeneratedDocumentation get(String cacheKey) {
+        // Memory first
+        GeneratedDocumentation memCached = memoryCache.get(cacheKey);
+        if (memCached != null) {
+            log.debug("Cache HIT (Memory): {}", cacheKey);
+            return memCached;
         }
         
-        // Try Redis first if available
-        if (redisAvailable) {
+        // Then Redis, keeping a copy in memory for the next read
+        long invalidationsBefore = invalidations.get();
+        Object cached = withRedis("retrieving from", () -> {
+            long start = System.nanoTime();
             try {
-                Object cached = redisTemplate.opsForValue().get(cacheKey);
-                if (cached instanceof GeneratedDocumentation) {
-                    log.debug("Cache HIT (Redis): {} {}", method, path);
-                    return (GeneratedDocumentation) cached;
-                }
-            } catch (RedisConnectionFailureException e) {
-                log.warn("Redis connection failed, falling back to memory cache: {}", e.getMessage());
-                redisAvailable = false;
-            } catch (Exception e) {
-                log.error("Error retrieving from Redis cache: {}", e.getMessage());
+                return redisTemplate.opsForValue().get(cacheKey);
+            } finally {
+                memoryCache.recordLoad(System.nanoTime() - start);
             }
+        }, null);
+        if (cached instanceof GeneratedDocumentation documentation) {
+            log.debug("Cache HIT (Redis): {}", cacheKey);
+            if (invalidations.get() == invalidationsBefore) {
+                memoryCache.put(cacheKey, documentation);
+            }
+            return documentation;
         }
         
-        // Fallback to memory cache
-        CachedDocument memCached = memoryCache.get(cacheKey);
-        if (memCached != null && !memCached.isExpired()) {
-            log.debug("Cache HIT (Memory): {} {}", method, path);
-            return memCached.documentation;
-        }
-        
-        if (memCached != null && memCached.isExpired()) {
-            memoryCache.remove(cacheKey);
-        }
-        
-        log.debug("Cache MISS: {} {}", method, path);
+        log.debug("Cache MISS: {}", cacheKey);
         return null;
     }
     
     /**
      * Store documentation in cache
      */
-    public void put(String method, String path, GeneratedDocumentation documentation) {
+    public void put(String cacheKey, GeneratedDocumentation documentation) {
         if (documentation == null) {
             return;
         }
-        
-        String cacheKey = generateCacheKey(method, path);
-        if (cacheKey == null) {
-            return;
-        }
+        invalidations.incrementAndGet();
         
         // Store in Redis if available
-        if (redisAvailable) {
-            try {
-                redisTemplate.opsForValue().set(cacheKey, documentation, CACHE_TTL);
-                log.debug("Cached in Redis: {} {}", method, path);
-            } catch (RedisConnectionFailureException e) {
-                log.warn("Redis connection failed, using memory cache only: {}", e.getMessage());
-                redisAvailable = false;
-            } catch (Exception e) {
-                log.error("Error storing in Redis cache: {}", e.getMessage());
-            }
-        }
+        withRedis("storing in", () -> {
+            redisTemplate.opsForValue().set(cacheKey, documentation, CACHE_TTL);
+            redisTemplate.opsForZSet().add(INDEX_KEY, cacheKey, System.currentTimeMillis() + CACHE_TTL.toMillis());
+            log.debug("Cached in Redis: {}", cacheKey);
+        });
+        
+        // Always store in memory cache as well
+        memoryCache.put(cacheKey, documentation);
+        log.debug("Cached in Memory: {}", cacheKey);
         
-        // Always store in memory cache as fallback
-        memoryCache.put(cacheKey, new CachedDocument(documentation, System.currentTimeMillis()));
-        log.debug("Cached in Memory: {} {}", method, path);
+        // Other nodes may hold an older copy
+        publishInvalidation(cacheKey);
     }
     
     /**
-     * Invalidate cached documentation for an endpoint
+     * Invalidate cached documentation by cache key
      */
-    public void invalidate(String method, String path) {
-        String cacheKey = generateCacheKey(method, path);
-        if (cacheKey == null) {
-            return;
-        }
-        
+    public void invalidate(String cacheKey) {
         // Remove from Redis if available
-        if (redisAvailable) {
-            try {
-                redisTemplate.delete(cacheKey);
-                log.debug("Invalidated Redis cache: {} {}", method, path);
-            } catch (Exception e) {
-                log.error("Error invalidating Redis cache: {}", e.getMessage());
-            }
-        }
+        withRedis("invalidating", () -> {
+            redisTemplate.delete(cacheKey);
+            redisTemplate.opsForZSet().remove(INDEX_KEY, cacheKey);
+            log.debug("Invalidated Redis cache: {}", cacheKey);
+        });
         
-        // Remove from memory cache
-        memoryCache.remove(cacheKey);
-        log.debug("Invalidated Memory cache: {} {}", method, path);
+        // Remove from memory cache, here and on every other node
+        invalidations.incrementAndGet();
+        memoryCache.invalidate(cacheKey);
+        log.debug("Invalidated Memory cache: {}", cacheKey);
+        publishInvalidation(cacheKey);
     }
     
     /**
@@ -142,22 +225,63 @@ public class LLMCacheService {
      */
     public void clearAll() {
         // Clear Redis cache
-        if (redisAvailable) {
-            try {
-                var keys = redisTemplate.keys(CACHE_KEY_PREFIX + "*");
-                if (keys != null && !keys.isEmpty()) {
-                    redisTemplate.delete(keys);
-                    log.info("Cleared {} entries from Redis cache", keys.size());
-                }
-            } catch (Exception e) {
-                log.error("Error clearing Redis cache: {}", e.getMessage());
-            }
-        }
+        withRedis("clearing", () -> {
+            long removed = clearRedisEntries();
+            log.info("Cleared {} entries from Redis cache", removed);
+        });
         
-        // Clear memory cache
+        // Clear memory cache, here and on every other node
+        invalidations.incrementAndGet();
         int memSize = memoryCache.size();
         memoryCache.clear();
         log.info("Cleared {} entries from Memory cache", memSize);
+        publishInvalidation(CLEAR_ALL);
+    }
+    
+    /**
+     * Apply an invalidation published by another node
+     */
+    @Override
+    public void onMessage(@NonNull Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        String[] parts = body instanceof String text ? text.split("\\|", 2) : new String[0];
+        if (parts.length != 2) {
+            log.warn("Ignoring malformed cache invalidation message: {}", body);
+            return;
+        }
+        if (nodeId.equals(parts[0])) {
+            return;
+        }
+        
+        invalidationsReceived.increment();
+        invalidations.incrementAndGet();
+        if (CLEAR_ALL.equals(parts[1])) {
+            memoryCache.clear();
+            log.debug("Memory cache cleared by another node");
+        } else {
+            memoryCache.invalidate(parts[1]);
+            log.debug("Memory cache entry {} invalidated by another node", parts[1]);
+        }
+    }
+    
+    /**
+     * Called on the first subscription and again after every reconnect. Invalidations sent
+     * while disconnected are lost, so anything in memory may be stale.
+     */
+    @Override
+    public void onChannelSubscribed(@NonNull byte[] channel, long count) {
+        invalidations.incrementAndGet();
+        int memSize = memoryCache.size();
+        memoryCache.clear();
+        log.info("Subscribed to cache invalidations, dropped {} entries from Memory cache", memSize);
+    }
+    
+    /**
+     * Breaker guarding every Redis call made for the documentation cache, shared with the
+     * request coalescer so its leases back off along with the cache
+     */
+    public RedisCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
     }
     
     /**
@@ -165,52 +289,156 @@ public class LLMCacheService {
      */
     public CacheStats getStats() {
         CacheStats stats = new CacheStats();
-        stats.redisAvailable = redisAvailable;
+        stats.redisAvailable = circuitBreaker.state() == RedisCircuitBreaker.State.CLOSED;
         stats.memoryCacheSize = memoryCache.size();
+        stats.memory = memoryCache.stats();
+        stats.invalidationsPublished = invalidationsPublished.sum();
+        stats.invalidationsReceived = invalidationsReceived.sum();
         
-        if (redisAvailable) {
-            try {
-                var keys = redisTemplate.keys(CACHE_KEY_PREFIX + "*");
-                stats.redisCacheSize = keys != null ? keys.size() : 0;
-            } catch (Exception e) {
-                log.error("Error getting Redis cache size: {}", e.getMessage());
-            }
-        }
+        Long live = withRedis("counting entries in", () ->
+            redisTemplate.opsForZSet().count(INDEX_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY), null);
+        stats.redisCacheSize = live != null ? live.intValue() : 0;
+        stats.redisCircuit = circuitBreaker.stats();
         
         return stats;
     }
     
     private void testRedisConnection() {
-        try {
-            var connectionFactory = redisTemplate.getConnectionFactory();
-            if (connectionFactory != null) {
-                connectionFactory.getConnection().ping();
-                log.info("Redis connection successful");
-                redisAvailable = true;
-            } else {
-                log.warn("Redis connection factory is null, will use memory cache only");
-                redisAvailable = false;
+        var connectionFactory = redisTemplate.getConnectionFactory();
+        if (connectionFactory == null) {
+            log.warn("Redis connection factory is null, will use memory cache only");
+            circuitBreaker.onFailure();
+            return;
+        }
+        boolean connected = withRedis("connecting to", () -> {
+            try (var connection = connectionFactory.getConnection()) {
+                connection.ping();
             }
-        } catch (Exception e) {
-            log.warn("Redis connection failed, will use memory cache only: {}", e.getMessage());
-            redisAvailable = false;
+        });
+        if (connected) {
+            log.info("Redis connection successful");
         }
     }
     
     /**
-     * Internal class to hold cached documents with expiration time
+     * Run a Redis call through the circuit breaker, falling back when it is skipped or fails
+     */
+    private <T> T withRedis(String action, Supplier<T> call, T fallback) {
+        return circuitBreaker.call(action + " cache", call, fallback);
+    }
+    
+    /**
+     * Returns whether the call went through
      */
-    private static class CachedDocument {
-        final GeneratedDocumentation documentation;
-        final long timestamp;
+    private boolean withRedis(String action, Runnable call) {
+        return withRedis(action, () -> {
+            call.run();
+            return true;
+        }, false);
+    }
+    
+    /**
+     * Delete every entry without blocking Redis: walk the keyspace with SCAN and remove
+     * each page with UNLINK, which frees memory in the background, sending several
+     * UNLINKs per round trip. Returns the number of entries removed.
+     */
+    private long clearRedisEntries() {
+        ScanOptions options = ScanOptions.scanOptions().match(CACHE_KEY_PREFIX + "*").count(SCAN_COUNT).build();
+        List<byte[][]> pending = new ArrayList<>(UNLINKS_PER_PIPELINE);
+        List<byte[]> page = new ArrayList<>(SCAN_COUNT);
+        long removed = 0;
         
-        CachedDocument(GeneratedDocumentation documentation, long timestamp) {
-            this.documentation = documentation;
-            this.timestamp = timestamp;
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                // Keys are written with StringRedisSerializer
+                page.add(cursor.next().getBytes(StandardCharsets.UTF_8));
+                if (page.size() == SCAN_COUNT) {
+                    pending.add(page.toArray(new byte[0][]));
+                    page.clear();
+                }
+                if (pending.size() == UNLINKS_PER_PIPELINE) {
+                    removed += unlink(pending);
+                    pending.clear();
+                }
+            }
+        }
+        if (!page.isEmpty()) {
+            pending.add(page.toArray(new byte[0][]));
+        }
+        if (!pending.isEmpty()) {
+            removed += unlink(pending);
+        }
+        redisTemplate.unlink(INDEX_KEY);
+        return removed;
+    }
+    
+    private long unlink(List<byte[][]> batches) {
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[][] keys : batches) {
+                connection.keyCommands().unlink(keys);
+            }
+            return null;
+        });
+        return results.stream().mapToLong(result -> result instanceof Long count ? count : 0).sum();
+    }
+    
+    private void publishInvalidation(String cacheKey) {
+        withRedis("publishing an invalidation for", () -> {
+            redisTemplate.convertAndSend(cacheConfig.getInvalidationChannel(), nodeId + "|" + cacheKey);
+            invalidationsPublished.increment();
+        });
+    }
+    
+    private void expireEntries() {
+        try {
+            int expired = memoryCache.expire();
+            if (expired > 0) {
+                log.debug("Expired {} entries from Memory cache", expired);
+            }
+        } catch (Exception e) {
+            log.error("Error expiring Memory cache entries: {}", e.getMessage(), e);
         }
         
-        boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > CACHE_TTL.toMillis();
+        // Redis expires the entries on its own; drop them from the index too
+        withRedis("pruning the index of", () ->
+            redisTemplate.opsForZSet().removeRangeByScore(INDEX_KEY, Double.NEGATIVE_INFINITY, System.currentTimeMillis()));
+    }
+    
+    private String fingerprint(Map<String, Object> signature) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(canonical(signature));
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return HexFormat.of().formatHex(digest).substring(0, FINGERPRINT_LENGTH);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint endpoint signature", e);
+        }
+    }
+    
+    /**
+     * The same structure with every map's keys in natural order, so equal signatures
+     * serialize, and hash, identically on every node whatever map types they were built from
+     */
+    private static Object canonical(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((key, entry) -> sorted.put(String.valueOf(key), canonical(entry)));
+            return sorted;
+        }
+        if (value instanceof Collection<?> values) {
+            return values.stream().map(LLMCacheService::canonical).toList();
+        }
+        return value;
+    }
+    
+    /**
+     * Size of the documentation as JSON, close to what Redis stores for it
+     */
+    private int weigh(GeneratedDocumentation documentation) {
+        try {
+            return objectMapper.writeValueAsBytes(documentation).length;
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize documentation to weigh it: {}", e.getMessage());
+            return 4096;
         }
     }
     
@@ -221,5 +449,9 @@ public class LLMCacheService {
         public boolean redisAvailable;
         public int redisCacheSize;
         public int memoryCacheSize;
+        public NearCache.Stats memory;
+        public long invalidationsPublished;
+        public long invalidationsReceived;
+        public RedisCircuitBreaker.Stats redisCircuit;
     }
 }
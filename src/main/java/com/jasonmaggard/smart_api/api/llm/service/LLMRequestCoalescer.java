@@ -0,0 +1,179 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for documentation cache misses.
+ *
+ * Within this node, concurrent misses for the same cache key share one in-flight future,
+ * so only the first caller runs the generator and the rest wait for its result. Across
+ * nodes the first caller also takes a Redis lease on the key; a node that finds the lease
+ * held waits for the holder's result to land in the cache instead of calling the API
+ * itself. If Redis is unreachable, or the holder neither finishes nor releases the lease
+ * within the wait timeout, the node generates on its own rather than failing the request.
+ * Lease calls go through the cache's circuit breaker, so while Redis is down they are
+ * skipped rather than each waiting out a connection timeout.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LLMRequestCoalescer {
+
+    private static final String LOCK_KEY_PREFIX = "lock:";
+
+    // Only the holder may release; a lease that expired and was taken over is left alone
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+        Long.class);
+
+    private final LLMConfig llmConfig;
+    private final LLMCacheService cacheService;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final Map<String, CompletableFuture<GeneratedDocumentation>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Return the documentation cached under cacheKey, running generator at most once per
+     * key across all concurrent callers. The generator is expected to cache its result.
+     */
+    public GeneratedDocumentation coalesce(String cacheKey, Supplier<GeneratedDocumentation> generator) {
+        CompletableFuture<GeneratedDocumentation> future = new CompletableFuture<>();
+        CompletableFuture<GeneratedDocumentation> existing = inFlight.putIfAbsent(cacheKey, future);
+        if (existing != null) {
+            log.debug("Joining in-flight generation for {}", cacheKey);
+            return await(existing);
+        }
+
+        try {
+            future.complete(generateOnce(cacheKey, generator));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(cacheKey, future);
+        }
+        return await(future);
+    }
+
+    /**
+     * Number of keys currently being generated on this node
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private GeneratedDocumentation generateOnce(String cacheKey, Supplier<GeneratedDocumentation> generator) {
+        LLMConfig.Coalescing settings = llmConfig.getCoalescing();
+        String lockKey = LOCK_KEY_PREFIX + cacheKey;
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + settings.getWaitTimeoutMs();
+
+        while (true) {
+            Boolean acquired = tryAcquire(lockKey, token, settings.getLeaseMs());
+            if (acquired == null) {
+                // Redis is unavailable; local coalescing still applies
+                return generator.get();
+            }
+            if (acquired) {
+                try {
+                    // Another node may have finished between our cache miss and taking the lease
+                    GeneratedDocumentation cached = cacheService.get(cacheKey);
+                    return cached != null ? cached : generator.get();
+                } finally {
+                    release(lockKey, token);
+                }
+            }
+
+            log.debug("Another node is generating {}, waiting for its result", cacheKey);
+            GeneratedDocumentation result = awaitOtherNode(cacheKey, lockKey, deadline, settings.getPollIntervalMs());
+            if (result != null) {
+                return result;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("Timed out waiting for another node to generate {}, generating locally", cacheKey);
+                return generator.get();
+            }
+            // The lease is gone without a result (the holder failed), so try to take it over
+        }
+    }
+
+    /**
+     * Poll the cache until the lease holder's result shows up. Returns null once the lease
+     * is released or expires without a result, or the deadline passes.
+     */
+    private GeneratedDocumentation awaitOtherNode(String cacheKey, String lockKey, long deadline, long pollIntervalMs) {
+        while (System.currentTimeMillis() < deadline) {
+            sleep(pollIntervalMs);
+            GeneratedDocumentation cached = cacheService.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+            if (!leaseHeld(lockKey)) {
+                // The holder may have cached and released between the two reads
+                return cacheService.get(cacheKey);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the lease was taken, or null when Redis is skipped or unreachable
+     */
+    private Boolean tryAcquire(String lockKey, String token, long leaseMs) {
+        return cacheService.getCircuitBreaker().call("taking generation lease " + lockKey, () ->
+            Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, token, Duration.ofMillis(leaseMs))),
+            null);
+    }
+
+    /**
+     * Stop waiting on a lease we can no longer see
+     */
+    private boolean leaseHeld(String lockKey) {
+        return cacheService.getCircuitBreaker().call("checking generation lease " + lockKey, () ->
+            Boolean.TRUE.equals(redisTemplate.hasKey(lockKey)), false);
+    }
+
+    /**
+     * A lease that can't be released expires on its own
+     */
+    private void release(String lockKey, String token) {
+        cacheService.getCircuitBreaker().call("releasing generation lease " + lockKey, () ->
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(lockKey), token), null);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LLMException("Interrupted while waiting for documentation generation", e);
+        }
+    }
+
+    private static GeneratedDocumentation await(CompletableFuture<GeneratedDocumentation> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new LLMException("Failed to generate documentation: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package com.jasonmaggard.smart_api.api.llm.service;
 
 import com.anthropic.client.AnthropicClient;
-import com.anthropic.client.okhttp.AnthropicOkHttpClient;
+import com.anthropic.core.http.StreamResponse;
+import com.anthropic.errors.RateLimitException;
 import com.anthropic.models.messages.Message;
 import com.anthropic.models.messages.MessageCreateParams;
 import com.anthropic.models.messages.Model;
+import com.anthropic.models.messages.RawMessageStreamEvent;
+import com.anthropic.models.messages.TextBlockParam;
+import com.anthropic.models.messages.TextDelta;
+import com.anthropic.models.messages.Usage;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
 import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
 import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
 import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -22,38 +33,88 @@ import java.util.Map;
 @Slf4j
 public class LLMService {
     
+    /**
+     * Part of every documentation cache key; bump it whenever buildPrompt changes what the
+     * model is asked for, so documentation generated from the old prompt is not served
+     */
+    public static final String PROMPT_VERSION = "2";
+    
+    /**
+     * Instructions shared by every request, sent as the system block ahead of the endpoint.
+     * They are not prompt-cached: at roughly 350 tokens they are far below the minimum
+     * cacheable prefix (4096 tokens for claude-haiku-4-5, 1024 for Sonnet), and the API
+     * ignores a breakpoint on anything shorter. Padding the prefix out to the minimum would
+     * cost more than sending it uncached, even when read from the cache, so no breakpoint is
+     * set; the cache token counts are still recorded, and stay zero.
+     */
+    static final String SYSTEM_PROMPT = """
+        You are an API documentation generator. Each user message describes one REST API \
+        endpoint as a JSON object with these fields (absent when empty):
+        - method: the HTTP method
+        - path: the full request path, with {placeholders} for path variables
+        - parameters: parameter name to {"type", "in"}, where "in" is "path" or "query"; a \
+        parameter named "body" holds the request body's fields as name to {"name", "type"}
+        - returns: the Java return type of the handler
+        
+        Reply with documentation for that endpoint as a single JSON object:
+        {
+          "description": "A clear, concise description of what this endpoint does",
+          "parameters": {
+            "paramName": { "type": "string", "description": "param description", "required": true }
+          },
+          "examples": {
+            "curl": "curl example",
+            "java": "Java example",
+            "javascript": "JavaScript example"
+          }
+        }
+        
+        Rules:
+        - Document every parameter given, and only those, under its own name.
+        - Path parameters are always required; say whether others are.
+        - Examples call the endpoint with realistic values for every required parameter.
+        - Provide ONLY the JSON object, without any markdown formatting or code blocks.
+        """;
+    
+    static final List<TextBlockParam> SYSTEM_BLOCKS = List.of(TextBlockParam.builder()
+        .text(SYSTEM_PROMPT)
+        .build());
+    
     private final LLMConfig llmConfig;
     private final LLMCacheService cacheService;
+    private final AnthropicClient anthropicClient;
+    private final LLMRequestCoalescer coalescer;
+    private final AdaptiveRateLimiter rateLimiter;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     public GeneratedDocumentation generateDocumentation(EndpointMetadata endpoint) {
         String method = endpoint.getMethod();
         String path = endpoint.getFullPath();
         
+        String cacheKey = cacheService.generateCacheKey(endpoint);
+        
         // Check cache first
-        GeneratedDocumentation cached = cacheService.get(method, path);
+        GeneratedDocumentation cached = cacheService.get(cacheKey);
         if (cached != null) {
             log.info("Using cached documentation for {} {}", method, path);
             return cached;
         }
         
+        // Concurrent misses for the same endpoint, here or on other nodes, share one call
+        return coalescer.coalesce(cacheKey, () -> generate(endpoint, cacheKey));
+    }
+    
+    private GeneratedDocumentation generate(EndpointMetadata endpoint, String cacheKey) {
+        String method = endpoint.getMethod();
+        String path = endpoint.getFullPath();
+        
         log.info("Generating NEW documentation for {} {}", method, path);
         
         try {
-            AnthropicClient client = AnthropicOkHttpClient.builder()
-                .apiKey(llmConfig.getApiKey())
-                .build();
-            
-            String prompt = buildPrompt(endpoint);
-            
-            MessageCreateParams params = MessageCreateParams.builder()
-                .model(Model.of(llmConfig.getModel()))
-                .maxTokens((long) llmConfig.getMaxTokens())
-                .temperature(llmConfig.getTemperature())
-                .addUserMessage(prompt)
-                .build();
-            
-            Message response = client.messages().create(params);
+            Message response;
+            try (AdaptiveRateLimiter.Permit permit = rateLimiter.acquire()) {
+                response = anthropicClient.messages().create(buildParams(endpoint));
+            }
             
             // Extract text content from response
             String responseText = extractTextContent(response);
@@ -62,14 +123,19 @@ public class LLMService {
             // Parse the JSON response
             GeneratedDocumentation result = parseResponse(responseText);
             result.setModel(llmConfig.getModel());
-            result.setTokenCount((int) response.usage().outputTokens());
+            recordUsage(result, response.usage());
             
             // Cache the result
-            cacheService.put(method, path, result);
+            cacheService.put(cacheKey, result);
             
-            log.info("Successfully generated and cached documentation for {} {}", method, path);
+            log.info("Successfully generated and cached documentation for {} {} ({} input, {} cache read, {} output tokens)",
+                method, path, result.getInputTokens(), result.getCacheReadInputTokens(), result.getTokenCount());
             return result;
             
+        } catch (LLMRateLimitException e) {
+            throw e;
+        } catch (RateLimitException e) {
+            throw rateLimited(method, path, e);
         } catch (Exception e) {
             log.error("Failed to generate documentation for {} {}: {}", 
                 method, path, e.getMessage(), e);
@@ -77,7 +143,117 @@ public class LLMService {
         }
     }
     
-    private String extractTextContent(Message response) {
+    /**
+     * Generate documentation through the streaming Messages API, telling the listener about
+     * each part as soon as the model has finished writing it. A cached result is replayed
+     * to the listener straight away. Returns the complete, parsed documentation.
+     */
+    public GeneratedDocumentation streamDocumentation(EndpointMetadata endpoint, StreamingDocParser.Listener listener) {
+        String method = endpoint.getMethod();
+        String path = endpoint.getFullPath();
+        
+        String cacheKey = cacheService.generateCacheKey(endpoint);
+        
+        GeneratedDocumentation cached = cacheService.get(cacheKey);
+        if (cached != null) {
+            log.info("Replaying cached documentation for {} {}", method, path);
+            replay(cached, listener);
+            return cached;
+        }
+        
+        log.info("Streaming NEW documentation for {} {}", method, path);
+        
+        StringBuilder responseText = new StringBuilder();
+        StreamingDocParser parser = new StreamingDocParser(objectMapper, listener);
+        GeneratedDocumentation usage = new GeneratedDocumentation();
+        
+        try (AdaptiveRateLimiter.Permit permit = rateLimiter.acquire();
+             StreamResponse<RawMessageStreamEvent> stream =
+                 anthropicClient.messages().createStreaming(buildParams(endpoint))) {
+            Iterator<RawMessageStreamEvent> events = stream.stream().iterator();
+            while (events.hasNext()) {
+                RawMessageStreamEvent event = events.next();
+                if (event.isContentBlockDelta()) {
+                    String text = event.asContentBlockDelta().delta().text().map(TextDelta::text).orElse("");
+                    responseText.append(text);
+                    parser.feed(text);
+                } else if (event.isMessageStart()) {
+                    recordUsage(usage, event.asMessageStart().message().usage());
+                } else if (event.isMessageDelta()) {
+                    // Cumulative; input counts are only repeated by some API versions
+                    var delta = event.asMessageDelta().usage();
+                    usage.setTokenCount((int) delta.outputTokens());
+                    delta.inputTokens().ifPresent(tokens -> usage.setInputTokens(tokens.intValue()));
+                    delta.cacheReadInputTokens().ifPresent(tokens -> usage.setCacheReadInputTokens(tokens.intValue()));
+                    delta.cacheCreationInputTokens().ifPresent(tokens -> usage.setCacheCreationInputTokens(tokens.intValue()));
+                }
+            }
+        } catch (LLMRateLimitException e) {
+            throw e;
+        } catch (RateLimitException e) {
+            throw rateLimited(method, path, e);
+        } catch (Exception e) {
+            log.error("Failed to stream documentation for {} {}: {}", method, path, e.getMessage(), e);
+            throw new LLMException("Failed to generate documentation: " + e.getMessage(), e);
+        }
+        
+        GeneratedDocumentation result = parseResponse(responseText.toString());
+        result.setModel(llmConfig.getModel());
+        result.setInputTokens(usage.getInputTokens());
+        result.setCacheCreationInputTokens(usage.getCacheCreationInputTokens());
+        result.setCacheReadInputTokens(usage.getCacheReadInputTokens());
+        result.setTokenCount(usage.getTokenCount());
+        cacheService.put(cacheKey, result);
+        
+        log.info("Successfully streamed and cached documentation for {} {} ({} input, {} cache read, {} output tokens)",
+            method, path, result.getInputTokens(), result.getCacheReadInputTokens(), result.getTokenCount());
+        return result;
+    }
+    
+    /**
+     * The SDK gave up retrying a 429; the limiter has paused calls until the API's retry-after
+     */
+    private LLMRateLimitException rateLimited(String method, String path, RateLimitException e) {
+        log.warn("Rate limited generating documentation for {} {}: {}", method, path, e.getMessage());
+        return new LLMRateLimitException("Rate limited by the API: " + e.getMessage(), rateLimiter.retryAfter(), e);
+    }
+    
+    private void replay(GeneratedDocumentation documentation, StreamingDocParser.Listener listener) {
+        if (documentation.getDescription() != null) {
+            listener.onDescription(documentation.getDescription());
+        }
+        if (documentation.getParameters() != null) {
+            documentation.getParameters().forEach((name, value) ->
+                listener.onEntry("parameters", name, objectMapper.valueToTree(value)));
+        }
+        if (documentation.getExamples() != null) {
+            documentation.getExamples().forEach((name, value) ->
+                listener.onEntry("examples", name, objectMapper.valueToTree(value)));
+        }
+    }
+    
+    private MessageCreateParams buildParams(EndpointMetadata endpoint) {
+        return MessageCreateParams.builder()
+            .model(Model.of(llmConfig.getModel()))
+            .maxTokens((long) llmConfig.getMaxTokens())
+            .temperature(llmConfig.getTemperature())
+            .systemOfTextBlockParams(SYSTEM_BLOCKS)
+            .addUserMessage(buildPrompt(endpoint))
+            .build();
+    }
+    
+    /**
+     * Copy the token counts of a response onto its documentation. Input tokens exclude those
+     * read from or written to the prompt cache, which are counted separately.
+     */
+    static void recordUsage(GeneratedDocumentation documentation, Usage usage) {
+        documentation.setInputTokens((int) usage.inputTokens());
+        documentation.setCacheCreationInputTokens(usage.cacheCreationInputTokens().orElse(0L).intValue());
+        documentation.setCacheReadInputTokens(usage.cacheReadInputTokens().orElse(0L).intValue());
+        documentation.setTokenCount((int) usage.outputTokens());
+    }
+    
+    String extractTextContent(Message response) {
         return response.content().stream()
             .filter(block -> block.text().isPresent())
             .findFirst()
@@ -86,39 +262,25 @@ public class LLMService {
             .orElseThrow(() -> new LLMException("No text content in LLM response"));
     }
     
+    /**
+     * The per-endpoint part of the prompt: the endpoint as compact JSON, in the shape
+     * SYSTEM_PROMPT describes. The body schema is already among the parameters.
+     */
     String buildPrompt(EndpointMetadata endpoint) {
-        StringBuilder prompt = new StringBuilder();
-        
-        prompt.append("You are an API documentation generator. ");
-        prompt.append("Generate comprehensive documentation for the following REST API endpoint.\n\n");
-        
-        prompt.append("Endpoint Details:\n");
-        prompt.append("- HTTP Method: ").append(endpoint.getMethod()).append("\n");
-        prompt.append("- Path: ").append(endpoint.getFullPath()).append("\n");
-        
+        Map<String, Object> prompt = new LinkedHashMap<>();
+        prompt.put("method", endpoint.getMethod().toUpperCase());
+        prompt.put("path", endpoint.getFullPath());
         if (endpoint.getParameters() != null && !endpoint.getParameters().isEmpty()) {
-            prompt.append("- Parameters: ").append(endpoint.getParameters()).append("\n");
+            prompt.put("parameters", endpoint.getParameters());
         }
-        
         if (endpoint.getReturnType() != null) {
-            prompt.append("- Return Type: ").append(endpoint.getReturnType()).append("\n");
+            prompt.put("returns", endpoint.getReturnType());
+        }
+        try {
+            return objectMapper.writeValueAsString(prompt);
+        } catch (JsonProcessingException e) {
+            throw new LLMException("Failed to build prompt for " + endpoint.getMethod() + " " + endpoint.getFullPath(), e);
         }
-        
-        prompt.append("\nProvide the documentation in the following JSON format:\n");
-        prompt.append("{\n");
-        prompt.append("  \"description\": \"A clear, concise description of what this endpoint does\",\n");
-        prompt.append("  \"parameters\": {\n");
-        prompt.append("    \"paramName\": { \"type\": \"string\", \"description\": \"param description\", \"required\": true }\n");
-        prompt.append("  },\n");
-        prompt.append("  \"examples\": {\n");
-        prompt.append("    \"curl\": \"curl example\",\n");
-        prompt.append("    \"java\": \"Java example\",\n");
-        prompt.append("    \"javascript\": \"JavaScript example\"\n");
-        prompt.append("  }\n");
-        prompt.append("}\n");
-        prompt.append("\nProvide ONLY the JSON object, without any markdown formatting or code blocks.");
-        
-        return prompt.toString();
     }
     
     GeneratedDocumentation parseResponse(String responseText) {
@@ -0,0 +1,157 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental parser for the documentation JSON as the model streams it.
+ *
+ * Text deltas are fed into Jackson's non-blocking parser, which hands back tokens as soon
+ * as they are complete. The listener hears about the description once its string closes
+ * and about each entry of "parameters" and "examples" once that entry's value closes, so
+ * a client sees the description long before the examples have been written. Anything
+ * before the first '{' (such as a markdown fence) is skipped. The parser only produces
+ * previews; the full text is still parsed normally once the stream ends.
+ */
+public class StreamingDocParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** Receives each part of the documentation as soon as it is complete */
+    public interface Listener {
+        void onDescription(String description);
+
+        /**
+         * @param section "parameters" or "examples"
+         */
+        void onEntry(String section, String name, JsonNode value);
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Listener listener;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private boolean started;
+    private boolean done;
+    private int depth;
+    private String topField;
+    private String entryName;
+    private TokenBuffer entryValue;
+    private int entryDepth;
+
+    public StreamingDocParser(ObjectMapper objectMapper, Listener listener) {
+        this.objectMapper = objectMapper;
+        this.listener = listener;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Feed the next text delta. Malformed JSON stops the previews but is not an error here;
+     * the final parse of the full text decides whether the response is usable.
+     */
+    public void feed(String text) {
+        if (done || text.isEmpty()) {
+            return;
+        }
+        if (!started) {
+            int start = text.indexOf('{');
+            if (start < 0) {
+                return;
+            }
+            started = true;
+            text = text.substring(start);
+        }
+
+        try {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token);
+            }
+        } catch (IOException e) {
+            done = true;
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (entryValue != null) {
+            captureEntry(token);
+            return;
+        }
+
+        switch (token) {
+            case START_OBJECT, START_ARRAY -> {
+                depth++;
+                if (depth == 3 && isEntrySection()) {
+                    startEntry(token);
+                }
+            }
+            case END_OBJECT, END_ARRAY -> {
+                depth--;
+                if (depth == 0) {
+                    done = true;
+                    feeder.endOfInput();
+                }
+            }
+            case FIELD_NAME -> {
+                if (depth == 1) {
+                    topField = parser.currentName();
+                } else if (depth == 2) {
+                    entryName = parser.currentName();
+                }
+            }
+            default -> {
+                if (depth == 1 && "description".equals(topField) && token == JsonToken.VALUE_STRING) {
+                    listener.onDescription(parser.getText());
+                } else if (depth == 2 && isEntrySection()) {
+                    startEntry(token);
+                }
+            }
+        }
+    }
+
+    private boolean isEntrySection() {
+        return "parameters".equals(topField) || "examples".equals(topField);
+    }
+
+    private void startEntry(JsonToken token) throws IOException {
+        entryValue = new TokenBuffer(objectMapper, false);
+        entryDepth = 0;
+        captureEntry(token);
+    }
+
+    private void captureEntry(JsonToken token) throws IOException {
+        entryValue.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            entryDepth++;
+        } else if (token.isStructEnd()) {
+            entryDepth--;
+        }
+        if (entryDepth > 0) {
+            return;
+        }
+
+        // Scalars end here straight away; containers once their closing token arrives
+        if (token.isStructEnd()) {
+            depth--;
+        }
+        JsonNode value = objectMapper.readTree(entryValue.asParser());
+        entryValue = null;
+        listener.onEntry(topField, entryName, value);
+    }
+}
@@ -0,0 +1,87 @@
+package com.jasonmaggard.smart_api.api.usage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "usage.logging")
+@Data
+public class UsageLoggingConfig {
+
+    /**
+     * How batches are written to Postgres
+     */
+    private SinkType sink = SinkType.JDBC;
+
+    /**
+     * Maximum number of usage records held in memory waiting to be written
+     */
+    private Integer bufferCapacity = 10000;
+
+    /**
+     * Number of records written per JDBC batch
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * Maximum time a partially filled batch waits before being flushed
+     */
+    private Long flushIntervalMs = 1000L;
+
+    /**
+     * What to do with new records when the buffer is under pressure
+     */
+    private BackpressurePolicy backpressure = BackpressurePolicy.DROP;
+
+    /**
+     * Fraction of records kept by the SAMPLE policy once the buffer passes the high-water mark
+     */
+    private Double sampleRate = 0.1;
+
+    /**
+     * Buffer fill ratio at which the SAMPLE policy starts shedding records
+     */
+    private Double sampleHighWaterMark = 0.75;
+
+    /**
+     * Maximum time the BLOCK policy waits for buffer space before dropping the record
+     */
+    private Long blockTimeoutMs = 50L;
+
+    /**
+     * Wait before retrying a batch that failed for a transient reason; doubles per attempt
+     */
+    private Long retryInitialBackoffMs = 500L;
+
+    /**
+     * Longest wait between retries of a batch
+     */
+    private Long retryMaxBackoffMs = 30000L;
+
+    /**
+     * Maximum time to wait for the buffer to drain on shutdown
+     */
+    private Long shutdownTimeoutMs = 10000L;
+
+    /**
+     * Maximum number of endpoint + method pairs tracked by the live metrics registry
+     */
+    private Integer liveMaxEndpoints = 500;
+
+    public enum SinkType {
+        /** JDBC batch inserts */
+        JDBC,
+        /** COPY ... FROM STDIN streaming via the pgjdbc CopyManager */
+        COPY
+    }
+
+    public enum BackpressurePolicy {
+        /** Drop new records as soon as the buffer is full */
+        DROP,
+        /** Keep a sampled fraction of records above the high-water mark, drop when full */
+        SAMPLE,
+        /** Wait up to blockTimeoutMs for space, then drop */
+        BLOCK
+    }
+}
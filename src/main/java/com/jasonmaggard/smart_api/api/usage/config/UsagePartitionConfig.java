@@ -0,0 +1,26 @@
+package com.jasonmaggard.smart_api.api.usage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "usage.partition")
+@Data
+public class UsagePartitionConfig {
+
+    /**
+     * Cron expression for the recurring partition rotation job
+     */
+    private String cron = "0 * * * *";
+
+    /**
+     * Number of days ahead of today that always have a partition ready
+     */
+    private Integer premakeDays = 7;
+
+    /**
+     * Daily partitions older than this are dropped once rolled up; 0 keeps raw logs forever
+     */
+    private Integer retentionDays = 90;
+}
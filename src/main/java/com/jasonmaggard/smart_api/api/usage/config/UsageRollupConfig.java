@@ -0,0 +1,27 @@
+package com.jasonmaggard.smart_api.api.usage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "usage.rollup")
+@Data
+public class UsageRollupConfig {
+
+    /**
+     * Cron expression for the recurring rollup job
+     */
+    private String cron = "* * * * *";
+
+    /**
+     * Raw rows younger than this are left for the next run so late batch flushes aren't missed.
+     * Rows later still are rolled up as they are written and counted in lateRolledUp.
+     */
+    private Long lagSeconds = 120L;
+
+    /**
+     * Largest slice of raw rows rolled up in one run while catching up on history
+     */
+    private Long maxCatchUpMinutes = 360L;
+}
@@ -0,0 +1,75 @@
+package com.jasonmaggard.smart_api.api.usage.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "usage.sampling")
+@Data
+public class UsageSamplingConfig {
+
+    /**
+     * Default sampling mode for endpoints without their own rule
+     */
+    private SamplingMode mode = SamplingMode.ALL;
+
+    /**
+     * Fraction of requests kept by FIXED and ADAPTIVE, applied as 1-in-round(1/rate)
+     * so every kept row carries a whole-number weight
+     */
+    private Double rate = 1.0;
+
+    /**
+     * Requests kept per endpoint per reservoir interval by RESERVOIR
+     */
+    private Integer reservoirSize = 100;
+
+    /**
+     * Length of a RESERVOIR interval; each reservoir is flushed to the buffer at its end
+     */
+    private Long reservoirIntervalMs = 1000L;
+
+    /**
+     * ADAPTIVE always logs responses with at least this status code
+     */
+    private Integer errorStatusThreshold = 500;
+
+    /**
+     * ADAPTIVE always logs requests taking at least this long
+     */
+    private Long slowThresholdMs = 1000L;
+
+    /**
+     * Maximum number of endpoint + method pairs with their own reservoir; the rest share one
+     */
+    private Integer maxReservoirs = 500;
+
+    /**
+     * Per-endpoint overrides keyed by Ant-style path pattern, e.g.
+     * usage.sampling.endpoints[/api/docs/**].mode=RESERVOIR. The most specific matching
+     * pattern wins and unset fields fall back to the defaults above.
+     */
+    private Map<String, EndpointRule> endpoints = new LinkedHashMap<>();
+
+    @Data
+    public static class EndpointRule {
+        private SamplingMode mode;
+        private Double rate;
+        private Integer reservoirSize;
+    }
+
+    public enum SamplingMode {
+        /** Log every request */
+        ALL,
+        /** Log a fixed random fraction of requests */
+        FIXED,
+        /** Keep a uniform random sample of up to reservoirSize requests per endpoint per interval */
+        RESERVOIR,
+        /** Always log errors and slow requests, sample the rest at the fixed rate */
+        ADAPTIVE
+    }
+}
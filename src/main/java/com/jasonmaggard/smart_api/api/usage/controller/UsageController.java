@@ -1,17 +1,26 @@
 package com.jasonmaggard.smart_api.api.usage.controller;
 
 import com.jasonmaggard.smart_api.api.usage.dto.EndpointUsageDto;
+import com.jasonmaggard.smart_api.api.usage.dto.IngestStatsDto;
+import com.jasonmaggard.smart_api.api.usage.dto.LiveEndpointMetricsDto;
 import com.jasonmaggard.smart_api.api.usage.dto.StatusCodeStatsDto;
 import com.jasonmaggard.smart_api.api.usage.dto.UsageStatsDto;
+import com.jasonmaggard.smart_api.api.usage.metrics.LiveMetricsRegistry;
 import com.jasonmaggard.smart_api.api.usage.service.ApiUsageLogService;
+import com.jasonmaggard.smart_api.api.usage.service.UsageLogExportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -23,15 +32,27 @@ import java.util.Map;
 public class UsageController {
     
     private final ApiUsageLogService usageLogService;
+    private final UsageLogExportService exportService;
+    private final LiveMetricsRegistry liveMetrics;
     
     @GetMapping("/stats")
     @Operation(
         summary = "Get overall usage statistics",
         description = "Returns comprehensive statistics including total requests, average response time, success/failure counts"
     )
-    public ResponseEntity<UsageStatsDto> getOverallStats() {
-        log.info("Fetching overall usage statistics");
-        UsageStatsDto stats = usageLogService.getOverallStats();
+    public ResponseEntity<UsageStatsDto> getOverallStats(
+            @Parameter(description = "Window start, inclusive (ISO local date-time, e.g. 2025-01-31T00:00:00)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Window end, exclusive (ISO local date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
+    ) {
+        log.info("Fetching overall usage statistics for [{}, {})", from, to);
+        
+        if (!isValidWindow(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        UsageStatsDto stats = usageLogService.getOverallStats(from, to);
         return ResponseEntity.ok(stats);
     }
     
@@ -42,15 +63,19 @@ public class UsageController {
     )
     public ResponseEntity<List<EndpointUsageDto>> getTopEndpoints(
             @Parameter(description = "Number of top endpoints to return")
-            @RequestParam(defaultValue = "10") int limit
+            @RequestParam(defaultValue = "10") int limit,
+            @Parameter(description = "Window start, inclusive (ISO local date-time, e.g. 2025-01-31T00:00:00)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Window end, exclusive (ISO local date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
     ) {
-        log.info("Fetching top {} endpoints", limit);
+        log.info("Fetching top {} endpoints for [{}, {})", limit, from, to);
         
-        if (limit < 1 || limit > 100) {
+        if (limit < 1 || limit > 100 || !isValidWindow(from, to)) {
             return ResponseEntity.badRequest().build();
         }
         
-        List<EndpointUsageDto> topEndpoints = usageLogService.getTopEndpoints(limit);
+        List<EndpointUsageDto> topEndpoints = usageLogService.getTopEndpoints(limit, from, to);
         return ResponseEntity.ok(topEndpoints);
     }
     
@@ -61,15 +86,19 @@ public class UsageController {
     )
     public ResponseEntity<List<EndpointUsageDto>> getSlowestEndpoints(
             @Parameter(description = "Number of slow endpoints to return")
-            @RequestParam(defaultValue = "10") int limit
+            @RequestParam(defaultValue = "10") int limit,
+            @Parameter(description = "Window start, inclusive (ISO local date-time, e.g. 2025-01-31T00:00:00)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Window end, exclusive (ISO local date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
     ) {
-        log.info("Fetching {} slowest endpoints", limit);
+        log.info("Fetching {} slowest endpoints for [{}, {})", limit, from, to);
         
-        if (limit < 1 || limit > 100) {
+        if (limit < 1 || limit > 100 || !isValidWindow(from, to)) {
             return ResponseEntity.badRequest().build();
         }
         
-        List<EndpointUsageDto> slowEndpoints = usageLogService.getSlowestEndpoints(limit);
+        List<EndpointUsageDto> slowEndpoints = usageLogService.getSlowestEndpoints(limit, from, to);
         return ResponseEntity.ok(slowEndpoints);
     }
     
@@ -82,10 +111,19 @@ public class UsageController {
             @Parameter(description = "Endpoint path (e.g., /api/users)", required = true)
             @RequestParam String path,
             @Parameter(description = "HTTP method (e.g., GET, POST)", required = true)
-            @RequestParam String method
+            @RequestParam String method,
+            @Parameter(description = "Window start, inclusive (ISO local date-time, e.g. 2025-01-31T00:00:00)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Window end, exclusive (ISO local date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
     ) {
-        log.info("Fetching stats for {} {}", method, path);
-        EndpointUsageDto stats = usageLogService.getEndpointStats(path, method.toUpperCase());
+        log.info("Fetching stats for {} {} for [{}, {})", method, path, from, to);
+        
+        if (!isValidWindow(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        EndpointUsageDto stats = usageLogService.getEndpointStats(path, method.toUpperCase(), from, to);
         return ResponseEntity.ok(stats);
     }
     
@@ -94,23 +132,95 @@ public class UsageController {
         summary = "Get request distribution by status code",
         description = "Returns the count and percentage of requests for each HTTP status code"
     )
-    public ResponseEntity<List<StatusCodeStatsDto>> getStatusCodeDistribution() {
-        log.info("Fetching status code distribution");
-        List<StatusCodeStatsDto> distribution = usageLogService.getStatusCodeDistribution();
+    public ResponseEntity<List<StatusCodeStatsDto>> getStatusCodeDistribution(
+            @Parameter(description = "Window start, inclusive (ISO local date-time, e.g. 2025-01-31T00:00:00)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Window end, exclusive (ISO local date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
+    ) {
+        log.info("Fetching status code distribution for [{}, {})", from, to);
+        
+        if (!isValidWindow(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        List<StatusCodeStatsDto> distribution = usageLogService.getStatusCodeDistribution(from, to);
         return ResponseEntity.ok(distribution);
     }
     
+    @GetMapping("/export")
+    @Operation(
+        summary = "Export raw usage logs",
+        description = "Streams every usage log in the window as NDJSON or CSV, ordered by creation time, without buffering the result in memory"
+    )
+    public ResponseEntity<StreamingResponseBody> exportLogs(
+            @Parameter(description = "Window start, inclusive (ISO local date-time, e.g. 2025-01-31T00:00:00)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Window end, exclusive (ISO local date-time)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Output format: ndjson or csv")
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        UsageLogExportService.Format exportFormat;
+        try {
+            exportFormat = UsageLogExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        if (!isValidWindow(from, to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        log.info("Exporting usage logs for [{}, {}) as {}", from, to, exportFormat);
+        StreamingResponseBody body = out -> exportService.export(from, to, exportFormat, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"usage-logs." + exportFormat.getExtension() + "\"")
+            .body(body);
+    }
+    
+    @GetMapping("/live")
+    @Operation(
+        summary = "Get live in-memory endpoint metrics",
+        description = "Returns per-endpoint counts, request rates and p50/p90/p99/p999 latencies since this instance started, served entirely from memory"
+    )
+    public ResponseEntity<List<LiveEndpointMetricsDto>> getLiveMetrics(
+            @Parameter(description = "Number of busiest endpoints to return")
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        if (limit < 1 || limit > 100) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        return ResponseEntity.ok(liveMetrics.snapshot(limit));
+    }
+    
+    @GetMapping("/ingest")
+    @Operation(
+        summary = "Get usage log ingest pipeline counters",
+        description = "Returns buffer depth and accepted/flushed/dropped/sampled-out/failed record counts for the write-behind logger"
+    )
+    public ResponseEntity<IngestStatsDto> getIngestStats() {
+        return ResponseEntity.ok(usageLogService.getIngestStats());
+    }
+    
     @GetMapping("/health")
     @Operation(
         summary = "Usage analytics health check",
         description = "Simple health check for the usage analytics system"
     )
     public ResponseEntity<Map<String, Object>> health() {
-        UsageStatsDto stats = usageLogService.getOverallStats();
+        UsageStatsDto stats = usageLogService.getOverallStats(null, null);
         return ResponseEntity.ok(Map.of(
             "status", "healthy",
             "totalRequestsLogged", stats.getTotalRequests(),
             "analyticsAvailable", stats.getTotalRequests() > 0
         ));
     }
+    
+    private static boolean isValidWindow(LocalDateTime from, LocalDateTime to) {
+        return from == null || to == null || from.isBefore(to);
+    }
 }
@@ -14,4 +14,7 @@ public class EndpointUsageDto {
     private Double averageResponseTimeMs;
     private Long minResponseTimeMs;
     private Long maxResponseTimeMs;
+    private Double p50ResponseTimeMs;
+    private Double p95ResponseTimeMs;
+    private Double p99ResponseTimeMs;
 }
@@ -0,0 +1,23 @@
+package com.jasonmaggard.smart_api.api.usage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestStatsDto {
+    private Integer bufferCapacity;
+    private Integer queued;
+    private String backpressurePolicy;
+    private Long accepted;
+    private Long flushed;
+    private Long dropped;
+    private Long sampledOut;
+    private Long failed;
+    private Long retries;
+    private Long batches;
+    private Long notSampled;
+    private Long lateRolledUp;
+}
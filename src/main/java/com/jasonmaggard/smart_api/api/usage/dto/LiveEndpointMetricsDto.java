@@ -0,0 +1,24 @@
+package com.jasonmaggard.smart_api.api.usage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LiveEndpointMetricsDto {
+    private String endpointPath;
+    private String httpMethod;
+    private Long requestCount;
+    private Long successCount;
+    private Long redirectCount;
+    private Long clientErrorCount;
+    private Long serverErrorCount;
+    private Double requestsPerSecond10s;
+    private Double requestsPerSecond1m;
+    private Double p50ResponseTimeMs;
+    private Double p90ResponseTimeMs;
+    private Double p99ResponseTimeMs;
+    private Double p999ResponseTimeMs;
+}
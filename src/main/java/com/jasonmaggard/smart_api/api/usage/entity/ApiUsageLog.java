@@ -15,7 +15,6 @@ import java.util.UUID;
 @Table(
     name = "api_usage_logs",
     indexes = {
-        @Index(name = "idx_api_usage_logs_created_at", columnList = "created_at"),
         @Index(name = "idx_api_usage_logs_endpoint_method", columnList = "endpoint_path, http_method")
     }
 )
@@ -50,6 +49,10 @@ public class ApiUsageLog {
     @Column(name = "ip_address", length = 45)
     private String ipAddress;
     
+    /** Number of requests this row stands for when logging is sampled */
+    @Column(name = "sample_weight", nullable = false)
+    private Integer sampleWeight = 1;
+    
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
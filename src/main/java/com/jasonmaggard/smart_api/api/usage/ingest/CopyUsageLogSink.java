@@ -0,0 +1,127 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import com.jasonmaggard.smart_api.api.usage.service.UsageRollupService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static com.jasonmaggard.smart_api.api.usage.ingest.UsageLogRows.*;
+
+/**
+ * Streams usage records into Postgres with COPY ... FROM STDIN (CSV), avoiding
+ * per-row statement overhead entirely. Enabled with usage.logging.sink=copy.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "usage.logging.sink", havingValue = "copy")
+@RequiredArgsConstructor
+public class CopyUsageLogSink implements UsageLogSink {
+
+    private static final String COPY_SQL =
+        "COPY api_usage_logs " +
+        "(endpoint_path, http_method, params_used, response_time_ms, status_code, user_agent, ip_address, " +
+        " sample_weight, created_at) " +
+        "FROM STDIN WITH (FORMAT csv)";
+
+    // Send rows to the server in chunks of roughly this many characters
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final UsageRollupService rollupService;
+
+    @Override
+    public void write(List<ApiUsageLog> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Connection connection = DataSourceUtils.getConnection(dataSource);
+            try {
+                long rows = copy(connection.unwrap(PGConnection.class), batch);
+                log.debug("Wrote {} usage records via COPY", rows);
+            } catch (SQLException e) {
+                throw new IllegalStateException("COPY into api_usage_logs failed: " + e.getMessage(), e);
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            }
+            rollUpLateRows(rollupService, batch);
+        });
+    }
+
+    private long copy(PGConnection connection, List<ApiUsageLog> batch) throws SQLException {
+        CopyIn copyIn = connection.getCopyAPI().copyIn(COPY_SQL);
+        try {
+            StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 1024);
+            for (ApiUsageLog usageLog : batch) {
+                appendRow(chunk, usageLog);
+                if (chunk.length() >= CHUNK_SIZE) {
+                    writeChunk(copyIn, chunk);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(copyIn, chunk);
+            }
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    void appendRow(StringBuilder out, ApiUsageLog usageLog) {
+        appendText(out, truncate(usageLog.getEndpointPath(), ENDPOINT_PATH_LENGTH)).append(',');
+        appendText(out, truncate(usageLog.getHttpMethod(), HTTP_METHOD_LENGTH)).append(',');
+        appendText(out, paramsJson(objectMapper, usageLog)).append(',');
+        appendNumber(out, usageLog.getResponseTimeMs()).append(',');
+        appendNumber(out, usageLog.getStatusCode()).append(',');
+        appendText(out, truncate(usageLog.getUserAgent(), USER_AGENT_LENGTH)).append(',');
+        appendText(out, truncate(usageLog.getIpAddress(), IP_ADDRESS_LENGTH)).append(',');
+        out.append(sampleWeight(usageLog)).append(',');
+        out.append(createdAt(usageLog)).append('\n');
+    }
+
+    /**
+     * In CSV mode an unquoted empty field is NULL, so every non-null string is quoted
+     */
+    private static StringBuilder appendText(StringBuilder out, String value) {
+        if (value == null) {
+            return out;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        return out.append('"');
+    }
+
+    private static StringBuilder appendNumber(StringBuilder out, Integer value) {
+        return value == null ? out : out.append(value.intValue());
+    }
+
+    private static void writeChunk(CopyIn copyIn, StringBuilder chunk) throws SQLException {
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+}
@@ -0,0 +1,71 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import com.jasonmaggard.smart_api.api.usage.service.UsageRollupService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import static com.jasonmaggard.smart_api.api.usage.ingest.UsageLogRows.*;
+
+/**
+ * Writes usage records with plain JDBC batch inserts, bypassing Hibernate entity management
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "usage.logging.sink", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JdbcBatchUsageLogSink implements UsageLogSink {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO api_usage_logs " +
+        "(endpoint_path, http_method, params_used, response_time_ms, status_code, user_agent, ip_address, " +
+        " sample_weight, created_at) " +
+        "VALUES (?, ?, CAST(? AS jsonb), ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final UsageRollupService rollupService;
+
+    @Override
+    public void write(List<ApiUsageLog> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, usageLog) -> {
+                ps.setString(1, truncate(usageLog.getEndpointPath(), ENDPOINT_PATH_LENGTH));
+                ps.setString(2, truncate(usageLog.getHttpMethod(), HTTP_METHOD_LENGTH));
+                ps.setString(3, paramsJson(objectMapper, usageLog));
+                setNullableInt(ps, 4, usageLog.getResponseTimeMs());
+                setNullableInt(ps, 5, usageLog.getStatusCode());
+                ps.setString(6, truncate(usageLog.getUserAgent(), USER_AGENT_LENGTH));
+                ps.setString(7, truncate(usageLog.getIpAddress(), IP_ADDRESS_LENGTH));
+                ps.setInt(8, sampleWeight(usageLog));
+                ps.setTimestamp(9, Timestamp.valueOf(createdAt(usageLog)));
+            });
+            rollUpLateRows(rollupService, batch);
+        });
+        log.debug("Wrote {} usage records via JDBC batch", batch.size());
+    }
+
+    private static void setNullableInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageLoggingConfig;
+import com.jasonmaggard.smart_api.api.usage.config.UsageLoggingConfig.BackpressurePolicy;
+import com.jasonmaggard.smart_api.api.usage.dto.IngestStatsDto;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.net.ConnectException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded write-behind buffer for usage records.
+ *
+ * Request threads only ever offer into a fixed-size ring buffer; a single dedicated
+ * writer thread drains it and hands batches to the configured {@link UsageLogSink}
+ * whenever a batch fills up or the flush interval elapses.
+ *
+ * A batch that fails for a transient reason (the database is unreachable, a connection
+ * dropped, a deadlock) is retried with exponential backoff; meanwhile the buffer fills and
+ * the backpressure policy decides what happens to new records. A batch that fails for any
+ * other reason is dropped so it cannot stall the pipeline.
+ */
+@Slf4j
+@Component
+public class UsageLogBuffer {
+
+    // Queued by stop() so a writer waiting out the flush interval wakes up at once
+    private static final ApiUsageLog WAKE_UP = new ApiUsageLog();
+
+    private final UsageLoggingConfig config;
+    private final UsageLogSink sink;
+    private final BlockingQueue<ApiUsageLog> queue;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public UsageLogBuffer(UsageLoggingConfig config, UsageLogSink sink) {
+        this.config = config;
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(config.getBufferCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::drainLoop, "usage-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Usage log writer started (capacity={}, batchSize={}, flushIntervalMs={}, backpressure={})",
+            config.getBufferCapacity(), config.getBatchSize(), config.getFlushIntervalMs(), config.getBackpressure());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writerThread == null) {
+            return;
+        }
+        // No room means the writer has records to take and is not waiting
+        queue.offer(WAKE_UP);
+        try {
+            writerThread.join(config.getShutdownTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Usage log writer did not drain within {}ms, {} records lost",
+                config.getShutdownTimeoutMs(), queue.size());
+        }
+    }
+
+    /**
+     * Offer a record to the buffer without blocking the caller beyond the configured policy.
+     *
+     * @return true if the record was accepted for writing
+     */
+    public boolean offer(ApiUsageLog usageLog) {
+        if (!running) {
+            dropped.increment();
+            return false;
+        }
+
+        boolean added;
+        BackpressurePolicy policy = config.getBackpressure();
+        if (policy == BackpressurePolicy.SAMPLE && isAboveHighWaterMark()
+                && ThreadLocalRandom.current().nextDouble() >= config.getSampleRate()) {
+            sampledOut.increment();
+            return false;
+        } else if (policy == BackpressurePolicy.BLOCK) {
+            try {
+                added = queue.offer(usageLog, config.getBlockTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                added = false;
+            }
+        } else {
+            added = queue.offer(usageLog);
+        }
+
+        if (added) {
+            accepted.increment();
+        } else {
+            dropped.increment();
+        }
+        return added;
+    }
+
+    public IngestStatsDto getStats() {
+        return new IngestStatsDto(
+            config.getBufferCapacity(),
+            queue.size(),
+            config.getBackpressure().name(),
+            accepted.sum(),
+            flushed.sum(),
+            dropped.sum(),
+            sampledOut.sum(),
+            failed.sum(),
+            retries.sum(),
+            batches.sum(),
+            null, // sampling happens upstream of the buffer
+            null  // and late rows are rolled up by the sink
+        );
+    }
+
+    private boolean isAboveHighWaterMark() {
+        return queue.size() >= config.getBufferCapacity() * config.getSampleHighWaterMark();
+    }
+
+    private void drainLoop() {
+        int batchSize = config.getBatchSize();
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMs());
+        List<ApiUsageLog> batch = new ArrayList<>(batchSize);
+        long batchStartedAt = 0L;
+        boolean interrupted = false;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                long waitNanos = batch.isEmpty()
+                    ? flushIntervalNanos
+                    : Math.max(0L, batchStartedAt + flushIntervalNanos - System.nanoTime());
+                ApiUsageLog next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (next != null && next != WAKE_UP) {
+                    if (batch.isEmpty()) {
+                        batchStartedAt = System.nanoTime();
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                    batch.removeIf(queued -> queued == WAKE_UP);
+                }
+            } catch (InterruptedException e) {
+                // Stop taking records and drain what is queued; the flag is restored once
+                // drained, since an interrupted thread could not poll the queue
+                interrupted = true;
+                running = false;
+            }
+
+            boolean full = batch.size() >= batchSize;
+            boolean due = !batch.isEmpty() && System.nanoTime() - batchStartedAt >= flushIntervalNanos;
+            if (full || due || (!running && !batch.isEmpty())) {
+                interrupted |= flush(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            interrupted |= flush(batch);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Usage log writer stopped");
+    }
+
+    /**
+     * @return whether the writer was interrupted while backing off; like an interrupt while
+     * polling, it stops the writer and is restored once the queue is drained
+     */
+    private boolean flush(List<ApiUsageLog> batch) {
+        long backoffMs = config.getRetryInitialBackoffMs();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                sink.write(batch);
+                flushed.add(batch.size());
+                batches.increment();
+                return interrupted;
+            } catch (Exception e) {
+                // Once stopping, the shutdown timeout bounds how long the writer may keep going
+                if (!isTransient(e) || !running) {
+                    failed.add(batch.size());
+                    log.error("Failed to write batch of {} usage records: {}", batch.size(), e.getMessage());
+                    return interrupted;
+                }
+                retries.increment();
+                log.warn("Transient failure writing batch of {} usage records, retrying in {}ms: {}",
+                    batch.size(), backoffMs, e.getMessage());
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                running = false;
+            }
+            backoffMs = Math.min(config.getRetryMaxBackoffMs(), backoffMs * 2);
+        }
+    }
+
+    /**
+     * Whether a failed write could succeed if tried again: the database was unreachable or
+     * the connection broke (SQLSTATE class 08, or 57P for a server shutting down), or the
+     * failure is one the driver or Spring marks as transient
+     */
+    static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof SQLTransientException
+                    || cause instanceof SQLRecoverableException
+                    || cause instanceof ConnectException) {
+                return true;
+            }
+            if (cause instanceof SQLException sql && sql.getSQLState() != null
+                    && (sql.getSQLState().startsWith("08") || sql.getSQLState().startsWith("57P"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
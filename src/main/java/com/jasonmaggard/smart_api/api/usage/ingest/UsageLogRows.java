@@ -0,0 +1,98 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository.LateRow;
+import com.jasonmaggard.smart_api.api.usage.service.UsageRollupService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Column-level helpers shared by the usage log sinks
+ */
+@Slf4j
+final class UsageLogRows {
+
+    static final int ENDPOINT_PATH_LENGTH = 255;
+    static final int HTTP_METHOD_LENGTH = 10;
+    static final int USER_AGENT_LENGTH = 255;
+    static final int IP_ADDRESS_LENGTH = 45;
+
+    private UsageLogRows() {
+    }
+
+    /**
+     * Clamp values to their column length, and drop NUL characters Postgres text cannot
+     * hold, so one odd header can't fail the whole batch. A cut never splits a surrogate pair.
+     */
+    static String truncate(String value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        if (value.indexOf('\0') >= 0) {
+            value = value.replace("\0", "");
+        }
+        if (value.length() <= maxLength) {
+            return value;
+        }
+        int end = Character.isHighSurrogate(value.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+        return value.substring(0, end);
+    }
+
+    static String paramsJson(ObjectMapper objectMapper, ApiUsageLog usageLog) {
+        if (usageLog.getParamsUsed() == null) {
+            return null;
+        }
+        try {
+            String json = objectMapper.writeValueAsString(usageLog.getParamsUsed());
+            // jsonb rejects the escaped NUL, and with it the whole batch
+            if (json.contains("\\u0000")) {
+                log.warn("Dropping params holding a NUL character for {} {}",
+                    usageLog.getHttpMethod(), usageLog.getEndpointPath());
+                return null;
+            }
+            return json;
+        } catch (JsonProcessingException e) {
+            log.warn("Dropping unserializable params for {} {}: {}",
+                usageLog.getHttpMethod(), usageLog.getEndpointPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    static int sampleWeight(ApiUsageLog usageLog) {
+        return usageLog.getSampleWeight() != null ? usageLog.getSampleWeight() : 1;
+    }
+
+    static LocalDateTime createdAt(ApiUsageLog usageLog) {
+        return usageLog.getCreatedAt() != null ? usageLog.getCreatedAt() : LocalDateTime.now();
+    }
+
+    /**
+     * Fold the records of a batch that landed behind the rollup watermark into the
+     * rollups. Call from inside the transaction that writes the batch.
+     */
+    static void rollUpLateRows(UsageRollupService rollupService, List<ApiUsageLog> batch) {
+        LocalDateTime watermark = rollupService.watermarkForWrite();
+        if (watermark == null) {
+            return;
+        }
+        List<LateRow> late = new ArrayList<>();
+        for (ApiUsageLog usageLog : batch) {
+            if (usageLog.getCreatedAt() != null && usageLog.getCreatedAt().isBefore(watermark)) {
+                late.add(new LateRow(
+                    usageLog.getCreatedAt(),
+                    truncate(usageLog.getEndpointPath(), ENDPOINT_PATH_LENGTH),
+                    truncate(usageLog.getHttpMethod(), HTTP_METHOD_LENGTH),
+                    usageLog.getStatusCode(),
+                    usageLog.getResponseTimeMs(),
+                    sampleWeight(usageLog)
+                ));
+            }
+        }
+        rollupService.rollUpLateRows(late, watermark);
+    }
+}
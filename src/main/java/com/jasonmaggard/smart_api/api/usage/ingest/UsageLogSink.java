@@ -0,0 +1,17 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+
+import java.util.List;
+
+/**
+ * Destination for batches of usage records drained from the {@link UsageLogBuffer}
+ */
+public interface UsageLogSink {
+
+    /**
+     * Persist a batch of usage records. Implementations should write the whole
+     * batch in a single transaction and throw if it could not be written.
+     */
+    void write(List<ApiUsageLog> batch);
+}
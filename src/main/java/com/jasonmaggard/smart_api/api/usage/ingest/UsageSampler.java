@@ -0,0 +1,229 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageSamplingConfig;
+import com.jasonmaggard.smart_api.api.usage.config.UsageSamplingConfig.EndpointRule;
+import com.jasonmaggard.smart_api.api.usage.config.UsageSamplingConfig.SamplingMode;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which usage records reach the write-behind buffer and how many requests each
+ * one stands for.
+ *
+ * Every kept record carries a whole-number sample_weight, and aggregates sum weights
+ * instead of counting rows, so totals and averages stay unbiased under sampling. FIXED
+ * and ADAPTIVE keep 1 in N requests with weight N. RESERVOIR keeps a uniform sample of up
+ * to reservoirSize requests per endpoint per interval and, when the interval ends, splits
+ * the number of requests seen across the kept records.
+ */
+@Slf4j
+@Component
+public class UsageSampler {
+
+    private static final String OVERFLOW_KEY = "(other)";
+
+    private final UsageSamplingConfig config;
+    private final UsageLogBuffer buffer;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, Rule> rulesByRoute = new ConcurrentHashMap<>();
+    private final Map<String, Reservoir> reservoirs = new ConcurrentHashMap<>();
+    private final LongAdder notSampled = new LongAdder();
+
+    private ScheduledExecutorService reservoirFlusher;
+
+    public UsageSampler(UsageSamplingConfig config, UsageLogBuffer buffer) {
+        this.config = config;
+        this.buffer = buffer;
+    }
+
+    /** Resolved sampling settings for one route */
+    private record Rule(SamplingMode mode, int oneIn, int reservoirSize) {
+    }
+
+    @PostConstruct
+    public void start() {
+        reservoirFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "usage-sampler-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getReservoirIntervalMs();
+        reservoirFlusher.scheduleAtFixedRate(this::flushReservoirs, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Usage sampling mode {} (rate={}, {} endpoint rules)",
+            config.getMode(), config.getRate(), config.getEndpoints().size());
+    }
+
+    /**
+     * Hand whatever the reservoirs hold to the buffer before it shuts down
+     */
+    @PreDestroy
+    public void stop() {
+        if (reservoirFlusher != null) {
+            reservoirFlusher.shutdown();
+        }
+        flushReservoirs();
+    }
+
+    /**
+     * Sample a usage record for the given route (the matched handler pattern, or the
+     * request path) and pass it on to the buffer if it is kept
+     */
+    public void submit(ApiUsageLog usageLog, String route) {
+        Rule rule = ruleFor(route);
+        switch (rule.mode()) {
+            case ALL -> emit(usageLog, 1);
+            case FIXED -> sampleFixed(usageLog, rule);
+            case ADAPTIVE -> {
+                if (isErrorOrSlow(usageLog)) {
+                    emit(usageLog, 1);
+                } else {
+                    sampleFixed(usageLog, rule);
+                }
+            }
+            case RESERVOIR -> reservoirFor(usageLog.getHttpMethod() + " " + route, rule).add(usageLog);
+        }
+    }
+
+    /**
+     * Requests seen but not logged because sampling left them out
+     */
+    public long getNotSampled() {
+        return notSampled.sum();
+    }
+
+    private void sampleFixed(ApiUsageLog usageLog, Rule rule) {
+        int oneIn = rule.oneIn();
+        if (oneIn > 0 && (oneIn == 1 || ThreadLocalRandom.current().nextInt(oneIn) == 0)) {
+            emit(usageLog, oneIn);
+        } else {
+            notSampled.increment();
+        }
+    }
+
+    private boolean isErrorOrSlow(ApiUsageLog usageLog) {
+        Integer status = usageLog.getStatusCode();
+        Integer responseTime = usageLog.getResponseTimeMs();
+        return (status != null && status >= config.getErrorStatusThreshold())
+            || (responseTime != null && responseTime >= config.getSlowThresholdMs());
+    }
+
+    private void emit(ApiUsageLog usageLog, int weight) {
+        usageLog.setSampleWeight(weight);
+        buffer.offer(usageLog);
+    }
+
+    private Reservoir reservoirFor(String key, Rule rule) {
+        Reservoir reservoir = reservoirs.get(key);
+        if (reservoir != null) {
+            return reservoir;
+        }
+        if (reservoirs.size() >= config.getMaxReservoirs()) {
+            key = OVERFLOW_KEY;
+        }
+        return reservoirs.computeIfAbsent(key, k -> new Reservoir(rule.reservoirSize()));
+    }
+
+    private void flushReservoirs() {
+        try {
+            for (Reservoir reservoir : reservoirs.values()) {
+                ApiUsageLog[] sample = reservoir.drain();
+                for (ApiUsageLog usageLog : sample) {
+                    buffer.offer(usageLog);
+                }
+            }
+        } catch (Exception e) {
+            // Keep the scheduled flush alive whatever a single run hits
+            log.error("Failed to flush usage sampling reservoirs: {}", e.getMessage());
+        }
+    }
+
+    private Rule ruleFor(String route) {
+        Rule rule = rulesByRoute.get(route);
+        if (rule != null) {
+            return rule;
+        }
+        rule = resolve(route);
+        // Unmatched request paths can be unbounded, so only cache up to the cap
+        if (rulesByRoute.size() < config.getMaxReservoirs()) {
+            rulesByRoute.put(route, rule);
+        }
+        return rule;
+    }
+
+    private Rule resolve(String route) {
+        Comparator<String> specificity = pathMatcher.getPatternComparator(route);
+        EndpointRule override = config.getEndpoints().entrySet().stream()
+            .filter(entry -> pathMatcher.match(entry.getKey(), route))
+            .min((a, b) -> specificity.compare(a.getKey(), b.getKey()))
+            .map(Map.Entry::getValue)
+            .orElse(null);
+
+        SamplingMode mode = config.getMode();
+        double rate = config.getRate();
+        int reservoirSize = config.getReservoirSize();
+        if (override != null) {
+            mode = override.getMode() != null ? override.getMode() : mode;
+            rate = override.getRate() != null ? override.getRate() : rate;
+            reservoirSize = override.getReservoirSize() != null ? override.getReservoirSize() : reservoirSize;
+        }
+
+        int oneIn = rate >= 1.0 ? 1 : rate <= 0.0 ? 0 : (int) Math.max(1, Math.round(1.0 / rate));
+        return new Rule(mode, oneIn, Math.max(1, reservoirSize));
+    }
+
+    /**
+     * Algorithm R reservoir over one flush interval
+     */
+    private final class Reservoir {
+        private final ApiUsageLog[] items;
+        private int size;
+        private long seen;
+
+        private Reservoir(int capacity) {
+            this.items = new ApiUsageLog[capacity];
+        }
+
+        private synchronized void add(ApiUsageLog usageLog) {
+            seen++;
+            if (size < items.length) {
+                items[size++] = usageLog;
+                return;
+            }
+            notSampled.increment();
+            long slot = ThreadLocalRandom.current().nextLong(seen);
+            if (slot < items.length) {
+                items[(int) slot] = usageLog;
+            }
+        }
+
+        /**
+         * Take this interval's sample, weighted so the weights add up to the requests seen
+         */
+        private synchronized ApiUsageLog[] drain() {
+            ApiUsageLog[] sample = Arrays.copyOf(items, size);
+            long base = seen / Math.max(1, size);
+            long extra = seen % Math.max(1, size);
+            for (int i = 0; i < sample.length; i++) {
+                sample[i].setSampleWeight((int) (i < extra ? base + 1 : base));
+            }
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+            seen = 0;
+            return sample;
+        }
+    }
+}
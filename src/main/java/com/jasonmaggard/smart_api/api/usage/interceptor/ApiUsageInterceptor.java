@@ -1,6 +1,7 @@
 package com.jasonmaggard.smart_api.api.usage.interceptor;
 
 import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import com.jasonmaggard.smart_api.api.usage.metrics.LiveMetricsRegistry;
 import com.jasonmaggard.smart_api.api.usage.service.ApiUsageLogService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -10,6 +11,7 @@ import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 
 import java.time.LocalDateTime;
 
@@ -19,13 +21,40 @@ import java.time.LocalDateTime;
 public class ApiUsageInterceptor implements HandlerInterceptor {
     
     private final ApiUsageLogService usageLogService;
-    private static final String START_TIME_ATTRIBUTE = "startTime";
+    private final LiveMetricsRegistry liveMetrics;
+    
+    // Skip actuator, swagger UI, static resources, and JobRunr dashboard
+    private static final SkipPathMatcher SKIP_PATHS = new SkipPathMatcher(
+        new String[] {"/actuator", "/swagger-ui", "/v3/api-docs", "/webjars", "/static", "/jobrunr"},
+        new String[] {".css", ".js", ".ico", ".png", ".jpg"}
+    );
+    
+    // Checked in order; the first usable value wins
+    private static final String[] CLIENT_IP_HEADERS = {
+        "X-Forwarded-For",
+        "X-Real-IP",
+        "Proxy-Client-IP",
+        "WL-Proxy-Client-IP",
+        "HTTP_X_FORWARDED_FOR",
+        "HTTP_X_FORWARDED",
+        "HTTP_X_CLUSTER_CLIENT_IP",
+        "HTTP_CLIENT_IP",
+        "HTTP_FORWARDED_FOR",
+        "HTTP_FORWARDED",
+        "HTTP_VIA",
+        "REMOTE_ADDR"
+    };
+    
+    // The start time rides on the request as one boxed Long. A per-thread slot would save
+    // that on a pooled platform thread, but with virtual threads every request is a new
+    // thread and the slot, its map entry and table would be allocated per request instead.
+    private static final String START_NANOS = ApiUsageInterceptor.class.getName() + ".startNanos";
     
     @Override
     public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, 
                            @NonNull Object handler) {
         // Record start time
-        request.setAttribute(START_TIME_ATTRIBUTE, System.currentTimeMillis());
+        request.setAttribute(START_NANOS, System.nanoTime());
         return true;
     }
     
@@ -34,35 +63,36 @@ public class ApiUsageInterceptor implements HandlerInterceptor {
                                 @NonNull Object handler, @Nullable Exception ex) {
         try {
             // Calculate response time
-            Long startTime = (Long) request.getAttribute(START_TIME_ATTRIBUTE);
-            long responseTimeMs = startTime != null 
-                ? System.currentTimeMillis() - startTime 
-                : 0L;
+            Object start = request.getAttribute(START_NANOS);
+            long elapsedNanos = start instanceof Long startNanos ? System.nanoTime() - startNanos : 0L;
             
-            // Extract request details
             String endpointPath = request.getRequestURI();
-            String httpMethod = request.getMethod();
-            int statusCode = response.getStatus();
-            String userAgent = request.getHeader("User-Agent");
-            String ipAddress = getClientIpAddress(request);
-            
-            // Skip logging for certain endpoints (actuator, swagger, static resources)
             if (shouldSkipLogging(endpointPath)) {
                 return;
             }
             
+            // Extract request details
+            String httpMethod = request.getMethod();
+            int statusCode = response.getStatus();
+            
+            // Live metrics and sampling rules are keyed by the route pattern so path variables
+            // don't explode cardinality
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String route = pattern instanceof String ? (String) pattern : endpointPath;
+            liveMetrics.record(route, httpMethod, statusCode, elapsedNanos / 1_000);
+            
             // Create and save usage log
             ApiUsageLog usageLog = new ApiUsageLog();
             usageLog.setEndpointPath(endpointPath);
             usageLog.setHttpMethod(httpMethod);
-            usageLog.setResponseTimeMs((int) responseTimeMs);
+            usageLog.setResponseTimeMs((int) (elapsedNanos / 1_000_000));
             usageLog.setStatusCode(statusCode);
-            usageLog.setUserAgent(userAgent);
-            usageLog.setIpAddress(ipAddress);
+            usageLog.setUserAgent(request.getHeader("User-Agent"));
+            usageLog.setIpAddress(getClientIpAddress(request));
             usageLog.setCreatedAt(LocalDateTime.now());
             
-            // Log asynchronously to avoid blocking response
-            usageLogService.logApiUsage(usageLog);
+            // Hand off to the sampler and write-behind buffer to avoid blocking response
+            usageLogService.logApiUsage(usageLog, route);
             
         } catch (Exception e) {
             log.error("Error logging API usage: {}", e.getMessage());
@@ -73,51 +103,49 @@ public class ApiUsageInterceptor implements HandlerInterceptor {
     /**
      * Extract client IP address, handling proxy headers
      */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String[] headerNames = {
-            "X-Forwarded-For",
-            "X-Real-IP",
-            "Proxy-Client-IP",
-            "WL-Proxy-Client-IP",
-            "HTTP_X_FORWARDED_FOR",
-            "HTTP_X_FORWARDED",
-            "HTTP_X_CLUSTER_CLIENT_IP",
-            "HTTP_CLIENT_IP",
-            "HTTP_FORWARDED_FOR",
-            "HTTP_FORWARDED",
-            "HTTP_VIA",
-            "REMOTE_ADDR"
-        };
-        
-        for (String header : headerNames) {
-            String ip = request.getHeader(header);
-            if (ip != null && !ip.isEmpty() && !"unknown".equalsIgnoreCase(ip)) {
-                // Handle multiple IPs in X-Forwarded-For
-                if (ip.contains(",")) {
-                    ip = ip.split(",")[0].trim();
+    static String getClientIpAddress(HttpServletRequest request) {
+        for (String header : CLIENT_IP_HEADERS) {
+            String value = request.getHeader(header);
+            if (value != null) {
+                String ip = firstAddress(value);
+                if (ip != null) {
+                    return ip;
                 }
-                return ip;
             }
         }
         
         return request.getRemoteAddr();
     }
     
+    /**
+     * First entry of a comma-separated address list such as X-Forwarded-For, trimmed in a
+     * single pass. Returns null for empty or "unknown" entries, and only allocates when the
+     * value actually has to be cut.
+     */
+    static String firstAddress(String value) {
+        int end = value.indexOf(',');
+        if (end < 0) {
+            end = value.length();
+        }
+        int begin = 0;
+        while (begin < end && value.charAt(begin) <= ' ') {
+            begin++;
+        }
+        while (end > begin && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        
+        int length = end - begin;
+        if (length == 0 || (length == 7 && value.regionMatches(true, begin, "unknown", 0, 7))) {
+            return null;
+        }
+        return length == value.length() ? value : value.substring(begin, end);
+    }
+    
     /**
      * Determine if we should skip logging for this endpoint
      */
-    private boolean shouldSkipLogging(String path) {
-        // Skip actuator, swagger UI, static resources, and JobRunr dashboard
-        return path.startsWith("/actuator") ||
-               path.startsWith("/swagger-ui") ||
-               path.startsWith("/v3/api-docs") ||
-               path.startsWith("/webjars") ||
-               path.startsWith("/static") ||
-               path.startsWith("/jobrunr") ||
-               path.endsWith(".css") ||
-               path.endsWith(".js") ||
-               path.endsWith(".ico") ||
-               path.endsWith(".png") ||
-               path.endsWith(".jpg");
+    static boolean shouldSkipLogging(String path) {
+        return SKIP_PATHS.matches(path);
     }
 }
@@ -0,0 +1,84 @@
+package com.jasonmaggard.smart_api.api.usage.interceptor;
+
+/**
+ * Precompiled prefix/suffix matcher for request paths that should not be logged.
+ *
+ * Prefixes live in a trie walked forwards from the start of the path and suffixes in a
+ * trie walked backwards from the end, so a lookup touches each character at most twice,
+ * never allocates, and costs the same however many patterns are configured.
+ */
+final class SkipPathMatcher {
+
+    private static final int ALPHABET = 128;
+
+    private final Node prefixes = new Node();
+    private final Node suffixes = new Node();
+
+    SkipPathMatcher(String[] prefixPatterns, String[] suffixPatterns) {
+        for (String prefix : prefixPatterns) {
+            Node node = prefixes;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.child(prefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+        for (String suffix : suffixPatterns) {
+            Node node = suffixes;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.child(suffix.charAt(i));
+            }
+            node.terminal = true;
+        }
+    }
+
+    boolean matches(String path) {
+        return startsWithAny(path) || endsWithAny(path);
+    }
+
+    private boolean startsWithAny(String path) {
+        Node node = prefixes;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.next(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean endsWithAny(String path) {
+        Node node = suffixes;
+        for (int i = path.length() - 1; i >= 0; i--) {
+            node = node.next(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        private final Node[] children = new Node[ALPHABET];
+        private boolean terminal;
+
+        private Node child(char c) {
+            if (c >= ALPHABET) {
+                throw new IllegalArgumentException("Skip patterns must be ASCII");
+            }
+            if (children[c] == null) {
+                children[c] = new Node();
+            }
+            return children[c];
+        }
+
+        private Node next(char c) {
+            return c < ALPHABET ? children[c] : null;
+        }
+    }
+}
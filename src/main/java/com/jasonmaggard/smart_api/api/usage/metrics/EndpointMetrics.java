@@ -0,0 +1,96 @@
+package com.jasonmaggard.smart_api.api.usage.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for one endpoint + method: request counts and latency histograms per
+ * status class, plus a ring of per-second request counts for rate windows up to a minute.
+ */
+public final class EndpointMetrics {
+
+    /** Index 0 holds responses outside 1xx-5xx, indexes 1-5 the matching status class */
+    public static final int STATUS_CLASSES = 6;
+
+    // One extra slot so a full minute of complete seconds fits next to the current one
+    static final int WINDOW_SECONDS = 61;
+
+    // Each slot packs the epoch second in the high 32 bits and that second's count in the low 32
+    private static final int COUNT_BITS = 32;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final LongAdder[] counts = new LongAdder[STATUS_CLASSES];
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STATUS_CLASSES];
+    private final AtomicLongArray secondSlots = new AtomicLongArray(WINDOW_SECONDS);
+
+    public EndpointMetrics() {
+        for (int i = 0; i < STATUS_CLASSES; i++) {
+            counts[i] = new LongAdder();
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(int statusCode, long latencyMicros, long epochSecond) {
+        int statusClass = statusClass(statusCode);
+        counts[statusClass].increment();
+        histograms[statusClass].record(latencyMicros);
+        tick(epochSecond);
+    }
+
+    public long count(int statusClass) {
+        return counts[statusClass].sum();
+    }
+
+    public long totalCount() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Merge every status class histogram into one bucket count array
+     */
+    public long[] latencySnapshot() {
+        long[] merged = new long[LatencyHistogram.BUCKET_COUNT];
+        for (LatencyHistogram histogram : histograms) {
+            histogram.addTo(merged);
+        }
+        return merged;
+    }
+
+    /**
+     * Average requests per second over the last windowSeconds complete seconds
+     */
+    public double ratePerSecond(int windowSeconds, long nowEpochSecond) {
+        int window = Math.min(windowSeconds, WINDOW_SECONDS - 1);
+        long oldest = nowEpochSecond - window;
+        long total = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            long slot = secondSlots.get(i);
+            long second = slot >>> COUNT_BITS;
+            if (second >= oldest && second < nowEpochSecond) {
+                total += slot & COUNT_MASK;
+            }
+        }
+        return (double) total / window;
+    }
+
+    private void tick(long epochSecond) {
+        int index = (int) (epochSecond % WINDOW_SECONDS);
+        long stamp = epochSecond << COUNT_BITS;
+        while (true) {
+            long current = secondSlots.get(index);
+            long next = (current & ~COUNT_MASK) == stamp ? current + 1 : stamp | 1;
+            if (secondSlots.compareAndSet(index, current, next)) {
+                return;
+            }
+        }
+    }
+
+    static int statusClass(int statusCode) {
+        int statusClass = statusCode / 100;
+        return statusClass >= 1 && statusClass <= 5 ? statusClass : 0;
+    }
+}
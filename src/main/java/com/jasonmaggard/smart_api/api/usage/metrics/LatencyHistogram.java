@@ -0,0 +1,92 @@
+package com.jasonmaggard.smart_api.api.usage.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free log-linear latency histogram in the style of HdrHistogram.
+ *
+ * Values are split into power-of-two ranges, each divided into 16 linear sub-buckets,
+ * giving roughly 6% relative precision from 1 up to 2^36 with 528 buckets. Recording is
+ * a bucket index computation plus one atomic increment and never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 35;
+
+    /** Largest value that gets its own bucket; anything above is clamped into the last one */
+    public static final long MAX_TRACKABLE_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    /** Number of buckets needed to cover 0..MAX_TRACKABLE_VALUE */
+    public static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long value) {
+        counts.incrementAndGet(bucketIndex(value));
+    }
+
+    /**
+     * Add this histogram's current counts into the given array
+     */
+    public void addTo(long[] target) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            target[i] += counts.get(i);
+        }
+    }
+
+    public static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        long clamped = Math.min(value, MAX_TRACKABLE_VALUE);
+        int exponent = 63 - Long.numberOfLeadingZeros(clamped);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (clamped >>> shift);
+    }
+
+    public static long bucketLowerBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long mantissa = index - (long) shift * SUB_BUCKET_COUNT;
+        return mantissa << shift;
+    }
+
+    public static long bucketUpperBound(int index) {
+        return index + 1 < BUCKET_COUNT ? bucketLowerBound(index + 1) : MAX_TRACKABLE_VALUE + 1;
+    }
+
+    /**
+     * Representative value for a bucket: the middle of its range
+     */
+    public static double bucketMidpoint(int index) {
+        return (bucketLowerBound(index) + bucketUpperBound(index) - 1) / 2.0;
+    }
+
+    /**
+     * Value at the given quantile (0..1) of a bucket count array, taken as the midpoint
+     * of the bucket that holds it. Returns null when the array is empty.
+     */
+    public static Double valueAtQuantile(long[] bucketCounts, double quantile) {
+        long total = 0;
+        for (long count : bucketCounts) {
+            total += count;
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if (seen >= rank) {
+                return bucketMidpoint(i);
+            }
+        }
+        return (double) MAX_TRACKABLE_VALUE;
+    }
+}
@@ -0,0 +1,96 @@
+package com.jasonmaggard.smart_api.api.usage.metrics;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageLoggingConfig;
+import com.jasonmaggard.smart_api.api.usage.dto.LiveEndpointMetricsDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process, lock-free registry of live per-endpoint metrics.
+ *
+ * Recording an already-seen endpoint is two map lookups, a LongAdder increment, one
+ * atomic histogram increment and a CAS on the per-second ring: no allocation and no
+ * locks. Endpoints beyond the configured cap are folded into a single overflow entry.
+ */
+@Component
+@RequiredArgsConstructor
+public class LiveMetricsRegistry {
+
+    static final String OVERFLOW_PATH = "(other)";
+
+    private static final double MICROS_PER_MS = 1000.0;
+
+    private final UsageLoggingConfig config;
+    private final Map<String, Map<String, EndpointMetrics>> endpoints = new ConcurrentHashMap<>();
+    private final AtomicInteger endpointCount = new AtomicInteger();
+
+    public void record(String path, String method, int statusCode, long latencyMicros) {
+        metricsFor(path, method).record(statusCode, latencyMicros, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Snapshot of every tracked endpoint, busiest first
+     */
+    public List<LiveEndpointMetricsDto> snapshot(int limit) {
+        long now = System.currentTimeMillis() / 1000;
+        List<LiveEndpointMetricsDto> result = new ArrayList<>();
+        endpoints.forEach((path, methods) -> methods.forEach((method, metrics) ->
+            result.add(toDto(path, method, metrics, now))));
+        result.sort(Comparator.comparing(LiveEndpointMetricsDto::getRequestCount).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    private EndpointMetrics metricsFor(String path, String method) {
+        Map<String, EndpointMetrics> methods = endpoints.get(path);
+        if (methods != null) {
+            EndpointMetrics metrics = methods.get(method);
+            if (metrics != null) {
+                return metrics;
+            }
+        }
+        return register(path, method);
+    }
+
+    private EndpointMetrics register(String path, String method) {
+        String key = path;
+        if (endpointCount.get() >= config.getLiveMaxEndpoints() && !endpoints.containsKey(path)) {
+            key = OVERFLOW_PATH;
+        }
+        return endpoints
+            .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(method, m -> {
+                endpointCount.incrementAndGet();
+                return new EndpointMetrics();
+            });
+    }
+
+    private static LiveEndpointMetricsDto toDto(String path, String method, EndpointMetrics metrics, long now) {
+        long[] latency = metrics.latencySnapshot();
+        return new LiveEndpointMetricsDto(
+            path,
+            method,
+            metrics.totalCount(),
+            metrics.count(2),
+            metrics.count(3),
+            metrics.count(4),
+            metrics.count(5),
+            metrics.ratePerSecond(10, now),
+            metrics.ratePerSecond(60, now),
+            toMillis(LatencyHistogram.valueAtQuantile(latency, 0.50)),
+            toMillis(LatencyHistogram.valueAtQuantile(latency, 0.90)),
+            toMillis(LatencyHistogram.valueAtQuantile(latency, 0.99)),
+            toMillis(LatencyHistogram.valueAtQuantile(latency, 0.999))
+        );
+    }
+
+    private static Double toMillis(Double micros) {
+        return micros != null ? micros / MICROS_PER_MS : null;
+    }
+}
@@ -0,0 +1,136 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A [from, to) query window split into the coarsest rollup buckets that fit inside it
+ * (DAY, then HOUR, then MINUTE at the edges) plus raw sub-minute edges.
+ *
+ * The plan is made without knowing the watermark. When rendered, rollup buckets are
+ * limited to bucket_start < watermark and raw edges to created_at < watermark, and the
+ * raw tail [max(from, watermark), to) is added. Because the bucket holding the watermark
+ * contains exactly the rows in [bucket_start, watermark), every row in the window is
+ * counted once, and the whole thing stays inside one statement. A null bound is open.
+ */
+final class RollupWindow {
+
+    static final RollupWindow ALL = new RollupWindow(null, null);
+
+    private static final String WATERMARK =
+        "COALESCE((SELECT rolled_up_to FROM api_usage_rollup_state WHERE id = 1), '-infinity'::timestamp)";
+
+    private enum Granularity {
+        MINUTE(ChronoUnit.MINUTES), HOUR(ChronoUnit.HOURS), DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    /** Aligned rollup range, or a raw range when granularity is null */
+    private record Segment(Granularity granularity, LocalDateTime start, LocalDateTime end) {
+    }
+
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final List<Segment> segments = new ArrayList<>();
+
+    private RollupWindow(LocalDateTime from, LocalDateTime to) {
+        this.from = from;
+        this.to = to;
+        cover(from, to, Granularity.DAY);
+    }
+
+    static RollupWindow of(LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return ALL;
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("Window start must be before its end");
+        }
+        return new RollupWindow(from, to);
+    }
+
+    /**
+     * Render the window as UNION ALL branches: one per rollup segment reading rollupSelect,
+     * one per raw range reading rawSelect grouped by rawGroupBy. Both selects must end in
+     * "WHERE " and filter (with its filterArgs) is appended to every branch.
+     */
+    String union(String rollupSelect, String rawSelect, String rawGroupBy,
+                 String filter, List<Object> filterArgs, List<Object> args) {
+        List<String> branches = new ArrayList<>();
+        for (Segment segment : segments) {
+            StringBuilder sql = new StringBuilder();
+            if (segment.granularity() != null) {
+                sql.append(rollupSelect)
+                    .append("granularity = '").append(segment.granularity().name()).append("'")
+                    .append(range("bucket_start", segment.start(), segment.end(), args))
+                    .append(" AND bucket_start < ").append(WATERMARK);
+            } else {
+                sql.append(rawSelect)
+                    .append("created_at < ").append(WATERMARK)
+                    .append(range("created_at", segment.start(), segment.end(), args));
+            }
+            sql.append(filter);
+            args.addAll(filterArgs);
+            if (segment.granularity() == null) {
+                sql.append(" GROUP BY ").append(rawGroupBy);
+            }
+            branches.add(sql.toString());
+        }
+
+        // Everything the rollup job has not reached yet
+        branches.add(rawSelect + "created_at >= " + WATERMARK + range("created_at", from, to, args) +
+            filter + " GROUP BY " + rawGroupBy);
+        args.addAll(filterArgs);
+
+        return String.join(" UNION ALL ", branches);
+    }
+
+    private void cover(LocalDateTime start, LocalDateTime end, Granularity granularity) {
+        if (granularity == null) {
+            segments.add(new Segment(null, start, end));
+            return;
+        }
+
+        LocalDateTime alignedStart = start != null ? ceil(start, granularity.unit) : null;
+        LocalDateTime alignedEnd = end != null ? end.truncatedTo(granularity.unit) : null;
+        Granularity finer = granularity.ordinal() > 0 ? Granularity.values()[granularity.ordinal() - 1] : null;
+
+        if (alignedStart != null && alignedEnd != null && !alignedStart.isBefore(alignedEnd)) {
+            cover(start, end, finer);
+            return;
+        }
+        if (start != null && start.isBefore(alignedStart)) {
+            cover(start, alignedStart, finer);
+        }
+        segments.add(new Segment(granularity, alignedStart, alignedEnd));
+        if (end != null && alignedEnd.isBefore(end)) {
+            cover(alignedEnd, end, finer);
+        }
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime floor = time.truncatedTo(unit);
+        return floor.isBefore(time) ? floor.plus(1, unit) : floor;
+    }
+
+    private static String range(String column, LocalDateTime start, LocalDateTime end, List<Object> args) {
+        StringBuilder sql = new StringBuilder();
+        if (start != null) {
+            sql.append(" AND ").append(column).append(" >= ?");
+            args.add(Timestamp.valueOf(start));
+        }
+        if (end != null) {
+            sql.append(" AND ").append(column).append(" < ?");
+            args.add(Timestamp.valueOf(end));
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Pages raw usage logs in (created_at, id) order with keyset pagination, so each page is a
+ * range scan on the (created_at, id) primary key no matter how deep the export is.
+ * Rows are handed to the caller straight from the ResultSet, never mapped to entities.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UsageLogExportRepository {
+
+    private static final String COLUMNS =
+        "id, endpoint_path, http_method, params_used::text AS params_used, response_time_ms, " +
+        "status_code, user_agent, ip_address, sample_weight, created_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Feed the next page of rows in [from, to) after the given key to the handler.
+     * Null bounds are open-ended; a null afterCreatedAt starts from the beginning.
+     */
+    public void readPage(LocalDateTime from, LocalDateTime to,
+                         LocalDateTime afterCreatedAt, UUID afterId,
+                         int pageSize, RowCallbackHandler handler) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM api_usage_logs WHERE TRUE");
+        List<Object> args = new ArrayList<>();
+        if (from != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND created_at < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        if (afterCreatedAt != null) {
+            // The plain created_at bound lets each page prune partitions before the cursor
+            sql.append(" AND created_at >= ? AND (created_at, id) > (?, ?)");
+            args.add(Timestamp.valueOf(afterCreatedAt));
+            args.add(Timestamp.valueOf(afterCreatedAt));
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY created_at, id LIMIT ?");
+        args.add(pageSize);
+
+        jdbcTemplate.query(sql.toString(), handler, args.toArray());
+    }
+}
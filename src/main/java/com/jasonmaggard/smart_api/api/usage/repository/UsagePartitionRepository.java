@@ -0,0 +1,72 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Manages the daily range partitions of api_usage_logs. Partitions are named
+ * api_usage_logs_pYYYYMMDD and cover [day, day + 1); the DDL here must run inside
+ * a transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UsagePartitionRepository {
+
+    private static final String PARTITION_PREFIX = "api_usage_logs_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Days that currently have a partition, oldest first
+     */
+    public List<LocalDate> findPartitionDays() {
+        String sql =
+            "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'api_usage_logs'::regclass AND c.relname ~ '^api_usage_logs_p[0-9]{8}$' " +
+            "ORDER BY c.relname";
+        return jdbcTemplate.queryForList(sql, String.class).stream()
+            .map(name -> LocalDate.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX))
+            .toList();
+    }
+
+    /**
+     * Create the partition for a day. It is built as a standalone table, any rows for that
+     * day are moved in from the default partition, and only then is it attached, so
+     * creation works even after rows for the day have already arrived. The bounds CHECK
+     * lets ATTACH skip its validation scan.
+     */
+    public void createPartition(LocalDate day) {
+        String name = partitionName(day);
+        String start = day.toString();
+        String end = day.plusDays(1).toString();
+        String range = "created_at >= '" + start + "' AND created_at < '" + end + "'";
+
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE api_usage_logs INCLUDING DEFAULTS)");
+        jdbcTemplate.execute("ALTER TABLE " + name + " ADD CONSTRAINT " + name + "_bounds CHECK (" + range + ")");
+        jdbcTemplate.execute("INSERT INTO " + name + " SELECT * FROM api_usage_logs_default WHERE " + range);
+        jdbcTemplate.execute("DELETE FROM api_usage_logs_default WHERE " + range);
+        jdbcTemplate.execute("ALTER TABLE api_usage_logs ATTACH PARTITION " + name +
+            " FOR VALUES FROM ('" + start + "') TO ('" + end + "')");
+        jdbcTemplate.execute("ALTER TABLE " + name + " DROP CONSTRAINT " + name + "_bounds");
+    }
+
+    /**
+     * Detach and drop the partition for a day, discarding its rows
+     */
+    public void dropPartition(LocalDate day) {
+        String name = partitionName(day);
+        jdbcTemplate.execute("ALTER TABLE api_usage_logs DETACH PARTITION " + name);
+        jdbcTemplate.execute("DROP TABLE " + name);
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+}
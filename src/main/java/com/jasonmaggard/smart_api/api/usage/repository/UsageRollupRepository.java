@@ -0,0 +1,407 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import com.jasonmaggard.smart_api.api.usage.dto.EndpointUsageDto;
+import com.jasonmaggard.smart_api.api.usage.dto.StatusCodeStatsDto;
+import com.jasonmaggard.smart_api.api.usage.dto.UsageStatsDto;
+import com.jasonmaggard.smart_api.api.usage.metrics.LatencyHistogram;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads and maintains the api_usage_rollups tables.
+ *
+ * Every analytics query takes an optional [from, to) window, answered from the coarsest
+ * rollups that fit inside it plus a live aggregate of the raw edges and the rows that
+ * have not been rolled up yet (see RollupWindow), combined in a single statement so the
+ * result is consistent with the rollup job. Endpoint queries return their whole
+ * projection, limit included, from one statement regardless of the number of rows.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UsageRollupRepository {
+
+    private static final String ENDPOINT_FILTER = " AND endpoint_path = ? AND http_method = ?";
+
+    /**
+     * Maps response_time_ms to its LatencyHistogram bucket: width_bucket counts how many
+     * bucket lower bounds (from bucket 1 up) are <= the value, which is exactly the index
+     */
+    private static final String LATENCY_BUCKET = "width_bucket(response_time_ms::bigint, '{" +
+        IntStream.range(1, LatencyHistogram.BUCKET_COUNT)
+            .mapToObj(i -> Long.toString(LatencyHistogram.bucketLowerBound(i)))
+            .collect(Collectors.joining(",")) +
+        "}'::bigint[])";
+
+    private static final String RAW_RANGE = "api_usage_logs WHERE created_at >= ? AND created_at < ?";
+
+    private static final String LATE_ROWS =
+        "unnest(?::timestamp[], ?::varchar[], ?::varchar[], ?::int[], ?::int[], ?::int[]) " +
+        "  AS l(created_at, endpoint_path, http_method, status_code, response_time_ms, sample_weight) " +
+        "WHERE created_at < ?";
+
+    /**
+     * Raw rows stand for sample_weight requests each, so counts and sums are weighted
+     */
+    private static final String WEIGHTED_COUNTS =
+        "SUM(sample_weight) AS request_count, " +
+        "COALESCE(SUM(sample_weight) FILTER (WHERE response_time_ms IS NOT NULL), 0) AS timed_count, " +
+        "COALESCE(SUM(response_time_ms::bigint * sample_weight), 0) AS response_time_sum";
+
+    private static final RowMapper<EndpointUsageDto> ENDPOINT_USAGE_MAPPER = (rs, rowNum) -> new EndpointUsageDto(
+        rs.getString("endpoint_path"),
+        rs.getString("http_method"),
+        rs.getLong("request_count"),
+        rs.getDouble("avg_response_time"),
+        rs.getLong("min_response_time"),
+        rs.getLong("max_response_time"),
+        bucketValue(rs, "p50_bucket"),
+        bucketValue(rs, "p95_bucket"),
+        bucketValue(rs, "p99_bucket")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Overall totals, success count and distinct endpoint count in one pass
+     */
+    public UsageStatsDto getOverallStats(LocalDateTime from, LocalDateTime to) {
+        List<Object> args = new ArrayList<>();
+        String sql = combined(RollupWindow.of(from, to), "", List.of(), args) +
+            "SELECT COALESCE(SUM(request_count), 0) AS total, " +
+            "       COALESCE(SUM(request_count) FILTER (WHERE status_code BETWEEN 200 AND 299), 0) AS successful, " +
+            "       COALESCE(SUM(timed_count), 0) AS timed, " +
+            "       COALESCE(SUM(response_time_sum), 0) AS time_sum, " +
+            "       (SELECT COUNT(*) FROM (SELECT DISTINCT endpoint_path, http_method FROM combined) e) AS endpoints " +
+            "FROM combined";
+
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            long total = rs.getLong("total");
+            long successful = rs.getLong("successful");
+            long timed = rs.getLong("timed");
+            return new UsageStatsDto(
+                total,
+                timed > 0 ? (double) rs.getLong("time_sum") / timed : 0.0,
+                rs.getInt("endpoints"),
+                successful,
+                total - successful
+            );
+        }, args.toArray());
+    }
+
+    /**
+     * Most frequently called endpoints, limit applied in SQL
+     */
+    public List<EndpointUsageDto> findTopEndpoints(int limit, LocalDateTime from, LocalDateTime to) {
+        RollupWindow window = RollupWindow.of(from, to);
+        List<Object> args = new ArrayList<>();
+        String sql = combined(window, "", List.of(), args) +
+            ", agg AS ( " + endpointAggregate() +
+            "  ORDER BY request_count DESC " +
+            "  LIMIT ? " +
+            ")";
+        args.add(limit);
+        sql += withPercentiles(window, args) +
+            "ORDER BY a.request_count DESC";
+        return jdbcTemplate.query(sql, ENDPOINT_USAGE_MAPPER, args.toArray());
+    }
+
+    /**
+     * Endpoints with the highest average response time, limit applied in SQL
+     */
+    public List<EndpointUsageDto> findSlowestEndpoints(int limit, LocalDateTime from, LocalDateTime to) {
+        RollupWindow window = RollupWindow.of(from, to);
+        List<Object> args = new ArrayList<>();
+        String sql = combined(window, "", List.of(), args) +
+            ", agg AS ( " + endpointAggregate() +
+            "  HAVING SUM(timed_count) > 0 " +
+            "  ORDER BY avg_response_time DESC " +
+            "  LIMIT ? " +
+            ")";
+        args.add(limit);
+        sql += withPercentiles(window, args) +
+            "ORDER BY a.avg_response_time DESC";
+        return jdbcTemplate.query(sql, ENDPOINT_USAGE_MAPPER, args.toArray());
+    }
+
+    /**
+     * Aggregate statistics for a single endpoint, or null if it has never been called
+     */
+    public EndpointUsageDto getEndpointStats(String path, String method, LocalDateTime from, LocalDateTime to) {
+        RollupWindow window = RollupWindow.of(from, to);
+        List<Object> args = new ArrayList<>();
+        String sql = combined(window, ENDPOINT_FILTER, List.of(path, method), args) +
+            ", agg AS ( " + endpointAggregate() + ")" +
+            withPercentiles(window, args);
+        List<EndpointUsageDto> rows = jdbcTemplate.query(sql, ENDPOINT_USAGE_MAPPER, args.toArray());
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Request counts per status code, most frequent first
+     */
+    public List<StatusCodeStatsDto> getRequestsByStatusCode(LocalDateTime from, LocalDateTime to) {
+        List<Object> args = new ArrayList<>();
+        String sql = combined(RollupWindow.of(from, to), "", List.of(), args) +
+            "SELECT status_code, SUM(request_count) AS request_count, " +
+            "       SUM(request_count) * 100.0 / NULLIF(SUM(SUM(request_count)) OVER (), 0) AS percentage " +
+            "FROM combined " +
+            "GROUP BY status_code " +
+            "ORDER BY request_count DESC";
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            int statusCode = rs.getInt("status_code");
+            return new StatusCodeStatsDto(
+                statusCode != 0 ? statusCode : null,
+                rs.getLong("request_count"),
+                rs.getDouble("percentage")
+            );
+        }, args.toArray());
+    }
+
+    /**
+     * Lock the watermark row for the duration of the current transaction.
+     *
+     * @return the current watermark, or null if nothing has been rolled up yet
+     */
+    public LocalDateTime lockWatermark() {
+        Timestamp watermark = jdbcTemplate.queryForObject(
+            "SELECT rolled_up_to FROM api_usage_rollup_state WHERE id = 1 FOR UPDATE", Timestamp.class);
+        return watermark != null ? watermark.toLocalDateTime() : null;
+    }
+
+    /**
+     * Read the watermark under a share lock held for the current transaction, so a
+     * concurrent rollup run waits for it and it waits for any run already underway.
+     *
+     * @return the current watermark, or null if nothing has been rolled up yet
+     */
+    public LocalDateTime shareWatermark() {
+        Timestamp watermark = jdbcTemplate.queryForObject(
+            "SELECT rolled_up_to FROM api_usage_rollup_state WHERE id = 1 FOR SHARE", Timestamp.class);
+        return watermark != null ? watermark.toLocalDateTime() : null;
+    }
+
+    /**
+     * Current watermark without locking, or null if nothing has been rolled up yet
+     */
+    public LocalDateTime findWatermark() {
+        Timestamp watermark = jdbcTemplate.queryForObject(
+            "SELECT rolled_up_to FROM api_usage_rollup_state WHERE id = 1", Timestamp.class);
+        return watermark != null ? watermark.toLocalDateTime() : null;
+    }
+
+    public void updateWatermark(LocalDateTime rolledUpTo) {
+        jdbcTemplate.update("UPDATE api_usage_rollup_state SET rolled_up_to = ? WHERE id = 1",
+            Timestamp.valueOf(rolledUpTo));
+    }
+
+    /**
+     * Oldest raw row, used to seed the watermark on the first run
+     */
+    public LocalDateTime findOldestLogTime() {
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(created_at) FROM api_usage_logs", Timestamp.class);
+        return oldest != null ? oldest.toLocalDateTime() : null;
+    }
+
+    /**
+     * Fold raw rows in [from, to) into the MINUTE, HOUR and DAY rollups with a single scan
+     *
+     * @return number of rollup rows inserted or updated
+     */
+    public int rollUp(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.update(rollUpSql(RAW_RANGE),
+            Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Fold raw rows in [from, to) into the MINUTE, HOUR and DAY latency histograms
+     *
+     * @return number of histogram rows inserted or updated
+     */
+    public int rollUpLatency(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.update(rollUpLatencySql(RAW_RANGE),
+            Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Fold rows that were written behind the watermark into the rollups and latency
+     * histograms. The rows are passed in rather than scanned, as the raw table has no
+     * cheap way to tell them apart from the ones already counted; any at or after the
+     * watermark are left for the rollup job.
+     *
+     * @return number of rollup rows inserted or updated
+     */
+    public int rollUpLateRows(List<LateRow> rows, LocalDateTime watermark) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int updated = jdbcTemplate.update(lateRows(rollUpSql(LATE_ROWS), rows, watermark));
+        jdbcTemplate.update(lateRows(rollUpLatencySql(LATE_ROWS), rows, watermark));
+        return updated;
+    }
+
+    /** A raw usage row as written, reduced to the columns the rollups are built from */
+    public record LateRow(LocalDateTime createdAt, String endpointPath, String httpMethod,
+                          Integer statusCode, Integer responseTimeMs, int sampleWeight) {
+    }
+
+    private static PreparedStatementCreator lateRows(String sql, List<LateRow> rows, LocalDateTime watermark) {
+        return connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setArray(1, connection.createArrayOf("timestamp",
+                rows.stream().map(row -> Timestamp.valueOf(row.createdAt())).toArray()));
+            ps.setArray(2, connection.createArrayOf("varchar", rows.stream().map(LateRow::endpointPath).toArray()));
+            ps.setArray(3, connection.createArrayOf("varchar", rows.stream().map(LateRow::httpMethod).toArray()));
+            ps.setArray(4, connection.createArrayOf("int4", rows.stream().map(LateRow::statusCode).toArray()));
+            ps.setArray(5, connection.createArrayOf("int4", rows.stream().map(LateRow::responseTimeMs).toArray()));
+            ps.setArray(6, connection.createArrayOf("int4", rows.stream().map(LateRow::sampleWeight).toArray()));
+            ps.setTimestamp(7, Timestamp.valueOf(watermark));
+            return ps;
+        };
+    }
+
+    /**
+     * Insert-or-add the MINUTE, HOUR and DAY rollups of the rows selected by source,
+     * a FROM item and WHERE condition over the raw usage columns
+     */
+    private static String rollUpSql(String source) {
+        return "WITH m AS ( " +
+            "  SELECT date_trunc('minute', created_at) AS bucket_start, endpoint_path, http_method, " +
+            "         COALESCE(status_code, 0) AS status_code, " +
+            "         " + WEIGHTED_COUNTS + ", " +
+            "         MIN(response_time_ms) AS response_time_min, MAX(response_time_ms) AS response_time_max " +
+            "  FROM " + source + " " +
+            "  GROUP BY 1, 2, 3, 4 " +
+            ") " +
+            "INSERT INTO api_usage_rollups AS r " +
+            "  (granularity, bucket_start, endpoint_path, http_method, status_code, " +
+            "   request_count, timed_count, response_time_sum, response_time_min, response_time_max) " +
+            "SELECT 'MINUTE', bucket_start, endpoint_path, http_method, status_code, " +
+            "       request_count, timed_count, response_time_sum, response_time_min, response_time_max " +
+            "FROM m " +
+            "UNION ALL " +
+            coarserBuckets("HOUR", "hour") +
+            "UNION ALL " +
+            coarserBuckets("DAY", "day") +
+            "ON CONFLICT (granularity, bucket_start, endpoint_path, http_method, status_code) DO UPDATE SET " +
+            "  request_count = r.request_count + EXCLUDED.request_count, " +
+            "  timed_count = r.timed_count + EXCLUDED.timed_count, " +
+            "  response_time_sum = r.response_time_sum + EXCLUDED.response_time_sum, " +
+            "  response_time_min = LEAST(r.response_time_min, EXCLUDED.response_time_min), " +
+            "  response_time_max = GREATEST(r.response_time_max, EXCLUDED.response_time_max)";
+    }
+
+    /**
+     * Insert-or-add the MINUTE, HOUR and DAY latency histograms of the rows selected by source
+     */
+    private static String rollUpLatencySql(String source) {
+        return "WITH m AS ( " +
+            "  SELECT date_trunc('minute', created_at) AS bucket_start, endpoint_path, http_method, " +
+            "         " + LATENCY_BUCKET + " AS bucket_index, SUM(sample_weight) AS request_count " +
+            "  FROM " + source + " AND response_time_ms IS NOT NULL " +
+            "  GROUP BY 1, 2, 3, 4 " +
+            ") " +
+            "INSERT INTO api_usage_rollup_latency AS r " +
+            "  (granularity, bucket_start, endpoint_path, http_method, bucket_index, request_count) " +
+            "SELECT 'MINUTE', bucket_start, endpoint_path, http_method, bucket_index, request_count " +
+            "FROM m " +
+            "UNION ALL " +
+            "SELECT 'HOUR', date_trunc('hour', bucket_start), endpoint_path, http_method, bucket_index, SUM(request_count) " +
+            "FROM m GROUP BY 2, 3, 4, 5 " +
+            "UNION ALL " +
+            "SELECT 'DAY', date_trunc('day', bucket_start), endpoint_path, http_method, bucket_index, SUM(request_count) " +
+            "FROM m GROUP BY 2, 3, 4, 5 " +
+            "ON CONFLICT (granularity, bucket_start, endpoint_path, http_method, bucket_index) DO UPDATE SET " +
+            "  request_count = r.request_count + EXCLUDED.request_count";
+    }
+
+    private static String coarserBuckets(String granularity, String field) {
+        return "SELECT '" + granularity + "', date_trunc('" + field + "', bucket_start), " +
+            "       endpoint_path, http_method, status_code, " +
+            "       SUM(request_count), SUM(timed_count), SUM(response_time_sum), " +
+            "       MIN(response_time_min), MAX(response_time_max) " +
+            "FROM m " +
+            "GROUP BY 2, 3, 4, 5 ";
+    }
+
+    /**
+     * Rollups and raw rows covering the window, pre-grouped to the same shape
+     */
+    private static String combined(RollupWindow window, String filter, List<Object> filterArgs, List<Object> args) {
+        return "WITH combined AS ( " +
+            window.union(
+                "SELECT endpoint_path, http_method, status_code, request_count, timed_count, " +
+                "       response_time_sum, response_time_min, response_time_max " +
+                "FROM api_usage_rollups WHERE ",
+                "SELECT endpoint_path, http_method, COALESCE(status_code, 0) AS status_code, " +
+                "       " + WEIGHTED_COUNTS + ", " +
+                "       MIN(response_time_ms) AS response_time_min, MAX(response_time_ms) AS response_time_max " +
+                "FROM api_usage_logs WHERE ",
+                "endpoint_path, http_method, COALESCE(status_code, 0)",
+                filter, filterArgs, args) +
+            ") ";
+    }
+
+    /**
+     * Attach p50/p95/p99 to the already limited agg rows by merging their latency histograms
+     * over the same window and walking the cumulative counts per endpoint
+     */
+    private static String withPercentiles(RollupWindow window, List<Object> args) {
+        String aggKeys = " AND (endpoint_path, http_method) IN (SELECT endpoint_path, http_method FROM agg)";
+        return ", latency AS ( " +
+            window.union(
+                "SELECT endpoint_path, http_method, bucket_index, request_count " +
+                "FROM api_usage_rollup_latency WHERE ",
+                "SELECT endpoint_path, http_method, " + LATENCY_BUCKET + " AS bucket_index, SUM(sample_weight) AS request_count " +
+                "FROM api_usage_logs WHERE response_time_ms IS NOT NULL AND ",
+                "1, 2, 3",
+                aggKeys, List.of(), args) +
+            "), hist AS ( " +
+            "  SELECT endpoint_path, http_method, bucket_index, SUM(request_count) AS request_count " +
+            "  FROM latency " +
+            "  GROUP BY 1, 2, 3 " +
+            "), cumulative AS ( " +
+            "  SELECT endpoint_path, http_method, bucket_index, " +
+            "         SUM(request_count) OVER (PARTITION BY endpoint_path, http_method ORDER BY bucket_index) AS running, " +
+            "         SUM(request_count) OVER (PARTITION BY endpoint_path, http_method) AS total " +
+            "  FROM hist " +
+            "), pct AS ( " +
+            "  SELECT endpoint_path, http_method, " +
+            "         MIN(bucket_index) FILTER (WHERE running >= CEIL(total * 0.50)) AS p50_bucket, " +
+            "         MIN(bucket_index) FILTER (WHERE running >= CEIL(total * 0.95)) AS p95_bucket, " +
+            "         MIN(bucket_index) FILTER (WHERE running >= CEIL(total * 0.99)) AS p99_bucket " +
+            "  FROM cumulative " +
+            "  GROUP BY 1, 2 " +
+            ") " +
+            "SELECT a.*, p.p50_bucket, p.p95_bucket, p.p99_bucket " +
+            "FROM agg a " +
+            "LEFT JOIN pct p ON p.endpoint_path = a.endpoint_path AND p.http_method = a.http_method ";
+    }
+
+    private static Double bucketValue(ResultSet rs, String column) throws SQLException {
+        int bucket = rs.getInt(column);
+        return rs.wasNull() ? null : LatencyHistogram.bucketMidpoint(bucket);
+    }
+
+    private static String endpointAggregate() {
+        return "SELECT endpoint_path, http_method, SUM(request_count) AS request_count, " +
+            "       COALESCE(SUM(response_time_sum)::float8 / NULLIF(SUM(timed_count), 0), 0) AS avg_response_time, " +
+            "       COALESCE(MIN(response_time_min), 0) AS min_response_time, " +
+            "       COALESCE(MAX(response_time_max), 0) AS max_response_time " +
+            "FROM combined " +
+            "GROUP BY endpoint_path, http_method ";
+    }
+}
@@ -1,179 +1,96 @@
 package com.jasonmaggard.smart_api.api.usage.service;
 
 import com.jasonmaggard.smart_api.api.usage.dto.EndpointUsageDto;
+import com.jasonmaggard.smart_api.api.usage.dto.IngestStatsDto;
 import com.jasonmaggard.smart_api.api.usage.dto.StatusCodeStatsDto;
 import com.jasonmaggard.smart_api.api.usage.dto.UsageStatsDto;
 import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
-import com.jasonmaggard.smart_api.api.usage.repository.ApiUsageLogRepository;
+import com.jasonmaggard.smart_api.api.usage.ingest.UsageLogBuffer;
+import com.jasonmaggard.smart_api.api.usage.ingest.UsageSampler;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ApiUsageLogService {
     
-    private final ApiUsageLogRepository repository;
+    private final UsageRollupRepository rollupRepository;
+    private final UsageLogBuffer usageLogBuffer;
+    private final UsageSampler usageSampler;
+    private final UsageRollupService rollupService;
     
     /**
-     * Log an API request
+     * Log an API request. The record goes through the sampler, which picks the sampling
+     * rule by route (the matched handler pattern, falling back to the request path), and
+     * kept records are persisted in batches by the usage log writer thread.
      */
-    @Transactional
-    public void logApiUsage(ApiUsageLog usageLog) {
+    public void logApiUsage(ApiUsageLog usageLog, String route) {
         if (usageLog == null) {
             log.warn("Attempted to log null API usage");
             return;
         }
         
-        try {
-            ApiUsageLog saved = repository.save(usageLog);
-            log.debug("Logged API usage: {} {} - {}ms", 
-                saved.getHttpMethod(), 
-                saved.getEndpointPath(), 
-                saved.getResponseTimeMs());
-        } catch (Exception e) {
-            log.error("Failed to log API usage: {}", e.getMessage());
-            // Don't throw exception - logging failure shouldn't break the API
-        }
+        usageSampler.submit(usageLog, route != null ? route : usageLog.getEndpointPath());
+    }
+    
+    /**
+     * Get write-behind pipeline counters
+     */
+    public IngestStatsDto getIngestStats() {
+        IngestStatsDto stats = usageLogBuffer.getStats();
+        stats.setNotSampled(usageSampler.getNotSampled());
+        stats.setLateRolledUp(rollupService.getLateRows());
+        return stats;
     }
     
     /**
-     * Get overall usage statistics
+     * Get overall usage statistics for [from, to); null bounds are open-ended
      */
     @Transactional(readOnly = true)
-    public UsageStatsDto getOverallStats() {
-        Long totalRequests = repository.getTotalRequestCount();
-        Double avgResponseTime = repository.getAverageResponseTime();
-        
-        List<Object[]> statusCodes = repository.getRequestsByStatusCode();
-        long successfulRequests = statusCodes.stream()
-            .filter(row -> {
-                Integer statusCode = (Integer) row[0];
-                return statusCode != null && statusCode >= 200 && statusCode < 300;
-            })
-            .mapToLong(row -> ((Number) row[1]).longValue())
-            .sum();
-        
-        long failedRequests = totalRequests - successfulRequests;
-        
-        // Count unique endpoints
-        List<Object[]> topEndpoints = repository.findTopEndpoints();
-        int uniqueEndpoints = topEndpoints.size();
-        
-        return new UsageStatsDto(
-            totalRequests,
-            avgResponseTime != null ? avgResponseTime : 0.0,
-            uniqueEndpoints,
-            successfulRequests,
-            failedRequests
-        );
+    public UsageStatsDto getOverallStats(LocalDateTime from, LocalDateTime to) {
+        return rollupRepository.getOverallStats(from, to);
     }
     
     /**
      * Get top N most frequently used endpoints
      */
     @Transactional(readOnly = true)
-    public List<EndpointUsageDto> getTopEndpoints(int limit) {
-        List<Object[]> results = repository.findTopEndpoints();
-        
-        return results.stream()
-            .limit(limit)
-            .map(row -> {
-                String path = (String) row[0];
-                String method = (String) row[1];
-                Long count = ((Number) row[2]).longValue();
-                
-                // Get detailed stats for this endpoint
-                Object[] stats = repository.getEndpointStats(path, method);
-                if (stats == null || stats.length < 4) {
-                    return new EndpointUsageDto(path, method, count, 0.0, 0L, 0L);
-                }
-                
-                Double avgTime = stats[1] != null ? ((Number) stats[1]).doubleValue() : 0.0;
-                Long minTime = stats[2] != null ? ((Number) stats[2]).longValue() : 0L;
-                Long maxTime = stats[3] != null ? ((Number) stats[3]).longValue() : 0L;
-                
-                return new EndpointUsageDto(path, method, count, avgTime, minTime, maxTime);
-            })
-            .collect(Collectors.toList());
+    public List<EndpointUsageDto> getTopEndpoints(int limit, LocalDateTime from, LocalDateTime to) {
+        return rollupRepository.findTopEndpoints(limit, from, to);
     }
     
     /**
      * Get slowest endpoints by average response time
      */
     @Transactional(readOnly = true)
-    public List<EndpointUsageDto> getSlowestEndpoints(int limit) {
-        List<Object[]> results = repository.findSlowestEndpoints();
-        
-        return results.stream()
-            .limit(limit)
-            .map(row -> {
-                String path = (String) row[0];
-                String method = (String) row[1];
-                Double avgTime = ((Number) row[2]).doubleValue();
-                
-                // Get full stats for this endpoint
-                Object[] stats = repository.getEndpointStats(path, method);
-                if (stats == null || stats.length < 4) {
-                    return new EndpointUsageDto(path, method, 0L, avgTime, 0L, 0L);
-                }
-                
-                Long count = ((Number) stats[0]).longValue();
-                Long minTime = stats[2] != null ? ((Number) stats[2]).longValue() : 0L;
-                Long maxTime = stats[3] != null ? ((Number) stats[3]).longValue() : 0L;
-                
-                return new EndpointUsageDto(path, method, count, avgTime, minTime, maxTime);
-            })
-            .collect(Collectors.toList());
+    public List<EndpointUsageDto> getSlowestEndpoints(int limit, LocalDateTime from, LocalDateTime to) {
+        return rollupRepository.findSlowestEndpoints(limit, from, to);
     }
     
     /**
      * Get statistics for a specific endpoint
      */
     @Transactional(readOnly = true)
-    public EndpointUsageDto getEndpointStats(String path, String method) {
-        Object[] stats = repository.getEndpointStats(path, method);
-        
-        if (stats == null || stats.length < 4 || stats[0] == null) {
-            return new EndpointUsageDto(path, method, 0L, 0.0, 0L, 0L);
-        }
-        
-        try {
-            Long count = stats[0] instanceof Number ? ((Number) stats[0]).longValue() : 0L;
-            Double avgTime = stats[1] instanceof Number ? ((Number) stats[1]).doubleValue() : 0.0;
-            Long minTime = stats[2] instanceof Number ? ((Number) stats[2]).longValue() : 0L;
-            Long maxTime = stats[3] instanceof Number ? ((Number) stats[3]).longValue() : 0L;
-            
-            return new EndpointUsageDto(path, method, count, avgTime, minTime, maxTime);
-        } catch (Exception e) {
-            log.error("Error parsing endpoint stats: {}", e.getMessage());
-            return new EndpointUsageDto(path, method, 0L, 0.0, 0L, 0L);
+    public EndpointUsageDto getEndpointStats(String path, String method, LocalDateTime from, LocalDateTime to) {
+        EndpointUsageDto stats = rollupRepository.getEndpointStats(path, method, from, to);
+        if (stats == null) {
+            return new EndpointUsageDto(path, method, 0L, 0.0, 0L, 0L, null, null, null);
         }
+        return stats;
     }
     
     /**
      * Get request distribution by status code
      */
     @Transactional(readOnly = true)
-    public List<StatusCodeStatsDto> getStatusCodeDistribution() {
-        List<Object[]> results = repository.getRequestsByStatusCode();
-        Long totalRequests = repository.getTotalRequestCount();
-        
-        return results.stream()
-            .map(row -> {
-                Integer statusCode = (Integer) row[0];
-                Long count = ((Number) row[1]).longValue();
-                Double percentage = totalRequests > 0 
-                    ? (count.doubleValue() / totalRequests.doubleValue()) * 100 
-                    : 0.0;
-                
-                return new StatusCodeStatsDto(statusCode, count, percentage);
-            })
-            .collect(Collectors.toList());
+    public List<StatusCodeStatsDto> getStatusCodeDistribution(LocalDateTime from, LocalDateTime to) {
+        return rollupRepository.getRequestsByStatusCode(from, to);
     }
 }
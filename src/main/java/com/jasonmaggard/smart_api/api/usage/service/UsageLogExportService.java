@@ -0,0 +1,241 @@
+package com.jasonmaggard.smart_api.api.usage.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageLogExportRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Streams raw usage logs to an output stream as NDJSON or CSV, one keyset page at a time.
+ * Only the current page's ResultSet is ever held, so memory use is flat for any window.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UsageLogExportService {
+    
+    static final int PAGE_SIZE = 5000;
+    
+    // Each row ends with its own newline, so no separator between root values
+    private static final JsonFactory NDJSON = new JsonFactoryBuilder().rootValueSeparator("").build();
+    
+    private static final String CSV_HEADER =
+        "id,endpoint_path,http_method,params_used,response_time_ms,status_code,user_agent,ip_address,sample_weight,created_at\n";
+    
+    private final UsageLogExportRepository exportRepository;
+    
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+        
+        private final String contentType;
+        private final String extension;
+        
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+    }
+    
+    /**
+     * Write every log in [from, to) to out in (created_at, id) order
+     *
+     * @return number of rows written
+     */
+    public long export(LocalDateTime from, LocalDateTime to, Format format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+        
+        PageCursor cursor = new PageCursor(rowWriter);
+        try {
+            do {
+                cursor.startPage();
+                exportRepository.readPage(from, to, cursor.lastCreatedAt, cursor.lastId, PAGE_SIZE, cursor::processRow);
+                rowWriter.flush();
+            } while (cursor.pageRows == PAGE_SIZE);
+        } catch (UncheckedIOException e) {
+            // Usually the client disconnecting mid-export
+            throw e.getCause();
+        }
+        
+        log.debug("Exported {} usage logs in [{}, {}) as {}", cursor.total, from, to, format);
+        return cursor.total;
+    }
+    
+    /**
+     * Tracks the keyset position while forwarding rows to the writer
+     */
+    private static final class PageCursor {
+        private final RowWriter rowWriter;
+        private LocalDateTime lastCreatedAt;
+        private UUID lastId;
+        private int pageRows;
+        private long total;
+        
+        private PageCursor(RowWriter rowWriter) {
+            this.rowWriter = rowWriter;
+        }
+        
+        private void startPage() {
+            pageRows = 0;
+        }
+        
+        private void processRow(ResultSet rs) throws SQLException {
+            lastId = rs.getObject("id", UUID.class);
+            lastCreatedAt = rs.getTimestamp("created_at").toLocalDateTime();
+            try {
+                rowWriter.write(rs, lastId, lastCreatedAt);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pageRows++;
+            total++;
+        }
+    }
+    
+    private interface RowWriter {
+        void write(ResultSet rs, UUID id, LocalDateTime createdAt) throws SQLException, IOException;
+        
+        void flush() throws IOException;
+    }
+    
+    private static final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+        
+        private NdjsonRowWriter(Writer writer) throws IOException {
+            this.generator = NDJSON.createGenerator(writer);
+        }
+        
+        @Override
+        public void write(ResultSet rs, UUID id, LocalDateTime createdAt) throws SQLException, IOException {
+            generator.writeStartObject();
+            generator.writeStringField("id", id.toString());
+            generator.writeStringField("endpointPath", rs.getString("endpoint_path"));
+            generator.writeStringField("httpMethod", rs.getString("http_method"));
+            String params = rs.getString("params_used");
+            generator.writeFieldName("paramsUsed");
+            if (params != null) {
+                generator.writeRawValue(params);
+            } else {
+                generator.writeNull();
+            }
+            writeNumber("responseTimeMs", rs, "response_time_ms");
+            writeNumber("statusCode", rs, "status_code");
+            generator.writeStringField("userAgent", rs.getString("user_agent"));
+            generator.writeStringField("ipAddress", rs.getString("ip_address"));
+            generator.writeNumberField("sampleWeight", rs.getInt("sample_weight"));
+            generator.writeStringField("createdAt", createdAt.toString());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        
+        private void writeNumber(String field, ResultSet rs, String column) throws SQLException, IOException {
+            int value = rs.getInt(column);
+            if (rs.wasNull()) {
+                generator.writeNullField(field);
+            } else {
+                generator.writeNumberField(field, value);
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+    
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+        
+        private CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(CSV_HEADER);
+        }
+        
+        @Override
+        public void write(ResultSet rs, UUID id, LocalDateTime createdAt) throws SQLException, IOException {
+            writer.write(id.toString());
+            writer.write(',');
+            writeText(rs.getString("endpoint_path"));
+            writer.write(',');
+            writeText(rs.getString("http_method"));
+            writer.write(',');
+            writeText(rs.getString("params_used"));
+            writer.write(',');
+            writeNumber(rs, "response_time_ms");
+            writer.write(',');
+            writeNumber(rs, "status_code");
+            writer.write(',');
+            writeText(rs.getString("user_agent"));
+            writer.write(',');
+            writeText(rs.getString("ip_address"));
+            writer.write(',');
+            writer.write(Integer.toString(rs.getInt("sample_weight")));
+            writer.write(',');
+            writer.write(createdAt.toString());
+            writer.write('\n');
+        }
+        
+        /**
+         * RFC 4180 quoting: only fields containing a delimiter, quote or line break are quoted
+         */
+        private void writeText(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+        
+        private void writeNumber(ResultSet rs, String column) throws SQLException, IOException {
+            int value = rs.getInt(column);
+            if (!rs.wasNull()) {
+                writer.write(Integer.toString(value));
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+}
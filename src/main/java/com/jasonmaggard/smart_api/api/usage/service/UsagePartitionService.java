@@ -0,0 +1,64 @@
+package com.jasonmaggard.smart_api.api.usage.service;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsagePartitionConfig;
+import com.jasonmaggard.smart_api.api.usage.repository.UsagePartitionRepository;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UsagePartitionService {
+    
+    private final UsagePartitionRepository partitionRepository;
+    private final UsageRollupRepository rollupRepository;
+    private final UsagePartitionConfig config;
+    private final TransactionTemplate transactionTemplate;
+    
+    /**
+     * Make sure today and the next premakeDays days have partitions, then drop partitions
+     * past the retention period. A partition is only dropped once the rollup watermark has
+     * passed its end, so analytics never lose rows that were not rolled up. Each partition
+     * is created or dropped in its own short transaction to keep the parent lock brief.
+     */
+    public void rotate() {
+        LocalDate today = LocalDate.now();
+        List<LocalDate> existing = partitionRepository.findPartitionDays();
+        Set<LocalDate> present = new HashSet<>(existing);
+        
+        for (int i = 0; i <= config.getPremakeDays(); i++) {
+            LocalDate day = today.plusDays(i);
+            if (!present.contains(day)) {
+                transactionTemplate.executeWithoutResult(status -> partitionRepository.createPartition(day));
+                log.info("Created usage log partition for {}", day);
+            }
+        }
+        
+        if (config.getRetentionDays() <= 0) {
+            return;
+        }
+        
+        LocalDate cutoff = today.minusDays(config.getRetentionDays());
+        LocalDateTime watermark = rollupRepository.findWatermark();
+        for (LocalDate day : existing) {
+            if (!day.isBefore(cutoff)) {
+                break;
+            }
+            if (watermark == null || watermark.isBefore(day.plusDays(1).atStartOfDay())) {
+                log.warn("Keeping expired usage log partition for {} until it has been rolled up", day);
+                break;
+            }
+            transactionTemplate.executeWithoutResult(status -> partitionRepository.dropPartition(day));
+            log.info("Dropped expired usage log partition for {}", day);
+        }
+    }
+}
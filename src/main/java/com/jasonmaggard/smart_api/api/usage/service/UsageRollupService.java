@@ -0,0 +1,108 @@
+package com.jasonmaggard.smart_api.api.usage.service;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageRollupConfig;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository.LateRow;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UsageRollupService {
+    
+    private final UsageRollupRepository rollupRepository;
+    private final UsageRollupConfig config;
+    
+    private final LongAdder lateRows = new LongAdder();
+    
+    /**
+     * Fold the next slice of raw usage logs into the rollup tables and advance the watermark.
+     * The watermark row is locked for the whole transaction, so concurrent runs serialize
+     * and never count the same rows twice.
+     *
+     * @return the new watermark, or null if there was nothing to roll up
+     */
+    @Transactional
+    public LocalDateTime rollUp() {
+        LocalDateTime watermark = rollupRepository.lockWatermark();
+        if (watermark == null) {
+            LocalDateTime oldest = rollupRepository.findOldestLogTime();
+            if (oldest == null) {
+                log.debug("No usage logs to roll up yet");
+                return null;
+            }
+            watermark = oldest.truncatedTo(ChronoUnit.MINUTES);
+        }
+        
+        // Only roll up complete minutes that are old enough for late flushes to have landed
+        LocalDateTime target = LocalDateTime.now()
+            .minusSeconds(config.getLagSeconds())
+            .truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime catchUpLimit = watermark.plusMinutes(config.getMaxCatchUpMinutes());
+        if (target.isAfter(catchUpLimit)) {
+            target = catchUpLimit;
+        }
+        
+        if (!target.isAfter(watermark)) {
+            return null;
+        }
+        
+        int rows = rollupRepository.rollUp(watermark, target);
+        int histogramRows = rollupRepository.rollUpLatency(watermark, target);
+        rollupRepository.updateWatermark(target);
+        log.debug("Rolled up usage logs [{}, {}) into {} rollup rows and {} histogram rows",
+            watermark, target, rows, histogramRows);
+        return target;
+    }
+    
+    /**
+     * Watermark for a usage log write, share-locked until the writing transaction commits.
+     * Rows the write puts behind it must be passed to {@link #rollUpLateRows}, as the
+     * rollup job will never scan them.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public LocalDateTime watermarkForWrite() {
+        return rollupRepository.shareWatermark();
+    }
+    
+    /**
+     * Fold rows written behind the watermark into the rollups, in the transaction that
+     * inserts them. Holding the share lock from {@link #watermarkForWrite} until commit
+     * means a rollup run either scans the rows or has already moved the watermark past
+     * them, never both, so each row is counted exactly once.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void rollUpLateRows(List<LateRow> rows, LocalDateTime watermark) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int updated = rollupRepository.rollUpLateRows(rows, watermark);
+        log.debug("Rolled up {} usage logs written behind the watermark {} into {} rollup rows",
+            rows.size(), watermark, updated);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                lateRows.add(rows.size());
+            }
+        });
+    }
+    
+    /**
+     * Usage logs that arrived after the watermark had passed them, each folded into the
+     * rollups on write. A steady count means lag-seconds is shorter than the ingest delay.
+     */
+    public long getLateRows() {
+        return lateRows.sum();
+    }
+}
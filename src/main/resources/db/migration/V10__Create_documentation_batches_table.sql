@@ -0,0 +1,25 @@
+-- Create documentation_batches table
+-- One row per Message Batch submitted for bulk documentation generation. status is
+-- SUBMITTED until the batch has ended and its results were written to documentation,
+-- then COMPLETED.
+CREATE TABLE documentation_batches (
+    id VARCHAR(100) PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    request_count INTEGER NOT NULL,
+    succeeded_count INTEGER,
+    failed_count INTEGER,
+    submitted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    completed_at TIMESTAMP
+);
+
+-- The poll job only looks at batches still in flight
+CREATE INDEX idx_documentation_batches_submitted ON documentation_batches(submitted_at) WHERE status = 'SUBMITTED';
+
+-- Maps each request's custom_id back to the endpoint it documents
+CREATE TABLE documentation_batch_requests (
+    batch_id VARCHAR(100) NOT NULL REFERENCES documentation_batches(id) ON DELETE CASCADE,
+    custom_id VARCHAR(64) NOT NULL,
+    endpoint_path VARCHAR(255) NOT NULL,
+    http_method VARCHAR(10) NOT NULL,
+    CONSTRAINT pk_documentation_batch_requests PRIMARY KEY (batch_id, custom_id)
+);
@@ -0,0 +1,6 @@
+-- Add cache_key to documentation_batch_requests
+-- The documentation cache key is fingerprinted from the endpoint's signature, prompt version
+-- and model at submit time, so results are cached under the key of what was actually sent
+-- even if the endpoint changed while the batch was processing. NULL for requests submitted
+-- before this column existed; their results are stored but not cached.
+ALTER TABLE documentation_batch_requests ADD COLUMN cache_key VARCHAR(320);
@@ -0,0 +1,7 @@
+-- Input token counts of the request that generated each row. token_count stays the output
+-- tokens; input_tokens excludes tokens written to or read from the prompt cache, which are
+-- billed at different rates and counted separately. NULL for rows generated before this.
+ALTER TABLE documentation
+    ADD COLUMN input_tokens INTEGER,
+    ADD COLUMN cache_creation_input_tokens INTEGER,
+    ADD COLUMN cache_read_input_tokens INTEGER;
@@ -0,0 +1,27 @@
+-- Create api_usage_rollups table
+-- Pre-aggregated usage per time bucket so analytics don't scan api_usage_logs.
+-- granularity is one of MINUTE, HOUR, DAY; status_code 0 means no status was recorded.
+CREATE TABLE api_usage_rollups (
+    granularity VARCHAR(6) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    endpoint_path VARCHAR(255) NOT NULL,
+    http_method VARCHAR(10) NOT NULL,
+    status_code INTEGER NOT NULL,
+    request_count BIGINT NOT NULL,
+    timed_count BIGINT NOT NULL,
+    response_time_sum BIGINT NOT NULL,
+    response_time_min INTEGER,
+    response_time_max INTEGER,
+    CONSTRAINT pk_api_usage_rollups PRIMARY KEY (granularity, bucket_start, endpoint_path, http_method, status_code)
+);
+
+-- Create index on endpoint for per-endpoint lookups
+CREATE INDEX idx_api_usage_rollups_endpoint_method ON api_usage_rollups(granularity, endpoint_path, http_method);
+
+-- Single-row watermark: raw rows with created_at < rolled_up_to are included in the rollups
+CREATE TABLE api_usage_rollup_state (
+    id INTEGER PRIMARY KEY,
+    rolled_up_to TIMESTAMP
+);
+
+INSERT INTO api_usage_rollup_state (id, rolled_up_to) VALUES (1, NULL);
@@ -0,0 +1,40 @@
+-- Create api_usage_rollup_latency table
+-- Mergeable latency histogram per rollup bucket: one row per non-empty histogram bucket.
+-- bucket_index follows the log-linear layout of LatencyHistogram applied to response_time_ms,
+-- so histograms for any set of time buckets merge by summing request_count per bucket_index.
+CREATE TABLE api_usage_rollup_latency (
+    granularity VARCHAR(6) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    endpoint_path VARCHAR(255) NOT NULL,
+    http_method VARCHAR(10) NOT NULL,
+    bucket_index SMALLINT NOT NULL,
+    request_count BIGINT NOT NULL,
+    CONSTRAINT pk_api_usage_rollup_latency PRIMARY KEY (granularity, bucket_start, endpoint_path, http_method, bucket_index)
+);
+
+-- Create index on endpoint for per-endpoint percentile lookups
+CREATE INDEX idx_api_usage_rollup_latency_endpoint_method ON api_usage_rollup_latency(granularity, endpoint_path, http_method);
+
+-- Backfill histograms for rows that were rolled up before this table existed.
+-- The bounds array mirrors LatencyHistogram.bucketLowerBound for buckets 1..527.
+WITH bounds AS (
+    SELECT ARRAY(
+        SELECT CASE WHEN i < 32 THEN i::bigint ELSE (i - (i / 16 - 1) * 16)::bigint << (i / 16 - 1) END
+        FROM generate_series(1, 527) AS i
+        ORDER BY i
+    ) AS lower_bounds
+),
+m AS (
+    SELECT date_trunc('minute', l.created_at) AS bucket_start, l.endpoint_path, l.http_method,
+           width_bucket(l.response_time_ms::bigint, b.lower_bounds) AS bucket_index, COUNT(*) AS request_count
+    FROM api_usage_logs l, bounds b
+    WHERE l.response_time_ms IS NOT NULL
+      AND l.created_at < (SELECT rolled_up_to FROM api_usage_rollup_state WHERE id = 1)
+    GROUP BY 1, 2, 3, 4
+)
+INSERT INTO api_usage_rollup_latency (granularity, bucket_start, endpoint_path, http_method, bucket_index, request_count)
+SELECT 'MINUTE', bucket_start, endpoint_path, http_method, bucket_index, request_count FROM m
+UNION ALL
+SELECT 'HOUR', date_trunc('hour', bucket_start), endpoint_path, http_method, bucket_index, SUM(request_count) FROM m GROUP BY 2, 3, 4, 5
+UNION ALL
+SELECT 'DAY', date_trunc('day', bucket_start), endpoint_path, http_method, bucket_index, SUM(request_count) FROM m GROUP BY 2, 3, 4, 5;
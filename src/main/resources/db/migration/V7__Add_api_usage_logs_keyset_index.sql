@@ -0,0 +1,6 @@
+-- Keyset pagination for the usage log export walks (created_at, id) in order.
+-- The composite index also serves every created_at range query, so it replaces
+-- the single-column one.
+CREATE INDEX idx_api_usage_logs_created_at_id ON api_usage_logs(created_at, id);
+
+DROP INDEX IF EXISTS idx_api_usage_logs_created_at;
@@ -0,0 +1,49 @@
+-- Convert api_usage_logs into daily range partitions on created_at.
+-- Old days are dropped whole instead of deleted row by row, so the table no longer
+-- accumulates dead tuples and index bloat, and time-bounded queries prune to the
+-- partitions they touch. Upcoming partitions are created ahead of time and expired
+-- ones removed by the usage-partition-rotation job; rows that arrive for a day with
+-- no partition land in api_usage_logs_default and are moved out when it is created.
+ALTER TABLE api_usage_logs RENAME TO api_usage_logs_unpartitioned;
+ALTER TABLE api_usage_logs_unpartitioned RENAME CONSTRAINT api_usage_logs_pkey TO api_usage_logs_unpartitioned_pkey;
+ALTER INDEX idx_api_usage_logs_created_at_id RENAME TO idx_api_usage_logs_unpartitioned_created_at_id;
+ALTER INDEX idx_api_usage_logs_endpoint_method RENAME TO idx_api_usage_logs_unpartitioned_endpoint_method;
+
+-- The primary key must include the partition key; leading with created_at lets it
+-- double as the (created_at, id) keyset index
+CREATE TABLE api_usage_logs (
+    id UUID NOT NULL DEFAULT gen_random_uuid(),
+    endpoint_path VARCHAR(255) NOT NULL,
+    http_method VARCHAR(10) NOT NULL,
+    params_used JSONB,
+    response_time_ms INTEGER,
+    status_code INTEGER,
+    user_agent VARCHAR(255),
+    ip_address VARCHAR(45),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT pk_api_usage_logs PRIMARY KEY (created_at, id)
+) PARTITION BY RANGE (created_at);
+
+CREATE INDEX idx_api_usage_logs_endpoint_method ON api_usage_logs(endpoint_path, http_method);
+
+-- One partition per day from the oldest existing row through a week ahead
+DO $$
+DECLARE
+    first_day DATE := COALESCE((SELECT MIN(created_at)::date FROM api_usage_logs_unpartitioned), CURRENT_DATE);
+    last_day DATE := GREATEST(COALESCE((SELECT MAX(created_at)::date FROM api_usage_logs_unpartitioned), CURRENT_DATE), CURRENT_DATE) + 7;
+    day DATE;
+BEGIN
+    FOR day IN SELECT generate_series(first_day, last_day, INTERVAL '1 day')::date LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF api_usage_logs FOR VALUES FROM (%L) TO (%L)',
+            'api_usage_logs_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+CREATE TABLE api_usage_logs_default PARTITION OF api_usage_logs DEFAULT;
+
+INSERT INTO api_usage_logs
+    (id, endpoint_path, http_method, params_used, response_time_ms, status_code, user_agent, ip_address, created_at)
+SELECT id, endpoint_path, http_method, params_used, response_time_ms, status_code, user_agent, ip_address, created_at
+FROM api_usage_logs_unpartitioned;
+
+DROP TABLE api_usage_logs_unpartitioned;
@@ -0,0 +1,4 @@
+-- Number of requests each logged row stands for when usage logging is sampled.
+-- Rows written before sampling existed, or with sampling off, represent themselves.
+-- Rollups and raw aggregates sum this instead of counting rows.
+ALTER TABLE api_usage_logs ADD COLUMN sample_weight INTEGER NOT NULL DEFAULT 1;
@@ -0,0 +1,98 @@
+package com.jasonmaggard.smart_api.api.docs.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.docs.service.DocService;
+import com.jasonmaggard.smart_api.api.docs.service.ReflectionService;
+import com.jasonmaggard.smart_api.api.jobs.service.DocumentationJobService;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
+import com.jasonmaggard.smart_api.api.llm.service.DocumentationFanOut;
+import com.jasonmaggard.smart_api.api.llm.service.LLMBatchService;
+import com.jasonmaggard.smart_api.api.llm.service.LLMCacheService;
+import com.jasonmaggard.smart_api.api.llm.service.LLMService;
+import org.jobrunr.scheduling.JobScheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Synchronous generation ("sync" mode of POST /api/docs/generate)
+ */
+class DocsControllerTest {
+
+    private final EndpointMetadata users = endpoint("/api/users");
+    private final EndpointMetadata user = endpoint("/api/users/{id}");
+    private LLMService llmService;
+    private DocsController controller;
+
+    @BeforeEach
+    void setUp() {
+        llmService = mock(LLMService.class);
+        ReflectionService reflectionService = mock(ReflectionService.class);
+        when(reflectionService.refresh()).thenReturn(List.of(users, user));
+        controller = new DocsController(mock(DocService.class), reflectionService, llmService,
+            mock(LLMCacheService.class), mock(LLMBatchService.class), mock(JobScheduler.class),
+            mock(AdaptiveRateLimiter.class), mock(DocumentationJobService.class),
+            new DocumentationFanOut(llmService, false), new LLMConfig(), new ObjectMapper());
+    }
+
+    @Test
+    void answers429WithTheLongestRetryAfterWhenEveryEndpointWasRateLimited() {
+        when(llmService.generateDocumentation(users))
+            .thenThrow(new LLMRateLimitException("Rate limited by the API", Duration.ofMillis(1_500)));
+        when(llmService.generateDocumentation(user))
+            .thenThrow(new LLMRateLimitException("Rate limited by the API", Duration.ofMillis(3_200)));
+
+        ResponseEntity<Map<String, Object>> response = controller.generateDocs(syncRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("4");
+        assertThat(response.getBody())
+            .containsEntry("error", "RATE_LIMITED")
+            .containsEntry("rateLimited", 2)
+            .containsEntry("failed", 0);
+    }
+
+    @Test
+    void answers502WhenAnyEndpointFailedForGood() {
+        when(llmService.generateDocumentation(users))
+            .thenThrow(new LLMRateLimitException("Rate limited by the API", Duration.ofSeconds(2)));
+        when(llmService.generateDocumentation(user)).thenThrow(new LLMException("model refused"));
+
+        ResponseEntity<Map<String, Object>> response = controller.generateDocs(syncRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+        assertThat(response.getHeaders().containsKey(HttpHeaders.RETRY_AFTER)).isFalse();
+        assertThat(response.getBody())
+            .containsEntry("error", "LLM_ERROR")
+            .containsEntry("rateLimited", 1)
+            .containsEntry("failed", 1);
+    }
+
+    private static DocsController.GenerateDocsRequest syncRequest() {
+        DocsController.GenerateDocsRequest request = new DocsController.GenerateDocsRequest();
+        request.setMode("sync");
+        request.setConfirm(true);
+        return request;
+    }
+
+    private static EndpointMetadata endpoint(String path) {
+        EndpointMetadata endpoint = new EndpointMetadata();
+        endpoint.setMethod("GET");
+        endpoint.setPath(path);
+        endpoint.setFullPath(path);
+        return endpoint;
+    }
+}
@@ -0,0 +1,128 @@
+package com.jasonmaggard.smart_api.api.docs.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.docs.entity.Doc;
+import com.jasonmaggard.smart_api.api.docs.service.DocService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the documentation upserts against a real Postgres, migrated into a throwaway schema.
+ * Set TEST_POSTGRES_URL (and TEST_POSTGRES_USER / TEST_POSTGRES_PASSWORD) to enable.
+ */
+@EnabledIfEnvironmentVariable(named = "TEST_POSTGRES_URL", matches = ".+")
+class DocUpsertRepositoryPostgresTest {
+
+    private static final String SCHEMA = "doc_upsert_test_" + UUID.randomUUID().toString().replace("-", "");
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static DocUpsertRepository repository;
+
+    @BeforeAll
+    static void migrate() {
+        dataSource = new SingleConnectionDataSource(System.getenv("TEST_POSTGRES_URL"),
+            System.getenv().getOrDefault("TEST_POSTGRES_USER", "postgres"),
+            System.getenv().getOrDefault("TEST_POSTGRES_PASSWORD", ""), true);
+        Flyway.configure().dataSource(dataSource).schemas(SCHEMA).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("SET search_path TO " + SCHEMA);
+        repository = new DocUpsertRepository(jdbcTemplate, new ObjectMapper());
+    }
+
+    @AfterAll
+    static void dropSchema() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+        }
+        if (dataSource != null) {
+            dataSource.destroy();
+        }
+    }
+
+    @BeforeEach
+    void clear() {
+        jdbcTemplate.execute("TRUNCATE documentation");
+    }
+
+    @Test
+    void replacingAnEndpointKeepsItsIdAndFirstGenerationTime() {
+        Doc created = repository.upsert(doc("/api/users/{id}", "first"));
+
+        assertThat(created.getId()).isNotNull();
+        assertThat(DocService.isNew(created)).isTrue();
+        assertThat(created.getParameters()).isEqualTo(Map.of("id", Map.of("type", "Long", "required", true)));
+        assertThat(created.getCodeExamples()).isEqualTo(Map.of("curl", "curl /api/users/first"));
+        assertThat(created.getResponseSchema()).isNull();
+        assertThat(created.getCacheReadInputTokens()).isEqualTo(0);
+
+        Doc replaced = repository.upsert(doc("/api/users/{id}", "second"));
+
+        assertThat(replaced.getId()).isEqualTo(created.getId());
+        assertThat(replaced.getGeneratedAt()).isEqualTo(created.getGeneratedAt());
+        assertThat(replaced.getUpdatedAt()).isAfter(created.getUpdatedAt());
+        assertThat(DocService.isNew(replaced)).isFalse();
+        assertThat(replaced.getDescription()).isEqualTo("second");
+        assertThat(replaced.getCodeExamples()).isEqualTo(Map.of("curl", "curl /api/users/second"));
+        assertThat(count()).isEqualTo(1);
+    }
+
+    @Test
+    void upsertsAcrossTheStatementChunkBoundary() {
+        int rows = DocUpsertRepository.ROWS_PER_STATEMENT + 2;
+        List<Doc> first = repository.upsertAll(IntStream.range(0, rows - 1)
+            .mapToObj(i -> doc("/api/items/" + i, "first")).toList());
+        Map<String, Doc> firstByPath = first.stream().collect(Collectors.toMap(Doc::getEndpointPath, Function.identity()));
+
+        // Replaces every row written above and adds one past the first chunk
+        List<Doc> second = repository.upsertAll(IntStream.range(0, rows)
+            .mapToObj(i -> doc("/api/items/" + i, "second")).toList());
+
+        assertThat(first).hasSize(rows - 1).allMatch(DocService::isNew);
+        assertThat(second).hasSize(rows).allMatch(doc -> doc.getDescription().equals("second"));
+        assertThat(second).filteredOn(DocService::isNew)
+            .extracting(Doc::getEndpointPath).containsExactly("/api/items/" + (rows - 1));
+        for (Doc doc : second) {
+            Doc before = firstByPath.get(doc.getEndpointPath());
+            if (before != null) {
+                assertThat(doc.getId()).isEqualTo(before.getId());
+                assertThat(doc.getGeneratedAt()).isEqualTo(before.getGeneratedAt());
+            }
+        }
+        assertThat(count()).isEqualTo(rows);
+    }
+
+    private static Doc doc(String path, String description) {
+        Doc doc = new Doc();
+        doc.setEndpointPath(path);
+        doc.setHttpMethod("GET");
+        doc.setDescription(description);
+        doc.setParameters(Map.of("id", Map.of("type", "Long", "required", true)));
+        doc.setCodeExamples(Map.of("curl", "curl /api/users/" + description));
+        doc.setLlmModel("claude-haiku-4-5-20251001");
+        doc.setTokenCount(120);
+        doc.setInputTokens(380);
+        doc.setCacheCreationInputTokens(0);
+        doc.setCacheReadInputTokens(0);
+        return doc;
+    }
+
+    private static long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM documentation", Long.class);
+    }
+}
@@ -0,0 +1,81 @@
+package com.jasonmaggard.smart_api.api.docs.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.docs.entity.Doc;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class DocUpsertRepositoryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final DocUpsertRepository repository = new DocUpsertRepository(jdbcTemplate, new ObjectMapper());
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesOneStatementPerChunkOfRows() {
+        int count = DocUpsertRepository.ROWS_PER_STATEMENT * 2 + 1;
+
+        repository.upsertAll(IntStream.range(0, count).mapToObj(DocUpsertRepositoryTest::doc).toList());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(3)).query(sql.capture(), any(RowMapper.class), args.capture());
+        assertThat(sql.getAllValues()).containsExactly(
+            DocUpsertRepository.upsertSql(DocUpsertRepository.ROWS_PER_STATEMENT),
+            DocUpsertRepository.upsertSql(DocUpsertRepository.ROWS_PER_STATEMENT),
+            DocUpsertRepository.upsertSql(1));
+        assertThat(args.getAllValues()).extracting(a -> a.length)
+            .containsExactly(DocUpsertRepository.ROWS_PER_STATEMENT * 11, DocUpsertRepository.ROWS_PER_STATEMENT * 11, 11);
+
+        Object[] last = args.getAllValues().get(2);
+        assertThat(last).containsExactly("/api/items/" + (count - 1), "GET", "Item " + (count - 1),
+            "{\"id\":{\"type\":\"string\"}}", null, "{}", "claude-haiku-4-5-20251001", 120, 80, null, 40);
+    }
+
+    @Test
+    void statementUpsertsOnTheEndpointConstraint() {
+        String sql = DocUpsertRepository.upsertSql(2);
+
+        assertThat(sql).startsWith("INSERT INTO documentation (endpoint_path, http_method,");
+        assertThat(sql).contains("VALUES (?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), CAST(? AS jsonb), ?, ?, ?, ?, ?), (?,");
+        assertThat(sql).contains("ON CONFLICT (endpoint_path, http_method) DO UPDATE SET");
+        assertThat(sql).contains("updated_at = CURRENT_TIMESTAMP");
+        // The original generation time and id survive a replace
+        assertThat(sql).doesNotContain("generated_at =").doesNotContain("id =");
+        assertThat(sql.chars().filter(c -> c == '?').count()).isEqualTo(22);
+    }
+
+    @Test
+    void nothingToWriteIsNoStatement() {
+        assertThat(repository.upsertAll(List.of())).isEmpty();
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private static Doc doc(int i) {
+        Doc doc = new Doc();
+        doc.setEndpointPath("/api/items/" + i);
+        doc.setHttpMethod("GET");
+        doc.setDescription("Item " + i);
+        doc.setParameters(Map.of("id", Map.of("type", "string")));
+        doc.setCodeExamples(Map.of());
+        doc.setLlmModel("claude-haiku-4-5-20251001");
+        doc.setTokenCount(120);
+        doc.setInputTokens(80);
+        doc.setCacheReadInputTokens(40);
+        return doc;
+    }
+}
@@ -0,0 +1,119 @@
+package com.jasonmaggard.smart_api.api.jobs.service;
+
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.docs.service.DocService;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
+import com.jasonmaggard.smart_api.api.llm.service.LLMService;
+import org.jobrunr.jobs.context.JobContext;
+import org.jobrunr.jobs.lambdas.IocJobLambda;
+import org.jobrunr.scheduling.JobScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class DocumentationJobServiceTest {
+
+    private final LLMConfig config = new LLMConfig();
+    private final EndpointMetadata endpoint = new EndpointMetadata();
+    private LLMService llmService;
+    private JobScheduler jobScheduler;
+    private JobContext jobContext;
+    private DocumentationJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        config.getRateLimit().setMaxJobReschedules(2);
+        endpoint.setMethod("GET");
+        endpoint.setFullPath("/api/users/{id}");
+        llmService = mock(LLMService.class);
+        jobScheduler = mock(JobScheduler.class);
+        jobContext = mock(JobContext.class, RETURNS_DEEP_STUBS);
+        jobService = new DocumentationJobService(llmService, mock(DocService.class), jobScheduler, config);
+    }
+
+    @AfterEach
+    void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    @Test
+    void rateLimitedJobIsRescheduledForTheRetryAfterWithItsAttemptCounted() throws Exception {
+        when(llmService.generateDocumentation(endpoint))
+            .thenThrow(new LLMRateLimitException("429", Duration.ofSeconds(30)));
+        Instant before = Instant.now();
+
+        jobService.generateDocumentation("GET", "/api/users/{id}", endpoint, 1, jobContext);
+
+        ArgumentCaptor<Instant> retryAt = ArgumentCaptor.forClass(Instant.class);
+        ArgumentCaptor<IocJobLambda<DocumentationJobService>> job = jobLambda();
+        verify(jobScheduler).schedule(retryAt.capture(), job.capture());
+        assertThat(retryAt.getValue()).isBetween(before.plusSeconds(30), Instant.now().plusSeconds(30));
+        DocumentationJobService next = mock(DocumentationJobService.class);
+        job.getValue().accept(next);
+        verify(next).generateDocumentation("GET", "/api/users/{id}", endpoint, 2, null);
+        verify(jobContext).saveMetadata("status", "rescheduled");
+    }
+
+    @Test
+    void waitingOutAFullLimiterIsRescheduledNotFailed() {
+        LLMConfig.RateLimit settings = new LLMConfig.RateLimit();
+        settings.setInitialConcurrency(1);
+        settings.setAcquireTimeoutMs(20L);
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(settings);
+        AdaptiveRateLimiter.Permit held = limiter.acquire();
+        when(llmService.generateDocumentation(endpoint)).thenAnswer(inv -> limiter.acquire());
+
+        try {
+            jobService.generateDocumentation("GET", "/api/users/{id}", endpoint, jobContext);
+        } finally {
+            held.close();
+        }
+
+        ArgumentCaptor<Instant> retryAt = ArgumentCaptor.forClass(Instant.class);
+        verify(jobScheduler).schedule(retryAt.capture(), jobLambda().capture());
+        // The default retry-after, as nothing but the full limiter held the call back
+        assertThat(retryAt.getValue()).isAfter(Instant.now().plusSeconds(4));
+        verify(jobContext).saveMetadata("status", "rescheduled");
+    }
+
+    @Test
+    void givesUpOnceTheReschedulesAreUsedUp() {
+        when(llmService.generateDocumentation(endpoint))
+            .thenThrow(new LLMRateLimitException("429", Duration.ofSeconds(30)));
+
+        assertThatThrownBy(() -> jobService.generateDocumentation("GET", "/api/users/{id}", endpoint, 2, jobContext))
+            .isInstanceOf(LLMRateLimitException.class);
+
+        verifyNoInteractions(jobScheduler);
+        verify(jobContext).saveMetadata(eq("error"), startsWith("RATE_LIMITED"));
+    }
+
+    @Test
+    void anInterruptedWaitFailsInsteadOfRescheduling() {
+        when(llmService.generateDocumentation(endpoint)).thenAnswer(inv -> {
+            Thread.currentThread().interrupt();
+            throw new LLMRateLimitException("Interrupted waiting for the API rate limit", Duration.ZERO,
+                new InterruptedException());
+        });
+
+        assertThatThrownBy(() -> jobService.generateDocumentation("GET", "/api/users/{id}", endpoint, jobContext))
+            .isInstanceOf(LLMRateLimitException.class);
+
+        verifyNoInteractions(jobScheduler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<IocJobLambda<DocumentationJobService>> jobLambda() {
+        return ArgumentCaptor.forClass(IocJobLambda.class);
+    }
+}
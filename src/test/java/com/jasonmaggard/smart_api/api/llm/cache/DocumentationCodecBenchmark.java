@@ -0,0 +1,98 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode time of cached documentation with the previous serializer (json), the
+ * compact codec as configured by default (compact, deflated from 1KB) and the compact codec
+ * without compression. Prints the bytes each one stores before running:
+ *
+ * <pre>
+ * ./mvnw test-compile
+ * java -cp "target/test-classes:target/classes:$(./mvnw -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     com.jasonmaggard.smart_api.api.llm.cache.DocumentationCodecBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentationCodecBenchmark {
+
+    private static final String[] ENCODINGS = {"json", "compact", "compact-uncompressed"};
+    private static final int[] SIZES = {4, 40};
+
+    @Param({"json", "compact", "compact-uncompressed"})
+    public String encoding;
+
+    /**
+     * Parameters and examples in the documentation; 4 is a typical endpoint, 40 a large one
+     */
+    @Param({"4", "40"})
+    public int fields;
+
+    private RedisSerializer<Object> serializer;
+    private GeneratedDocumentation documentation;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        serializer = serializer(encoding);
+        documentation = DocumentationCodecTest.documentation(fields);
+        encoded = serializer.serialize(documentation);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(documentation);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+
+    private static RedisSerializer<Object> serializer(String encoding) {
+        DocCacheConfig.Codec settings = DocumentationCodecTest.compactWrites();
+        return switch (encoding) {
+            case "json" -> new GenericJackson2JsonRedisSerializer();
+            case "compact" -> new DocumentationCodec(settings);
+            case "compact-uncompressed" -> {
+                settings.setCompressionThresholdBytes(Integer.MAX_VALUE);
+                yield new DocumentationCodec(settings);
+            }
+            default -> throw new IllegalArgumentException(encoding);
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        System.out.printf("%-22s %8s %8s%n", "bytes stored", "fields=4", "fields=40");
+        for (String encoding : ENCODINGS) {
+            RedisSerializer<Object> serializer = serializer(encoding);
+            System.out.printf("%-22s", encoding);
+            for (int size : SIZES) {
+                System.out.printf(" %8d", serializer.serialize(DocumentationCodecTest.documentation(size)).length);
+            }
+            System.out.println();
+        }
+
+        Options options = new OptionsBuilder()
+            .include(DocumentationCodecBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,130 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DocumentationCodecTest {
+
+    private final GenericJackson2JsonRedisSerializer legacy = new GenericJackson2JsonRedisSerializer();
+    private final DocumentationCodec codec = new DocumentationCodec(compactWrites());
+
+    @Test
+    void roundTripsSmallDocumentationUncompressed() {
+        GeneratedDocumentation doc = documentation(2);
+
+        byte[] bytes = codec.serialize(doc);
+
+        assertThat(bytes[0]).isEqualTo(DocumentationCodec.MAGIC);
+        assertThat(bytes[3]).isEqualTo(DocumentationCodec.COMPRESSION_NONE);
+        assertThat(codec.deserialize(bytes)).isEqualTo(doc);
+    }
+
+    @Test
+    void deflatesLargeDocumentation() {
+        GeneratedDocumentation doc = documentation(40);
+
+        byte[] bytes = codec.serialize(doc);
+
+        assertThat(bytes[3]).isEqualTo(DocumentationCodec.COMPRESSION_DEFLATE);
+        assertThat(codec.deserialize(bytes)).isEqualTo(doc);
+        assertThat(bytes.length).isLessThan(legacy.serialize(doc).length / 3);
+    }
+
+    @Test
+    void isSmallerThanTheJsonSerializerWithoutCompression() {
+        DocCacheConfig.Codec settings = compactWrites();
+        settings.setCompressionThresholdBytes(Integer.MAX_VALUE);
+        DocumentationCodec uncompressed = new DocumentationCodec(settings);
+        GeneratedDocumentation doc = documentation(10);
+
+        byte[] bytes = uncompressed.serialize(doc);
+
+        assertThat(bytes.length).isLessThan(legacy.serialize(doc).length);
+        assertThat(new String(bytes)).doesNotContain("@class");
+    }
+
+    @Test
+    void readsEntriesWrittenBeforeTheCompactEncoding() {
+        GeneratedDocumentation doc = documentation(3);
+
+        assertThat(codec.deserialize(legacy.serialize(doc))).isEqualTo(doc);
+    }
+
+    @Test
+    void leavesOtherValuesToTheJsonSerializer() {
+        byte[] bytes = codec.serialize("node-1|docs:GET:/api/users:v1");
+
+        assertThat(bytes).isEqualTo(legacy.serialize("node-1|docs:GET:/api/users:v1"));
+        assertThat(codec.deserialize(bytes)).isEqualTo("node-1|docs:GET:/api/users:v1");
+    }
+
+    @Test
+    void writesTheOldEncodingUntilCompactWritesAreTurnedOn() {
+        GeneratedDocumentation doc = documentation(3);
+
+        byte[] bytes = new DocumentationCodec(new DocCacheConfig.Codec()).serialize(doc);
+
+        assertThat(bytes).isEqualTo(legacy.serialize(doc));
+        assertThat(codec.deserialize(bytes)).isEqualTo(doc);
+    }
+
+    @Test
+    void rejectsHeadersItDoesNotUnderstand() {
+        byte[] bytes = codec.serialize(documentation(2));
+        byte[] newerVersion = Arrays.copyOf(bytes, bytes.length);
+        newerVersion[1] = 2;
+        byte[] truncated = Arrays.copyOf(codec.serialize(documentation(40)), 30);
+
+        assertThatThrownBy(() -> codec.deserialize(newerVersion)).isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> codec.deserialize(truncated)).isInstanceOf(SerializationException.class);
+    }
+
+    static DocCacheConfig.Codec compactWrites() {
+        DocCacheConfig.Codec settings = new DocCacheConfig.Codec();
+        settings.setCompactWrites(true);
+        return settings;
+    }
+
+    static GeneratedDocumentation documentation(int fields) {
+        // Plain collections, as the LLM response is parsed into; the JSON serializer records
+        // their class names
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        Map<String, Object> examples = new LinkedHashMap<>();
+        for (int i = 0; i < fields; i++) {
+            Map<String, Object> parameter = new LinkedHashMap<>();
+            parameter.put("type", i % 2 == 0 ? "string" : "integer");
+            parameter.put("required", i % 3 == 0);
+            parameter.put("description", "Value of field " + i + " on the user record, as stored by the API");
+            parameters.put("field" + i, parameter);
+
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("field" + i, "value-" + i);
+            Map<String, Object> example = new LinkedHashMap<>();
+            example.put("request", request);
+            example.put("status", 200);
+            examples.put("example" + i, example);
+        }
+        examples.put("tags", new ArrayList<>(List.of("users", "admin")));
+        GeneratedDocumentation documentation = new GeneratedDocumentation();
+        documentation.setDescription("Creates or updates a user account");
+        documentation.setParameters(parameters);
+        documentation.setExamples(examples);
+        documentation.setModel("claude-haiku-4-5-20251001");
+        documentation.setTokenCount(1234);
+        documentation.setInputTokens(180);
+        documentation.setCacheReadInputTokens(2048);
+        return documentation;
+    }
+}
@@ -0,0 +1,168 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NearCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void staysWithinItsWeight() {
+        NearCache<String> cache = cache(10_000);
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.put("key-" + i, "x".repeat(100 + i % 400));
+            assertThat(cache.stats().weight()).isLessThanOrEqualTo(10_000);
+        }
+
+        NearCache.Stats stats = cache.stats();
+        assertThat(stats.evictions()).isPositive();
+        assertThat(stats.evictedWeight() + stats.weight()).isEqualTo(totalWeight(1_000));
+    }
+
+    @Test
+    void popularEntriesSurviveAScanOfOneOffKeys() {
+        NearCache<String> cache = cache(100 * 100);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.put("hot-" + i, value(100));
+                cache.get("hot-" + i);
+            }
+        }
+
+        // A bulk pass touching far more keys than fit, each once, while normal traffic
+        // keeps reading the popular entries. Each popular entry is read only once per 100
+        // new keys, more than the cache holds, so plain LRU would have evicted nearly all
+        for (int i = 0; i < 5_000; i++) {
+            cache.put("scan-" + i, value(100));
+            if (i % 2 == 0) {
+                cache.get("hot-" + (i / 2) % 50);
+            }
+        }
+
+        int hotLeft = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot-" + i) != null) {
+                hotLeft++;
+            }
+        }
+        // The sketch is approximate, so allow for the odd hash collision
+        assertThat(hotLeft).isGreaterThanOrEqualTo(45);
+    }
+
+    @Test
+    void replacingAnEntryUpdatesItsWeight() {
+        NearCache<String> cache = cache(10_000);
+        cache.put("a", value(100));
+        cache.put("a", value(300));
+
+        assertThat(cache.get("a")).hasSize(300);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.stats().weight()).isEqualTo(300);
+    }
+
+    @Test
+    void rejectsValuesLargerThanTheCache() {
+        NearCache<String> cache = cache(1_000);
+        cache.put("big", value(100));
+        cache.put("big", value(5_000));
+
+        assertThat(cache.get("big")).isNull();
+        assertThat(cache.stats().rejections()).isEqualTo(1);
+        assertThat(cache.stats().weight()).isZero();
+    }
+
+    @Test
+    void expiredEntriesReadAsMissesAndAreSweptOut() {
+        NearCache<String> cache = cache(10_000);
+        cache.put("old", value(100));
+        clock.addAndGet(Duration.ofMinutes(30).toNanos());
+        cache.put("new", value(100));
+        clock.addAndGet(Duration.ofMinutes(40).toNanos());
+
+        assertThat(cache.get("old")).isNull();
+        assertThat(cache.get("new")).isNotNull();
+
+        cache.put("older", value(100));
+        clock.addAndGet(Duration.ofMinutes(61).toNanos());
+        assertThat(cache.expire()).isEqualTo(2);
+        assertThat(cache.size()).isZero();
+        assertThat(cache.stats().weight()).isZero();
+        assertThat(cache.stats().expirations()).isEqualTo(3);
+    }
+
+    @Test
+    void countsHitsMissesAndLoads() {
+        NearCache<String> cache = cache(10_000);
+        cache.put("a", value(10));
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.recordLoad(2_000_000);
+        cache.recordLoad(4_000_000);
+
+        NearCache.Stats stats = cache.stats();
+        assertThat(stats.hits()).isEqualTo(2);
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.hitRate()).isEqualTo(2.0 / 3);
+        assertThat(stats.averageLoadTimeMs()).isEqualTo(3.0);
+    }
+
+    @Test
+    void concurrentUseKeepsWeightConsistent() throws Exception {
+        NearCache<String> cache = cache(50_000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    String key = "key-" + random.nextInt(2_000);
+                    switch (random.nextInt(10)) {
+                        case 0, 1, 2 -> cache.put(key, value(50 + random.nextInt(200)));
+                        case 3 -> cache.invalidate(key);
+                        default -> cache.get(key);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        long weight = 0;
+        int present = 0;
+        for (int i = 0; i < 2_000; i++) {
+            String value = cache.get("key-" + i);
+            if (value != null) {
+                weight += value.length();
+                present++;
+            }
+        }
+        assertThat(cache.size()).isEqualTo(present);
+        assertThat(cache.stats().weight()).isEqualTo(weight).isLessThanOrEqualTo(50_000);
+    }
+
+    private NearCache<String> cache(long maxWeight) {
+        return new NearCache<>(maxWeight, 0.01, Duration.ofHours(1), String::length, clock::get);
+    }
+
+    private static long totalWeight(int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += 100 + i % 400;
+        }
+        return total;
+    }
+
+    private static String value(int length) {
+        return "x".repeat(length);
+    }
+}
@@ -0,0 +1,193 @@
+package com.jasonmaggard.smart_api.api.llm.cache;
+
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisException;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisCircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final RedisCircuitBreaker breaker = new RedisCircuitBreaker(settings(), clock::get);
+
+    @Test
+    void opensOnlyAfterConsecutiveFailures() {
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED);
+
+        breaker.onFailure();
+
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+        assertThat(breaker.allowRequest()).isFalse();
+        assertThat(breaker.stats().shortCircuited()).isEqualTo(1);
+    }
+
+    @Test
+    void probesOnceTheBackoffHasPassedAndClosesWhenRedisAnswers() {
+        open();
+
+        clock.addAndGet(999);
+        assertThat(breaker.allowRequest()).isFalse();
+        clock.addAndGet(1);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.HALF_OPEN);
+        // Only the probe goes to Redis
+        assertThat(breaker.allowRequest()).isFalse();
+
+        breaker.onSuccess();
+
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED);
+        assertThat(breaker.allowRequest()).isTrue();
+        RedisCircuitBreaker.Stats stats = breaker.stats();
+        assertThat(stats.opened()).isEqualTo(1);
+        assertThat(stats.probes()).isEqualTo(1);
+        assertThat(stats.closed()).isEqualTo(1);
+        assertThat(stats.degradedMs()).isEqualTo(1_000);
+    }
+
+    @Test
+    void failedProbesBackOffUpToTheMaximum() {
+        open();
+        List<Long> waits = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            long backoff = breaker.stats().backoffMs();
+            waits.add(backoff);
+            clock.addAndGet(backoff);
+            assertThat(breaker.allowRequest()).isTrue();
+            breaker.onFailure();
+        }
+
+        assertThat(waits).containsExactly(1_000L, 2_000L, 4_000L, 8_000L, 10_000L, 10_000L);
+        assertThat(breaker.stats().opened()).isEqualTo(7);
+        assertThat(breaker.stats().degradedMs()).isEqualTo(35_000);
+
+        clock.addAndGet(10_000);
+        assertThat(breaker.allowRequest()).isTrue();
+        breaker.onSuccess();
+        // Backoff starts over after recovering
+        open();
+        assertThat(breaker.stats().backoffMs()).isEqualTo(1_000);
+    }
+
+    @Test
+    void aProbeThatNeverReportsBackIsReplaced() {
+        open();
+        clock.addAndGet(1_000);
+        assertThat(breaker.allowRequest()).isTrue();
+
+        clock.addAndGet(999);
+        assertThat(breaker.allowRequest()).isFalse();
+        clock.addAndGet(1);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.stats().probes()).isEqualTo(2);
+    }
+
+    @Test
+    void callsFromBeforeTheCircuitOpenedDoNotChangeIt() {
+        open();
+
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+        assertThat(breaker.stats().opened()).isEqualTo(1);
+        assertThat(breaker.stats().backoffMs()).isEqualTo(1_000);
+    }
+
+    @Test
+    void exactlyOneConcurrentCallerGetsToProbe() throws Exception {
+        open();
+        clock.addAndGet(1_000);
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return breaker.allowRequest();
+            }));
+        }
+        start.countDown();
+
+        int allowed = 0;
+        for (Future<Boolean> result : results) {
+            allowed += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertThat(allowed).isEqualTo(1);
+        assertThat(breaker.stats().shortCircuited()).isEqualTo(threads - 1);
+    }
+
+    @Test
+    void callCountsOnlyConnectionFailuresAgainstTheCircuit() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(breaker.call("reading", () -> {
+                throw new RedisSystemException("WRONGTYPE",
+                    new RedisCommandExecutionException("WRONGTYPE Operation against a key holding the wrong kind of value"));
+            }, "fallback")).isEqualTo("fallback");
+        }
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED);
+
+        for (int i = 0; i < 3; i++) {
+            breaker.call("reading", () -> {
+                throw new RedisConnectionFailureException("Unable to connect to localhost:6379");
+            }, null);
+        }
+
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+        assertThat(breaker.call("reading", () -> "value", "skipped")).isEqualTo("skipped");
+    }
+
+    @Test
+    void recognisesConnectionFailures() {
+        assertThat(RedisCircuitBreaker.isConnectionFailure(new RedisConnectionFailureException("refused"))).isTrue();
+        assertThat(RedisCircuitBreaker.isConnectionFailure(new QueryTimeoutException("Redis command timed out"))).isTrue();
+        assertThat(RedisCircuitBreaker.isConnectionFailure(new RedisSystemException("not connected",
+            new RedisException("Currently not connected. Commands are rejected.")))).isTrue();
+        assertThat(RedisCircuitBreaker.isConnectionFailure(new RedisSystemException("reset",
+            new RedisException(new IOException("Connection reset by peer"))))).isTrue();
+
+        assertThat(RedisCircuitBreaker.isConnectionFailure(new RedisSystemException("WRONGTYPE",
+            new RedisCommandExecutionException("WRONGTYPE Operation against a key holding the wrong kind of value")))).isFalse();
+        assertThat(RedisCircuitBreaker.isConnectionFailure(new RedisSystemException("script",
+            new RedisCommandExecutionException("ERR Error running script")))).isFalse();
+        assertThat(RedisCircuitBreaker.isConnectionFailure(new IllegalArgumentException("bad key"))).isFalse();
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+    }
+
+    private static DocCacheConfig.CircuitBreaker settings() {
+        DocCacheConfig.CircuitBreaker settings = new DocCacheConfig.CircuitBreaker();
+        settings.setFailureThreshold(3);
+        settings.setOpenMs(1_000L);
+        settings.setMaxOpenMs(10_000L);
+        settings.setBackoffMultiplier(2.0);
+        return settings;
+    }
+}
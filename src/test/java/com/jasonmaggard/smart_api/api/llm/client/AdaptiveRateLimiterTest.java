@@ -0,0 +1,227 @@
+package com.jasonmaggard.smart_api.api.llm.client;
+
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(settings(), clock::get);
+
+    @Test
+    void admitsUpToTheInitialConcurrency() {
+        List<AdaptiveRateLimiter.Permit> permits = take(4);
+
+        assertThat(limiter.tryAcquire()).isNull();
+
+        permits.get(0).close();
+        // Closing twice frees one slot only
+        permits.get(0).close();
+        assertThat(limiter.tryAcquire()).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+    }
+
+    @Test
+    void growsByAboutOnePerLimitOfSuccessfulCallsWhileSaturated() {
+        List<AdaptiveRateLimiter.Permit> permits = take(4);
+
+        for (int i = 0; i < 4; i++) {
+            limiter.onResponse(clock.get(), 200, headers());
+        }
+        assertThat(limiter.stats().limit()).isBetween(4.9, 5.0);
+        limiter.onResponse(clock.get(), 200, headers());
+
+        assertThat(limiter.tryAcquire()).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+        permits.forEach(AdaptiveRateLimiter.Permit::close);
+    }
+
+    @Test
+    void doesNotGrowALimitThatIsNotHoldingCallsBack() {
+        AdaptiveRateLimiter.Permit permit = limiter.tryAcquire();
+        for (int i = 0; i < 20; i++) {
+            limiter.onResponse(clock.get(), 200, headers());
+        }
+        permit.close();
+
+        assertThat(limiter.stats().limit()).isEqualTo(4.0);
+    }
+
+    @Test
+    void rateLimitedResponseCutsTheLimitOnceAndPausesForRetryAfter() {
+        long sentAt = clock.get();
+        List<AdaptiveRateLimiter.Permit> permits = take(4);
+        clock.addAndGet(100);
+
+        limiter.onResponse(sentAt, 429, headers("retry-after", "2"));
+        // Sent before the cut, so the same congestion: no second cut
+        limiter.onResponse(sentAt, 429, headers("retry-after", "1"));
+        permits.forEach(AdaptiveRateLimiter.Permit::close);
+
+        assertThat(limiter.stats().limit()).isEqualTo(2.0);
+        assertThat(limiter.stats().decreases()).isEqualTo(1);
+        assertThat(limiter.stats().rateLimited()).isEqualTo(2);
+        assertThat(limiter.retryAfter().toMillis()).isEqualTo(2_000);
+        assertThat(limiter.tryAcquire()).isNull();
+
+        clock.addAndGet(2_000);
+        assertThat(limiter.tryAcquire()).isNotNull();
+        assertThat(limiter.tryAcquire()).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+    }
+
+    @Test
+    void overloadedResponseCutsTheLimitWithoutPausing() {
+        limiter.onResponse(clock.get(), 529, headers());
+        clock.addAndGet(10);
+        limiter.onResponse(clock.get(), 529, headers());
+
+        assertThat(limiter.stats().limit()).isEqualTo(1.0);
+        assertThat(limiter.stats().overloaded()).isEqualTo(2);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void requestBucketPacesCallsAtTheReportedLimit() {
+        limiter.onResponse(clock.get(), 200, headers(
+            "anthropic-ratelimit-requests-limit", "60",
+            "anthropic-ratelimit-requests-remaining", "1"));
+
+        AdaptiveRateLimiter.Permit first = limiter.tryAcquire();
+        assertThat(first).isNotNull();
+        first.close();
+        assertThat(limiter.tryAcquire()).isNull();
+        assertThat(limiter.retryAfter().toMillis()).isEqualTo(1_000);
+
+        // 60 a minute refills one a second
+        clock.addAndGet(1_000);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void spentTokenBudgetPausesUntilItResets() {
+        Instant reset = Instant.ofEpochMilli(clock.get() + 30_000);
+        limiter.onResponse(clock.get(), 200, headers(
+            "anthropic-ratelimit-output-tokens-limit", "8000",
+            "anthropic-ratelimit-output-tokens-remaining", "0",
+            "anthropic-ratelimit-output-tokens-reset", reset.toString()));
+
+        assertThat(limiter.tryAcquire()).isNull();
+        assertThat(limiter.stats().budgetLow()).isTrue();
+
+        clock.addAndGet(30_000);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void stopsGrowingWhileABudgetIsNearlySpent() {
+        List<AdaptiveRateLimiter.Permit> permits = take(4);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.onResponse(clock.get(), 200, headers(
+                "anthropic-ratelimit-input-tokens-limit", "100000",
+                "anthropic-ratelimit-input-tokens-remaining", "5000"));
+        }
+
+        assertThat(limiter.stats().limit()).isEqualTo(4.0);
+        permits.forEach(AdaptiveRateLimiter.Permit::close);
+    }
+
+    @Test
+    void readsRetryAfterInEveryForm() {
+        long now = 1_700_000_000_000L;
+
+        assertThat(AdaptiveRateLimiter.parseRetryAfter(headers("retry-after", "3"), now)).isEqualTo(3_000);
+        assertThat(AdaptiveRateLimiter.parseRetryAfter(headers("retry-after", "0.5"), now)).isEqualTo(500);
+        assertThat(AdaptiveRateLimiter.parseRetryAfter(headers("retry-after-ms", "250", "retry-after", "3"), now)).isEqualTo(250);
+        assertThat(AdaptiveRateLimiter.parseRetryAfter(headers("retry-after", "Tue, 14 Nov 2023 22:13:30 GMT"), now)).isEqualTo(10_000);
+        assertThat(AdaptiveRateLimiter.parseRetryAfter(headers("retry-after", "soon"), now)).isEqualTo(-1);
+        assertThat(AdaptiveRateLimiter.parseRetryAfter(headers(), now)).isEqualTo(-1);
+    }
+
+    @Test
+    void acquireWaitsForASlotAndGivesUpAtTheTimeout() throws Exception {
+        LLMConfig.RateLimit settings = settings();
+        settings.setInitialConcurrency(1);
+        settings.setAcquireTimeoutMs(5_000L);
+        AdaptiveRateLimiter realTime = new AdaptiveRateLimiter(settings);
+
+        AdaptiveRateLimiter.Permit held = realTime.acquire();
+        CompletableFuture<AdaptiveRateLimiter.Permit> waiter = CompletableFuture.supplyAsync(realTime::acquire);
+        while (realTime.stats().waiting() == 0) {
+            Thread.sleep(1);
+        }
+        assertThat(waiter).isNotDone();
+
+        held.close();
+        waiter.get(2, TimeUnit.SECONDS).close();
+
+        settings.setAcquireTimeoutMs(50L);
+        AdaptiveRateLimiter impatient = new AdaptiveRateLimiter(settings);
+        AdaptiveRateLimiter.Permit busy = impatient.acquire();
+        // Nothing paused, only every slot taken: still worth waiting before trying again
+        assertThatThrownBy(impatient::acquire).isInstanceOfSatisfying(LLMRateLimitException.class,
+            e -> assertThat(e.getRetryAfter().toMillis()).isEqualTo(5_000));
+        assertThat(impatient.stats().timedOut()).isEqualTo(1);
+        busy.close();
+    }
+
+    @Test
+    void admitsEverythingWhenDisabled() {
+        LLMConfig.RateLimit settings = settings();
+        settings.setEnabled(false);
+        AdaptiveRateLimiter disabled = new AdaptiveRateLimiter(settings, clock::get);
+
+        disabled.onResponse(clock.get(), 429, headers("retry-after", "60"));
+
+        for (int i = 0; i < 100; i++) {
+            disabled.acquire();
+        }
+        assertThat(disabled.stats().rateLimited()).isZero();
+        assertThat(disabled.retryAfter().toMillis()).isEqualTo(5_000);
+    }
+
+    private List<AdaptiveRateLimiter.Permit> take(int count) {
+        List<AdaptiveRateLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AdaptiveRateLimiter.Permit permit = limiter.tryAcquire();
+            assertThat(permit).isNotNull();
+            permits.add(permit);
+        }
+        return permits;
+    }
+
+    private static Function<String, String> headers(String... namesAndValues) {
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return headers::get;
+    }
+
+    private static LLMConfig.RateLimit settings() {
+        LLMConfig.RateLimit settings = new LLMConfig.RateLimit();
+        settings.setInitialConcurrency(4);
+        settings.setMinConcurrency(1);
+        settings.setMaxConcurrency(8);
+        settings.setAdditiveIncrease(1.0);
+        settings.setDecreaseFactor(0.5);
+        settings.setReserveFraction(0.1);
+        settings.setDefaultRetryAfterMs(5_000L);
+        return settings;
+    }
+}
@@ -0,0 +1,247 @@
+package com.jasonmaggard.smart_api.api.llm.config;
+
+import com.anthropic.client.AnthropicClient;
+import com.anthropic.client.okhttp.AnthropicOkHttpClient;
+import com.anthropic.models.messages.Message;
+import com.anthropic.models.messages.MessageCreateParams;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the client against a local HTTP/1.1 keep-alive stub that charges a fixed delay
+ * for every new connection, standing in for the TCP + TLS handshake to the real API.
+ */
+class AnthropicClientConfigTest {
+
+    private static final int CALLS = 20;
+    private static final long HANDSHAKE_MS = 40;
+    private static final String MESSAGE_JSON = """
+        {"id":"msg_stub","type":"message","role":"assistant","model":"stub-model",\
+        "content":[{"type":"text","text":"{}"}],"stop_reason":"end_turn","stop_sequence":null,\
+        "usage":{"input_tokens":12,"output_tokens":3}}""";
+
+    private StubServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StubServer();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void sharedClientReusesOneConnectionAcrossCalls() {
+        AnthropicClient client = new AnthropicClientConfig().anthropicClient(config(), new AdaptiveRateLimiter(new LLMConfig.RateLimit()));
+        try {
+            for (int i = 0; i < CALLS; i++) {
+                Message message = client.messages().create(params());
+                assertThat(message.usage().outputTokens()).isEqualTo(3);
+            }
+        } finally {
+            client.close();
+        }
+
+        assertThat(server.requests()).isEqualTo(CALLS);
+        assertThat(server.connections()).isEqualTo(1);
+    }
+
+    @Test
+    void sharedClientSavesTheHandshakeOnEveryCallAfterTheFirst() {
+        // Warm up class loading and JIT on both paths so the timings compare transport only
+        callWithFreshClients(3);
+        callWithSharedClient(3);
+        server.reset();
+
+        long freshNanos = callWithFreshClients(CALLS);
+        int freshConnections = server.connections();
+        server.reset();
+
+        long sharedNanos = callWithSharedClient(CALLS);
+        int sharedConnections = server.connections();
+
+        double savedPerCallMs = (freshNanos - sharedNanos) / 1e6 / CALLS;
+        System.out.printf(Locale.ROOT,
+            "%d calls: client per call %.1f ms over %d connections, shared client %.1f ms over %d (%.1f ms saved per call)%n",
+            CALLS, freshNanos / 1e6, freshConnections, sharedNanos / 1e6, sharedConnections, savedPerCallMs);
+
+        assertThat(freshConnections).isEqualTo(CALLS);
+        assertThat(sharedConnections).isEqualTo(1);
+        // Every call but the first skips the handshake; allow half of it for scheduling noise
+        assertThat(savedPerCallMs).isGreaterThan(HANDSHAKE_MS * (CALLS - 1) / (double) CALLS / 2);
+    }
+
+    /**
+     * The way LLMService used to call the API: a new client, pool and dispatcher each time
+     */
+    private long callWithFreshClients(int calls) {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            AnthropicClient client = AnthropicOkHttpClient.builder()
+                .apiKey("test-key")
+                .baseUrl(server.baseUrl())
+                .build();
+            client.messages().create(params());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long callWithSharedClient(int calls) {
+        AnthropicClient client = new AnthropicClientConfig().anthropicClient(config(), new AdaptiveRateLimiter(new LLMConfig.RateLimit()));
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                client.messages().create(params());
+            }
+            return System.nanoTime() - start;
+        } finally {
+            client.close();
+        }
+    }
+
+    private LLMConfig config() {
+        LLMConfig config = new LLMConfig();
+        config.setApiKey("test-key");
+        config.setBaseUrl(server.baseUrl());
+        config.setMaxRetries(0);
+        return config;
+    }
+
+    private static MessageCreateParams params() {
+        return MessageCreateParams.builder()
+            .model("stub-model")
+            .maxTokens(64L)
+            .addUserMessage("Document GET /api/users/{id}")
+            .build();
+    }
+
+    /**
+     * Minimal keep-alive HTTP/1.1 server answering every request with MESSAGE_JSON
+     */
+    private static final class StubServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private StubServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            executor.execute(this::acceptLoop);
+        }
+
+        String baseUrl() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort();
+        }
+
+        int connections() {
+            return connections.get();
+        }
+
+        int requests() {
+            return requests.get();
+        }
+
+        void reset() {
+            connections.set(0);
+            requests.set(0);
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    executor.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (socket) {
+                Thread.sleep(HANDSHAKE_MS);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                // One write per response, so Nagle and delayed ACKs stay out of the timings
+                byte[] response = ("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n" +
+                    "Content-Length: " + MESSAGE_JSON.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" +
+                    MESSAGE_JSON).getBytes(StandardCharsets.UTF_8);
+                while (readRequest(in)) {
+                    requests.incrementAndGet();
+                    out.write(response);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Client went away
+            }
+        }
+
+        /**
+         * Consume one request; false once the client has closed the connection
+         */
+        private static boolean readRequest(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return false;
+            }
+            long contentLength = 0;
+            boolean chunked = false;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                String header = line.toLowerCase(Locale.ROOT);
+                if (header.startsWith("content-length:")) {
+                    contentLength = Long.parseLong(header.substring(15).trim());
+                } else if (header.startsWith("transfer-encoding:") && header.contains("chunked")) {
+                    chunked = true;
+                }
+            }
+            if (chunked) {
+                long size;
+                while ((size = Long.parseLong(readLine(in).trim(), 16)) > 0) {
+                    in.skipNBytes(size + 2);
+                }
+                readLine(in);
+            } else {
+                in.skipNBytes(contentLength);
+            }
+            return true;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return b == -1 && line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+    }
+}
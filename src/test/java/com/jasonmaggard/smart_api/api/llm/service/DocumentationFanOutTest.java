@@ -0,0 +1,166 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMRateLimitException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DocumentationFanOutTest {
+
+    private final LLMService llmService = mock(LLMService.class);
+
+    @Test
+    void generatesEveryEndpointAtOnceAndKeepsTheirOrder() {
+        int count = 500;
+        // Every call blocks until all of them have started, so this only finishes if each
+        // endpoint has a thread of its own
+        CountDownLatch allStarted = new CountDownLatch(count);
+        Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+        when(llmService.generateDocumentation(any())).thenAnswer(inv -> {
+            virtual.add(Thread.currentThread().isVirtual());
+            allStarted.countDown();
+            assertThat(allStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            return documentation(inv.<EndpointMetadata>getArgument(0).getFullPath());
+        });
+
+        List<DocumentationFanOut.Outcome> outcomes = new DocumentationFanOut(llmService, true)
+            .generateEach(endpoints(count), count, Duration.ofSeconds(30));
+
+        assertThat(outcomes).extracting(outcome -> outcome.documentation().getDescription())
+            .containsExactlyElementsOf(IntStream.range(0, count).mapToObj(i -> "/api/items/" + i).toList());
+        assertThat(virtual).containsExactly(true);
+    }
+
+    @Test
+    void runsOnPlatformThreadsWhenVirtualThreadsAreOff() {
+        Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+        when(llmService.generateDocumentation(any())).thenAnswer(inv -> {
+            virtual.add(Thread.currentThread().isVirtual());
+            return documentation(inv.<EndpointMetadata>getArgument(0).getFullPath());
+        });
+
+        assertThat(new DocumentationFanOut(llmService, false).generateEach(endpoints(4), 4, Duration.ofSeconds(10)))
+            .extracting(DocumentationFanOut.Outcome::status).containsOnly(DocumentationFanOut.Status.GENERATED);
+        assertThat(virtual).containsExactly(false);
+    }
+
+    @Test
+    void noEndpointsIsNoWork() {
+        assertThat(new DocumentationFanOut(llmService, true).generateEach(List.of(), 4, Duration.ofSeconds(1))).isEmpty();
+    }
+
+    @Test
+    void reportsEachEndpointWithoutFailingTheOthers() {
+        when(llmService.generateDocumentation(any())).thenAnswer(inv -> {
+            String path = inv.<EndpointMetadata>getArgument(0).getFullPath();
+            if (path.endsWith("/1")) {
+                throw new LLMException("model refused " + path);
+            }
+            if (path.endsWith("/2")) {
+                Thread.sleep(5_000);
+            }
+            return documentation(path);
+        });
+
+        long start = System.nanoTime();
+        List<DocumentationFanOut.Outcome> outcomes = new DocumentationFanOut(llmService, true)
+            .generateEach(endpoints(4), 4, Duration.ofMillis(200));
+
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(3);
+        assertThat(outcomes).extracting(DocumentationFanOut.Outcome::status).containsExactly(
+            DocumentationFanOut.Status.GENERATED, DocumentationFanOut.Status.FAILED,
+            DocumentationFanOut.Status.TIMED_OUT, DocumentationFanOut.Status.GENERATED);
+        assertThat(outcomes.get(0).documentation().getDescription()).isEqualTo("/api/items/0");
+        assertThat(outcomes.get(1).error()).isEqualTo("model refused /api/items/1");
+        assertThat(outcomes.get(2).documentation()).isNull();
+        assertThat(outcomes.get(2).error()).contains("200 ms");
+    }
+
+    @Test
+    void generatesNoMoreThanMaxConcurrencyAtOnce() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicLong peak = new AtomicLong();
+        when(llmService.generateDocumentation(any())).thenAnswer(inv -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return documentation(inv.<EndpointMetadata>getArgument(0).getFullPath());
+        });
+
+        List<DocumentationFanOut.Outcome> outcomes = new DocumentationFanOut(llmService, false)
+            .generateEach(endpoints(30), 3, Duration.ofSeconds(10));
+
+        assertThat(outcomes).extracting(DocumentationFanOut.Outcome::status)
+            .containsOnly(DocumentationFanOut.Status.GENERATED);
+        assertThat(peak.get()).isEqualTo(3);
+    }
+
+    @Test
+    void generationsThatTimedOutKeepTheirSlotUntilTheyFinish() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicLong peak = new AtomicLong();
+        when(llmService.generateDocumentation(any())).thenAnswer(inv -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                String path = inv.<EndpointMetadata>getArgument(0).getFullPath();
+                Thread.sleep(path.endsWith("/0") ? 500 : 10);
+                return documentation(path);
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        List<DocumentationFanOut.Outcome> outcomes = new DocumentationFanOut(llmService, false)
+            .generateEach(endpoints(3), 1, Duration.ofMillis(50));
+
+        // The others wait for the slow one rather than starting beside it once it timed out
+        assertThat(outcomes).extracting(DocumentationFanOut.Outcome::status).containsExactly(
+            DocumentationFanOut.Status.TIMED_OUT, DocumentationFanOut.Status.GENERATED, DocumentationFanOut.Status.GENERATED);
+        assertThat(peak.get()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsRateLimitedEndpointsWithTheirRetryAfter() {
+        when(llmService.generateDocumentation(any()))
+            .thenThrow(new LLMRateLimitException("Rate limited by the API", Duration.ofSeconds(7)));
+
+        List<DocumentationFanOut.Outcome> outcomes = new DocumentationFanOut(llmService, true)
+            .generateEach(endpoints(1), 1, Duration.ofSeconds(1));
+
+        assertThat(outcomes.get(0).status()).isEqualTo(DocumentationFanOut.Status.RATE_LIMITED);
+        assertThat(outcomes.get(0).retryAfter()).isEqualTo(Duration.ofSeconds(7));
+        assertThat(outcomes.get(0).error()).isEqualTo("Rate limited by the API");
+    }
+
+    private static List<EndpointMetadata> endpoints(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            EndpointMetadata endpoint = new EndpointMetadata();
+            endpoint.setMethod("GET");
+            endpoint.setPath("/api/items/" + i);
+            endpoint.setFullPath("/api/items/" + i);
+            return endpoint;
+        }).toList();
+    }
+
+    private static GeneratedDocumentation documentation(String description) {
+        GeneratedDocumentation documentation = new GeneratedDocumentation();
+        documentation.setDescription(description);
+        return documentation;
+    }
+}
@@ -0,0 +1,210 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.anthropic.client.AnthropicClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
+import com.jasonmaggard.smart_api.api.llm.config.AnthropicClientConfig;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import com.jasonmaggard.smart_api.api.llm.repository.DocBatchRepository;
+import com.jasonmaggard.smart_api.api.llm.repository.DocBatchRepository.BatchRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs LLMBatchService against a local stand-in for the Message Batches endpoints
+ */
+class LLMBatchServiceTest {
+
+    private static final String RESULT_TEXT =
+        "{\\\"description\\\":\\\"Fetch a user\\\",\\\"parameters\\\":{},\\\"examples\\\":{\\\"curl\\\":\\\"curl /api/users/1\\\"}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> batchStatus = new ConcurrentHashMap<>();
+    private final Map<String, String> batchResults = new ConcurrentHashMap<>();
+    private final List<JsonNode> createRequests = new ArrayList<>();
+
+    private HttpServer server;
+    private AnthropicClient client;
+    private LLMCacheService cacheService;
+    private DocBatchRepository batchRepository;
+    private LLMBatchService batchService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/messages/batches", this::handle);
+        server.start();
+
+        LLMConfig config = new LLMConfig();
+        config.setApiKey("test-key");
+        config.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setMaxRetries(0);
+        config.setModel("stub-model");
+
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(config.getRateLimit());
+        client = new AnthropicClientConfig().anthropicClient(config, rateLimiter);
+        cacheService = mock(LLMCacheService.class);
+        when(cacheService.generateCacheKey(any(EndpointMetadata.class))).thenAnswer(inv -> {
+            EndpointMetadata endpoint = inv.getArgument(0);
+            return "docs:" + endpoint.getMethod().toUpperCase() + ":" + endpoint.getFullPath() + ":fp";
+        });
+        batchRepository = mock(DocBatchRepository.class);
+        LLMService llmService = new LLMService(config, cacheService, client, mock(LLMRequestCoalescer.class), rateLimiter);
+        batchService = new LLMBatchService(config, llmService, cacheService, client, batchRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void submitSendsAllPromptsAsOneBatchAndRecordsTheMapping() {
+        batchStatus.put("msgbatch_new", "in_progress");
+
+        String batchId = batchService.submit(List.of(
+            endpoint("GET", "/api/users/{id}"), endpoint("post", "/api/posts")));
+
+        assertThat(batchId).isEqualTo("msgbatch_new");
+        assertThat(createRequests).hasSize(1);
+        JsonNode requests = createRequests.get(0).path("requests");
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(0).path("custom_id").asText()).isEqualTo("doc-0");
+        assertThat(requests.get(0).path("params").path("model").asText()).isEqualTo("stub-model");
+        JsonNode system = requests.get(0).path("params").path("system");
+        assertThat(system.get(0).path("text").asText()).isEqualTo(LLMService.SYSTEM_PROMPT);
+        assertThat(system.get(0).has("cache_control")).isFalse();
+        assertThat(requests.get(0).path("params").path("messages").get(0).path("content").asText())
+            .isEqualTo("{\"method\":\"GET\",\"path\":\"/api/users/{id}\"}");
+        assertThat(requests.get(1).path("params").path("messages").get(0).path("content").asText())
+            .isEqualTo("{\"method\":\"POST\",\"path\":\"/api/posts\"}");
+
+        verify(batchRepository).insert("msgbatch_new", List.of(
+            new BatchRequest("doc-0", "/api/users/{id}", "GET", "docs:GET:/api/users/{id}:fp"),
+            new BatchRequest("doc-1", "/api/posts", "POST", "docs:POST:/api/posts:fp")));
+    }
+
+    @Test
+    void endedBatchesFanResultsOutAndRunningOnesAreLeftAlone() {
+        batchStatus.put("msgbatch_done", "ended");
+        batchStatus.put("msgbatch_running", "in_progress");
+        batchResults.put("msgbatch_done", String.join("\n",
+            succeeded("doc-0"),
+            "{\"custom_id\":\"doc-1\",\"result\":{\"type\":\"errored\",\"error\":{\"type\":\"error\"," +
+                "\"error\":{\"type\":\"invalid_request_error\",\"message\":\"bad prompt\"}}}}",
+            "{\"custom_id\":\"doc-2\",\"result\":{\"type\":\"expired\"}}"));
+        when(batchRepository.findSubmittedIds()).thenReturn(List.of("msgbatch_done", "msgbatch_running"));
+        when(batchRepository.findRequests("msgbatch_done")).thenReturn(List.of(
+            new BatchRequest("doc-0", "/api/users/{id}", "GET", "docs:GET:/api/users/{id}:fp"),
+            new BatchRequest("doc-1", "/api/posts", "POST", "docs:POST:/api/posts:fp"),
+            new BatchRequest("doc-2", "/api/posts/{id}", "DELETE", "docs:DELETE:/api/posts/{id}:fp")));
+
+        List<BatchRequest> written = new ArrayList<>();
+        List<GeneratedDocumentation> docs = new ArrayList<>();
+        int completed = batchService.completeEndedBatches((request, doc) -> {
+            written.add(request);
+            docs.add(doc);
+        });
+
+        assertThat(completed).isEqualTo(1);
+        assertThat(written).containsExactly(new BatchRequest("doc-0", "/api/users/{id}", "GET", "docs:GET:/api/users/{id}:fp"));
+        assertThat(docs.get(0).getDescription()).isEqualTo("Fetch a user");
+        assertThat(docs.get(0).getExamples()).containsEntry("curl", "curl /api/users/1");
+        assertThat(docs.get(0).getTokenCount()).isEqualTo(42);
+        assertThat(docs.get(0).getInputTokens()).isEqualTo(100);
+        assertThat(docs.get(0).getCacheReadInputTokens()).isEqualTo(1500);
+        assertThat(docs.get(0).getCacheCreationInputTokens()).isZero();
+        verify(cacheService).put("docs:GET:/api/users/{id}:fp", docs.get(0));
+        verify(batchRepository).markCompleted("msgbatch_done", 1, 2);
+        verify(batchRepository, never()).markCompleted(eq("msgbatch_running"), anyInt(), anyInt());
+        verify(batchRepository, never()).findRequests("msgbatch_running");
+    }
+
+    @Test
+    void failedBatchIsRetriedOnTheNextPollWithoutBlockingOthers() {
+        batchStatus.put("msgbatch_done", "ended");
+        when(batchRepository.findSubmittedIds()).thenReturn(List.of("msgbatch_missing", "msgbatch_done"));
+        when(batchRepository.findRequests("msgbatch_done")).thenReturn(List.of(
+            new BatchRequest("doc-0", "/api/users/{id}", "GET", "docs:GET:/api/users/{id}:fp")));
+        batchResults.put("msgbatch_done", succeeded("doc-0"));
+
+        int completed = batchService.completeEndedBatches((request, doc) -> { });
+
+        assertThat(completed).isEqualTo(1);
+        verify(batchRepository).markCompleted("msgbatch_done", 1, 0);
+        verify(batchRepository, never()).markCompleted(eq("msgbatch_missing"), anyInt(), anyInt());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String[] segments = exchange.getRequestURI().getPath().split("/");
+        String method = exchange.getRequestMethod();
+        if ("POST".equals(method) && segments.length == 4) {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            synchronized (createRequests) {
+                createRequests.add(body);
+            }
+            respond(exchange, 200, "application/json", batchJson("msgbatch_new"));
+        } else if ("GET".equals(method) && segments.length == 5 && batchStatus.containsKey(segments[4])) {
+            respond(exchange, 200, "application/json", batchJson(segments[4]));
+        } else if ("GET".equals(method) && segments.length == 6 && batchResults.containsKey(segments[4])) {
+            respond(exchange, 200, "application/binary", batchResults.get(segments[4]));
+        } else {
+            respond(exchange, 404, "application/json",
+                "{\"type\":\"error\",\"error\":{\"type\":\"not_found_error\",\"message\":\"no such batch\"}}");
+        }
+    }
+
+    private String batchJson(String id) {
+        boolean ended = "ended".equals(batchStatus.get(id));
+        return "{\"id\":\"" + id + "\",\"type\":\"message_batch\",\"processing_status\":\"" + batchStatus.get(id) + "\"," +
+            "\"request_counts\":{\"processing\":" + (ended ? 0 : 2) + ",\"succeeded\":0,\"errored\":0,\"canceled\":0,\"expired\":0}," +
+            "\"created_at\":\"2026-01-01T00:00:00Z\",\"expires_at\":\"2026-01-02T00:00:00Z\"," +
+            "\"ended_at\":" + (ended ? "\"2026-01-01T01:00:00Z\"" : "null") + ",\"archived_at\":null," +
+            "\"cancel_initiated_at\":null,\"results_url\":null}";
+    }
+
+    private static String succeeded(String customId) {
+        return "{\"custom_id\":\"" + customId + "\",\"result\":{\"type\":\"succeeded\",\"message\":{" +
+            "\"id\":\"msg_1\",\"type\":\"message\",\"role\":\"assistant\",\"model\":\"stub-model\"," +
+            "\"content\":[{\"type\":\"text\",\"text\":\"" + RESULT_TEXT + "\"}]," +
+            "\"stop_reason\":\"end_turn\",\"stop_sequence\":null,\"usage\":{\"input_tokens\":100,\"cache_read_input_tokens\":1500,\"output_tokens\":42}}}}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static EndpointMetadata endpoint(String method, String path) {
+        EndpointMetadata endpoint = new EndpointMetadata();
+        endpoint.setMethod(method);
+        endpoint.setPath(path);
+        endpoint.setFullPath(path);
+        return endpoint;
+    }
+}
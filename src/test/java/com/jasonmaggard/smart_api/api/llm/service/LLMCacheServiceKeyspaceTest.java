@@ -0,0 +1,116 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.config.RedisConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs LLMCacheService against a local Redis stand-in holding a large keyspace, checking
+ * that clearing and stats never use KEYS
+ */
+class LLMCacheServiceKeyspaceTest {
+
+    private static final int ENTRIES = 100_000;
+    private static final String INDEX_KEY = "docs-index:v1";
+
+    private RedisStandIn redis;
+    private LettuceConnectionFactory connectionFactory;
+    private LLMCacheService cacheService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        redis = new RedisStandIn();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        DocCacheConfig cacheConfig = new DocCacheConfig();
+        cacheService = new LLMCacheService(new RedisConfig().redisTemplate(connectionFactory, cacheConfig), cacheConfig,
+            new LLMConfig());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    void statsCountLiveEntriesFromTheIndex() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ENTRIES; i++) {
+            redis.seedSortedSet(INDEX_KEY, key(i), now + 60_000);
+        }
+        // Expired in Redis but not yet pruned from the index
+        for (int i = 0; i < 25; i++) {
+            redis.seedSortedSet(INDEX_KEY, "expired-" + i, now - 1_000);
+        }
+
+        assertThat(cacheService.getStats().redisCacheSize).isEqualTo(ENTRIES);
+        assertThat(redis.commandCount("KEYS")).isZero();
+        assertThat(redis.commandCount("ZCOUNT")).isEqualTo(1);
+    }
+
+    @Test
+    void clearAllScansAndUnlinksInPipelinedBatches() {
+        for (int i = 0; i < ENTRIES; i++) {
+            redis.seed(key(i), "{}");
+            redis.seedSortedSet(INDEX_KEY, key(i), Double.MAX_VALUE);
+        }
+        for (int i = 0; i < 50; i++) {
+            redis.seed("session:" + i, "keep");
+        }
+
+        long start = System.nanoTime();
+        cacheService.clearAll();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(redis.keyCount("docs:")).isZero();
+        assertThat(redis.exists(INDEX_KEY)).isFalse();
+        assertThat(redis.keyCount("session:")).isEqualTo(50);
+        assertThat(redis.commandCount("KEYS")).isZero();
+        // 1000 keys per UNLINK, plus one for the index
+        assertThat(redis.commandCount("UNLINK")).isEqualTo(ENTRIES / 1000 + 1);
+        assertThat(redis.commandCount("SCAN")).isBetween((long) ENTRIES / 1000, (long) ENTRIES / 1000 + 2);
+        assertThat(elapsedMs).isLessThan(30_000);
+    }
+
+    @Test
+    void putAndInvalidateKeepTheIndexInStep() {
+        cacheService.put(entry("GET", "/api/users"), doc("users"));
+        cacheService.put(entry("GET", "/api/posts"), doc("posts"));
+        cacheService.put(entry("DELETE", "/api/posts/{id}"), doc("delete post"));
+        cacheService.put(entry("GET", "/api/users"), doc("users again"));
+        cacheService.invalidate(entry("GET", "/api/posts"));
+
+        assertThat(cacheService.getStats().redisCacheSize).isEqualTo(2);
+
+        // Served from Redis once memory is gone
+        cacheService.onChannelSubscribed(new byte[0], 1);
+        assertThat(cacheService.get(entry("GET", "/api/users")).getDescription()).isEqualTo("users again");
+        assertThat(cacheService.get(entry("GET", "/api/posts"))).isNull();
+    }
+
+    private static String entry(String method, String path) {
+        return "docs:" + method + ":" + path + ":0123456789abcdef";
+    }
+
+    private static String key(int i) {
+        return "docs:GET:/api/endpoint-" + i + ":0123456789abcdef";
+    }
+
+    private static GeneratedDocumentation doc(String description) {
+        GeneratedDocumentation doc = new GeneratedDocumentation();
+        doc.setDescription(description);
+        return doc;
+    }
+}
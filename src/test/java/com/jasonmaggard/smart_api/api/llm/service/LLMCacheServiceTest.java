@@ -0,0 +1,220 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LLMCacheServiceTest {
+
+    private static final String KEY = "docs:GET:/api/users:3f9a2c71d04e8b5a";
+    private static final String OTHER_KEY = "docs:GET:/api/posts:90be4d1c27a6f353";
+    private static final byte[] CHANNEL = "docs-cache-invalidation".getBytes(StandardCharsets.UTF_8);
+
+    private final GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
+    private final List<String> published = new ArrayList<>();
+    private RedisTemplate<String, Object> redisTemplate;
+    private ValueOperations<String, Object> valueOps;
+    private LLMCacheService cacheService;
+
+    @BeforeEach
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOps = mock(ValueOperations.class);
+        RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenReturn(mock(RedisConnection.class));
+        when(redisTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+        when(redisTemplate.opsForZSet()).thenReturn(mock(ZSetOperations.class));
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) serializer);
+        when(redisTemplate.convertAndSend(anyString(), any())).thenAnswer(inv -> {
+            published.add(inv.getArgument(1));
+            return 1L;
+        });
+
+        cacheService = new LLMCacheService(redisTemplate, new DocCacheConfig(), new LLMConfig());
+    }
+
+    @Test
+    void readsFromMemoryBeforeRedis() {
+        GeneratedDocumentation doc = doc("Fetch users");
+        when(valueOps.get(KEY)).thenReturn(doc);
+
+        assertThat(cacheService.get(KEY)).isEqualTo(doc);
+        assertThat(cacheService.get(KEY)).isEqualTo(doc);
+        assertThat(cacheService.get(KEY)).isEqualTo(doc);
+
+        verify(valueOps, times(1)).get(KEY);
+        LLMCacheService.CacheStats stats = cacheService.getStats();
+        assertThat(stats.memory.hits()).isEqualTo(2);
+        assertThat(stats.memory.misses()).isEqualTo(1);
+        assertThat(stats.memory.loads()).isEqualTo(1);
+    }
+
+    @Test
+    void writesInvalidationsAndClearsAreBroadcast() {
+        cacheService.put(KEY, doc("Fetch users"));
+        cacheService.invalidate(KEY);
+        cacheService.clearAll();
+
+        verify(valueOps).set(eq(KEY), any(), any(Duration.class));
+        assertThat(published).hasSize(3);
+        assertThat(published.get(0)).endsWith("|" + KEY);
+        assertThat(published.get(1)).endsWith("|" + KEY);
+        assertThat(published.get(2)).endsWith("|*");
+        assertThat(cacheService.getStats().invalidationsPublished).isEqualTo(3);
+    }
+
+    @Test
+    void invalidationFromAnotherNodeDropsTheMemoryCopy() {
+        cacheService.put(KEY, doc("old"));
+        GeneratedDocumentation fresh = doc("new");
+        when(valueOps.get(KEY)).thenReturn(fresh);
+        assertThat(cacheService.get(KEY).getDescription()).isEqualTo("old");
+
+        cacheService.onMessage(message("other-node|" + KEY), null);
+
+        assertThat(cacheService.get(KEY).getDescription()).isEqualTo("new");
+        assertThat(cacheService.getStats().invalidationsReceived).isEqualTo(1);
+    }
+
+    @Test
+    void clearFromAnotherNodeEmptiesMemory() {
+        cacheService.put(KEY, doc("users"));
+        cacheService.put(OTHER_KEY, doc("posts"));
+
+        cacheService.onMessage(message("other-node|*"), null);
+
+        assertThat(cacheService.getStats().memoryCacheSize).isZero();
+    }
+
+    @Test
+    void ownMessagesAreIgnored() {
+        cacheService.put(KEY, doc("users"));
+
+        cacheService.onMessage(message(published.get(0)), null);
+
+        assertThat(cacheService.getStats().memoryCacheSize).isEqualTo(1);
+        assertThat(cacheService.getStats().invalidationsReceived).isZero();
+    }
+
+    @Test
+    void resubscribingDropsEverythingHeldInMemory() {
+        cacheService.put(KEY, doc("users"));
+
+        cacheService.onChannelSubscribed(CHANNEL, 1);
+
+        assertThat(cacheService.getStats().memoryCacheSize).isZero();
+    }
+
+    @Test
+    void stopsCallingRedisAfterRepeatedConnectionFailures() {
+        when(valueOps.get(KEY)).thenThrow(new RedisConnectionFailureException("Connection refused"));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cacheService.get(KEY)).isNull();
+        }
+
+        verify(valueOps, times(3)).get(KEY);
+        LLMCacheService.CacheStats stats = cacheService.getStats();
+        assertThat(stats.redisAvailable).isFalse();
+        assertThat(stats.redisCircuit.opened()).isEqualTo(1);
+        assertThat(stats.redisCircuit.shortCircuited()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void goesBackToRedisOnceItAnswersAgain() {
+        DocCacheConfig config = new DocCacheConfig();
+        config.getCircuitBreaker().setOpenMs(0L);
+        cacheService = new LLMCacheService(redisTemplate, config, new LLMConfig());
+        GeneratedDocumentation doc = doc("Fetch users");
+        RedisConnectionFailureException down = new RedisConnectionFailureException("Connection refused");
+        when(valueOps.get(KEY)).thenThrow(down, down, down).thenReturn(doc);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cacheService.get(KEY)).isNull();
+        }
+        assertThat(cacheService.get(KEY)).isEqualTo(doc);
+
+        LLMCacheService.CacheStats stats = cacheService.getStats();
+        assertThat(stats.redisAvailable).isTrue();
+        assertThat(stats.redisCircuit.opened()).isEqualTo(1);
+        assertThat(stats.redisCircuit.closed()).isEqualTo(1);
+    }
+
+    @Test
+    void keysDependOnTheSignatureNotOnMapOrder() {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("id", Map.of("type", "Long", "in", "path"));
+        parameters.put("expand", Map.of("type", "String", "in", "query"));
+        Map<String, Object> reordered = new TreeMap<>(Comparator.reverseOrder());
+        reordered.putAll(parameters);
+
+        String key = cacheService.generateCacheKey(endpoint("get", parameters, "User"));
+
+        assertThat(key).matches("docs:GET:/api/users/\\{id}:[0-9a-f]{16}");
+        assertThat(cacheService.generateCacheKey(endpoint("GET", reordered, "User"))).isEqualTo(key);
+    }
+
+    @Test
+    void keysChangeWithTheEndpointOrTheModel() {
+        Map<String, Object> parameters = Map.of("id", Map.of("type", "Long", "in", "path"));
+        String key = cacheService.generateCacheKey(endpoint("GET", parameters, "User"));
+
+        assertThat(cacheService.generateCacheKey(endpoint("GET", parameters, "UserDto"))).isNotEqualTo(key);
+        assertThat(cacheService.generateCacheKey(endpoint("GET", Map.of(), "User"))).isNotEqualTo(key);
+
+        LLMConfig otherModel = new LLMConfig();
+        otherModel.setModel("another-model");
+        LLMCacheService otherService = new LLMCacheService(redisTemplate, new DocCacheConfig(), otherModel);
+        assertThat(otherService.generateCacheKey(endpoint("GET", parameters, "User"))).isNotEqualTo(key);
+    }
+
+    private DefaultMessage message(String body) {
+        return new DefaultMessage(CHANNEL, serializer.serialize(body));
+    }
+
+    private static EndpointMetadata endpoint(String method, Map<String, Object> parameters, String returnType) {
+        EndpointMetadata endpoint = new EndpointMetadata();
+        endpoint.setMethod(method);
+        endpoint.setPath("/{id}");
+        endpoint.setFullPath("/api/users/{id}");
+        endpoint.setParamTypes(List.of("Long"));
+        endpoint.setParameters(parameters);
+        endpoint.setReturnType(returnType);
+        return endpoint;
+    }
+
+    private static GeneratedDocumentation doc(String description) {
+        GeneratedDocumentation doc = new GeneratedDocumentation();
+        doc.setDescription(description);
+        return doc;
+    }
+}
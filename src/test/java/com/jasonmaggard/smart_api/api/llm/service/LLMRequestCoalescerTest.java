@@ -0,0 +1,206 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.jasonmaggard.smart_api.api.llm.cache.RedisCircuitBreaker;
+import com.jasonmaggard.smart_api.api.llm.config.DocCacheConfig;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import com.jasonmaggard.smart_api.api.llm.exception.LLMException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LLMRequestCoalescerTest {
+
+    private static final String KEY = "docs:GET:/api/users:3f9a2c71d04e8b5a";
+    private static final String LOCK_KEY = "lock:" + KEY;
+
+    private final LLMConfig config = new LLMConfig();
+    private LLMCacheService cacheService;
+    private RedisCircuitBreaker circuitBreaker;
+    private RedisTemplate<String, Object> redisTemplate;
+    private ValueOperations<String, Object> valueOps;
+    private LLMRequestCoalescer coalescer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config.getCoalescing().setPollIntervalMs(10L);
+        config.getCoalescing().setWaitTimeoutMs(2_000L);
+        cacheService = mock(LLMCacheService.class);
+        circuitBreaker = new RedisCircuitBreaker(new DocCacheConfig.CircuitBreaker());
+        when(cacheService.getCircuitBreaker()).thenReturn(circuitBreaker);
+        redisTemplate = mock(RedisTemplate.class);
+        valueOps = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+        coalescer = new LLMRequestCoalescer(config, cacheService, redisTemplate);
+    }
+
+    @Test
+    void concurrentMissesOnOneNodeShareOneGeneration() throws Exception {
+        when(valueOps.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(true);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        GeneratedDocumentation doc = doc("shared");
+
+        int callers = 20;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<GeneratedDocumentation>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> coalescer.coalesce(KEY, () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return doc;
+                })));
+            }
+            // Let every caller reach the coalescer before the first generation finishes
+            while (coalescer.inFlightCount() == 0) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<GeneratedDocumentation> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(doc);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(calls).hasValue(1);
+        assertThat(coalescer.inFlightCount()).isZero();
+        verify(valueOps, times(1)).setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class));
+        verify(redisTemplate).execute(any(), eq(List.of(LOCK_KEY)), any());
+    }
+
+    @Test
+    void failureReachesEveryWaiterAndTheNextCallTriesAgain() throws Exception {
+        when(valueOps.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(true);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<GeneratedDocumentation> leader = pool.submit(() -> coalescer.coalesce(KEY, () -> {
+                await(release);
+                throw new LLMException("rate limited");
+            }));
+            while (coalescer.inFlightCount() == 0) {
+                Thread.sleep(1);
+            }
+            Future<GeneratedDocumentation> follower = pool.submit(() ->
+                coalescer.coalesce(KEY, () -> doc("never")));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("rate limited");
+            assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("rate limited");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(coalescer.coalesce(KEY, () -> doc("retry")).getDescription()).isEqualTo("retry");
+    }
+
+    @Test
+    void waitsForTheNodeHoldingTheLeaseInsteadOfCallingTheApi() {
+        when(valueOps.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(false);
+        when(redisTemplate.hasKey(LOCK_KEY)).thenReturn(true);
+        GeneratedDocumentation fromOtherNode = doc("other node");
+        when(cacheService.get(KEY)).thenReturn(null, null, null, fromOtherNode);
+
+        GeneratedDocumentation result = coalescer.coalesce(KEY, () -> {
+            throw new AssertionError("should not generate while another node holds the lease");
+        });
+
+        assertThat(result).isSameAs(fromOtherNode);
+        verify(redisTemplate, never()).execute(any(), anyList(), any());
+    }
+
+    @Test
+    void takesOverWhenTheOtherNodeReleasesWithoutAResult() {
+        when(valueOps.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(false, true);
+        when(redisTemplate.hasKey(LOCK_KEY)).thenReturn(true, false);
+
+        GeneratedDocumentation result = coalescer.coalesce(KEY, () -> doc("took over"));
+
+        assertThat(result.getDescription()).isEqualTo("took over");
+        verify(valueOps, times(2)).setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void generatesLocallyWhenTheWaitTimesOut() {
+        config.getCoalescing().setWaitTimeoutMs(100L);
+        when(valueOps.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(false);
+        when(redisTemplate.hasKey(LOCK_KEY)).thenReturn(true);
+
+        GeneratedDocumentation result = coalescer.coalesce(KEY, () -> doc("local"));
+
+        assertThat(result.getDescription()).isEqualTo("local");
+    }
+
+    @Test
+    void generatesLocallyWhenRedisIsDown() {
+        when(valueOps.setIfAbsent(anyString(), any(), any(Duration.class)))
+            .thenThrow(new RedisConnectionFailureException("down"));
+
+        GeneratedDocumentation result = coalescer.coalesce(KEY, () -> doc("no redis"));
+
+        assertThat(result.getDescription()).isEqualTo("no redis");
+    }
+
+    @Test
+    void leaseFailuresOpenTheCacheCircuit() {
+        when(valueOps.setIfAbsent(anyString(), any(), any(Duration.class)))
+            .thenThrow(new RedisConnectionFailureException("down"));
+
+        for (int i = 0; i < new DocCacheConfig.CircuitBreaker().getFailureThreshold(); i++) {
+            coalescer.coalesce(KEY + i, () -> doc("no redis"));
+        }
+
+        assertThat(circuitBreaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void skipsRedisWhileTheCacheCircuitIsOpen() {
+        for (int i = 0; i < new DocCacheConfig.CircuitBreaker().getFailureThreshold(); i++) {
+            circuitBreaker.onFailure();
+        }
+
+        GeneratedDocumentation result = coalescer.coalesce(KEY, () -> doc("local"));
+
+        assertThat(result.getDescription()).isEqualTo("local");
+        verifyNoInteractions(valueOps);
+        verify(redisTemplate, never()).execute(any(), anyList(), any());
+    }
+
+    private static GeneratedDocumentation doc(String description) {
+        GeneratedDocumentation doc = new GeneratedDocumentation();
+        doc.setDescription(description);
+        return doc;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
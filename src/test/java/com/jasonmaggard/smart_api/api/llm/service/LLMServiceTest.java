@@ -0,0 +1,242 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.anthropic.client.AnthropicClient;
+import com.anthropic.core.ObjectMappers;
+import com.anthropic.models.messages.Usage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.docs.dto.EndpointMetadata;
+import com.jasonmaggard.smart_api.api.llm.client.AdaptiveRateLimiter;
+import com.jasonmaggard.smart_api.api.llm.config.AnthropicClientConfig;
+import com.jasonmaggard.smart_api.api.llm.config.LLMConfig;
+import com.jasonmaggard.smart_api.api.llm.dto.GeneratedDocumentation;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs LLMService against a local stand-in for the Messages endpoint
+ */
+class LLMServiceTest {
+
+    private static final String RESULT_TEXT =
+        "{\\\"description\\\":\\\"Fetch a user\\\",\\\"parameters\\\":{},\\\"examples\\\":{\\\"curl\\\":\\\"curl /api/users/1\\\"}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> requests = new ArrayList<>();
+
+    private HttpServer server;
+    private AnthropicClient client;
+    private LLMCacheService cacheService;
+    private LLMService llmService;
+    private String contentType;
+    private String responseBody;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/messages", this::handle);
+        server.start();
+
+        LLMConfig config = new LLMConfig();
+        config.setApiKey("test-key");
+        config.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        config.setMaxRetries(0);
+        config.setModel("stub-model");
+
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(config.getRateLimit());
+        client = new AnthropicClientConfig().anthropicClient(config, rateLimiter);
+        cacheService = mock(LLMCacheService.class);
+        when(cacheService.generateCacheKey(any(EndpointMetadata.class))).thenReturn("docs:GET:/api/users/{id}:fp");
+        LLMRequestCoalescer coalescer = mock(LLMRequestCoalescer.class);
+        when(coalescer.coalesce(anyString(), any())).thenAnswer(inv -> inv.<Supplier<GeneratedDocumentation>>getArgument(1).get());
+        llmService = new LLMService(config, cacheService, client, coalescer, rateLimiter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void buildPromptWritesTheEndpointAsCompactJson() {
+        EndpointMetadata endpoint = endpoint("get", "/api/users/{id}");
+        Map<String, Object> id = new LinkedHashMap<>();
+        id.put("type", "Long");
+        id.put("in", "path");
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("id", id);
+        endpoint.setParameters(parameters);
+        endpoint.setReturnType("UserDto");
+
+        assertThat(llmService.buildPrompt(endpoint)).isEqualTo(
+            "{\"method\":\"GET\",\"path\":\"/api/users/{id}\"," +
+            "\"parameters\":{\"id\":{\"type\":\"Long\",\"in\":\"path\"}},\"returns\":\"UserDto\"}");
+    }
+
+    @Test
+    void buildPromptLeavesOutFieldsTheEndpointDoesNotHave() {
+        EndpointMetadata endpoint = endpoint("POST", "/api/ping");
+        endpoint.setParameters(Map.of());
+
+        assertThat(llmService.buildPrompt(endpoint)).isEqualTo("{\"method\":\"POST\",\"path\":\"/api/ping\"}");
+    }
+
+    @Test
+    void recordUsageCountsCachedInputSeparately() throws Exception {
+        GeneratedDocumentation doc = new GeneratedDocumentation();
+
+        LLMService.recordUsage(doc, usage(
+            "{\"input_tokens\":40,\"cache_creation_input_tokens\":0,\"cache_read_input_tokens\":300,\"output_tokens\":120}"));
+
+        assertThat(doc.getInputTokens()).isEqualTo(40);
+        assertThat(doc.getCacheReadInputTokens()).isEqualTo(300);
+        assertThat(doc.getCacheCreationInputTokens()).isZero();
+        assertThat(doc.getTokenCount()).isEqualTo(120);
+    }
+
+    @Test
+    void recordUsageTreatsMissingCacheCountsAsZero() throws Exception {
+        GeneratedDocumentation doc = new GeneratedDocumentation();
+
+        LLMService.recordUsage(doc, usage("{\"input_tokens\":350,\"output_tokens\":80}"));
+
+        assertThat(doc.getInputTokens()).isEqualTo(350);
+        assertThat(doc.getCacheReadInputTokens()).isZero();
+        assertThat(doc.getCacheCreationInputTokens()).isZero();
+    }
+
+    @Test
+    void generateSendsTheInstructionsWithoutACacheBreakpointAndRecordsUsage() {
+        contentType = "application/json";
+        responseBody = "{\"id\":\"msg_1\",\"type\":\"message\",\"role\":\"assistant\",\"model\":\"stub-model\"," +
+            "\"content\":[{\"type\":\"text\",\"text\":\"" + RESULT_TEXT + "\"}],\"stop_reason\":\"end_turn\"," +
+            "\"stop_sequence\":null,\"usage\":{\"input_tokens\":372,\"cache_read_input_tokens\":0,\"output_tokens\":64}}";
+
+        GeneratedDocumentation doc = llmService.generateDocumentation(endpoint("GET", "/api/users/{id}"));
+
+        JsonNode system = requests.get(0).path("system");
+        assertThat(system).hasSize(1);
+        assertThat(system.get(0).path("text").asText()).isEqualTo(LLMService.SYSTEM_PROMPT);
+        // Below the minimum cacheable length a breakpoint would be ignored
+        assertThat(system.get(0).has("cache_control")).isFalse();
+        assertThat(requests.get(0).path("messages").get(0).path("content").asText())
+            .isEqualTo("{\"method\":\"GET\",\"path\":\"/api/users/{id}\"}");
+        assertThat(doc.getDescription()).isEqualTo("Fetch a user");
+        assertThat(doc.getModel()).isEqualTo("stub-model");
+        assertThat(doc.getInputTokens()).isEqualTo(372);
+        assertThat(doc.getCacheReadInputTokens()).isZero();
+        assertThat(doc.getTokenCount()).isEqualTo(64);
+        verify(cacheService).put("docs:GET:/api/users/{id}:fp", doc);
+    }
+
+    @Test
+    void streamTakesTheFinalUsageFromMessageDelta() {
+        contentType = "text/event-stream";
+        responseBody = stream(
+            "{\"input_tokens\":380,\"cache_read_input_tokens\":0,\"cache_creation_input_tokens\":0,\"output_tokens\":64}");
+        List<String> descriptions = new ArrayList<>();
+
+        GeneratedDocumentation doc = llmService.streamDocumentation(endpoint("GET", "/api/users/{id}"), listener(descriptions));
+
+        assertThat(requests.get(0).path("stream").asBoolean()).isTrue();
+        assertThat(descriptions).containsExactly("Fetch a user");
+        assertThat(doc.getExamples()).containsEntry("curl", "curl /api/users/1");
+        // message_start reports a single output token; message_delta carries the final counts
+        assertThat(doc.getTokenCount()).isEqualTo(64);
+        assertThat(doc.getInputTokens()).isEqualTo(380);
+        assertThat(doc.getCacheReadInputTokens()).isZero();
+        verify(cacheService).put("docs:GET:/api/users/{id}:fp", doc);
+    }
+
+    @Test
+    void streamKeepsTheInputCountsFromMessageStartWhenTheDeltaOmitsThem() {
+        contentType = "text/event-stream";
+        responseBody = stream("{\"output_tokens\":64}");
+
+        GeneratedDocumentation doc = llmService.streamDocumentation(endpoint("GET", "/api/users/{id}"), listener(new ArrayList<>()));
+
+        assertThat(doc.getTokenCount()).isEqualTo(64);
+        assertThat(doc.getInputTokens()).isEqualTo(372);
+        assertThat(doc.getCacheReadInputTokens()).isZero();
+        assertThat(doc.getCacheCreationInputTokens()).isZero();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+        synchronized (requests) {
+            requests.add(body);
+        }
+        byte[] bytes = responseBody.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    /**
+     * The documentation split across two deltas, then the given message_delta usage
+     */
+    private static String stream(String deltaUsage) {
+        int split = RESULT_TEXT.indexOf("\\\"parameters");
+        return event("message_start", "{\"type\":\"message_start\",\"message\":{\"id\":\"msg_1\",\"type\":\"message\"," +
+                "\"role\":\"assistant\",\"model\":\"stub-model\",\"content\":[],\"stop_reason\":null,\"stop_sequence\":null," +
+                "\"usage\":{\"input_tokens\":372,\"cache_read_input_tokens\":0,\"cache_creation_input_tokens\":0,\"output_tokens\":1}}}") +
+            event("content_block_start", "{\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}") +
+            event("content_block_delta", "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\"," +
+                "\"text\":\"" + RESULT_TEXT.substring(0, split) + "\"}}") +
+            event("content_block_delta", "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\"," +
+                "\"text\":\"" + RESULT_TEXT.substring(split) + "\"}}") +
+            event("content_block_stop", "{\"type\":\"content_block_stop\",\"index\":0}") +
+            event("message_delta", "{\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"end_turn\",\"stop_sequence\":null}," +
+                "\"usage\":" + deltaUsage + "}") +
+            event("message_stop", "{\"type\":\"message_stop\"}");
+    }
+
+    private static String event(String name, String data) {
+        return "event: " + name + "\ndata: " + data + "\n\n";
+    }
+
+    private static StreamingDocParser.Listener listener(List<String> descriptions) {
+        return new StreamingDocParser.Listener() {
+            @Override
+            public void onDescription(String description) {
+                descriptions.add(description);
+            }
+
+            @Override
+            public void onEntry(String section, String name, JsonNode value) {
+            }
+        };
+    }
+
+    private static Usage usage(String json) throws IOException {
+        return ObjectMappers.jsonMapper().readValue(json, Usage.class);
+    }
+
+    private static EndpointMetadata endpoint(String method, String path) {
+        EndpointMetadata endpoint = new EndpointMetadata();
+        endpoint.setMethod(method);
+        endpoint.setPath(path);
+        endpoint.setFullPath(path);
+        return endpoint;
+    }
+}
@@ -0,0 +1,302 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal in-process Redis speaking RESP2, for tests that need a real client talking to a
+ * keyspace. Supports the handful of string, key, sorted set and SCAN commands the cache
+ * uses, and counts every command it receives. SCAN walks keys in insertion order, so keys
+ * present for the whole scan are returned exactly once even while others are removed.
+ */
+class RedisStandIn implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final Map<String, byte[]> strings = new HashMap<>();
+    private final Map<String, Map<String, Double>> sortedSets = new HashMap<>();
+    private final NavigableMap<Long, String> scanOrder = new TreeMap<>();
+    private final Map<String, Long> scanPositions = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong(1);
+    private final Map<String, AtomicLong> commandCounts = new ConcurrentHashMap<>();
+
+    RedisStandIn() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "redis-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    long commandCount(String command) {
+        AtomicLong count = commandCounts.get(command);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Add string keys directly, without going through a client
+     */
+    synchronized void seed(String key, String value) {
+        strings.put(key, value.getBytes(StandardCharsets.UTF_8));
+        track(key);
+    }
+
+    synchronized void seedSortedSet(String key, String member, double score) {
+        sortedSets.computeIfAbsent(key, k -> new HashMap<>()).put(member, score);
+        track(key);
+    }
+
+    synchronized boolean exists(String key) {
+        return strings.containsKey(key) || sortedSets.containsKey(key);
+    }
+
+    synchronized int keyCount(String prefix) {
+        return (int) scanOrder.values().stream().filter(key -> key.startsWith(prefix)).count();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> serve(socket), "redis-stand-in-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                execute(command, out);
+                // Keep pipelined replies together, flush once the client has nothing queued
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    private synchronized void execute(List<byte[]> command, OutputStream out) throws IOException {
+        String name = text(command.get(0)).toUpperCase();
+        commandCounts.computeIfAbsent(name, n -> new AtomicLong()).incrementAndGet();
+        switch (name) {
+            case "PING" -> simple(out, "PONG");
+            case "HELLO" -> error(out, "ERR unknown command 'HELLO'");
+            case "CLIENT", "SELECT" -> simple(out, "OK");
+            case "SET" -> {
+                strings.put(text(command.get(1)), command.get(2));
+                track(text(command.get(1)));
+                simple(out, "OK");
+            }
+            case "GET" -> bulk(out, strings.get(text(command.get(1))));
+            case "DEL", "UNLINK" -> {
+                long removed = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    removed += remove(text(command.get(i))) ? 1 : 0;
+                }
+                integer(out, removed);
+            }
+            case "ZADD" -> {
+                Map<String, Double> set = sortedSets.computeIfAbsent(text(command.get(1)), k -> new HashMap<>());
+                track(text(command.get(1)));
+                long added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    added += set.put(text(command.get(i + 1)), score(command.get(i))) == null ? 1 : 0;
+                }
+                integer(out, added);
+            }
+            case "ZREM" -> {
+                Map<String, Double> set = sortedSets.getOrDefault(text(command.get(1)), Map.of());
+                long removed = 0;
+                for (int i = 2; i < command.size(); i++) {
+                    removed += set.remove(text(command.get(i))) != null ? 1 : 0;
+                }
+                integer(out, removed);
+            }
+            case "ZCOUNT" -> {
+                double min = score(command.get(2));
+                double max = score(command.get(3));
+                integer(out, sortedSets.getOrDefault(text(command.get(1)), Map.of()).values().stream()
+                    .filter(score -> score >= min && score <= max).count());
+            }
+            case "ZREMRANGEBYSCORE" -> {
+                double min = score(command.get(2));
+                double max = score(command.get(3));
+                Map<String, Double> set = sortedSets.getOrDefault(text(command.get(1)), new HashMap<>());
+                int before = set.size();
+                set.values().removeIf(score -> score >= min && score <= max);
+                integer(out, before - set.size());
+            }
+            case "PUBLISH" -> integer(out, 0);
+            case "SCAN" -> scan(command, out);
+            default -> error(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    private void scan(List<byte[]> command, OutputStream out) throws IOException {
+        long cursor = Long.parseLong(text(command.get(1)));
+        Pattern match = null;
+        int count = 10;
+        for (int i = 2; i + 1 < command.size(); i += 2) {
+            String option = text(command.get(i)).toUpperCase();
+            if (option.equals("MATCH")) {
+                match = glob(text(command.get(i + 1)));
+            } else if (option.equals("COUNT")) {
+                count = Integer.parseInt(text(command.get(i + 1)));
+            }
+        }
+
+        List<String> page = new ArrayList<>();
+        long next = 0;
+        int examined = 0;
+        for (Map.Entry<Long, String> entry : scanOrder.tailMap(Math.max(cursor, 1), true).entrySet()) {
+            if (examined == count) {
+                next = entry.getKey();
+                break;
+            }
+            examined++;
+            if (match == null || match.matcher(entry.getValue()).matches()) {
+                page.add(entry.getValue());
+            }
+        }
+
+        out.write(("*2\r\n").getBytes(StandardCharsets.UTF_8));
+        bulk(out, Long.toString(next).getBytes(StandardCharsets.UTF_8));
+        out.write(("*" + page.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        for (String key : page) {
+            bulk(out, key.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void track(String key) {
+        if (!scanPositions.containsKey(key)) {
+            long position = sequence.getAndIncrement();
+            scanPositions.put(key, position);
+            scanOrder.put(position, key);
+        }
+    }
+
+    private boolean remove(String key) {
+        boolean removed = strings.remove(key) != null | sortedSets.remove(key) != null;
+        Long position = scanPositions.remove(key);
+        if (position != null) {
+            scanOrder.remove(position);
+        }
+        return removed;
+    }
+
+    private static Pattern glob(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            regex.append(c == '*' ? ".*" : Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static double score(byte[] raw) {
+        String value = text(raw).toLowerCase();
+        if (value.startsWith("(")) {
+            value = value.substring(1);
+        }
+        return switch (value) {
+            case "+inf", "inf" -> Double.POSITIVE_INFINITY;
+            case "-inf" -> Double.NEGATIVE_INFINITY;
+            default -> Double.parseDouble(value);
+        };
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        if (first != '*') {
+            throw new IOException("Expected a RESP array, got " + (char) first);
+        }
+        int parts = Integer.parseInt(readLine(in));
+        List<byte[]> command = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            int length = Integer.parseInt(readLine(in));
+            command.add(in.readNBytes(length));
+            in.readNBytes(2);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Connection closed mid-command");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static String text(byte[] raw) {
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void error(OutputStream out, String message) throws IOException {
+        out.write(("-" + message + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void bulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(value);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+}
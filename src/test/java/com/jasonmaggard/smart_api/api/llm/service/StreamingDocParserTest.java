@@ -0,0 +1,102 @@
+package com.jasonmaggard.smart_api.api.llm.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingDocParserTest {
+
+    private static final String DOC = """
+        ```json
+        {
+          "description": "Fetch a user by id, including \\"quoted\\" text and ünïcode",
+          "parameters": {
+            "id": { "type": "integer", "description": "User id", "required": true },
+            "verbose": false
+          },
+          "examples": {
+            "curl": "curl http://localhost:8080/api/users/1",
+            "java": "client.get(\\"/api/users/1\\")",
+            "javascript": "fetch('/api/users/1')"
+          }
+        }
+        ```""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void emitsEachPartOnceItIsComplete() {
+        List<String> events = new ArrayList<>();
+        StreamingDocParser parser = new StreamingDocParser(objectMapper, recorder(events));
+
+        int descriptionEnd = DOC.indexOf("\",\n  \"parameters\"") + 1;
+        parser.feed(DOC.substring(0, descriptionEnd - 1));
+        assertThat(events).isEmpty();
+
+        parser.feed(DOC.substring(descriptionEnd - 1, descriptionEnd));
+        assertThat(events).containsExactly("description=Fetch a user by id, including \"quoted\" text and ünïcode");
+
+        int curlEnd = DOC.indexOf("/api/users/1\",") + "/api/users/1\"".length();
+        parser.feed(DOC.substring(descriptionEnd, curlEnd));
+        assertThat(events).hasSize(4);
+        assertThat(events.get(1)).isEqualTo("parameters.id={\"type\":\"integer\",\"description\":\"User id\",\"required\":true}");
+        assertThat(events.get(2)).isEqualTo("parameters.verbose=false");
+        assertThat(events.get(3)).isEqualTo("examples.curl=\"curl http://localhost:8080/api/users/1\"");
+
+        parser.feed(DOC.substring(curlEnd));
+        assertThat(events).hasSize(6);
+        assertThat(events.get(4)).isEqualTo("examples.java=\"client.get(\\\"/api/users/1\\\")\"");
+        assertThat(events.get(5)).isEqualTo("examples.javascript=\"fetch('/api/users/1')\"");
+    }
+
+    @Test
+    void resultDoesNotDependOnHowTheTextIsSplit() {
+        List<String> whole = new ArrayList<>();
+        new StreamingDocParser(objectMapper, recorder(whole)).feed(DOC);
+        assertThat(whole).hasSize(6);
+
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            List<String> chunked = new ArrayList<>();
+            StreamingDocParser parser = new StreamingDocParser(objectMapper, recorder(chunked));
+            int position = 0;
+            while (position < DOC.length()) {
+                int end = Math.min(DOC.length(), position + 1 + random.nextInt(run % 2 == 0 ? 3 : 40));
+                parser.feed(DOC.substring(position, end));
+                position = end;
+            }
+            assertThat(chunked).isEqualTo(whole);
+        }
+    }
+
+    @Test
+    void malformedJsonStopsPreviewsWithoutThrowing() {
+        List<String> events = new ArrayList<>();
+        StreamingDocParser parser = new StreamingDocParser(objectMapper, recorder(events));
+
+        parser.feed("{\"description\": \"ok\", \"parameters\": {\"a\": tru");
+        parser.feed("x}, \"examples\": {\"curl\": \"c\"}}");
+
+        assertThat(events).containsExactly("description=ok");
+    }
+
+    private static StreamingDocParser.Listener recorder(List<String> events) {
+        return new StreamingDocParser.Listener() {
+            @Override
+            public void onDescription(String description) {
+                events.add("description=" + description);
+            }
+
+            @Override
+            public void onEntry(String section, String name, JsonNode value) {
+                events.add(section + "." + name + "=" + value);
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CopyUsageLogSinkTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 3, 14, 15, 9, 26, 535_000_000);
+
+    private final CopyUsageLogSink sink = new CopyUsageLogSink(null, null, new ObjectMapper(), null);
+
+    @Test
+    void writesEveryColumnInTableOrder() {
+        ApiUsageLog usageLog = usageLog("/api/users/{id}", "GET");
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("id", "42");
+        params.put("fields", List.of("name", "email"));
+        usageLog.setParamsUsed(params);
+        usageLog.setResponseTimeMs(87);
+        usageLog.setStatusCode(200);
+        usageLog.setUserAgent("curl/8.5.0");
+        usageLog.setIpAddress("10.0.0.7");
+        usageLog.setSampleWeight(4);
+
+        assertThat(row(usageLog)).isEqualTo(
+            "\"/api/users/{id}\",\"GET\",\"{\"\"id\"\":\"\"42\"\",\"\"fields\"\":[\"\"name\"\",\"\"email\"\"]}\"," +
+            "87,200,\"curl/8.5.0\",\"10.0.0.7\",4,2026-03-14T15:09:26.535\n");
+    }
+
+    @Test
+    void quotesDelimitersQuotesAndLineBreaksInsideText() {
+        ApiUsageLog usageLog = usageLog("/api/search", "GET");
+        usageLog.setUserAgent("Mozilla/5.0 (X11, \"Linux\")\r\nInjected: yes");
+
+        assertThat(row(usageLog)).isEqualTo(
+            "\"/api/search\",\"GET\",,,,\"Mozilla/5.0 (X11, \"\"Linux\"\")\r\nInjected: yes\",,1,2026-03-14T15:09:26.535\n");
+    }
+
+    @Test
+    void leavesNullUnquotedAndQuotesTheEmptyString() {
+        ApiUsageLog usageLog = usageLog("/api/ping", "HEAD");
+        usageLog.setUserAgent("");
+        usageLog.setIpAddress(null);
+
+        // ,, is NULL in CSV mode, "" an empty string
+        assertThat(row(usageLog)).isEqualTo("\"/api/ping\",\"HEAD\",,,,\"\",,1,2026-03-14T15:09:26.535\n");
+    }
+
+    @Test
+    void truncatesToTheColumnLengthWithoutSplittingCharacters() {
+        ApiUsageLog usageLog = usageLog("/" + "a".repeat(400), "GET");
+        // An emoji (a surrogate pair) straddling the 255 character cut
+        usageLog.setUserAgent("b".repeat(254) + "😀" + "tail");
+
+        String row = row(usageLog);
+
+        assertThat(row).startsWith("\"/" + "a".repeat(254) + "\",");
+        assertThat(row).contains(",\"" + "b".repeat(254) + "\",");
+    }
+
+    @Test
+    void dropsNulCharactersPostgresRejects() {
+        ApiUsageLog usageLog = usageLog("/api/items", "GET");
+        usageLog.setUserAgent("evil\u0000agent");
+        usageLog.setParamsUsed(Map.of("q", "x\u0000y"));
+
+        assertThat(row(usageLog)).isEqualTo("\"/api/items\",\"GET\",,,,\"evilagent\",,1,2026-03-14T15:09:26.535\n");
+    }
+
+    @Test
+    void writesOneLinePerRecord() {
+        StringBuilder out = new StringBuilder();
+        sink.appendRow(out, usageLog("/a", "GET"));
+        sink.appendRow(out, usageLog("/b", "POST"));
+
+        assertThat(out.toString()).isEqualTo(
+            "\"/a\",\"GET\",,,,,,1,2026-03-14T15:09:26.535\n" +
+            "\"/b\",\"POST\",,,,,,1,2026-03-14T15:09:26.535\n");
+    }
+
+    private String row(ApiUsageLog usageLog) {
+        StringBuilder out = new StringBuilder();
+        sink.appendRow(out, usageLog);
+        return out.toString();
+    }
+
+    private static ApiUsageLog usageLog(String path, String method) {
+        ApiUsageLog usageLog = new ApiUsageLog();
+        usageLog.setEndpointPath(path);
+        usageLog.setHttpMethod(method);
+        usageLog.setCreatedAt(CREATED_AT);
+        return usageLog;
+    }
+}
@@ -0,0 +1,305 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageLoggingConfig;
+import com.jasonmaggard.smart_api.api.usage.config.UsageLoggingConfig.BackpressurePolicy;
+import com.jasonmaggard.smart_api.api.usage.dto.IngestStatsDto;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UsageLogBufferTest {
+
+    private final UsageLoggingConfig config = config();
+    private final FakeSink sink = new FakeSink();
+    private UsageLogBuffer buffer;
+
+    @AfterEach
+    void stopBuffer() {
+        sink.release.countDown();
+        if (buffer != null) {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    void writesRecordsInBatchesOfTheConfiguredSize() {
+        config.setBufferCapacity(100);
+        config.setFlushIntervalMs(60_000L);
+        start();
+        // The first batch only goes out once full, so the rest queue up behind it
+        sink.release.countDown();
+
+        IntStream.range(0, 7).forEach(i -> assertThat(buffer.offer(record(i))).isTrue());
+        awaitUntil(() -> sink.written().size() == 6);
+
+        assertThat(sink.batchSizes()).containsExactly(3, 3);
+        buffer.stop();
+        assertThat(sink.written()).extracting(ApiUsageLog::getEndpointPath)
+            .containsExactlyElementsOf(IntStream.range(0, 7).mapToObj(i -> "/api/items/" + i).toList());
+        assertThat(buffer.getStats().getFlushed()).isEqualTo(7);
+    }
+
+    @Test
+    void flushesAPartialBatchOnceTheIntervalElapses() {
+        start();
+        sink.release.countDown();
+
+        buffer.offer(record(0));
+
+        awaitUntil(() -> sink.written().size() == 1);
+        assertThat(sink.batchSizes()).containsExactly(1);
+    }
+
+    @Test
+    void retriesTransientFailuresUntilTheSinkRecovers() {
+        sink.release.countDown();
+        sink.failures.add(new CannotGetJdbcConnectionException("Connection refused"));
+        // As the COPY sink reports a broken connection
+        sink.failures.add(new IllegalStateException("COPY into api_usage_logs failed",
+            new SQLException("An I/O error occurred while sending to the backend", "08006")));
+        start();
+
+        buffer.offer(record(0));
+
+        awaitUntil(() -> sink.written().size() == 1);
+        IngestStatsDto stats = buffer.getStats();
+        assertThat(stats.getRetries()).isEqualTo(2);
+        assertThat(stats.getFailed()).isZero();
+        assertThat(stats.getFlushed()).isEqualTo(1);
+    }
+
+    @Test
+    void dropsABatchThatFailsForGoodAndCarriesOn() {
+        sink.release.countDown();
+        sink.failures.add(new DataIntegrityViolationException("value too long for type character varying(10)"));
+        start();
+
+        buffer.offer(record(0));
+        awaitUntil(() -> buffer.getStats().getFailed() == 1);
+        buffer.offer(record(1));
+
+        awaitUntil(() -> sink.written().size() == 1);
+        assertThat(sink.written().get(0).getEndpointPath()).isEqualTo("/api/items/1");
+        assertThat(buffer.getStats().getRetries()).isZero();
+    }
+
+    @Test
+    void dropPolicyRejectsRecordsOnceTheBufferIsFull() {
+        start();
+        holdWriter();
+
+        for (int i = 0; i < config.getBufferCapacity(); i++) {
+            assertThat(buffer.offer(record(i))).isTrue();
+        }
+        assertThat(buffer.offer(record(99))).isFalse();
+
+        assertThat(buffer.getStats().getDropped()).isEqualTo(1);
+        assertThat(buffer.getStats().getQueued()).isEqualTo(config.getBufferCapacity());
+    }
+
+    @Test
+    void samplePolicyShedsRecordsAboveTheHighWaterMark() {
+        config.setBackpressure(BackpressurePolicy.SAMPLE);
+        config.setSampleHighWaterMark(0.5);
+        config.setSampleRate(0.0);
+        start();
+        holdWriter();
+
+        // Capacity 4: the first two fill it to the mark, everything after is sampled out
+        assertThat(buffer.offer(record(1))).isTrue();
+        assertThat(buffer.offer(record(2))).isTrue();
+        assertThat(buffer.offer(record(3))).isFalse();
+        assertThat(buffer.offer(record(4))).isFalse();
+
+        assertThat(buffer.getStats().getSampledOut()).isEqualTo(2);
+        assertThat(buffer.getStats().getDropped()).isZero();
+    }
+
+    @Test
+    void blockPolicyWaitsForSpaceThenGivesUp() throws Exception {
+        config.setBackpressure(BackpressurePolicy.BLOCK);
+        config.setBlockTimeoutMs(100L);
+        start();
+        holdWriter();
+        for (int i = 0; i < config.getBufferCapacity(); i++) {
+            buffer.offer(record(i));
+        }
+
+        long start = System.nanoTime();
+        assertThat(buffer.offer(record(98))).isFalse();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(90);
+
+        // Space that frees up during the wait is taken
+        config.setBlockTimeoutMs(5_000L);
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> buffer.offer(record(99)));
+        Thread.sleep(50);
+        assertThat(blocked).isNotDone();
+        sink.release.countDown();
+        assertThat(blocked.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void stopDrainsEverythingQueued() {
+        config.setBatchSize(10);
+        start();
+        holdWriter();
+        buffer.offer(record(1));
+        buffer.offer(record(2));
+
+        sink.release.countDown();
+        buffer.stop();
+
+        assertThat(sink.written()).hasSize(3);
+        assertThat(buffer.offer(record(3))).isFalse();
+        assertThat(buffer.getStats().getQueued()).isZero();
+    }
+
+    @Test
+    void interruptedWriterDrainsTheQueueAndStops() {
+        config.setFlushIntervalMs(60_000L);
+        config.setBatchSize(1);
+        sink.interruptOnFirstWrite = true;
+        start();
+        holdWriter();
+        buffer.offer(record(1));
+        buffer.offer(record(2));
+
+        sink.release.countDown();
+
+        awaitUntil(() -> sink.written().size() == 3);
+        awaitUntil(() -> !buffer.offer(record(3)));
+        assertThat(buffer.getStats().getQueued()).isZero();
+    }
+
+    @Test
+    void interruptDuringARetryBackoffStopsTheWriterOnceDrained() {
+        config.setFlushIntervalMs(60_000L);
+        config.setBatchSize(1);
+        sink.failures.add(new CannotGetJdbcConnectionException("Connection refused"));
+        sink.interruptOnFailure = true;
+        start();
+        holdWriter();
+        buffer.offer(record(1));
+        buffer.offer(record(2));
+
+        sink.release.countDown();
+
+        awaitUntil(() -> !sink.writer.isAlive());
+        assertThat(sink.written()).hasSize(3);
+        assertThat(sink.writer.isInterrupted()).isTrue();
+        assertThat(buffer.offer(record(3))).isFalse();
+        assertThat(buffer.getStats().getRetries()).isEqualTo(1);
+        assertThat(buffer.getStats().getFailed()).isZero();
+    }
+
+    @Test
+    void recognisesTransientFailures() {
+        assertThat(UsageLogBuffer.isTransient(new CannotGetJdbcConnectionException("refused"))).isTrue();
+        assertThat(UsageLogBuffer.isTransient(new RuntimeException(new SQLException("terminating connection", "57P01")))).isTrue();
+        assertThat(UsageLogBuffer.isTransient(new RuntimeException(new SQLException("syntax error", "42601")))).isFalse();
+        assertThat(UsageLogBuffer.isTransient(new DataIntegrityViolationException("duplicate key"))).isFalse();
+        assertThat(UsageLogBuffer.isTransient(new IllegalArgumentException("bad row"))).isFalse();
+    }
+
+    private void start() {
+        buffer = new UsageLogBuffer(config, sink);
+        buffer.start();
+    }
+
+    /**
+     * Park the writer inside a write of one record, so whatever is offered next stays queued
+     */
+    private void holdWriter() {
+        buffer.offer(record(0));
+        try {
+            assertThat(sink.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within 5s");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static ApiUsageLog record(int i) {
+        ApiUsageLog usageLog = new ApiUsageLog();
+        usageLog.setEndpointPath("/api/items/" + i);
+        usageLog.setHttpMethod("GET");
+        return usageLog;
+    }
+
+    private static UsageLoggingConfig config() {
+        UsageLoggingConfig config = new UsageLoggingConfig();
+        config.setBufferCapacity(4);
+        config.setBatchSize(3);
+        config.setFlushIntervalMs(20L);
+        config.setRetryInitialBackoffMs(1L);
+        config.setRetryMaxBackoffMs(4L);
+        config.setShutdownTimeoutMs(5_000L);
+        return config;
+    }
+
+    /**
+     * Records what it is given. Writes wait for release, and throw the queued failures first.
+     */
+    private static class FakeSink implements UsageLogSink {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<RuntimeException> failures = new ArrayList<>();
+        volatile boolean interruptOnFirstWrite;
+        volatile boolean interruptOnFailure;
+        volatile Thread writer;
+        private final List<List<ApiUsageLog>> batches = new ArrayList<>();
+
+        @Override
+        public void write(List<ApiUsageLog> batch) {
+            writer = Thread.currentThread();
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            synchronized (this) {
+                if (!failures.isEmpty()) {
+                    if (interruptOnFailure) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw failures.remove(0);
+                }
+                if (interruptOnFirstWrite && batches.isEmpty()) {
+                    Thread.currentThread().interrupt();
+                }
+                batches.add(List.copyOf(batch));
+            }
+        }
+
+        synchronized List<ApiUsageLog> written() {
+            return batches.stream().flatMap(List::stream).toList();
+        }
+
+        synchronized List<Integer> batchSizes() {
+            return batches.stream().map(List::size).toList();
+        }
+    }
+}
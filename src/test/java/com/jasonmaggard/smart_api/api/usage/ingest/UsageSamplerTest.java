@@ -0,0 +1,204 @@
+package com.jasonmaggard.smart_api.api.usage.ingest;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageSamplingConfig;
+import com.jasonmaggard.smart_api.api.usage.config.UsageSamplingConfig.EndpointRule;
+import com.jasonmaggard.smart_api.api.usage.config.UsageSamplingConfig.SamplingMode;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UsageSamplerTest {
+
+    private final UsageSamplingConfig config = new UsageSamplingConfig();
+    private final List<ApiUsageLog> offered = new ArrayList<>();
+    private final UsageSampler sampler = new UsageSampler(config, buffer(offered));
+
+    @Test
+    void allModeKeepsEveryRequestAtWeightOne() {
+        submit("/api/items", 50, 200, 10);
+
+        assertThat(offered).hasSize(50).allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(1));
+        assertThat(sampler.getNotSampled()).isZero();
+    }
+
+    @Test
+    void fixedWeightsAddUpToTheRequestsSeen() {
+        config.setMode(SamplingMode.FIXED);
+        config.setRate(0.1);
+
+        submit("/api/items", 100_000, 200, 10);
+
+        assertThat(offered).allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(10));
+        assertThat(offered.size() + sampler.getNotSampled()).isEqualTo(100_000);
+        // 1 in 10 kept: the expected weight sum is exact, the spread about 1%
+        assertThat(totalWeight()).isBetween(95_000L, 105_000L);
+    }
+
+    @Test
+    void adaptiveAlwaysKeepsErrorsAndSlowRequests() {
+        config.setMode(SamplingMode.ADAPTIVE);
+        config.setRate(0.0);
+
+        submit("/api/items", 100, 200, 10);
+        submit("/api/items", 7, 503, 10);
+        submit("/api/items", 5, 200, 1_500);
+
+        assertThat(offered).hasSize(12).allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(1));
+        assertThat(sampler.getNotSampled()).isEqualTo(100);
+    }
+
+    @Test
+    void adaptiveWeightsAddUpToTheRequestsSeen() {
+        config.setMode(SamplingMode.ADAPTIVE);
+        config.setRate(0.25);
+
+        submit("/api/items", 80_000, 200, 10);
+        submit("/api/items", 1_000, 500, 10);
+
+        assertThat(offered.size() + sampler.getNotSampled()).isEqualTo(81_000);
+        assertThat(offered).filteredOn(usageLog -> usageLog.getStatusCode() == 500)
+            .hasSize(1_000).allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(1));
+        assertThat(totalWeight()).isBetween(81_000L - 4_000, 81_000L + 4_000);
+    }
+
+    @Test
+    void reservoirKeepsItsSizeAndWeighsItUpToTheRequestsSeen() {
+        config.setMode(SamplingMode.RESERVOIR);
+        config.setReservoirSize(7);
+
+        submit("/api/items", 1_000, 200, 10);
+        assertThat(offered).isEmpty();
+        sampler.stop();
+
+        assertThat(offered).hasSize(7);
+        assertThat(totalWeight()).isEqualTo(1_000);
+        // 1000 = 6 * 143 + 142: the weights differ by at most one
+        assertThat(offered).extracting(ApiUsageLog::getSampleWeight).containsOnly(143, 142);
+        assertThat(sampler.getNotSampled()).isEqualTo(993);
+    }
+
+    @Test
+    void reservoirBelowItsSizeKeepsEverythingAtWeightOne() {
+        config.setMode(SamplingMode.RESERVOIR);
+        config.setReservoirSize(10);
+
+        submit("/api/items", 4, 200, 10);
+        sampler.stop();
+
+        assertThat(offered).hasSize(4).allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(1));
+    }
+
+    @Test
+    void reservoirStartsAfreshEachInterval() {
+        config.setMode(SamplingMode.RESERVOIR);
+        config.setReservoirSize(5);
+
+        submit("/api/items", 100, 200, 10);
+        sampler.stop();
+        offered.clear();
+        submit("/api/items", 20, 200, 10);
+        sampler.stop();
+
+        assertThat(offered).hasSize(5);
+        assertThat(totalWeight()).isEqualTo(20);
+    }
+
+    @Test
+    void reservoirIsKeptPerEndpointAndMethod() {
+        config.setMode(SamplingMode.RESERVOIR);
+        config.setReservoirSize(2);
+
+        submit("/api/a", 10, 200, 10);
+        submit("/api/b", 30, 200, 10);
+        sampler.stop();
+
+        assertThat(offered).hasSize(4);
+        assertThat(offered).filteredOn(usageLog -> usageLog.getEndpointPath().equals("/api/a"))
+            .extracting(ApiUsageLog::getSampleWeight).containsExactly(5, 5);
+        assertThat(offered).filteredOn(usageLog -> usageLog.getEndpointPath().equals("/api/b"))
+            .extracting(ApiUsageLog::getSampleWeight).containsExactly(15, 15);
+    }
+
+    @Test
+    void mostSpecificOverrideWinsWhateverTheOrder() {
+        config.setMode(SamplingMode.ALL);
+        config.getEndpoints().put("/api/**", rule(SamplingMode.FIXED, 0.5, null));
+        config.getEndpoints().put("/api/docs/{id}", rule(SamplingMode.ALL, null, null));
+        config.getEndpoints().put("/api/docs/**", rule(SamplingMode.RESERVOIR, null, 3));
+
+        submit("/api/docs/{id}", 10, 200, 10);
+        assertThat(offered).hasSize(10).allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(1));
+
+        offered.clear();
+        submit("/api/docs/{id}/history", 10, 200, 10);
+        assertThat(offered).isEmpty();
+        sampler.stop();
+        assertThat(offered).hasSize(3);
+
+        offered.clear();
+        submit("/api/users", 1_000, 200, 10);
+        assertThat(offered).isNotEmpty().allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(2));
+
+        offered.clear();
+        submit("/health", 10, 200, 10);
+        assertThat(offered).hasSize(10);
+    }
+
+    @Test
+    void overrideFallsBackToTheDefaultsForUnsetFields() {
+        config.setMode(SamplingMode.FIXED);
+        config.setRate(1.0);
+        config.getEndpoints().put("/api/bulk/**", rule(null, 0.2, null));
+
+        submit("/api/bulk/import", 1_000, 200, 10);
+
+        assertThat(offered).isNotEmpty().allSatisfy(usageLog -> assertThat(usageLog.getSampleWeight()).isEqualTo(5));
+    }
+
+    @Test
+    void zeroRateKeepsNothing() {
+        config.setMode(SamplingMode.FIXED);
+        config.setRate(0.0);
+
+        submit("/api/items", 100, 500, 5_000);
+
+        assertThat(offered).isEmpty();
+        assertThat(sampler.getNotSampled()).isEqualTo(100);
+    }
+
+    private void submit(String route, int count, int status, int responseTimeMs) {
+        for (int i = 0; i < count; i++) {
+            ApiUsageLog usageLog = new ApiUsageLog();
+            usageLog.setEndpointPath(route);
+            usageLog.setHttpMethod("GET");
+            usageLog.setStatusCode(status);
+            usageLog.setResponseTimeMs(responseTimeMs);
+            sampler.submit(usageLog, route);
+        }
+    }
+
+    private long totalWeight() {
+        return offered.stream().mapToLong(ApiUsageLog::getSampleWeight).sum();
+    }
+
+    private static EndpointRule rule(SamplingMode mode, Double rate, Integer reservoirSize) {
+        EndpointRule rule = new EndpointRule();
+        rule.setMode(mode);
+        rule.setRate(rate);
+        rule.setReservoirSize(reservoirSize);
+        return rule;
+    }
+
+    private static UsageLogBuffer buffer(List<ApiUsageLog> offered) {
+        UsageLogBuffer buffer = mock(UsageLogBuffer.class);
+        when(buffer.offer(any())).thenAnswer(invocation -> offered.add(invocation.getArgument(0)));
+        return buffer;
+    }
+}
@@ -0,0 +1,188 @@
+package com.jasonmaggard.smart_api.api.usage.interceptor;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageLoggingConfig;
+import com.jasonmaggard.smart_api.api.usage.entity.ApiUsageLog;
+import com.jasonmaggard.smart_api.api.usage.metrics.LiveMetricsRegistry;
+import com.jasonmaggard.smart_api.api.usage.service.ApiUsageLogService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of ApiUsageInterceptor, current implementation against the
+ * previous one (kept below as the legacy* methods). Run with the GC profiler to see the
+ * allocation rate (gc.alloc.rate.norm is bytes allocated per request):
+ *
+ * <pre>
+ * ./mvnw test-compile
+ * java -cp "target/test-classes:target/classes:$(./mvnw -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     com.jasonmaggard.smart_api.api.usage.interceptor.ApiUsageInterceptorBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiUsageInterceptorBenchmark {
+
+    private static final String[] PATHS = {
+        "/api/users/42", "/api/docs/generate", "/swagger-ui/index.html", "/static/app.js", "/api/usage/stats"
+    };
+
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private ApiUsageInterceptor interceptor;
+    private ApiUsageLogService service;
+    private LiveMetricsRegistry legacyLiveMetrics;
+    private Object handler;
+    private volatile ApiUsageLog lastLogged;
+
+    @Setup
+    public void setUp() {
+        request = new MockHttpServletRequest("GET", "/api/users/42");
+        request.addHeader("X-Forwarded-For", "203.0.113.7, 10.0.0.1");
+        request.addHeader("User-Agent", "bench/1.0");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/users/{id}");
+        response = new MockHttpServletResponse();
+        response.setStatus(200);
+        handler = new Object();
+
+        // Stops at the service boundary: sampling and buffering are measured elsewhere
+        service = new ApiUsageLogService(null, null, null, null) {
+            @Override
+            public void logApiUsage(ApiUsageLog usageLog, String route) {
+                lastLogged = usageLog;
+            }
+        };
+        interceptor = new ApiUsageInterceptor(service, new LiveMetricsRegistry(new UsageLoggingConfig()));
+        legacyLiveMetrics = new LiveMetricsRegistry(new UsageLoggingConfig());
+    }
+
+    @Benchmark
+    public void skipCheck(Blackhole blackhole) {
+        for (String path : PATHS) {
+            blackhole.consume(ApiUsageInterceptor.shouldSkipLogging(path));
+        }
+    }
+
+    @Benchmark
+    public void skipCheckLegacy(Blackhole blackhole) {
+        for (String path : PATHS) {
+            blackhole.consume(legacyShouldSkipLogging(path));
+        }
+    }
+
+    @Benchmark
+    public String clientIp() {
+        return ApiUsageInterceptor.getClientIpAddress(request);
+    }
+
+    @Benchmark
+    public String clientIpLegacy() {
+        return legacyGetClientIpAddress(request);
+    }
+
+    @Benchmark
+    public ApiUsageLog request() {
+        interceptor.preHandle(request, response, handler);
+        interceptor.afterCompletion(request, response, handler, null);
+        return lastLogged;
+    }
+
+    /**
+     * The old per-request code, plus the live metrics it predates so both paths do the same work
+     */
+    @Benchmark
+    public ApiUsageLog requestLegacy() {
+        request.setAttribute("startTime", System.currentTimeMillis());
+
+        Long startTime = (Long) request.getAttribute("startTime");
+        long responseTimeMs = startTime != null ? System.currentTimeMillis() - startTime : 0L;
+        String endpointPath = request.getRequestURI();
+        String httpMethod = request.getMethod();
+        int statusCode = response.getStatus();
+        String userAgent = request.getHeader("User-Agent");
+        String ipAddress = legacyGetClientIpAddress(request);
+        if (legacyShouldSkipLogging(endpointPath)) {
+            return null;
+        }
+
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route = pattern instanceof String ? (String) pattern : endpointPath;
+        legacyLiveMetrics.record(route, httpMethod, statusCode, responseTimeMs * 1_000);
+        ApiUsageLog usageLog = new ApiUsageLog();
+        usageLog.setEndpointPath(endpointPath);
+        usageLog.setHttpMethod(httpMethod);
+        usageLog.setResponseTimeMs((int) responseTimeMs);
+        usageLog.setStatusCode(statusCode);
+        usageLog.setUserAgent(userAgent);
+        usageLog.setIpAddress(ipAddress);
+        usageLog.setCreatedAt(LocalDateTime.now());
+        service.logApiUsage(usageLog, route);
+        return lastLogged;
+    }
+
+    private static String legacyGetClientIpAddress(HttpServletRequest request) {
+        String[] headerNames = {
+            "X-Forwarded-For",
+            "X-Real-IP",
+            "Proxy-Client-IP",
+            "WL-Proxy-Client-IP",
+            "HTTP_X_FORWARDED_FOR",
+            "HTTP_X_FORWARDED",
+            "HTTP_X_CLUSTER_CLIENT_IP",
+            "HTTP_CLIENT_IP",
+            "HTTP_FORWARDED_FOR",
+            "HTTP_FORWARDED",
+            "HTTP_VIA",
+            "REMOTE_ADDR"
+        };
+
+        for (String header : headerNames) {
+            String ip = request.getHeader(header);
+            if (ip != null && !ip.isEmpty() && !"unknown".equalsIgnoreCase(ip)) {
+                if (ip.contains(",")) {
+                    ip = ip.split(",")[0].trim();
+                }
+                return ip;
+            }
+        }
+
+        return request.getRemoteAddr();
+    }
+
+    private static boolean legacyShouldSkipLogging(String path) {
+        return path.startsWith("/actuator") ||
+               path.startsWith("/swagger-ui") ||
+               path.startsWith("/v3/api-docs") ||
+               path.startsWith("/webjars") ||
+               path.startsWith("/static") ||
+               path.startsWith("/jobrunr") ||
+               path.endsWith(".css") ||
+               path.endsWith(".js") ||
+               path.endsWith(".ico") ||
+               path.endsWith(".png") ||
+               path.endsWith(".jpg");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(ApiUsageInterceptorBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,89 @@
+package com.jasonmaggard.smart_api.api.usage.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EndpointMetricsTest {
+
+    private static final long NOW = 1_760_000_000L;
+
+    private final EndpointMetrics metrics = new EndpointMetrics();
+
+    @Test
+    void countsByStatusClass() {
+        metrics.record(200, 1_000, NOW);
+        metrics.record(204, 1_000, NOW);
+        metrics.record(302, 1_000, NOW);
+        metrics.record(404, 1_000, NOW);
+        metrics.record(503, 1_000, NOW);
+        metrics.record(0, 1_000, NOW);
+        metrics.record(600, 1_000, NOW);
+
+        assertThat(metrics.count(2)).isEqualTo(2);
+        assertThat(metrics.count(3)).isEqualTo(1);
+        assertThat(metrics.count(4)).isEqualTo(1);
+        assertThat(metrics.count(5)).isEqualTo(1);
+        assertThat(metrics.count(0)).isEqualTo(2);
+        assertThat(metrics.totalCount()).isEqualTo(7);
+    }
+
+    @Test
+    void mergesTheLatencyOfEveryStatusClass() {
+        metrics.record(200, 1_000, NOW);
+        metrics.record(500, 1_000, NOW);
+        metrics.record(404, 90_000, NOW);
+
+        long[] snapshot = metrics.latencySnapshot();
+
+        assertThat(snapshot[LatencyHistogram.bucketIndex(1_000)]).isEqualTo(2);
+        assertThat(snapshot[LatencyHistogram.bucketIndex(90_000)]).isEqualTo(1);
+        assertThat(LongStream.of(snapshot).sum()).isEqualTo(3);
+    }
+
+    @Test
+    void rateCountsOnlyCompleteSecondsInsideTheWindow() {
+        for (int second = 1; second <= 10; second++) {
+            record(NOW - second, second);
+        }
+        // The current second is still filling up and is left out
+        record(NOW, 100);
+
+        assertThat(metrics.ratePerSecond(10, NOW)).isEqualTo(55 / 10.0);
+        assertThat(metrics.ratePerSecond(5, NOW)).isEqualTo(15 / 5.0);
+    }
+
+    @Test
+    void ringSlotsAreReusedOnceTheirSecondRollsOff() {
+        // Same slot, one full ring apart
+        record(NOW - EndpointMetrics.WINDOW_SECONDS - 1, 50);
+        record(NOW - 1, 3);
+
+        assertThat(metrics.ratePerSecond(60, NOW)).isEqualTo(3 / 60.0);
+    }
+
+    @Test
+    void staleSlotsFromAnIdleSpellAreIgnored() {
+        record(NOW - 30, 6);
+
+        assertThat(metrics.ratePerSecond(60, NOW)).isEqualTo(6 / 60.0);
+        assertThat(metrics.ratePerSecond(60, NOW + 120)).isZero();
+    }
+
+    @Test
+    void windowIsCappedAtAMinute() {
+        for (int second = 1; second <= 60; second++) {
+            record(NOW - second, 1);
+        }
+
+        assertThat(metrics.ratePerSecond(300, NOW)).isEqualTo(1.0);
+    }
+
+    private void record(long epochSecond, int requests) {
+        for (int i = 0; i < requests; i++) {
+            metrics.record(200, 1_000, epochSecond);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.jasonmaggard.smart_api.api.usage.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+class LatencyHistogramTest {
+
+    @Test
+    void coversTheTrackableRangeWith528Buckets() {
+        assertThat(LatencyHistogram.BUCKET_COUNT).isEqualTo(528);
+        assertThat(LatencyHistogram.bucketLowerBound(0)).isZero();
+        assertThat(LatencyHistogram.bucketUpperBound(LatencyHistogram.BUCKET_COUNT - 1))
+            .isEqualTo(LatencyHistogram.MAX_TRACKABLE_VALUE + 1);
+    }
+
+    @Test
+    void everyBucketRoundTripsThroughItsBounds() {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long upper = LatencyHistogram.bucketUpperBound(i);
+
+            assertThat(upper).as("bucket %d", i).isGreaterThan(lower);
+            assertThat(LatencyHistogram.bucketIndex(lower)).as("lower bound of %d", i).isEqualTo(i);
+            assertThat(LatencyHistogram.bucketIndex(upper - 1)).as("upper bound of %d", i).isEqualTo(i);
+            if (i + 1 < LatencyHistogram.BUCKET_COUNT) {
+                assertThat(LatencyHistogram.bucketLowerBound(i + 1)).as("gap after %d", i).isEqualTo(upper);
+            }
+        }
+    }
+
+    @Test
+    void keepsSmallValuesExactAndBucketsWithinOneSixteenth() {
+        LongStream.range(0, 32).forEach(v -> {
+            int index = LatencyHistogram.bucketIndex(v);
+            assertThat(LatencyHistogram.bucketUpperBound(index) - LatencyHistogram.bucketLowerBound(index)).isEqualTo(1);
+        });
+        for (int i = 32; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long width = LatencyHistogram.bucketUpperBound(i) - LatencyHistogram.bucketLowerBound(i);
+            assertThat((double) width / LatencyHistogram.bucketLowerBound(i)).as("bucket %d", i).isLessThanOrEqualTo(1.0 / 16);
+        }
+    }
+
+    @Test
+    void clampsOutOfRangeValuesIntoTheEdgeBuckets() {
+        assertThat(LatencyHistogram.bucketIndex(-5)).isZero();
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+        assertThat(LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_VALUE))
+            .isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+    }
+
+    @Test
+    void percentilesLandInTheSubBucketOfTheExactValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new Random(42).longs(100_000, 100, 5_000_000).sorted().toArray();
+        for (long value : values) {
+            histogram.record(value);
+        }
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        histogram.addTo(counts);
+
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            int bucket = LatencyHistogram.bucketIndex(exact);
+
+            Double estimate = LatencyHistogram.valueAtQuantile(counts, quantile);
+
+            assertThat(estimate).as("p%s", quantile * 100).isEqualTo(LatencyHistogram.bucketMidpoint(bucket));
+            assertThat(estimate).as("p%s", quantile * 100).isCloseTo((double) exact, withinPercentage(3.125));
+        }
+    }
+
+    @Test
+    void quantilesOfAnEmptyHistogramAreNull() {
+        assertThat(LatencyHistogram.valueAtQuantile(new long[LatencyHistogram.BUCKET_COUNT], 0.5)).isNull();
+    }
+
+    @Test
+    void addToAccumulatesIntoTheTarget() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(7);
+        histogram.record(7);
+        histogram.record(1_000);
+        long[] target = new long[LatencyHistogram.BUCKET_COUNT];
+        target[7] = 1;
+
+        histogram.addTo(target);
+
+        assertThat(target[7]).isEqualTo(3);
+        assertThat(target[LatencyHistogram.bucketIndex(1_000)]).isEqualTo(1);
+        assertThat(LongStream.of(target).sum()).isEqualTo(4);
+    }
+}
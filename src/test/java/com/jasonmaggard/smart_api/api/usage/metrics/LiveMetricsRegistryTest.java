@@ -0,0 +1,82 @@
+package com.jasonmaggard.smart_api.api.usage.metrics;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageLoggingConfig;
+import com.jasonmaggard.smart_api.api.usage.dto.LiveEndpointMetricsDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class LiveMetricsRegistryTest {
+
+    private final UsageLoggingConfig config = new UsageLoggingConfig();
+
+    @Test
+    void foldsEndpointsBeyondTheCapIntoOther() {
+        config.setLiveMaxEndpoints(2);
+        LiveMetricsRegistry registry = new LiveMetricsRegistry(config);
+
+        registry.record("/api/a", "GET", 200, 1_000);
+        registry.record("/api/b", "GET", 200, 1_000);
+        registry.record("/api/c", "GET", 200, 1_000);
+        registry.record("/api/d", "GET", 500, 1_000);
+        // Already tracked, so still counted under its own path
+        registry.record("/api/a", "GET", 200, 1_000);
+
+        List<LiveEndpointMetricsDto> snapshot = registry.snapshot(10);
+
+        assertThat(snapshot).extracting(LiveEndpointMetricsDto::getEndpointPath)
+            .containsExactlyInAnyOrder("/api/a", "/api/b", LiveMetricsRegistry.OVERFLOW_PATH);
+        LiveEndpointMetricsDto other = find(snapshot, LiveMetricsRegistry.OVERFLOW_PATH);
+        assertThat(other.getRequestCount()).isEqualTo(2);
+        assertThat(other.getServerErrorCount()).isEqualTo(1);
+        assertThat(find(snapshot, "/api/a").getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void tracksMethodsOfTheSamePathSeparately() {
+        LiveMetricsRegistry registry = new LiveMetricsRegistry(config);
+
+        registry.record("/api/items", "GET", 200, 1_000);
+        registry.record("/api/items", "POST", 201, 1_000);
+        registry.record("/api/items", "POST", 400, 1_000);
+
+        assertThat(registry.snapshot(10))
+            .extracting(LiveEndpointMetricsDto::getHttpMethod, LiveEndpointMetricsDto::getRequestCount)
+            .containsExactly(tuple("POST", 2L), tuple("GET", 1L));
+    }
+
+    @Test
+    void snapshotIsBusiestFirstAndLimited() {
+        LiveMetricsRegistry registry = new LiveMetricsRegistry(config);
+        for (int i = 0; i < 3; i++) {
+            registry.record("/api/busy", "GET", 200, 1_000);
+        }
+        registry.record("/api/quiet", "GET", 200, 1_000);
+        registry.record("/api/medium", "GET", 200, 1_000);
+        registry.record("/api/medium", "GET", 200, 1_000);
+
+        assertThat(registry.snapshot(2)).extracting(LiveEndpointMetricsDto::getEndpointPath)
+            .containsExactly("/api/busy", "/api/medium");
+    }
+
+    @Test
+    void reportsPercentilesInMilliseconds() {
+        LiveMetricsRegistry registry = new LiveMetricsRegistry(config);
+        for (int i = 1; i <= 100; i++) {
+            registry.record("/api/items", "GET", 200, i * 1_000L);
+        }
+
+        LiveEndpointMetricsDto items = registry.snapshot(1).get(0);
+
+        // 50ms = 50,000us falls in the [49152, 51200) microsecond bucket
+        assertThat(items.getP50ResponseTimeMs()).isEqualTo(50.1755);
+        assertThat(items.getP99ResponseTimeMs()).isBetween(99.0 * 15 / 16, 99.0 * 17 / 16);
+    }
+
+    private static LiveEndpointMetricsDto find(List<LiveEndpointMetricsDto> snapshot, String path) {
+        return snapshot.stream().filter(dto -> dto.getEndpointPath().equals(path)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,191 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RollupWindowTest {
+
+    private static final String WATERMARK =
+        "COALESCE((SELECT rolled_up_to FROM api_usage_rollup_state WHERE id = 1), '-infinity'::timestamp)";
+
+    @Test
+    void splitsAnUnalignedWindowIntoTheCoarsestBucketsThatFit() {
+        List<String> segments = render(RollupWindow.of(
+            LocalDateTime.of(2026, 1, 5, 22, 47, 13),
+            LocalDateTime.of(2026, 1, 8, 1, 2, 30)));
+
+        assertThat(segments).containsExactly(
+            "raw [2026-01-05T22:47:13, 2026-01-05T22:48)",
+            "MINUTE [2026-01-05T22:48, 2026-01-05T23:00)",
+            "HOUR [2026-01-05T23:00, 2026-01-06T00:00)",
+            "DAY [2026-01-06T00:00, 2026-01-08T00:00)",
+            "HOUR [2026-01-08T00:00, 2026-01-08T01:00)",
+            "MINUTE [2026-01-08T01:00, 2026-01-08T01:02)",
+            "raw [2026-01-08T01:02, 2026-01-08T01:02:30)",
+            "tail [2026-01-05T22:47:13, 2026-01-08T01:02:30)");
+    }
+
+    @Test
+    void alignedWindowNeedsNoRawEdges() {
+        List<String> segments = render(RollupWindow.of(
+            LocalDateTime.of(2026, 1, 5, 9, 0),
+            LocalDateTime.of(2026, 1, 5, 11, 30)));
+
+        assertThat(segments).containsExactly(
+            "HOUR [2026-01-05T09:00, 2026-01-05T11:00)",
+            "MINUTE [2026-01-05T11:00, 2026-01-05T11:30)",
+            "tail [2026-01-05T09:00, 2026-01-05T11:30)");
+    }
+
+    @Test
+    void windowInsideOneMinuteIsReadRaw() {
+        assertThat(render(RollupWindow.of(
+            LocalDateTime.of(2026, 1, 5, 10, 0, 10),
+            LocalDateTime.of(2026, 1, 5, 10, 0, 50))))
+            .containsExactly(
+                "raw [2026-01-05T10:00:10, 2026-01-05T10:00:50)",
+                "tail [2026-01-05T10:00:10, 2026-01-05T10:00:50)");
+    }
+
+    @Test
+    void windowShorterThanAMinuteAcrossAMinuteBoundaryIsReadRaw() {
+        assertThat(render(RollupWindow.of(
+            LocalDateTime.of(2026, 1, 5, 23, 59, 50),
+            LocalDateTime.of(2026, 1, 6, 0, 0, 20))))
+            .containsExactly(
+                "raw [2026-01-05T23:59:50, 2026-01-06T00:00:20)",
+                "tail [2026-01-05T23:59:50, 2026-01-06T00:00:20)");
+    }
+
+    @Test
+    void openStartReadsEveryRollupBeforeTheEnd() {
+        assertThat(render(RollupWindow.of(null, LocalDateTime.of(2026, 1, 5, 10, 30, 5))))
+            .containsExactly(
+                "DAY [-inf, 2026-01-05T00:00)",
+                "HOUR [2026-01-05T00:00, 2026-01-05T10:00)",
+                "MINUTE [2026-01-05T10:00, 2026-01-05T10:30)",
+                "raw [2026-01-05T10:30, 2026-01-05T10:30:05)",
+                "tail [-inf, 2026-01-05T10:30:05)");
+    }
+
+    @Test
+    void openEndReadsEveryRollupAfterTheStart() {
+        assertThat(render(RollupWindow.of(LocalDateTime.of(2026, 1, 5, 23, 58, 30), null)))
+            .containsExactly(
+                "raw [2026-01-05T23:58:30, 2026-01-05T23:59)",
+                "MINUTE [2026-01-05T23:59, 2026-01-06T00:00)",
+                "DAY [2026-01-06T00:00, +inf)",
+                "tail [2026-01-05T23:58:30, +inf)");
+    }
+
+    @Test
+    void unboundedWindowIsEveryDayRollupPlusTheTail() {
+        assertThat(render(RollupWindow.of(null, null))).containsExactly("DAY [-inf, +inf)", "tail [-inf, +inf)");
+    }
+
+    @Test
+    void rollupsAndRawEdgesStopAtTheWatermarkAndTheTailStartsThere() {
+        List<String> branches = branches(RollupWindow.of(
+            LocalDateTime.of(2026, 1, 5, 10, 0, 10),
+            LocalDateTime.of(2026, 1, 5, 12, 0, 0)), "", List.of(), new ArrayList<>());
+
+        // A window crossing the watermark reads rollups below it and raw rows from it on
+        for (String branch : branches.subList(0, branches.size() - 1)) {
+            if (branch.startsWith("R ")) {
+                assertThat(branch).contains(" AND bucket_start < " + WATERMARK);
+            } else {
+                assertThat(branch).startsWith("W WHERE created_at < " + WATERMARK);
+            }
+        }
+        assertThat(branches.get(branches.size() - 1)).startsWith("W WHERE created_at >= " + WATERMARK);
+    }
+
+    @Test
+    void filterIsAppliedToEveryBranch() {
+        List<Object> args = new ArrayList<>();
+        List<String> branches = branches(RollupWindow.of(
+            LocalDateTime.of(2026, 1, 5, 10, 0, 10),
+            LocalDateTime.of(2026, 1, 5, 10, 2, 0)), " AND endpoint_path = ?", List.of("/api/items"), args);
+
+        assertThat(branches).hasSize(3).allSatisfy(branch -> assertThat(branch).contains(" AND endpoint_path = ?"));
+        assertThat(args).filteredOn("/api/items"::equals).hasSize(3);
+        assertThat(args).hasSize(3 + 2 * 3);
+    }
+
+    @Test
+    void segmentsTileAnyWindowWithoutGapsOrOverlaps() {
+        Random random = new Random(7);
+        LocalDateTime origin = LocalDateTime.of(2026, 1, 1, 0, 0);
+        for (int n = 0; n < 500; n++) {
+            LocalDateTime from = origin.plusSeconds(random.nextInt(10 * 86_400));
+            LocalDateTime to = from.plusSeconds(1 + random.nextInt(random.nextBoolean() ? 300 : 5 * 86_400));
+
+            List<String> segments = render(RollupWindow.of(from, to));
+
+            LocalDateTime cursor = from;
+            for (String segment : segments.subList(0, segments.size() - 1)) {
+                String[] parts = segment.split(" \\[|, |\\)");
+                LocalDateTime start = LocalDateTime.parse(parts[1]);
+                LocalDateTime end = LocalDateTime.parse(parts[2]);
+                assertThat(start).as("%s in [%s, %s)", segment, from, to).isEqualTo(cursor);
+                assertThat(end).isAfter(start);
+                if (!parts[0].equals("raw")) {
+                    ChronoUnit unit = ChronoUnit.valueOf(parts[0] + "S");
+                    assertThat(start.truncatedTo(unit)).isEqualTo(start);
+                    assertThat(end.truncatedTo(unit)).isEqualTo(end);
+                }
+                cursor = end;
+            }
+            assertThat(cursor).isEqualTo(to);
+        }
+    }
+
+    @Test
+    void rejectsAnEmptyOrInvertedWindow() {
+        LocalDateTime time = LocalDateTime.of(2026, 1, 5, 10, 0);
+
+        assertThatThrownBy(() -> RollupWindow.of(time, time)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RollupWindow.of(time, time.minusSeconds(1))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * The window as one "KIND [start, end)" line per branch, kind being the rollup
+     * granularity, raw for a raw edge or tail for the rows past the watermark
+     */
+    private static List<String> render(RollupWindow window) {
+        List<Object> args = new ArrayList<>();
+        List<String> branches = branches(window, "", List.of(), args);
+        Iterator<Object> arg = args.iterator();
+        List<String> segments = new ArrayList<>();
+        for (int i = 0; i < branches.size(); i++) {
+            String branch = branches.get(i);
+            String column = branch.startsWith("R ") ? "bucket_start" : "created_at";
+            String kind = branch.startsWith("R ")
+                ? branch.substring(branch.indexOf('\'') + 1, branch.indexOf('\'', branch.indexOf('\'') + 1))
+                : i == branches.size() - 1 ? "tail" : "raw";
+            String start = branch.contains(column + " >= ?") ? bound(arg.next()) : "-inf";
+            String end = branch.contains(column + " < ?") ? bound(arg.next()) : "+inf";
+            segments.add(kind + " [" + start + ", " + end + ")");
+        }
+        assertThat(arg).isExhausted();
+        return segments;
+    }
+
+    private static List<String> branches(RollupWindow window, String filter, List<Object> filterArgs, List<Object> args) {
+        return List.of(window.union("R WHERE ", "W WHERE ", "g", filter, filterArgs, args).split(" UNION ALL "));
+    }
+
+    private static String bound(Object arg) {
+        return ((Timestamp) arg).toLocalDateTime().toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the partition DDL against a real Postgres, migrated into a throwaway schema.
+ * Set TEST_POSTGRES_URL (and TEST_POSTGRES_USER / TEST_POSTGRES_PASSWORD) to enable.
+ */
+@EnabledIfEnvironmentVariable(named = "TEST_POSTGRES_URL", matches = ".+")
+class UsagePartitionRepositoryPostgresTest {
+
+    private static final String SCHEMA = "usage_partition_test_" + UUID.randomUUID().toString().replace("-", "");
+
+    // Well clear of the days the migration premakes
+    private static final LocalDate DAY = LocalDate.of(2001, 2, 3);
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static UsagePartitionRepository repository;
+
+    @BeforeAll
+    static void migrate() {
+        dataSource = new SingleConnectionDataSource(System.getenv("TEST_POSTGRES_URL"),
+            System.getenv().getOrDefault("TEST_POSTGRES_USER", "postgres"),
+            System.getenv().getOrDefault("TEST_POSTGRES_PASSWORD", ""), true);
+        Flyway.configure().dataSource(dataSource).schemas(SCHEMA).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("SET search_path TO " + SCHEMA);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository = new UsagePartitionRepository(jdbcTemplate);
+    }
+
+    @AfterAll
+    static void dropSchema() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+        }
+        if (dataSource != null) {
+            dataSource.destroy();
+        }
+    }
+
+    @Test
+    void createMovesRowsOutOfTheDefaultPartitionThenDropDiscardsThem() {
+        insertLog(DAY.atTime(0, 0));
+        insertLog(DAY.atTime(23, 59, 59));
+        insertLog(DAY.plusDays(1).atStartOfDay());
+        assertThat(count("api_usage_logs_default")).isEqualTo(3);
+
+        transactionTemplate.executeWithoutResult(status -> repository.createPartition(DAY));
+
+        assertThat(repository.findPartitionDays()).contains(DAY).isSorted();
+        assertThat(count("api_usage_logs_p20010203")).isEqualTo(2);
+        assertThat(count("api_usage_logs_default")).isEqualTo(1);
+        assertThat(count("api_usage_logs")).isEqualTo(3);
+        // The bounds CHECK only served the ATTACH
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM pg_constraint WHERE conname = 'api_usage_logs_p20010203_bounds'", Long.class))
+            .isZero();
+        // New rows for the day are routed to it
+        insertLog(DAY.atTime(12, 0));
+        assertThat(count("api_usage_logs_p20010203")).isEqualTo(3);
+
+        transactionTemplate.executeWithoutResult(status -> repository.dropPartition(DAY));
+
+        assertThat(repository.findPartitionDays()).doesNotContain(DAY);
+        assertThat(count("api_usage_logs")).isEqualTo(1);
+    }
+
+    private static void insertLog(LocalDateTime createdAt) {
+        jdbcTemplate.update("INSERT INTO api_usage_logs (endpoint_path, http_method, created_at) VALUES (?, ?, ?)",
+            "/api/items", "GET", Timestamp.valueOf(createdAt));
+    }
+
+    private static long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+}
@@ -0,0 +1,217 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import com.jasonmaggard.smart_api.api.usage.dto.EndpointUsageDto;
+import com.jasonmaggard.smart_api.api.usage.metrics.LatencyHistogram;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the rollup SQL against a real Postgres, migrated into a throwaway schema.
+ * Set TEST_POSTGRES_URL (and TEST_POSTGRES_USER / TEST_POSTGRES_PASSWORD) to enable.
+ */
+@EnabledIfEnvironmentVariable(named = "TEST_POSTGRES_URL", matches = ".+")
+class UsageRollupRepositoryPostgresTest {
+
+    private static final Pattern BACKFILL_BOUND =
+        Pattern.compile("SELECT (CASE WHEN .+? END)\\s+FROM generate_series\\(1, (\\d+)\\) AS i", Pattern.DOTALL);
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 1, 5, 10, 0);
+
+    private static final String SCHEMA = "usage_rollup_test_" + UUID.randomUUID().toString().replace("-", "");
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static UsageRollupRepository repository;
+
+    @BeforeAll
+    static void migrate() {
+        dataSource = new SingleConnectionDataSource(System.getenv("TEST_POSTGRES_URL"),
+            System.getenv().getOrDefault("TEST_POSTGRES_USER", "postgres"),
+            System.getenv().getOrDefault("TEST_POSTGRES_PASSWORD", ""), true);
+        Flyway.configure().dataSource(dataSource).schemas(SCHEMA).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("SET search_path TO " + SCHEMA);
+        repository = new UsageRollupRepository(jdbcTemplate);
+    }
+
+    @AfterAll
+    static void dropSchema() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+        }
+        if (dataSource != null) {
+            dataSource.destroy();
+        }
+    }
+
+    @BeforeEach
+    void clear() {
+        jdbcTemplate.execute("TRUNCATE api_usage_logs, api_usage_rollups, api_usage_rollup_latency");
+        jdbcTemplate.update("UPDATE api_usage_rollup_state SET rolled_up_to = NULL WHERE id = 1");
+    }
+
+    @Test
+    void migrationBackfillBoundsAreTheHistogramLowerBounds() throws IOException {
+        String migration = new ClassPathResource("db/migration/V6__Create_api_usage_rollup_latency_table.sql")
+            .getContentAsString(StandardCharsets.UTF_8);
+        Matcher matcher = BACKFILL_BOUND.matcher(migration);
+        assertThat(matcher.find()).isTrue();
+        assertThat(Integer.parseInt(matcher.group(2))).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+
+        // Index 0 too, though the migration starts at 1, so all 528 buckets are covered
+        List<Long> bounds = jdbcTemplate.queryForList(
+            "SELECT " + matcher.group(1) + " FROM generate_series(0, " + matcher.group(2) + ") AS i ORDER BY i",
+            Long.class);
+
+        assertThat(bounds).hasSize(LatencyHistogram.BUCKET_COUNT);
+        for (int i = 0; i < bounds.size(); i++) {
+            assertThat(bounds.get(i)).as("bucket %d", i).isEqualTo(LatencyHistogram.bucketLowerBound(i));
+        }
+    }
+
+    @Test
+    void rollupPutsEachResponseTimeInItsHistogramBucket() {
+        Map<Integer, Long> expected = new HashMap<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long upper = LatencyHistogram.bucketUpperBound(i) - 1;
+            // response_time_ms is an INTEGER column
+            for (long value : new long[] {lower, upper}) {
+                if (value <= Integer.MAX_VALUE) {
+                    rows.add(logRow("/api/buckets", BASE, (int) value, 1));
+                    expected.merge(i, 1L, Long::sum);
+                }
+            }
+        }
+        insertLogs(rows);
+
+        repository.rollUpLatency(BASE, BASE.plusMinutes(1));
+
+        Map<Integer, Long> actual = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT bucket_index, request_count FROM api_usage_rollup_latency WHERE granularity = 'MINUTE'",
+            rs -> { actual.put(rs.getInt(1), rs.getLong(2)); });
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void percentilesMergeRollupsWithTheRawTail() {
+        // 1..1000ms, one every 3 seconds over 50 minutes, the first 30 of them rolled up
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            rows.add(logRow("/api/pct", BASE.plusSeconds((i - 1) * 3L), i, 1));
+        }
+        insertLogs(rows);
+        rollUpTo(BASE.plusMinutes(30));
+
+        EndpointUsageDto all = repository.getEndpointStats("/api/pct", "GET", null, null);
+
+        assertThat(all.getRequestCount()).isEqualTo(1000);
+        assertThat(all.getP50ResponseTimeMs()).isEqualTo(midpointOf(500));
+        assertThat(all.getP95ResponseTimeMs()).isEqualTo(midpointOf(950));
+        assertThat(all.getP99ResponseTimeMs()).isEqualTo(midpointOf(990));
+    }
+
+    @Test
+    void percentilesOfAnUnalignedWindowCountOnlyTheRowsInsideIt() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            rows.add(logRow("/api/pct", BASE.plusSeconds((i - 1) * 3L), i, 1));
+        }
+        insertLogs(rows);
+        rollUpTo(BASE.plusMinutes(30));
+
+        // Raw edges, whole rolled up minutes and the raw tail past the watermark
+        LocalDateTime from = BASE.plusMinutes(5).plusSeconds(7);
+        LocalDateTime to = BASE.plusMinutes(41).plusSeconds(13);
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        long inside = 0;
+        for (int i = 1; i <= 1000; i++) {
+            LocalDateTime createdAt = BASE.plusSeconds((i - 1) * 3L);
+            if (!createdAt.isBefore(from) && createdAt.isBefore(to)) {
+                counts[LatencyHistogram.bucketIndex(i)]++;
+                inside++;
+            }
+        }
+
+        EndpointUsageDto window = repository.getEndpointStats("/api/pct", "GET", from, to);
+
+        assertThat(window.getRequestCount()).isEqualTo(inside);
+        assertThat(window.getP50ResponseTimeMs()).isEqualTo(LatencyHistogram.valueAtQuantile(counts, 0.50));
+        assertThat(window.getP95ResponseTimeMs()).isEqualTo(LatencyHistogram.valueAtQuantile(counts, 0.95));
+        assertThat(window.getP99ResponseTimeMs()).isEqualTo(LatencyHistogram.valueAtQuantile(counts, 0.99));
+    }
+
+    @Test
+    void percentilesWeighSampledRows() {
+        // 40 fast requests logged one for one, and 10 slow rows each standing for 5 requests
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            boolean slow = i % 5 == 0;
+            rows.add(logRow("/api/sampled", BASE.plusSeconds(i * 20L), slow ? 1000 : 10, slow ? 5 : 1));
+        }
+        insertLogs(rows);
+        rollUpTo(BASE.plusMinutes(8));
+
+        List<EndpointUsageDto> top = repository.findTopEndpoints(1, null, null);
+
+        assertThat(top).hasSize(1);
+        assertThat(top.get(0).getRequestCount()).isEqualTo(90);
+        // Unweighted the median would be fast; weighted, 50 of the 90 requests are slow
+        assertThat(top.get(0).getP50ResponseTimeMs()).isEqualTo(midpointOf(1000));
+    }
+
+    @Test
+    void endpointWithoutTimingsHasNoPercentiles() {
+        insertLogs(List.of(logRow("/api/untimed", BASE, null, 1), logRow("/api/untimed", BASE.plusMinutes(20), null, 1)));
+        rollUpTo(BASE.plusMinutes(10));
+
+        EndpointUsageDto stats = repository.getEndpointStats("/api/untimed", "GET", null, null);
+
+        assertThat(stats.getRequestCount()).isEqualTo(2);
+        assertThat(stats.getP50ResponseTimeMs()).isNull();
+        assertThat(stats.getP99ResponseTimeMs()).isNull();
+    }
+
+    private static void rollUpTo(LocalDateTime watermark) {
+        repository.rollUp(BASE, watermark);
+        repository.rollUpLatency(BASE, watermark);
+        repository.updateWatermark(watermark);
+    }
+
+    private static double midpointOf(long value) {
+        return LatencyHistogram.bucketMidpoint(LatencyHistogram.bucketIndex(value));
+    }
+
+    private static Object[] logRow(String path, LocalDateTime createdAt, Integer responseTimeMs, int sampleWeight) {
+        return new Object[] {path, "GET", responseTimeMs, 200, sampleWeight, Timestamp.valueOf(createdAt)};
+    }
+
+    private static void insertLogs(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO api_usage_logs (endpoint_path, http_method, response_time_ms, status_code, sample_weight, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)", rows);
+    }
+}
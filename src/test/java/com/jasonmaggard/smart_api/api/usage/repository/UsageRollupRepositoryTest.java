@@ -0,0 +1,72 @@
+package com.jasonmaggard.smart_api.api.usage.repository;
+
+import com.jasonmaggard.smart_api.api.usage.metrics.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UsageRollupRepositoryTest {
+
+    private static final Pattern LATENCY_BOUNDS =
+        Pattern.compile("width_bucket\\(response_time_ms::bigint, '\\{([0-9,]+)}'::bigint\\[]\\)");
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final UsageRollupRepository repository = new UsageRollupRepository(jdbcTemplate);
+
+    @Test
+    void latencyBucketBoundsAreTheHistogramLowerBounds() {
+        long[] bounds = latencyBounds();
+
+        assertThat(bounds).hasSize(LatencyHistogram.BUCKET_COUNT - 1);
+        for (int i = 0; i < bounds.length; i++) {
+            assertThat(bounds[i]).as("bound of bucket %d", i + 1).isEqualTo(LatencyHistogram.bucketLowerBound(i + 1));
+        }
+    }
+
+    @Test
+    void widthBucketOverTheBoundsIsTheHistogramIndex() {
+        long[] bounds = latencyBounds();
+
+        // width_bucket over a sorted array: the number of bounds <= the value
+        IntStream.range(0, LatencyHistogram.BUCKET_COUNT).forEach(i -> {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long upper = LatencyHistogram.bucketUpperBound(i) - 1;
+            assertThat(Arrays.stream(bounds).filter(b -> b <= lower).count()).as("lower of %d", i).isEqualTo(i);
+            assertThat(Arrays.stream(bounds).filter(b -> b <= upper).count()).as("upper of %d", i).isEqualTo(i);
+        });
+    }
+
+    @Test
+    void migrationBackfillCoversTheSameBuckets() throws IOException {
+        String migration = new ClassPathResource("db/migration/V6__Create_api_usage_rollup_latency_table.sql")
+            .getContentAsString(StandardCharsets.UTF_8);
+
+        // The formula itself is checked against Postgres in UsageRollupRepositoryPostgresTest
+        assertThat(migration).contains("generate_series(1, " + (LatencyHistogram.BUCKET_COUNT - 1) + ")");
+        assertThat(migration).contains("width_bucket(l.response_time_ms::bigint, b.lower_bounds)");
+    }
+
+    private long[] latencyBounds() {
+        LocalDateTime from = LocalDateTime.of(2026, 1, 5, 10, 0);
+        repository.rollUpLatency(from, from.plusMinutes(1));
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(sql.capture(), any(Object[].class));
+
+        Matcher matcher = LATENCY_BOUNDS.matcher(sql.getValue());
+        assertThat(matcher.find()).isTrue();
+        return Arrays.stream(matcher.group(1).split(",")).mapToLong(Long::parseLong).toArray();
+    }
+}
@@ -0,0 +1,146 @@
+package com.jasonmaggard.smart_api.api.usage.service;
+
+import com.jasonmaggard.smart_api.api.usage.dto.EndpointUsageDto;
+import com.jasonmaggard.smart_api.api.usage.ingest.UsageLogBuffer;
+import com.jasonmaggard.smart_api.api.usage.ingest.UsageSampler;
+import com.jasonmaggard.smart_api.api.usage.metrics.LatencyHistogram;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.withinPercentage;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ApiUsageLogServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ApiUsageLogService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        service = new ApiUsageLogService(
+            new UsageRollupRepository(jdbcTemplate), mock(UsageLogBuffer.class), mock(UsageSampler.class),
+            mock(UsageRollupService.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void topEndpointsIssuesOneStatementRegardlessOfLimit() {
+        stubEndpointRows(100);
+
+        List<EndpointUsageDto> top = service.getTopEndpoints(100, null, null);
+
+        assertThat(top).hasSize(100);
+        assertThat(statementCount()).isEqualTo(1);
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq(100));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void slowestEndpointsIssuesOneStatementRegardlessOfLimit() {
+        stubEndpointRows(100);
+
+        List<EndpointUsageDto> slowest = service.getSlowestEndpoints(100, null, null);
+
+        assertThat(slowest).hasSize(100);
+        assertThat(statementCount()).isEqualTo(1);
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq(100));
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithResultSize() {
+        stubEndpointRows(1);
+        service.getTopEndpoints(1, null, null);
+        int forOne = statementCount();
+
+        clearInvocations(jdbcTemplate);
+        stubEndpointRows(100);
+        service.getTopEndpoints(100, null, null);
+
+        assertThat(statementCount()).isEqualTo(forOne);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportsPercentilesAsTheMidpointOfTheirHistogramBucket() throws SQLException {
+        ArgumentCaptor<RowMapper<EndpointUsageDto>> mapper = ArgumentCaptor.forClass(RowMapper.class);
+        service.getEndpointStats("/api/users/{id}", "GET", null, null);
+        verify(jdbcTemplate).query(anyString(), mapper.capture(), any(Object[].class));
+
+        // 1000 requests at 1..1000ms: the 500th, 950th and 990th fastest are 500, 950 and 990ms
+        ResultSet rs = endpointRow(LatencyHistogram.bucketIndex(500), LatencyHistogram.bucketIndex(950),
+            LatencyHistogram.bucketIndex(990));
+        EndpointUsageDto stats = mapper.getValue().mapRow(rs, 0);
+
+        // 500 falls in [496, 512), 950 in [928, 960) and 990 in [960, 992)
+        assertThat(stats.getP50ResponseTimeMs()).isEqualTo(503.5);
+        assertThat(stats.getP95ResponseTimeMs()).isEqualTo(943.5);
+        assertThat(stats.getP99ResponseTimeMs()).isEqualTo(975.5);
+        assertThat(stats.getP50ResponseTimeMs()).isCloseTo(500, withinPercentage(6.25));
+        assertThat(stats.getP95ResponseTimeMs()).isCloseTo(950, withinPercentage(6.25));
+        assertThat(stats.getP99ResponseTimeMs()).isCloseTo(990, withinPercentage(6.25));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void leavesPercentilesEmptyForAnEndpointWithoutTimings() throws SQLException {
+        ArgumentCaptor<RowMapper<EndpointUsageDto>> mapper = ArgumentCaptor.forClass(RowMapper.class);
+        service.getEndpointStats("/api/users/{id}", "GET", null, null);
+        verify(jdbcTemplate).query(anyString(), mapper.capture(), any(Object[].class));
+
+        EndpointUsageDto stats = mapper.getValue().mapRow(endpointRow(null, null, null), 0);
+
+        assertThat(stats.getP50ResponseTimeMs()).isNull();
+        assertThat(stats.getP95ResponseTimeMs()).isNull();
+        assertThat(stats.getP99ResponseTimeMs()).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ranksPercentilesByTheCeilingOfTheirShareOfTheCount() {
+        service.getTopEndpoints(10, null, null);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(sql.capture(), any(RowMapper.class), any(Object[].class));
+        assertThat(sql.getValue())
+            .contains("MIN(bucket_index) FILTER (WHERE running >= CEIL(total * 0.50)) AS p50_bucket")
+            .contains("MIN(bucket_index) FILTER (WHERE running >= CEIL(total * 0.95)) AS p95_bucket")
+            .contains("MIN(bucket_index) FILTER (WHERE running >= CEIL(total * 0.99)) AS p99_bucket");
+    }
+
+    private static ResultSet endpointRow(Integer p50, Integer p95, Integer p99) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("endpoint_path")).thenReturn("/api/users/{id}");
+        when(rs.getString("http_method")).thenReturn("GET");
+        when(rs.getLong("request_count")).thenReturn(1000L);
+        when(rs.getInt("p50_bucket")).thenReturn(p50 != null ? p50 : 0);
+        when(rs.getInt("p95_bucket")).thenReturn(p95 != null ? p95 : 0);
+        when(rs.getInt("p99_bucket")).thenReturn(p99 != null ? p99 : 0);
+        when(rs.wasNull()).thenReturn(p50 == null, p95 == null, p99 == null);
+        return rs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubEndpointRows(int rows) {
+        List<EndpointUsageDto> result = IntStream.range(0, rows)
+            .mapToObj(i -> new EndpointUsageDto("/api/e" + i, "GET", 100L - i, 10.0, 1L, 50L, 9.0, 40.0, 49.0))
+            .toList();
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object.class))).thenReturn(result);
+    }
+
+    private int statementCount() {
+        return mockingDetails(jdbcTemplate).getInvocations().size();
+    }
+}
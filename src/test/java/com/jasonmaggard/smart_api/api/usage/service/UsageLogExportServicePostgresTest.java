@@ -0,0 +1,138 @@
+package com.jasonmaggard.smart_api.api.usage.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageLogExportRepository;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the keyset-paged export against a real Postgres, migrated into a throwaway schema.
+ * Set TEST_POSTGRES_URL (and TEST_POSTGRES_USER / TEST_POSTGRES_PASSWORD) to enable.
+ */
+@EnabledIfEnvironmentVariable(named = "TEST_POSTGRES_URL", matches = ".+")
+class UsageLogExportServicePostgresTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 1, 5, 10, 0);
+
+    private static final String SCHEMA = "usage_export_test_" + UUID.randomUUID().toString().replace("-", "");
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private UsageLogExportRepository repository;
+    private UsageLogExportService exportService;
+
+    @BeforeAll
+    static void migrate() {
+        dataSource = new SingleConnectionDataSource(System.getenv("TEST_POSTGRES_URL"),
+            System.getenv().getOrDefault("TEST_POSTGRES_USER", "postgres"),
+            System.getenv().getOrDefault("TEST_POSTGRES_PASSWORD", ""), true);
+        Flyway.configure().dataSource(dataSource).schemas(SCHEMA).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("SET search_path TO " + SCHEMA);
+    }
+
+    @AfterAll
+    static void dropSchema() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+        }
+        if (dataSource != null) {
+            dataSource.destroy();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("TRUNCATE api_usage_logs");
+        repository = spy(new UsageLogExportRepository(jdbcTemplate));
+        exportService = new UsageLogExportService(repository);
+    }
+
+    @Test
+    void pagesResumeStrictlyAfterTheLastKeyWithoutDuplicatesOrGaps() throws IOException {
+        // Three rows per timestamp, so page boundaries fall between rows tied on created_at
+        // and only the id orders them
+        int rows = 2 * UsageLogExportService.PAGE_SIZE + 1;
+        insertLogs(rows, 3);
+
+        List<JsonNode> exported = exportNdjson(null, null);
+
+        assertThat(exported).hasSize(rows);
+        assertThat(exported).extracting(row -> row.path("id").asText())
+            .doesNotHaveDuplicates()
+            .containsExactlyElementsOf(jdbcTemplate.queryForList(
+                "SELECT id::text FROM api_usage_logs ORDER BY created_at, id", String.class));
+        verify(repository, times(3)).readPage(any(), any(), any(), any(), eq(UsageLogExportService.PAGE_SIZE), any());
+    }
+
+    @Test
+    void aWindowOfExactlyOnePageEndsOnTheEmptyPageAfterIt() throws IOException {
+        insertLogs(UsageLogExportService.PAGE_SIZE + 10, 1);
+        LocalDateTime from = BASE.plusSeconds(5);
+
+        List<JsonNode> exported = exportNdjson(from, from.plusSeconds(UsageLogExportService.PAGE_SIZE));
+
+        assertThat(exported).hasSize(UsageLogExportService.PAGE_SIZE);
+        assertThat(exported.get(0).path("createdAt").asText()).isEqualTo(from.toString());
+        verify(repository, times(2)).readPage(any(), any(), any(), any(), anyInt(), any());
+    }
+
+    @Test
+    void anEmptyRangeWritesOnlyTheHeaderAndStops() throws IOException {
+        insertLogs(10, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = exportService.export(BASE.minusDays(2), BASE.minusDays(1), UsageLogExportService.Format.CSV, out);
+
+        assertThat(written).isZero();
+        assertThat(out.toString(StandardCharsets.UTF_8)).startsWith("id,endpoint_path,").hasLineCount(1);
+        verify(repository, times(1)).readPage(any(), any(), isNull(), isNull(), anyInt(), any());
+    }
+
+    /**
+     * rows logs from BASE on, sharing each second between perSecond of them
+     */
+    private static void insertLogs(int rows, int perSecond) {
+        jdbcTemplate.update("INSERT INTO api_usage_logs (endpoint_path, http_method, status_code, created_at) " +
+                "SELECT '/api/items/' || i, 'GET', 200, CAST(? AS timestamp) + (i / CAST(? AS int)) * INTERVAL '1 second' " +
+                "FROM generate_series(0, CAST(? AS int) - 1) AS i",
+            Timestamp.valueOf(BASE), perSecond, rows);
+    }
+
+    private List<JsonNode> exportNdjson(LocalDateTime from, LocalDateTime to) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = exportService.export(from, to, UsageLogExportService.Format.NDJSON, out);
+        List<JsonNode> rows = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                rows.add(objectMapper.readTree(line));
+            }
+        }
+        assertThat(rows).hasSize((int) written);
+        return rows;
+    }
+}
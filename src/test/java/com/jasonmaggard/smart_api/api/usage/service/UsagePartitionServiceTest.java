@@ -0,0 +1,114 @@
+package com.jasonmaggard.smart_api.api.usage.service;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsagePartitionConfig;
+import com.jasonmaggard.smart_api.api.usage.repository.UsagePartitionRepository;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UsagePartitionServiceTest {
+
+    private final LocalDate today = LocalDate.now();
+    private final UsagePartitionRepository partitionRepository = mock(UsagePartitionRepository.class);
+    private final UsageRollupRepository rollupRepository = mock(UsageRollupRepository.class);
+    private final UsagePartitionConfig config = new UsagePartitionConfig();
+    private final UsagePartitionService service = new UsagePartitionService(partitionRepository, rollupRepository,
+        config, new TransactionTemplate(mock(PlatformTransactionManager.class)));
+
+    @Test
+    void premakesTodayAndTheConfiguredDaysAhead() {
+        config.setPremakeDays(3);
+        when(partitionRepository.findPartitionDays()).thenReturn(List.of(today.minusDays(1), today.plusDays(1)));
+
+        service.rotate();
+
+        verify(partitionRepository).createPartition(today);
+        verify(partitionRepository).createPartition(today.plusDays(2));
+        verify(partitionRepository).createPartition(today.plusDays(3));
+        verify(partitionRepository, times(3)).createPartition(any());
+    }
+
+    @Test
+    void createsNothingWhenEveryDayIsReady() {
+        config.setPremakeDays(2);
+        when(partitionRepository.findPartitionDays()).thenReturn(days(today, 3));
+
+        service.rotate();
+
+        verify(partitionRepository, never()).createPartition(any());
+    }
+
+    @Test
+    void dropsExpiredPartitionsTheWatermarkHasPassed() {
+        config.setRetentionDays(30);
+        LocalDate cutoff = today.minusDays(30);
+        when(partitionRepository.findPartitionDays()).thenReturn(days(cutoff.minusDays(3), 4 + 8));
+        // Rolled up to noon on the last day before the cutoff
+        when(rollupRepository.findWatermark()).thenReturn(cutoff.minusDays(1).atTime(12, 0));
+
+        service.rotate();
+
+        verify(partitionRepository).dropPartition(cutoff.minusDays(3));
+        verify(partitionRepository).dropPartition(cutoff.minusDays(2));
+        verify(partitionRepository, times(2)).dropPartition(any());
+    }
+
+    @Test
+    void dropsAPartitionOnceTheWatermarkReachesItsEnd() {
+        config.setRetentionDays(30);
+        LocalDate expired = today.minusDays(31);
+        when(partitionRepository.findPartitionDays()).thenReturn(days(expired, 2 + 8));
+        when(rollupRepository.findWatermark()).thenReturn(expired.plusDays(1).atStartOfDay());
+
+        service.rotate();
+
+        verify(partitionRepository).dropPartition(expired);
+        verify(partitionRepository, times(1)).dropPartition(any());
+    }
+
+    @Test
+    void keepsExpiredPartitionsUntilTheFirstRollup() {
+        config.setRetentionDays(30);
+        when(partitionRepository.findPartitionDays()).thenReturn(days(today.minusDays(40), 41 + 8));
+        when(rollupRepository.findWatermark()).thenReturn(null);
+
+        service.rotate();
+
+        verify(partitionRepository, never()).dropPartition(any());
+    }
+
+    @Test
+    void neverDropsTheCutoffDayOrLater() {
+        config.setRetentionDays(30);
+        LocalDate cutoff = today.minusDays(30);
+        when(partitionRepository.findPartitionDays()).thenReturn(days(cutoff, 31 + 8));
+        when(rollupRepository.findWatermark()).thenReturn(today.atStartOfDay());
+
+        service.rotate();
+
+        verify(partitionRepository, never()).dropPartition(any());
+    }
+
+    @Test
+    void zeroRetentionKeepsEverything() {
+        config.setRetentionDays(0);
+        when(partitionRepository.findPartitionDays()).thenReturn(days(today.minusDays(400), 401 + 8));
+
+        service.rotate();
+
+        verify(partitionRepository, never()).dropPartition(any());
+        verifyNoInteractions(rollupRepository);
+    }
+
+    private static List<LocalDate> days(LocalDate first, int count) {
+        return IntStream.range(0, count).mapToObj(first::plusDays).toList();
+    }
+}
@@ -0,0 +1,131 @@
+package com.jasonmaggard.smart_api.api.usage.service;
+
+import com.jasonmaggard.smart_api.api.usage.config.UsageRollupConfig;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository;
+import com.jasonmaggard.smart_api.api.usage.repository.UsageRollupRepository.LateRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UsageRollupServiceTest {
+
+    private final UsageRollupRepository repository = mock(UsageRollupRepository.class);
+    private final UsageRollupConfig config = new UsageRollupConfig();
+    private final UsageRollupService service = new UsageRollupService(repository, config);
+
+    @BeforeEach
+    void setUp() {
+        config.setLagSeconds(120L);
+        config.setMaxCatchUpMinutes(60L);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void rollsUpCompleteMinutesOlderThanTheLag() {
+        LocalDateTime watermark = minutesAgo(30);
+        when(repository.lockWatermark()).thenReturn(watermark);
+
+        LocalDateTime before = LocalDateTime.now().minusSeconds(120).truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime rolledUpTo = service.rollUp();
+        LocalDateTime after = LocalDateTime.now().minusSeconds(120).truncatedTo(ChronoUnit.MINUTES);
+
+        assertThat(rolledUpTo).isBetween(before, after);
+        assertThat(rolledUpTo.getSecond()).isZero();
+        assertThat(rolledUpTo.getNano()).isZero();
+        verify(repository).rollUp(watermark, rolledUpTo);
+        verify(repository).rollUpLatency(watermark, rolledUpTo);
+        verify(repository).updateWatermark(rolledUpTo);
+    }
+
+    @Test
+    void catchesUpOnHistoryOneBoundedSliceAtATime() {
+        LocalDateTime watermark = minutesAgo(24 * 60);
+        when(repository.lockWatermark()).thenReturn(watermark);
+
+        LocalDateTime rolledUpTo = service.rollUp();
+
+        assertThat(rolledUpTo).isEqualTo(watermark.plusMinutes(60));
+        verify(repository).rollUp(watermark, watermark.plusMinutes(60));
+        verify(repository).updateWatermark(watermark.plusMinutes(60));
+    }
+
+    @Test
+    void seedsTheWatermarkFromTheOldestLogOnTheFirstRun() {
+        LocalDateTime oldest = minutesAgo(10).withSecond(42).withNano(7_000);
+        when(repository.lockWatermark()).thenReturn(null);
+        when(repository.findOldestLogTime()).thenReturn(oldest);
+
+        LocalDateTime rolledUpTo = service.rollUp();
+
+        LocalDateTime seed = oldest.truncatedTo(ChronoUnit.MINUTES);
+        verify(repository).rollUp(seed, rolledUpTo);
+        verify(repository).rollUpLatency(seed, rolledUpTo);
+    }
+
+    @Test
+    void doesNothingWithoutAnyLogs() {
+        when(repository.lockWatermark()).thenReturn(null);
+        when(repository.findOldestLogTime()).thenReturn(null);
+
+        assertThat(service.rollUp()).isNull();
+
+        verify(repository, never()).rollUp(any(), any());
+        verify(repository, never()).updateWatermark(any());
+    }
+
+    @Test
+    void leavesMinutesInsideTheLagForTheNextRun() {
+        // Already rolled up to the start of the current minute, which is within the lag
+        when(repository.lockWatermark()).thenReturn(LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES));
+
+        assertThat(service.rollUp()).isNull();
+
+        verify(repository, never()).rollUp(any(), any());
+        verify(repository, never()).rollUpLatency(any(), any());
+        verify(repository, never()).updateWatermark(any());
+    }
+
+    @Test
+    void countsLateRowsOnceTheirTransactionCommits() {
+        LocalDateTime watermark = minutesAgo(5);
+        List<LateRow> rows = List.of(
+            new LateRow(watermark.minusMinutes(1), "/api/items", "GET", 200, 12, 1),
+            new LateRow(watermark.minusMinutes(3), "/api/items", "POST", 201, 40, 4));
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.rollUpLateRows(rows, watermark);
+
+        verify(repository).rollUpLateRows(rows, watermark);
+        assertThat(service.getLateRows()).isZero();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(service.getLateRows()).isEqualTo(2);
+    }
+
+    @Test
+    void skipsTheRollupWhenNothingIsLate() {
+        service.rollUpLateRows(List.of(), minutesAgo(5));
+
+        verifyNoInteractions(repository);
+        assertThat(service.getLateRows()).isZero();
+    }
+
+    private static LocalDateTime minutesAgo(long minutes) {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).minusMinutes(minutes);
+    }
+}